@@ -5,7 +5,6 @@ import edu.stanford.math.plex.Plex;
 import edu.stanford.math.plex.RipsStream;
 import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 import edu.stanford.math.plex4.interop.Plex3Stream;
-import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.streams.impl.ExplicitCellStream;
@@ -34,7 +33,7 @@ public class FilteredStreamInterface {
 
 	public static VietorisRipsStream<double[]> createPlex4VietorisRipsStream(double[][] points, int maxDimension, double maxFiltrationValue, int numDivisions) {
 
-		AbstractSearchableMetricSpace<double[]> metricSpace = new EuclideanMetricSpace(points);
+		AbstractSearchableMetricSpace<double[]> metricSpace = Plex4.createEuclideanMetricSpace(points);
 		VietorisRipsStream<double[]> stream = new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions);
 		stream.finalizeStream();
 
@@ -49,7 +48,7 @@ public class FilteredStreamInterface {
 	
 	public static VietorisRipsStream<double[]> createPlex4VietorisRipsStream(double[][] points, int maxDimension, double[] filtrationValues) {
 
-		AbstractSearchableMetricSpace<double[]> metricSpace = new EuclideanMetricSpace(points);
+		AbstractSearchableMetricSpace<double[]> metricSpace = Plex4.createEuclideanMetricSpace(points);
 		VietorisRipsStream<double[]> stream = new VietorisRipsStream<double[]>(metricSpace, filtrationValues, maxDimension);
 		stream.finalizeStream();
 
@@ -22,6 +22,7 @@ import edu.stanford.math.plex4.homology.chain_basis.SimplexPair;
 import edu.stanford.math.plex4.homology.chain_basis.SimplexPairComparator;
 import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
 import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceBasisAlgorithm;
+import edu.stanford.math.plex4.homology.nonautogen.BooleanPersistentCohomology;
 import edu.stanford.math.plex4.interop.Plex3PersistenceAlgorithm;
 import edu.stanford.math.primitivelib.algebraic.impl.ModularIntField;
 import edu.stanford.math.primitivelib.algebraic.impl.RationalField;
@@ -68,6 +69,10 @@ public class PersistenceAlgorithmInterface {
 		return new ObjectClassicalHomology<Fraction, Simplex>(fractionField, SimplexComparator.getInstance(), 0, maxDimension);
 	}
 	
+	public static AbstractPersistenceAlgorithm<Simplex> getBooleanSimplicialCohomology(int maxDimension) {
+		return new BooleanPersistentCohomology<Simplex>(0, maxDimension);
+	}
+	
 	public static AbstractPersistenceBasisAlgorithm<Simplex, BooleanSparseFormalSum<Simplex>> getBooleanSimplicialRelativeHomology(int maxDimension) {
 		return new BooleanRelativeHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension);
 	}
@@ -88,6 +93,7 @@ public class PersistenceAlgorithmInterface {
 		list.add(getRationalSimplicialAbsoluteHomology(maxDimension));
 		list.add(getBooleanSimplicialClassicalHomology(maxDimension));
 		list.add(getIntSimplicialClassicalHomology(maxDimension));
+		list.add(getBooleanSimplicialCohomology(maxDimension));
 		
 		return list;
 	}
@@ -126,6 +132,10 @@ public class PersistenceAlgorithmInterface {
 		return new ObjectClassicalHomology<Fraction, Cell>(fractionField, CellComparator.getInstance(), 0, maxDimension);
 	}
 	
+	public static AbstractPersistenceAlgorithm<Cell> getBooleanCellularCohomology(int maxDimension) {
+		return new BooleanPersistentCohomology<Cell>(0, maxDimension);
+	}
+	
 	public static AbstractPersistenceBasisAlgorithm<Cell, BooleanSparseFormalSum<Cell>> getBooleanCellularRelativeHomology(int maxDimension) {
 		return new BooleanRelativeHomology<Cell>(CellComparator.getInstance(), 0, maxDimension);
 	}
@@ -146,6 +156,7 @@ public class PersistenceAlgorithmInterface {
 		list.add(getRationalCellularAbsoluteHomology(maxDimension));
 		list.add(getBooleanCellularClassicalHomology(maxDimension));
 		list.add(getIntCellularClassicalHomology(maxDimension));
+		list.add(getBooleanCellularCohomology(maxDimension));
 		
 		return list;
 	}
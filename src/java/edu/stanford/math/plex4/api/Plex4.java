@@ -18,7 +18,10 @@ import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
 import edu.stanford.math.plex4.homology.chain_basis.SimplexPair;
 import edu.stanford.math.plex4.homology.chain_basis.SimplexPairComparator;
 import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
+import edu.stanford.math.plex4.homology.nonautogen.BooleanPersistentCohomology;
+import edu.stanford.math.plex4.homology.nonautogen.ImplicitVietorisRipsHomology;
 import edu.stanford.math.plex4.io.BarcodeWriter;
+import edu.stanford.math.plex4.kd.KDEuclideanMetricSpace;
 import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
 import edu.stanford.math.plex4.metric.interfaces.AbstractIntMetricSpace;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
@@ -31,6 +34,7 @@ import edu.stanford.math.plex4.streams.derived.HomStream;
 import edu.stanford.math.plex4.streams.impl.ExplicitCellStream;
 import edu.stanford.math.plex4.streams.impl.ExplicitSimplexStream;
 import edu.stanford.math.plex4.streams.impl.LazyWitnessStream;
+import edu.stanford.math.plex4.streams.impl.SparseVietorisRipsStream;
 import edu.stanford.math.plex4.streams.impl.VietorisRipsStream;
 import edu.stanford.math.plex4.streams.impl.WitnessStream;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
@@ -62,12 +66,31 @@ public class Plex4 {
 	public static void main(String[] args) {}
 	
 	/**
-	 * This function creates a new EuclideanMetricSpace object.
+	 * The maximum dimension of a point cloud for which the Euclidean metric space is
+	 * indexed by a KD-tree. In higher dimensions, the KD-tree searches visit most
+	 * of the points, and the linear scans are faster.
+	 */
+	private static final int MAX_KD_TREE_DIMENSION = 16;
+	
+	/**
+	 * The minimum number of points for which the Euclidean metric space is indexed
+	 * by a KD-tree.
+	 */
+	private static final int MIN_KD_TREE_SIZE = 32;
+	
+	/**
+	 * This function creates a new EuclideanMetricSpace object. For low dimensional point
+	 * clouds, the returned space is a KDEuclideanMetricSpace, which answers the neighborhood
+	 * and nearest neighbor queries with a KD-tree. The results of the queries are the same
+	 * in both cases.
 	 * 
 	 * @param points the array of points to include in the metric space
 	 * @return a new EuclideanMetricSpace object containing the supplied points
 	 */
 	public static EuclideanMetricSpace createEuclideanMetricSpace(double[][] points) {
+		if (points.length >= MIN_KD_TREE_SIZE && points[0].length <= MAX_KD_TREE_DIMENSION) {
+			return new KDEuclideanMetricSpace(points);
+		}
 		return new EuclideanMetricSpace(points);
 	}
 	
@@ -186,6 +209,39 @@ public class Plex4 {
 		return FilteredStreamInterface.createPlex4VietorisRipsStream(metricSpace, maxDimension, filtrationValues);
 	}
 	
+	/**
+	 * This function creates a sparse Vietoris-Rips complex from a metric space. Its barcodes
+	 * approximate the ones of the Vietoris-Rips complex up to a factor of 1 + O(epsilon),
+	 * while its size is linear in the number of points for low-dimensional data sets.
+	 * 
+	 * @param <T>
+	 * @param metricSpace the metric space
+	 * @param epsilon the approximation parameter, which must be in the interval (0, 1)
+	 * @param maxDimension the maximum simplicial dimension in the complex
+	 * @param maxFiltrationValue the maximum filtration value
+	 * @param numDivisions the number of divisions to use in the filtration
+	 * @return a new SparseVietorisRipsStream object
+	 */
+	public static <T> SparseVietorisRipsStream<T> createSparseVietorisRipsStream(AbstractSearchableMetricSpace<T> metricSpace, double epsilon, int maxDimension, double maxFiltrationValue, int numDivisions) {
+		SparseVietorisRipsStream<T> stream = new SparseVietorisRipsStream<T>(metricSpace, epsilon, maxFiltrationValue, maxDimension, numDivisions);
+		stream.finalizeStream();
+		return stream;
+	}
+	
+	/**
+	 * This function creates a sparse Vietoris-Rips complex given a point cloud. It uses 20
+	 * as the default number of divisions.
+	 * 
+	 * @param points the points in the data set
+	 * @param epsilon the approximation parameter, which must be in the interval (0, 1)
+	 * @param maxDimension the maximum simplicial dimension in the complex
+	 * @param maxFiltrationValue the maximum filtration value
+	 * @return a new SparseVietorisRipsStream object
+	 */
+	public static SparseVietorisRipsStream<double[]> createSparseVietorisRipsStream(double[][] points, double epsilon, int maxDimension, double maxFiltrationValue) {
+		return createSparseVietorisRipsStream(createEuclideanMetricSpace(points), epsilon, maxDimension, maxFiltrationValue, DEFAULT_NUM_DIVISIONS);
+	}
+	
 	/**
 	 * This function create a new lazy-witness stream given a point cloud.
 	 * 
@@ -238,6 +294,30 @@ public class Plex4 {
 		return FilteredStreamInterface.createPlex4LazyWitnessStream(selector, maxDimension, maxFiltrationValue, DEFAULT_NUM_DIVISIONS);
 	}
 	
+	/**
+	 * This function create a new lazy-witness stream given a point cloud, which is
+	 * constructed by streaming over the witnesses. Instead of the full matrix of
+	 * landmark-witness distances, it uses a spatial index of the landmark points, so
+	 * that the memory usage is linear in the number of points and edges.
+	 * 
+	 * @param selector the landmark selection
+	 * @param maxDimension the maximum simplicial dimension in the complex 
+	 * @param maxFiltrationValue the maximum filtration value
+	 * @param nu the nu value of the lazy-witness complex
+	 * @param numDivisions the number of divisions to use in the filtration
+	 * @return a new LazyWitnessStream object
+	 */
+	public static LazyWitnessStream<double[]> createStreamingLazyWitnessStream(LandmarkSelector<double[]> selector, int maxDimension, double maxFiltrationValue, int nu, int numDivisions) {
+		LazyWitnessStream<double[]> stream = new LazyWitnessStream<double[]>(selector.getUnderlyingMetricSpace(), selector, maxDimension, maxFiltrationValue, nu, numDivisions);
+		double[][] landmarkPoints = new double[selector.size()][];
+		for (int i = 0; i < landmarkPoints.length; i++) {
+			landmarkPoints[i] = selector.getPoint(i);
+		}
+		stream.setLandmarkSpace(createEuclideanMetricSpace(landmarkPoints));
+		stream.finalizeStream();
+		return stream;
+	}
+	
 	/**
 	 * This function creates a new max-min landmark selector on a point cloud.
 	 * 
@@ -246,7 +326,7 @@ public class Plex4 {
 	 * @return a new MaxMinLandmarkSelector
 	 */
 	public static MaxMinLandmarkSelector<double[]> createMaxMinSelector(double[][] points, int numLandmarkPoints) {
-		return new MaxMinLandmarkSelector<double[]>(new EuclideanMetricSpace(points), numLandmarkPoints);
+		return new MaxMinLandmarkSelector<double[]>(createEuclideanMetricSpace(points), numLandmarkPoints);
 	}
 	
 	/**
@@ -258,7 +338,7 @@ public class Plex4 {
 	 * @return a new MaxMinLandmarkSelector
 	 */
 	public static MaxMinLandmarkSelector<double[]> createMaxMinSelector(double[][] points, int numLandmarkPoints, int firstPoint) {
-		return new MaxMinLandmarkSelector<double[]>(new EuclideanMetricSpace(points), numLandmarkPoints, firstPoint);
+		return new MaxMinLandmarkSelector<double[]>(createEuclideanMetricSpace(points), numLandmarkPoints, firstPoint);
 	}
 	
 	/**
@@ -269,7 +349,7 @@ public class Plex4 {
 	 * @return a new RandomLandmarkSelector
 	 */
 	public static RandomLandmarkSelector<double[]> createRandomSelector(double[][] points, int numLandmarkPoints) {
-		return new RandomLandmarkSelector<double[]>(new EuclideanMetricSpace(points), numLandmarkPoints);
+		return new RandomLandmarkSelector<double[]>(createEuclideanMetricSpace(points), numLandmarkPoints);
 	}
 	
 	/**
@@ -317,7 +397,7 @@ public class Plex4 {
 	 * @return a new ExplicitLandmarkSelector
 	 */
 	public static ExplicitLandmarkSelector<double[]> createExplicitSelector(double[][] points, int[] landmarkPoints) {
-		return new ExplicitLandmarkSelector<double[]>(new EuclideanMetricSpace(points), landmarkPoints);
+		return new ExplicitLandmarkSelector<double[]>(createEuclideanMetricSpace(points), landmarkPoints);
 	}
 	
 	/**
@@ -341,6 +421,30 @@ public class Plex4 {
 		return new BooleanClassicalHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension);
 	}
 	
+	/**
+	 * This function returns the default simplicial persistent cohomology algorithm. It computes
+	 * the same barcodes as the default (absolute) homology algorithm, but is usually much faster
+	 * on large complexes.
+	 *  
+	 * @param maxDimension the maximum dimension the algorithm should compute cohomology for
+	 * @return the default simplicial cohomology algorithm
+	 */
+	public static AbstractPersistenceAlgorithm<Simplex> getDefaultSimplicialCohomologyAlgorithm(int maxDimension) {
+		return new BooleanPersistentCohomology<Simplex>(0, maxDimension);
+	}
+	
+	/**
+	 * This function returns a persistent homology algorithm over Z/2Z for Vietoris-Rips streams, which
+	 * represents the complex implicitly and never constructs its simplices. It may only be applied
+	 * to streams created by the createVietorisRipsStream functions, which need not be finalized.
+	 *  
+	 * @param maxDimension the maximum dimension the algorithm should compute homology for
+	 * @return the implicit Vietoris-Rips homology algorithm
+	 */
+	public static AbstractPersistenceAlgorithm<Simplex> getImplicitVietorisRipsAlgorithm(int maxDimension) {
+		return new ImplicitVietorisRipsHomology(0, maxDimension);
+	}
+	
 	public static AbstractPersistenceAlgorithm<SimplexPair> getDefaultSimplicialPairAlgorithm(int maxDimension) {
 		//return new IntAbsoluteHomology<SimplexPair>(ModularIntField.getInstance(2), SimplexPairComparator.getInstance(), 0, maxDimension);
 		return new BooleanClassicalHomology<SimplexPair>(SimplexPairComparator.getInstance(), 0, maxDimension);
@@ -6,8 +6,6 @@ import edu.stanford.math.plex4.homology.barcodes.AnnotatedBarcodeCollection;
 import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
 import edu.stanford.math.primitivelib.autogen.formal_sum.BooleanSparseFormalSum;
-import edu.stanford.math.primitivelib.autogen.pair.ObjectObjectPair;
-import gnu.trove.THashMap;
 
 
 
@@ -26,19 +24,12 @@ public class BooleanAbsoluteHomology<U> extends BooleanPersistentHomology<U> {
 	}
 		
 	@Override
-	protected AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> getAnnotatedIntervals(
-			ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair, 
-			AbstractFilteredStream<U> stream) {
-			
-		return this.getAnnotatedIntervals(RV_pair, stream, true);
+	protected AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> getAnnotatedIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream) {
+		return this.getAnnotatedIntervals(decomposition, stream, true);
 	}
 
 	@Override
-	protected BarcodeCollection<Integer> getIntervals(ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair,
-			AbstractFilteredStream<U> stream) {
-			
-		return this.getIntervals(RV_pair, stream, true);
+	protected BarcodeCollection<Integer> getIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream) {
+		return this.getIntervals(decomposition, stream, true);
 	}
 }
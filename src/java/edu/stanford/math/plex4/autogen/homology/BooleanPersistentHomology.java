@@ -1,16 +1,17 @@
 package edu.stanford.math.plex4.autogen.homology;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 
 import edu.stanford.math.plex4.homology.barcodes.AnnotatedBarcodeCollection;
 import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import edu.stanford.math.plex4.utility.ParallelUtility;
 import edu.stanford.math.primitivelib.autogen.formal_sum.BooleanSparseFormalSum;
-import edu.stanford.math.primitivelib.autogen.pair.ObjectObjectPair;
-import gnu.trove.THashMap;
-import gnu.trove.THashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TObjectIntHashMap;
 
 
 
@@ -30,6 +31,16 @@ import gnu.trove.THashSet;
  */
 public abstract class BooleanPersistentHomology<U> extends BooleanPersistenceAlgorithm<U> {
 
+	/**
+	 * This indicates whether the column that is being reduced is stored as a binary heap.
+	 */
+	private boolean useHeapColumns = false;
+
+	/**
+	 * This is the number of threads used to reduce the boundary matrix.
+	 */
+	private int numThreads = 1;
+
 		/**
 	 * This constructor initializes the object with a comparator on the basis type.
 	 * 
@@ -41,151 +52,763 @@ public abstract class BooleanPersistentHomology<U> extends BooleanPersistenceAlg
 		super(basisComparator, minDimension, maxDimension);
 	}
 	
+	/**
+	 * This function selects the representation of the column that is currently being reduced.
+	 * By default it is stored as a sorted array, and adding another column to it merges the
+	 * two arrays. If heap columns are used, it is stored as a binary heap with lazy cancellation:
+	 * adding a column simply pushes its entries onto the heap, and the low entry is found by popping
+	 * entries off of the heap. This is usually faster when the columns become long, as is the case
+	 * for high dimensional Vietoris-Rips complexes. Both representations produce the same results.
+	 * 
+	 * @param useHeapColumns true if heap columns should be used
+	 */
+	public void setUseHeapColumns(boolean useHeapColumns) {
+		this.useHeapColumns = useHeapColumns;
+	}
+
+	/**
+	 * @return true if the column being reduced is stored as a binary heap
+	 */
+	public boolean getUseHeapColumns() {
+		return this.useHeapColumns;
+	}
+
+	/**
+	 * This function sets the number of threads used to reduce the boundary matrix. If it is
+	 * larger than 1, the columns of each dimension are partitioned into contiguous chunks which
+	 * are first reduced in parallel, each using only the columns in its own chunk. The remaining
+	 * reduction between the chunks is then done sequentially. Since every column is only
+	 * reduced by columns that precede it, the computed intervals are identical to the ones
+	 * produced by the sequential algorithm.
+	 * 
+	 * @param numThreads the number of threads to use
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @return the number of threads used to reduce the boundary matrix
+	 */
+	public int getNumThreads() {
+		return this.numThreads;
+	}
+
 	@Override
 	protected AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> computeAnnotatedIntervalsImpl(AbstractFilteredStream<U> stream) {
-		return this.getAnnotatedIntervals(this.pHcol(stream), stream);
+		return this.getAnnotatedIntervals(this.pHcol(stream, true), stream);
 	}
 
 	@Override
 	protected BarcodeCollection<Integer> computeIntervalsImpl(AbstractFilteredStream<U> stream) {
-		return this.getIntervals(this.pHcol(stream), stream);
+		return this.getIntervals(this.pHcol(stream, false), stream);
 	}
 	
 	/**
 	 * This function implements the pHcol algorithm described in the paper. It computes the decomposition
 	 * R = D * V, where D is the boundary matrix, R is reduced, and is invertible and upper triangular.
-	 * This function returns the pair (R, V). Note that in our implementation, we represent a matrix by
-	 * a hash map which maps a generating object to a formal sum which corresponds to a column in the matrix.
-	 * Note that this is simply a sparse representation of a linear transformation on a vector space with
-	 * free basis consisting of elements of type U.
+	 * 
+	 * <p>The basis elements are first assigned dense integer indices in filtration order, so that the
+	 * matrices can be stored as arrays of sparse columns with int row indices, and the column with a
+	 * given low entry can be looked up in an int array. The basis elements are only needed again
+	 * when the generators of the intervals are produced.</p>
+	 * 
+	 * <p>The columns are reduced in order of decreasing dimension, and in filtration order within
+	 * each dimension. This allows us to use the clearing (or twist) optimization: if the reduced column
+	 * j has low_R(j) = i, then the column i must reduce to zero, so we set R[i] = 0 without performing
+	 * any reduction. In this case, V[i] is set to R[j], which is a cycle, so that R = D * V still holds.
+	 * Since each reduction only involves columns of the same dimension, the resulting pairs are the same
+	 * as for the standard column order.</p>
+	 * 
+	 * <p>If more than one thread is used, the columns of each dimension are first reduced within
+	 * chunks in parallel, as in the chunk reduction of Bauer, Kerber and Reininghaus, and the partially
+	 * reduced columns are then finished in the loop below.</p>
 	 * 
 	 * @param stream the filtered chain complex which provides elements in increasing filtration order
-	 * @return a ObjectObjectPair containing the matrices R and V
+	 * @param computeV if this is false, the matrix V is not computed - this is sufficient
+	 * for computing the barcodes without generators
+	 * @return a Decomposition containing the matrices R and V
 	 */
-	private ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, THashMap<U, BooleanSparseFormalSum<U>>> pHcol(AbstractFilteredStream<U> stream) {
-
-		THashMap<U, BooleanSparseFormalSum<U>> R = new THashMap<U, BooleanSparseFormalSum<U>>();
-		THashMap<U, BooleanSparseFormalSum<U>> V = new THashMap<U, BooleanSparseFormalSum<U>>();
-
-		/**
-		 * This maps a simplex to the set of columns containing the key as its low value.
+	private Decomposition pHcol(AbstractFilteredStream<U> stream, boolean computeV) {
+		/*
+		 * The basis elements of dimension minDimension - 1 are rows of the boundary matrix, but
+		 * they are not reduced as columns. The stream provides the elements in non-decreasing
+		 * order of filtration index with every boundary before its element, which is a valid
+		 * column order, so the basis does not need to be sorted.
 		 */
-		THashMap<U, THashSet<U>> lowMap = new THashMap<U, THashSet<U>>();
-
+		List<U> basis = new ArrayList<U>();
 		for (U i : stream) {
-			/*
-			 * Do not process simplices of higher dimension than maxDimension.
-			 */
-			if (stream.getDimension(i) < this.minDimension) {
+			if (stream.getDimension(i) < this.minDimension - 1) {
 				continue;
 			}
 			
 			if (stream.getDimension(i) > this.maxDimension + 1) {
 				continue;
 			}
-
-			// initialize V to be the identity matrix
-						V.put(i, this.chainModule.createNewSum(i));
 			
-			// form the column R[i] which equals the boundary of the current simplex.
-			// store the column as a column in R
-			R.put(i, chainModule.createNewSum(stream.getBoundaryCoefficients(i), stream.getBoundary(i)));
+			basis.add(i);
+		}
 
-			// compute low_R(i)
-			U low_R_i = this.low(R.get(i));
+		Decomposition decomposition = new Decomposition(basis, stream, computeV);
+		int n = basis.size();
 
-			// if the boundary of i is empty, then continue to next iteration since there
-			// is nothing to process
-			if (low_R_i == null) {
-				continue;
+		/**
+		 * pivotOf[i] is the column j with low_R(j) = i, or -1 if there is no such column.
+		 */
+		int[] pivotOf = new int[n];
+		Arrays.fill(pivotOf, -1);
+
+		boolean[] cleared = new boolean[n];
+
+		WorkingColumn R_j = this.createWorkingColumn();
+		WorkingColumn V_j = this.createWorkingColumn();
+
+		for (int dimension = this.maxDimension + 1; dimension >= this.minDimension; dimension--) {
+			int[] columns = this.getColumns(decomposition, cleared, dimension);
+			boolean isChunkReduced = (this.numThreads > 1 && columns.length >= 2 * MIN_CHUNK_SIZE);
+			if (isChunkReduced) {
+				this.reduceChunks(decomposition, columns, stream, computeV);
+			}
+
+			for (int j : columns) {
+				if (isChunkReduced) {
+					// continue with the partially reduced columns
+					this.setColumn(R_j, decomposition.R[j]);
+					if (computeV) {
+						this.setColumn(V_j, decomposition.V[j]);
+					}
+				} else {
+					// form the column R[j] which equals the boundary of the current element
+					this.setBoundary(R_j, basis.get(j), stream, decomposition.indices);
+
+					// initialize V to be the identity matrix
+					if (computeV) {
+						this.setIdentityColumn(V_j, j);
+					}
+				}
+
+				while (!R_j.isEmpty() && pivotOf[R_j.getLow()] >= 0) {
+					int k = pivotOf[R_j.getLow()];
+										R_j.accumulate(decomposition.R[k]);
+					if (computeV) {
+						V_j.accumulate(decomposition.V[k]);
+					}
+									}
+
+				if (computeV) {
+					decomposition.V[j] = V_j.copy();
+				}
+
+				decomposition.R[j] = null;
+				if (!R_j.isEmpty()) {
+					int low = R_j.getLow();
+					pivotOf[low] = j;
+					decomposition.lows[j] = low;
+					decomposition.R[j] = R_j.copy();
+
+					// clear the column of low_R(j)
+					if (decomposition.dimensions[low] >= this.minDimension) {
+						cleared[low] = true;
+						if (computeV) {
+							decomposition.V[low] = decomposition.R[j];
+						}
+					}
+				}
+			}
+		}
+
+		// at this point we have computed the decomposition R = D * V
+		return decomposition;
+	}
+
+	/**
+	 * This is the smallest number of columns in a chunk of the parallel reduction.
+	 */
+	private static final int MIN_CHUNK_SIZE = 256;
+
+	/**
+	 * @return the indices of the columns of the given dimension which have not been cleared
+	 */
+	private int[] getColumns(Decomposition decomposition, boolean[] cleared, int dimension) {
+		int n = decomposition.dimensions.length;
+		int count = 0;
+		for (int j = 0; j < n; j++) {
+			if (decomposition.dimensions[j] == dimension && !cleared[j]) {
+				count++;
+			}
+		}
+		int[] columns = new int[count];
+		count = 0;
+		for (int j = 0; j < n; j++) {
+			if (decomposition.dimensions[j] == dimension && !cleared[j]) {
+				columns[count++] = j;
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * This function partially reduces the given columns in parallel. The columns are partitioned
+	 * into contiguous chunks, and each column is reduced by the preceding columns in its own chunk.
+	 * On return, R[j] (and V[j] if it is computed) contain the partially reduced column for every j
+	 * in columns. The boundaries are read from the stream before the parallel phase, since the
+	 * streams are not required to be thread-safe.
+	 * 
+	 * @param decomposition the decomposition to store the columns in
+	 * @param columns the indices of the columns to reduce, in increasing order
+	 * @param stream the filtered chain complex
+	 * @param computeV true if the matrix V is computed
+	 */
+	private void reduceChunks(final Decomposition decomposition, final int[] columns, AbstractFilteredStream<U> stream, final boolean computeV) {
+		IndexedColumn boundary = new IndexedColumn(16);
+		for (int j : columns) {
+			this.setBoundary(boundary, decomposition.basis.get(j), stream, decomposition.indices);
+			decomposition.R[j] = boundary.copy();
+		}
+
+		int numChunks = Math.min(this.numThreads, columns.length / MIN_CHUNK_SIZE);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			final int start = (int) ((long) columns.length * chunk / numChunks);
+			final int end = (int) ((long) columns.length * (chunk + 1) / numChunks);
+			tasks.add(new Runnable() {
+				public void run() {
+					reduceChunk(decomposition, columns, start, end, computeV);
+				}
+			});
+		}
+		ParallelUtility.runTasks(tasks, numChunks);
+	}
+
+	/**
+	 * This function reduces the columns columns[start], ..., columns[end - 1] using only the
+	 * columns in this range. It only reads and writes the entries of R and V for these columns,
+	 * so that different chunks can be reduced concurrently.
+	 * 
+	 * <p>A column is only reduced while its low entry is at least columns[start]. No column
+	 * preceding the chunk can have such a low entry, so the low entries of the columns which
+	 * stop there are final. The remaining columns are left for the sequential reduction.</p>
+	 */
+	private void reduceChunk(Decomposition decomposition, int[] columns, int start, int end, boolean computeV) {
+		int first = columns[start];
+		TIntIntHashMap localPivotOf = new TIntIntHashMap();
+		WorkingColumn R_j = this.createWorkingColumn();
+		WorkingColumn V_j = this.createWorkingColumn();
+
+		for (int l = start; l < end; l++) {
+			int j = columns[l];
+			this.setColumn(R_j, decomposition.R[j]);
+			if (computeV) {
+				this.setIdentityColumn(V_j, j);
+			}
+
+			while (!R_j.isEmpty() && R_j.getLow() >= first && localPivotOf.containsKey(R_j.getLow())) {
+				int k = localPivotOf.get(R_j.getLow());
+								R_j.accumulate(decomposition.R[k]);
+				if (computeV) {
+					V_j.accumulate(decomposition.V[k]);
+				}
+							}
+
+			decomposition.R[j] = R_j.copy();
+			if (computeV) {
+				decomposition.V[j] = V_j.copy();
+			}
+			if (!R_j.isEmpty() && R_j.getLow() >= first) {
+				localPivotOf.put(R_j.getLow(), j);
+			}
+		}
+	}
+
+	/**
+	 * This function sets the working column to be a copy of the given column.
+	 */
+	private void setColumn(WorkingColumn column, IndexedColumn value) {
+		column.clear();
+				column.accumulate(value);
+			}
+
+	/**
+	 * This function sets the working column to be the j-th column of the identity matrix.
+	 */
+	private void setIdentityColumn(WorkingColumn column, int j) {
+		column.clear();
+				column.append(j);
+			}
+
+	/**
+	 * @return a new column in the representation selected by setUseHeapColumns
+	 */
+	private WorkingColumn createWorkingColumn() {
+		if (this.useHeapColumns) {
+			return new HeapColumn(16);
+		}
+		return new IndexedColumn(16);
+	}
+
+	/**
+	 * This function sets the supplied column to be the boundary of the given basis element.
+	 * 
+	 * @param column the column to overwrite
+	 * @param element the basis element
+	 * @param stream the filtered chain complex containing the element
+	 * @param indices the map from basis elements to their indices
+	 */
+	private void setBoundary(WorkingColumn column, U element, AbstractFilteredStream<U> stream, TObjectIntHashMap<U> indices) {
+		U[] boundary = stream.getBoundary(element);
+		int[] coefficients = stream.getBoundaryCoefficients(element).clone();
+		int[] rows = new int[boundary.length];
+		for (int k = 0; k < boundary.length; k++) {
+			rows[k] = indices.get(boundary[k]);
+		}
+
+		// sort the rows along with the coefficients - boundaries are short, so use insertion sort
+		for (int k = 1; k < rows.length; k++) {
+			int row = rows[k];
+			int coefficient = coefficients[k];
+			int l = k - 1;
+			for (; l >= 0 && rows[l] > row; l--) {
+				rows[l + 1] = rows[l];
+				coefficients[l + 1] = coefficients[l];
+			}
+			rows[l + 1] = row;
+			coefficients[l + 1] = coefficient;
+		}
+
+		column.clear();
+		for (int k = 0; k < rows.length; k++) {
+			int coefficient = coefficients[k];
+			while (k + 1 < rows.length && rows[k + 1] == rows[k]) {
+				k++;
+				coefficient += coefficients[k];
+			}
+						if (coefficient % 2 != 0) {
+				column.append(rows[k]);
+			}
+					}
+	}
+
+	/**
+	 * This class holds the result of the decomposition R = D * V. The basis elements are
+	 * identified with their indices in filtration order, and the matrices R and V are stored
+	 * as arrays of sparse columns.
+	 */
+	protected class Decomposition {
+		/**
+		 * The basis elements in filtration order.
+		 */
+		protected final List<U> basis;
+
+		/**
+		 * This maps each basis element to its index.
+		 */
+		protected final TObjectIntHashMap<U> indices = new TObjectIntHashMap<U>();
+
+		/**
+		 * The dimensions and filtration indices of the basis elements.
+		 */
+		protected final int[] dimensions;
+		protected final int[] filtrationIndices;
+
+		/**
+		 * lows[j] is the index of the low entry of the column R[j], or -1 if the column is zero.
+		 */
+		protected final int[] lows;
+
+		/**
+		 * The columns of R, where zero columns are null.
+		 */
+		protected final IndexedColumn[] R;
+
+		/**
+		 * The columns of V, or null if V was not computed.
+		 */
+		protected final IndexedColumn[] V;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Decomposition(List<U> basis, AbstractFilteredStream<U> stream, boolean computeV) {
+			int n = basis.size();
+			this.basis = basis;
+			this.dimensions = new int[n];
+			this.filtrationIndices = new int[n];
+			this.lows = new int[n];
+			this.R = new BooleanPersistentHomology.IndexedColumn[n];
+			this.V = (computeV ? new BooleanPersistentHomology.IndexedColumn[n] : null);
+			Arrays.fill(this.lows, -1);
+			for (int i = 0; i < n; i++) {
+				U element = basis.get(i);
+				this.indices.put(element, i);
+				this.dimensions[i] = stream.getDimension(element);
+				this.filtrationIndices[i] = stream.getFiltrationIndex(element);
 			}
+		}
+
+		/**
+		 * This function converts the given column into a formal sum of basis elements.
+		 * 
+		 * @param column the column to convert
+		 * @return the column as a formal sum
+		 */
+		protected BooleanSparseFormalSum<U> toSum(IndexedColumn column) {
+			BooleanSparseFormalSum<U> sum = chainModule.createNewSum();
+			if (column == null) {
+				return sum;
+			}
+			for (int k = 0; k < column.size(); k++) {
+								sum.put(true, this.basis.get(column.getRow(k)));
+							}
+			return sum;
+		}
+	}
+
+	/**
+	 * This class defines the operations on the column that is currently being reduced. The
+	 * rows of the column are identified with the indices of the basis elements.
+	 */
+	protected abstract class WorkingColumn {
+		/**
+		 * @return true if the column is zero
+		 */
+		public abstract boolean isEmpty();
+
+		/**
+		 * @return the row index of the low entry, or -1 if the column is zero
+		 */
+		public abstract int getLow();
 
-			THashSet<U> matchingLowSimplices = lowMap.get(low_R_i);
-			while (matchingLowSimplices != null && !matchingLowSimplices.isEmpty()) {
-				Iterator<U> iterator = matchingLowSimplices.iterator();
 				/**
-				 * TODO: Is this the right thing to do???
-				 * Ie. should the iterator.next go at the end of the loop?
-				 */
-				U j = iterator.next();
+		 * This function sets the column to zero.
+		 */
+		abstract void clear();
+
+		/**
+		 * This function adds an entry to the column. The row must be larger than all
+		 * rows in the column.
+		 */
+				abstract void append(int row);
+		
+		/**
+		 * This function performs the operation this = this + c * other.
+		 */
+				abstract void accumulate(IndexedColumn other);
+		
+		/**
+		 * @return a copy of this column in compact form
+		 */
+		abstract IndexedColumn copy();
+	}
+
+	/**
+	 * This class stores a sparse column of a matrix whose rows are identified with the
+	 * indices of the basis elements. The row indices are kept in increasing order, so that
+	 * the low entry of the column is the last one.
+	 */
+	protected class IndexedColumn extends WorkingColumn {
+		private int[] rows;
+				private int size = 0;
+
+		/**
+		 * These arrays are used as the target of the merge in the accumulate function.
+		 */
+		private int[] rowBuffer = null;
+		
+		IndexedColumn(int capacity) {
+			this.rows = new int[Math.max(capacity, 1)];
+					}
+
+		/**
+		 * @return the number of non-zero entries in the column
+		 */
+		public int size() {
+			return this.size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return (this.size == 0);
+		}
+
+		/**
+		 * @param k the position of the entry
+		 * @return the row index of the k-th non-zero entry
+		 */
+		public int getRow(int k) {
+			return this.rows[k];
+		}
+
+		
+		@Override
+		public int getLow() {
+			return (this.size == 0 ? -1 : this.rows[this.size - 1]);
+		}
+
+		@Override
+		void clear() {
+			this.size = 0;
+		}
+
+				@Override
+		void append(int row) {
+			if (this.size == this.rows.length) {
+				this.rows = Arrays.copyOf(this.rows, 2 * this.size);
+			}
+			this.rows[this.size++] = row;
+		}
+		
+		/**
+		 * This function performs the operation this = this + c * other, by merging the
+		 * two sorted columns.
+		 */
+				@Override
+		void accumulate(IndexedColumn other) {
+					int capacity = this.size + other.size;
+			if (this.rowBuffer == null || this.rowBuffer.length < capacity) {
+				this.rowBuffer = new int[Math.max(capacity, 2 * this.rows.length)];
+							}
+			int a = 0;
+			int b = 0;
+			int k = 0;
+			while (a < this.size || b < other.size) {
+				if (b == other.size || (a < this.size && this.rows[a] < other.rows[b])) {
+					this.rowBuffer[k] = this.rows[a];
+										a++;
+					k++;
+				} else if (a == this.size || other.rows[b] < this.rows[a]) {
+					this.rowBuffer[k] = other.rows[b];
+										b++;
+					k++;
+				} else {
+										// the coefficients cancel
+										a++;
+					b++;
+				}
+			}
+			int[] rowTemp = this.rows;
+			this.rows = this.rowBuffer;
+			this.rowBuffer = rowTemp;
+						this.size = k;
+		}
 
-								assert (R.get(j).getCoefficient(low_R_i) == true);
-				boolean negative_c = R.get(i).getCoefficient(low_R_i);
-								//R.put(i, chainModule.subtract(R.get(i), chainModule.multiply(c, R.get(j))));
-				//V.put(i, chainModule.subtract(V.get(i), chainModule.multiply(c, V.get(j))));
-				this.chainModule.accumulate(R.get(i), R.get(j), negative_c);
-				this.chainModule.accumulate(V.get(i), V.get(j), negative_c);
+		/**
+		 * @return a copy of this column without any excess capacity
+		 */
+		@Override
+		IndexedColumn copy() {
+			IndexedColumn copy = new IndexedColumn(this.size);
+			System.arraycopy(this.rows, 0, copy.rows, 0, this.size);
+						copy.size = this.size;
+			return copy;
+		}
+	}
+	
+	/**
+	 * This class stores the column that is currently being reduced as a binary max-heap of
+	 * (row, coefficient) entries, in the style of PHAT and Ripser. Adding a column pushes its
+	 * entries onto the heap, and entries with equal rows are only combined once they reach the
+	 * top of the heap, or when the heap is compacted.
+	 */
+	protected class HeapColumn extends WorkingColumn {
+		private int[] rows;
+				private int size = 0;
 
-				// remove old low_R(i) entry
-				//lowMap.get(low_R_i).remove(i);
+		/**
+		 * This is true if the top entry of the heap is known to be the only one with its row,
+		 * and to have a non-zero coefficient.
+		 */
+		private boolean isTopReduced = true;
+
+		/**
+		 * The heap is compacted when its size exceeds this value.
+		 */
+		private int compactionThreshold = 64;
 
-				// recompute low_R(i)
-				low_R_i = this.low(R.get(i));
+		/**
+		 * These arrays are used as the target of the compaction.
+		 */
+		private int[] rowBuffer = null;
+		
+		HeapColumn(int capacity) {
+			this.rows = new int[Math.max(capacity, 1)];
+					}
 
-				matchingLowSimplices = lowMap.get(low_R_i);
+		@Override
+		public boolean isEmpty() {
+			return (this.getLow() < 0);
+		}
+
+		@Override
+		public int getLow() {
+			this.reduceTop();
+			return (this.size == 0 ? -1 : this.rows[0]);
+		}
+
+				@Override
+		void clear() {
+			this.size = 0;
+			this.isTopReduced = true;
+			this.compactionThreshold = 64;
+		}
+
+				@Override
+		void append(int row) {
+			this.push(row);
+			this.isTopReduced = false;
+		}
+		
+				@Override
+		void accumulate(IndexedColumn other) {
+			for (int k = 0; k < other.size(); k++) {
+				this.push(other.getRow(k));
+			}
+					this.isTopReduced = false;
+			if (this.size > this.compactionThreshold) {
+				this.compact();
 			}
+		}
+
+		@Override
+		IndexedColumn copy() {
+			this.compact();
+			IndexedColumn copy = new IndexedColumn(this.size);
+			// the compacted heap is sorted in decreasing order
+			for (int k = this.size - 1; k >= 0; k--) {
+								copy.append(this.rows[k]);
+							}
+			return copy;
+		}
 
-			// store the low value in the map
-			if (low_R_i != null) {
-				if (!lowMap.containsKey(low_R_i)) {
-					lowMap.put(low_R_i, new THashSet<U>());
+				/**
+		 * This function removes the entries at the top of the heap which cancel out, and combines
+		 * the remaining top entries into a single one.
+		 */
+		private void reduceTop() {
+			while (!this.isTopReduced && this.size > 0) {
+				int row = this.rows[0];
+								boolean coefficient = false;
+				while (this.size > 0 && this.rows[0] == row) {
+					coefficient = !coefficient;
+					this.pop();
+				}
+				if (coefficient) {
+					this.push(row);
+					this.isTopReduced = true;
 				}
-				lowMap.get(low_R_i).add(i);
+							}
+			if (this.size == 0) {
+				this.isTopReduced = true;
 			}
 		}
 
-		// at this point we have computed the decomposition R = D * V
-		// we return the pair (R, V)
+		/**
+		 * This function pops all of the entries off of the heap, combining the ones with equal rows.
+		 * The result is sorted in decreasing order, which is a valid heap.
+		 */
+		private void compact() {
+			if (this.rowBuffer == null || this.rowBuffer.length < this.size) {
+				this.rowBuffer = new int[Math.max(this.size, 1)];
+							}
+			int k = 0;
+			while (this.size > 0) {
+				int row = this.rows[0];
+								boolean coefficient = false;
+				while (this.size > 0 && this.rows[0] == row) {
+					coefficient = !coefficient;
+					this.pop();
+				}
+				if (coefficient) {
+					this.rowBuffer[k++] = row;
+				}
+							}
+			int[] rowTemp = this.rows;
+			this.rows = this.rowBuffer;
+			this.rowBuffer = rowTemp;
+						this.size = k;
+			this.isTopReduced = true;
+			this.compactionThreshold = Math.max(64, 2 * k);
+		}
+
+				private void push(int row) {
+			if (this.size == this.rows.length) {
+				this.rows = Arrays.copyOf(this.rows, 2 * this.size);
+			}
+					int k = this.size++;
+			while (k > 0) {
+				int parent = (k - 1) >>> 1;
+				if (this.rows[parent] >= row) {
+					break;
+				}
+				this.rows[k] = this.rows[parent];
+								k = parent;
+			}
+			this.rows[k] = row;
+					}
 
-		return new ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, THashMap<U, BooleanSparseFormalSum<U>>>(R, V);
+		private void pop() {
+			this.size--;
+			if (this.size == 0) {
+				return;
+			}
+			int row = this.rows[this.size];
+						int k = 0;
+			while (true) {
+				int child = 2 * k + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && this.rows[child + 1] > this.rows[child]) {
+					child++;
+				}
+				if (this.rows[child] <= row) {
+					break;
+				}
+				this.rows[k] = this.rows[child];
+								k = child;
+			}
+			this.rows[k] = row;
+					}
 	}
 	
-	protected abstract AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> getAnnotatedIntervals(ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair, 
-			AbstractFilteredStream<U> stream);
+	protected abstract AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> getAnnotatedIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream);
 
-	protected abstract BarcodeCollection<Integer> getIntervals(ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair, 
-			AbstractFilteredStream<U> stream);
+	protected abstract BarcodeCollection<Integer> getIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream);
 
 	protected AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> getAnnotatedIntervals(
-			ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair, 
+			Decomposition decomposition, 
 			AbstractFilteredStream<U> stream, 
 			boolean absolute) {
 			
 		AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>> barcodeCollection = new AnnotatedBarcodeCollection<Integer, BooleanSparseFormalSum<U>>();
 
-		THashMap<U, BooleanSparseFormalSum<U>> R = RV_pair.getFirst();
-		THashMap<U, BooleanSparseFormalSum<U>> V = RV_pair.getSecond();
+		int n = decomposition.basis.size();
+		boolean[] births = new boolean[n];
 
-		Set<U> births = new THashSet<U>();
-
-		for (U i: stream) {
-			if (!R.containsKey(i)) {
+		for (int i = 0; i < n; i++) {
+			int dimension = decomposition.dimensions[i];
+			if (dimension < this.minDimension) {
 				continue;
 			}
-			U low_R_i = this.low(R.get(i));
-			int dimension = stream.getDimension(i);
-			if (low_R_i == null) {
+			int low_R_i = decomposition.lows[i];
+			if (low_R_i < 0) {
 				if (dimension <= this.maxDimension && dimension >= this.minDimension) {
-					births.add(i);
+					births[i] = true;
 				}
 			} else {
 				// simplex i kills low_R_i
-				births.remove(low_R_i);
-				births.remove(i);
-				int start = stream.getFiltrationIndex(low_R_i);
-				int end = stream.getFiltrationIndex(i);
+				births[low_R_i] = false;
+				births[i] = false;
+				int start = decomposition.filtrationIndices[low_R_i];
+				int end = decomposition.filtrationIndices[i];
 				if (end > start) {
 					if (absolute) {
-						dimension = stream.getDimension(low_R_i);
+						dimension = decomposition.dimensions[low_R_i];
 						if (dimension < this.maxDimension && dimension >= this.minDimension)
-							barcodeCollection.addInterval(stream.getDimension(low_R_i), start, end, R.get(i));
+							barcodeCollection.addInterval(dimension, start, end, decomposition.toSum(decomposition.R[i]));
 					} else {
-						dimension = stream.getDimension(i);
 						if (dimension < this.maxDimension && dimension >= this.minDimension)
-							barcodeCollection.addInterval(dimension, start, end, V.get(i));
+							barcodeCollection.addInterval(dimension, start, end, decomposition.toSum(decomposition.V[i]));
 					}
 				}
 			}
@@ -193,13 +816,16 @@ public abstract class BooleanPersistentHomology<U> extends BooleanPersistenceAlg
 
 		// the elements in birth are the ones that are never killed
 		// these correspond to semi-infinite intervals
-		for (U i: births) {
-			int dimension = stream.getDimension(i);
+		for (int i = 0; i < n; i++) {
+			if (!births[i]) {
+				continue;
+			}
+			int dimension = decomposition.dimensions[i];
 			if (dimension < this.maxDimension && dimension >= this.minDimension) {
 				if (absolute) {
-					barcodeCollection.addRightInfiniteInterval(stream.getDimension(i), stream.getFiltrationIndex(i), V.get(i));
+					barcodeCollection.addRightInfiniteInterval(dimension, decomposition.filtrationIndices[i], decomposition.toSum(decomposition.V[i]));
 				} else {
-					barcodeCollection.addLeftInfiniteInterval(stream.getDimension(i), stream.getFiltrationIndex(i), V.get(i));
+					barcodeCollection.addLeftInfiniteInterval(dimension, decomposition.filtrationIndices[i], decomposition.toSum(decomposition.V[i]));
 				}
 			}
 		}
@@ -208,40 +834,37 @@ public abstract class BooleanPersistentHomology<U> extends BooleanPersistenceAlg
 	}
 
 	protected BarcodeCollection<Integer> getIntervals(
-			ObjectObjectPair<THashMap<U, BooleanSparseFormalSum<U>>, 
-			THashMap<U, BooleanSparseFormalSum<U>>> RV_pair, 
+			Decomposition decomposition, 
 			AbstractFilteredStream<U> stream, 
 			boolean absolute) {
 			
 		BarcodeCollection<Integer> barcodeCollection = new BarcodeCollection<Integer>();
 
-		THashMap<U, BooleanSparseFormalSum<U>> R = RV_pair.getFirst();
-
-		Set<U> births = new THashSet<U>();
+		int n = decomposition.basis.size();
+		boolean[] births = new boolean[n];
 
-		for (U i: stream) {
-			if (!R.containsKey(i)) {
+		for (int i = 0; i < n; i++) {
+			int dimension = decomposition.dimensions[i];
+			if (dimension < this.minDimension) {
 				continue;
 			}
-			U low_R_i = this.low(R.get(i));
-			int dimension = stream.getDimension(i);
-			if (low_R_i == null) {
+			int low_R_i = decomposition.lows[i];
+			if (low_R_i < 0) {
 				if (dimension <= this.maxDimension && dimension >= this.minDimension) {
-					births.add(i);
+					births[i] = true;
 				}
 			} else {
 				// simplex i kills low_R_i
-				births.remove(low_R_i);
-				births.remove(i);
-				int start = stream.getFiltrationIndex(low_R_i);
-				int end = stream.getFiltrationIndex(i);
+				births[low_R_i] = false;
+				births[i] = false;
+				int start = decomposition.filtrationIndices[low_R_i];
+				int end = decomposition.filtrationIndices[i];
 				if (end > start) {
 					if (absolute) {
-						dimension = stream.getDimension(low_R_i);
+						dimension = decomposition.dimensions[low_R_i];
 						if (dimension < this.maxDimension && dimension >= this.minDimension)
-							barcodeCollection.addInterval(stream.getDimension(low_R_i), start, end);
+							barcodeCollection.addInterval(dimension, start, end);
 					} else {
-						dimension = stream.getDimension(i);
 						if (dimension < this.maxDimension && dimension >= this.minDimension)
 							barcodeCollection.addInterval(dimension, start, end);
 					}
@@ -251,13 +874,16 @@ public abstract class BooleanPersistentHomology<U> extends BooleanPersistenceAlg
 
 		// the elements in birth are the ones that are never killed
 		// these correspond to semi-infinite intervals
-		for (U i: births) {
-			int dimension = stream.getDimension(i);
+		for (int i = 0; i < n; i++) {
+			if (!births[i]) {
+				continue;
+			}
+			int dimension = decomposition.dimensions[i];
 			if (dimension < this.maxDimension && dimension >= this.minDimension) {
 				if (absolute) {
-					barcodeCollection.addRightInfiniteInterval(stream.getDimension(i), stream.getFiltrationIndex(i));
+					barcodeCollection.addRightInfiniteInterval(dimension, decomposition.filtrationIndices[i]);
 				} else {
-					barcodeCollection.addLeftInfiniteInterval(stream.getDimension(i), stream.getFiltrationIndex(i));
+					barcodeCollection.addLeftInfiniteInterval(dimension, decomposition.filtrationIndices[i]);
 				}
 			}
 		}
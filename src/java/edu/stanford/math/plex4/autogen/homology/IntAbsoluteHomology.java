@@ -7,8 +7,6 @@ import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
 import edu.stanford.math.primitivelib.autogen.algebraic.IntAbstractField;
 import edu.stanford.math.primitivelib.autogen.formal_sum.IntSparseFormalSum;
-import edu.stanford.math.primitivelib.autogen.pair.ObjectObjectPair;
-import gnu.trove.THashMap;
 
 
 
@@ -28,19 +26,12 @@ public class IntAbsoluteHomology<U> extends IntPersistentHomology<U> {
 	}
 		
 	@Override
-	protected AnnotatedBarcodeCollection<Integer, IntSparseFormalSum<U>> getAnnotatedIntervals(
-			ObjectObjectPair<THashMap<U, IntSparseFormalSum<U>>, 
-			THashMap<U, IntSparseFormalSum<U>>> RV_pair, 
-			AbstractFilteredStream<U> stream) {
-			
-		return this.getAnnotatedIntervals(RV_pair, stream, true);
+	protected AnnotatedBarcodeCollection<Integer, IntSparseFormalSum<U>> getAnnotatedIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream) {
+		return this.getAnnotatedIntervals(decomposition, stream, true);
 	}
 
 	@Override
-	protected BarcodeCollection<Integer> getIntervals(ObjectObjectPair<THashMap<U, IntSparseFormalSum<U>>, 
-			THashMap<U, IntSparseFormalSum<U>>> RV_pair,
-			AbstractFilteredStream<U> stream) {
-			
-		return this.getIntervals(RV_pair, stream, true);
+	protected BarcodeCollection<Integer> getIntervals(Decomposition decomposition, AbstractFilteredStream<U> stream) {
+		return this.getIntervals(decomposition, stream, true);
 	}
 }
@@ -0,0 +1,381 @@
+package edu.stanford.math.plex4.graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.primitivelib.autogen.pair.IntIntPair;
+import gnu.trove.TIntHashSet;
+
+/**
+ * <p>This class implements an immutable weighted undirected graph which is stored
+ * in compressed sparse row form. The neighbors of the vertex v are stored in increasing
+ * order at the positions getStart(v), ..., getEnd(v) - 1 of a single int array, and
+ * the weights of the corresponding edges are stored in a parallel double array. Since
+ * the neighbors are sorted, the lower neighbors of v are stored at the positions
+ * getStart(v), ..., getLowerEnd(v) - 1.</p>
+ *
+ * <p>Compared to UndirectedWeightedListGraph, this uses 12 bytes per (directed) edge,
+ * and the neighbors of a vertex are contiguous in memory. Graphs are created with a
+ * Builder. Since the graph is immutable, the functions addEdge and removeEdge throw an
+ * UnsupportedOperationException, and the graph can be shared between threads.</p>
+ *
+ */
+public class CompressedWeightedGraph implements AbstractWeightedUndirectedGraph {
+	private static final long serialVersionUID = -2287358736425573513L;
+
+	private final int numVertices;
+	private final int[] offsets;
+	private final int[] lowerEnds;
+	private final int[] neighbors;
+	private final double[] weights;
+	private final int maxLowerDegree;
+
+	private CompressedWeightedGraph(int numVertices, int[] offsets, int[] neighbors, double[] weights) {
+		this.numVertices = numVertices;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		this.weights = weights;
+		this.lowerEnds = new int[numVertices];
+
+		int maxLowerDegree = 0;
+		for (int v = 0; v < numVertices; v++) {
+			int k = offsets[v];
+			while (k < offsets[v + 1] && neighbors[k] < v) {
+				k++;
+			}
+			this.lowerEnds[v] = k;
+			maxLowerDegree = Math.max(maxLowerDegree, k - offsets[v]);
+		}
+		this.maxLowerDegree = maxLowerDegree;
+	}
+
+	/**
+	 * This function creates a compressed copy of the given graph.
+	 *
+	 * @param graph the graph to copy
+	 * @return a CompressedWeightedGraph with the same edges and weights
+	 */
+	public static CompressedWeightedGraph copyOf(AbstractWeightedUndirectedGraph graph) {
+		if (graph instanceof CompressedWeightedGraph) {
+			return (CompressedWeightedGraph) graph;
+		}
+		int n = graph.getNumVertices();
+		Builder builder = new Builder(n);
+		for (int v = 0; v < n; v++) {
+			TIntHashSet lowerNeighbors = graph.getLowerNeighbors(v);
+			for (int u : lowerNeighbors.toArray()) {
+				builder.addEdge(u, v, graph.getWeight(u, v));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * This class collects the edges of a graph and then creates the compressed
+	 * representation. If an edge is added more than once, the last weight is used.
+	 */
+	public static class Builder {
+		private final int numVertices;
+		private int[] lowerVertices = new int[16];
+		private int[] upperVertices = new int[16];
+		private double[] edgeWeights = new double[16];
+		private int size = 0;
+
+		/**
+		 * This constructor initializes the builder with a graph with no edges.
+		 *
+		 * @param numVertices the number of vertices of the graph
+		 */
+		public Builder(int numVertices) {
+			this.numVertices = numVertices;
+		}
+
+		/**
+		 * This function adds the edge (i, j) with the given weight.
+		 *
+		 * @param i the first vertex of the edge
+		 * @param j the second vertex of the edge
+		 * @param weight the weight of the edge
+		 * @return this builder
+		 */
+		public Builder addEdge(int i, int j, double weight) {
+			ExceptionUtility.verifyIndex(this.numVertices, i);
+			ExceptionUtility.verifyIndex(this.numVertices, j);
+			if (i == j) {
+				throw new IllegalArgumentException("Loops are not allowed: " + i);
+			}
+			if (this.size == this.edgeWeights.length) {
+				this.lowerVertices = Arrays.copyOf(this.lowerVertices, 2 * this.size);
+				this.upperVertices = Arrays.copyOf(this.upperVertices, 2 * this.size);
+				this.edgeWeights = Arrays.copyOf(this.edgeWeights, 2 * this.size);
+			}
+			this.lowerVertices[this.size] = Math.min(i, j);
+			this.upperVertices[this.size] = Math.max(i, j);
+			this.edgeWeights[this.size] = weight;
+			this.size++;
+			return this;
+		}
+
+		/**
+		 * This function creates the graph. The degrees are counted first, so that the edges
+		 * are written directly into the rows of the compressed arrays, in the order in which
+		 * they were added. Each row is then sorted with a stable merge sort, which keeps the
+		 * last weight of repeated edges last. The builder is reset afterwards, so that its
+		 * arrays can be reclaimed.
+		 *
+		 * @return the graph containing the added edges
+		 */
+		public CompressedWeightedGraph build() {
+			int n = this.numVertices;
+
+			// count the degrees, and compute the start of each row
+			int[] offsets = new int[n + 1];
+			for (int e = 0; e < this.size; e++) {
+				offsets[this.lowerVertices[e] + 1]++;
+				offsets[this.upperVertices[e] + 1]++;
+			}
+			int maxDegree = 0;
+			for (int v = 0; v < n; v++) {
+				maxDegree = Math.max(maxDegree, offsets[v + 1]);
+				offsets[v + 1] += offsets[v];
+			}
+
+			// fill in the rows
+			int m = offsets[n];
+			int[] neighbors = new int[m];
+			double[] weights = new double[m];
+			int[] positions = Arrays.copyOf(offsets, n);
+			for (int e = 0; e < this.size; e++) {
+				int u = this.lowerVertices[e];
+				int v = this.upperVertices[e];
+				neighbors[positions[u]] = v;
+				weights[positions[u]++] = this.edgeWeights[e];
+				neighbors[positions[v]] = u;
+				weights[positions[v]++] = this.edgeWeights[e];
+			}
+			positions = null;
+			this.lowerVertices = new int[16];
+			this.upperVertices = new int[16];
+			this.edgeWeights = new double[16];
+			this.size = 0;
+
+			// sort the rows, and keep the last weight of repeated edges
+			int[] neighborBuffer = new int[maxDegree];
+			double[] weightBuffer = new double[maxDegree];
+			int size = 0;
+			for (int v = 0; v < n; v++) {
+				int start = offsets[v];
+				int end = offsets[v + 1];
+				sortRow(neighbors, weights, start, end, neighborBuffer, weightBuffer);
+				offsets[v] = size;
+				for (int k = start; k < end; k++) {
+					if (k + 1 < end && neighbors[k + 1] == neighbors[k]) {
+						continue;
+					}
+					neighbors[size] = neighbors[k];
+					weights[size] = weights[k];
+					size++;
+				}
+			}
+			offsets[n] = size;
+
+			if (size < m) {
+				neighbors = Arrays.copyOf(neighbors, size);
+				weights = Arrays.copyOf(weights, size);
+			}
+			return new CompressedWeightedGraph(n, offsets, neighbors, weights);
+		}
+
+		/**
+		 * This function stably sorts the positions start, ..., end - 1 of the neighbors, along
+		 * with the weights, with a bottom-up merge sort using the given buffers.
+		 */
+		private static void sortRow(int[] neighbors, double[] weights, int start, int end, int[] neighborBuffer, double[] weightBuffer) {
+			int length = end - start;
+			for (int width = 1; width < length; width *= 2) {
+				for (int low = start; low < end - width; low += 2 * width) {
+					int middle = low + width;
+					int high = Math.min(low + 2 * width, end);
+					if (neighbors[middle - 1] <= neighbors[middle]) {
+						continue;
+					}
+					int count = middle - low;
+					System.arraycopy(neighbors, low, neighborBuffer, 0, count);
+					System.arraycopy(weights, low, weightBuffer, 0, count);
+					int i = 0;
+					int j = middle;
+					int k = low;
+					while (i < count && j < high) {
+						if (neighbors[j] < neighborBuffer[i]) {
+							neighbors[k] = neighbors[j];
+							weights[k++] = weights[j++];
+						} else {
+							neighbors[k] = neighborBuffer[i];
+							weights[k++] = weightBuffer[i++];
+						}
+					}
+					while (i < count) {
+						neighbors[k] = neighborBuffer[i];
+						weights[k++] = weightBuffer[i++];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param v a vertex
+	 * @return the position of the first neighbor of v
+	 */
+	public int getStart(int v) {
+		return this.offsets[v];
+	}
+
+	/**
+	 * @param v a vertex
+	 * @return one past the position of the last lower neighbor of v
+	 */
+	public int getLowerEnd(int v) {
+		return this.lowerEnds[v];
+	}
+
+	/**
+	 * @param v a vertex
+	 * @return one past the position of the last neighbor of v
+	 */
+	public int getEnd(int v) {
+		return this.offsets[v + 1];
+	}
+
+	/**
+	 * @param k a position between getStart(v) and getEnd(v) - 1 for some vertex v
+	 * @return the neighbor of v at the given position
+	 */
+	public int getNeighborAt(int k) {
+		return this.neighbors[k];
+	}
+
+	/**
+	 * @param k a position between getStart(v) and getEnd(v) - 1 for some vertex v
+	 * @return the weight of the edge between v and its neighbor at the given position
+	 */
+	public double getWeightAt(int k) {
+		return this.weights[k];
+	}
+
+	/**
+	 * @return the maximum number of lower neighbors of a vertex
+	 */
+	public int getMaxLowerDegree() {
+		return this.maxLowerDegree;
+	}
+
+	/**
+	 * This function returns the position of j in the neighbors of i, or -1.
+	 */
+	private int findNeighbor(int i, int j) {
+		ExceptionUtility.verifyIndex(this.numVertices, i);
+		ExceptionUtility.verifyIndex(this.numVertices, j);
+		int k = Arrays.binarySearch(this.neighbors, this.offsets[i], this.offsets[i + 1], j);
+		return (k >= 0 ? k : -1);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.graph.AbstractWeightedUndirectedGraph#getWeight(int, int)
+	 */
+	public double getWeight(int i, int j) {
+		int k = this.findNeighbor(i, j);
+		return (k >= 0 ? this.weights[k] : 0);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.graph.AbstractUndirectedGraph#containsEdge(int, int)
+	 */
+	public boolean containsEdge(int i, int j) {
+		return (this.findNeighbor(i, j) >= 0);
+	}
+
+	public int getNumVertices() {
+		return this.numVertices;
+	}
+
+	public int getNumEdges() {
+		return this.neighbors.length / 2;
+	}
+
+	public TIntHashSet getLowerNeighbors(int i) {
+		ExceptionUtility.verifyIndex(this.numVertices, i);
+		return new TIntHashSet(Arrays.copyOfRange(this.neighbors, this.offsets[i], this.lowerEnds[i]));
+	}
+
+	public int getDegree(int v) {
+		return this.offsets[v + 1] - this.offsets[v];
+	}
+
+	public int[] getNeighbors(int v) {
+		return Arrays.copyOfRange(this.neighbors, this.offsets[v], this.offsets[v + 1]);
+	}
+
+	public int[] getDegreeSequence() {
+		int[] sequence = new int[this.numVertices];
+		for (int v = 0; v < this.numVertices; v++) {
+			sequence[v] = this.getDegree(v);
+		}
+		return sequence;
+	}
+
+	public void addEdge(int i, int j, double weight) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void addEdge(int i, int j) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void removeEdge(int i, int j) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * This function returns an iterator over the edges (i, j) with i < j.
+	 */
+	public Iterator<IntIntPair> iterator() {
+		return new Iterator<IntIntPair>() {
+			private int vertex = 0;
+			private int position = 0;
+
+			{
+				this.advance();
+			}
+
+			private void advance() {
+				while (this.vertex < numVertices && this.position >= lowerEnds[this.vertex]) {
+					this.vertex++;
+					if (this.vertex < numVertices) {
+						this.position = offsets[this.vertex];
+					}
+				}
+			}
+
+			public boolean hasNext() {
+				return (this.vertex < numVertices);
+			}
+
+			public IntIntPair next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				IntIntPair edge = new IntIntPair(neighbors[this.position], this.vertex);
+				this.position++;
+				this.advance();
+				return edge;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
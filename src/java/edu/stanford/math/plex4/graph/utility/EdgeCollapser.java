@@ -0,0 +1,261 @@
+package edu.stanford.math.plex4.graph.utility;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.graph.AbstractWeightedUndirectedGraph;
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
+import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+
+/**
+ * <p>This class simplifies the filtered flag complex of a weighted graph by edge collapses, as
+ * described in the papers "Edge Collapse and Persistence of Flag Complexes", by Jean-Daniel
+ * Boissonnat and Siddharth Pritam, and "Swap, Shift and Trim to Edge Collapse a Filtration",
+ * by Marc Glisse and Siddharth Pritam. The edge [u, v] is dominated by the vertex w in a graph
+ * if w is adjacent to u, v and all of their common neighbors. In this case the flag complex of
+ * the graph collapses onto the flag complex of the graph without [u, v].</p>
+ *
+ * <p>The edges are considered at the filtration indices given by the converter, which determine
+ * the filtered complex. They are processed in order of decreasing filtration index. As long as an
+ * edge is dominated at its current filtration index, it is moved to the next filtration index at
+ * which one of the edges at its vertices enters, and it is removed if there is no such index. Since
+ * each of these steps replaces the complex at some filtration indices by a complex onto which it
+ * collapses, the inclusions induce an isomorphism of the persistent homology, so the barcodes of
+ * the flag complexes are identical. If the complexes are truncated to a maximum dimension k, this
+ * holds for the barcodes in dimensions less than k.</p>
+ *
+ * <p>The weights of the moved edges are set to the weights of edges entering at the same index.</p>
+ *
+ */
+public class EdgeCollapser {
+
+	/**
+	 * The filtration index of removed edges.
+	 */
+	private static final int REMOVED = Integer.MAX_VALUE;
+
+	private final CompressedWeightedGraph graph;
+
+	/**
+	 * The edge at each position of the compressed graph.
+	 */
+	private final int[] edgeIds;
+
+	/**
+	 * The endpoints of the edges, with lowerVertices[e] &lt; upperVertices[e], and their current
+	 * filtration indices and weights.
+	 */
+	private final int[] lowerVertices;
+	private final int[] upperVertices;
+	private final int[] filtrationIndices;
+	private final double[] weights;
+
+	/**
+	 * Temporary storage for the common neighbors of the vertices of an edge.
+	 */
+	private final int[] commonNeighbors;
+
+	private final CompressedWeightedGraph collapsedGraph;
+	private int numRemovedEdges = 0;
+	private int numMovedEdges = 0;
+
+	/**
+	 * This constructor collapses the given graph.
+	 *
+	 * @param graph the weighted graph to collapse
+	 * @param converter the converter from weights to filtration indices
+	 */
+	public EdgeCollapser(AbstractWeightedUndirectedGraph graph, FiltrationConverter converter) {
+		ExceptionUtility.verifyNonNull(graph);
+		ExceptionUtility.verifyNonNull(converter);
+		this.graph = CompressedWeightedGraph.copyOf(graph);
+
+		int n = this.graph.getNumVertices();
+		int m = this.graph.getNumEdges();
+		this.edgeIds = new int[2 * m];
+		this.lowerVertices = new int[m];
+		this.upperVertices = new int[m];
+		this.filtrationIndices = new int[m];
+		this.weights = new double[m];
+
+		/*
+		 * Since v is increasing, the upper neighbors of each vertex u are visited in the order in
+		 * which they are stored, so their positions are given by a cursor for each vertex.
+		 */
+		int[] upperPositions = new int[n];
+		int maxDegree = 0;
+		for (int v = 0; v < n; v++) {
+			upperPositions[v] = this.graph.getLowerEnd(v);
+			maxDegree = Math.max(maxDegree, this.graph.getDegree(v));
+		}
+		int e = 0;
+		for (int v = 0; v < n; v++) {
+			for (int p = this.graph.getStart(v); p < this.graph.getLowerEnd(v); p++) {
+				int u = this.graph.getNeighborAt(p);
+				this.edgeIds[p] = e;
+				this.edgeIds[upperPositions[u]++] = e;
+				this.lowerVertices[e] = u;
+				this.upperVertices[e] = v;
+				this.weights[e] = this.graph.getWeightAt(p);
+				this.filtrationIndices[e] = converter.getFiltrationIndex(this.weights[e]);
+				e++;
+			}
+		}
+		this.commonNeighbors = new int[maxDegree];
+
+		// process the edges in order of decreasing filtration index
+		long[] order = new long[m];
+		for (e = 0; e < m; e++) {
+			order[e] = ((long) this.filtrationIndices[e] << 32) | e;
+		}
+		Arrays.sort(order);
+		for (int k = m - 1; k >= 0; k--) {
+			this.collapseEdge((int) order[k]);
+		}
+
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(n);
+		for (e = 0; e < m; e++) {
+			if (this.filtrationIndices[e] != REMOVED) {
+				builder.addEdge(this.lowerVertices[e], this.upperVertices[e], this.weights[e]);
+			}
+		}
+		this.collapsedGraph = builder.build();
+	}
+
+	/**
+	 * @return the graph with the collapsed edges removed and the moved edges reweighted
+	 */
+	public CompressedWeightedGraph getCollapsedGraph() {
+		return this.collapsedGraph;
+	}
+
+	/**
+	 * @return the number of edges which were removed
+	 */
+	public int getNumRemovedEdges() {
+		return this.numRemovedEdges;
+	}
+
+	/**
+	 * @return the number of edges which were moved to a larger filtration index, but not removed
+	 */
+	public int getNumMovedEdges() {
+		return this.numMovedEdges;
+	}
+
+	/**
+	 * This function moves the edge e forward in the filtration as long as it is dominated.
+	 */
+	private void collapseEdge(int e) {
+		int u = this.lowerVertices[e];
+		int v = this.upperVertices[e];
+		int originalIndex = this.filtrationIndices[e];
+
+		while (this.isDominated(u, v, this.filtrationIndices[e])) {
+			// the common neighbors only change when an edge at u or v enters
+			int next = this.getNextEdge(u, v, e);
+			if (next < 0) {
+				this.filtrationIndices[e] = REMOVED;
+				this.numRemovedEdges++;
+				return;
+			}
+			this.filtrationIndices[e] = this.filtrationIndices[next];
+			this.weights[e] = this.weights[next];
+		}
+
+		if (this.filtrationIndices[e] != originalIndex) {
+			this.numMovedEdges++;
+		}
+	}
+
+	/**
+	 * This function returns the edge at u or v, other than e, with the smallest filtration index
+	 * larger than the one of e, or -1 if there is no such edge.
+	 */
+	private int getNextEdge(int u, int v, int e) {
+		int filtrationIndex = this.filtrationIndices[e];
+		int next = -1;
+		for (int p = this.graph.getStart(u); p < this.graph.getEnd(u); p++) {
+			next = this.selectNextEdge(this.edgeIds[p], filtrationIndex, next);
+		}
+		for (int p = this.graph.getStart(v); p < this.graph.getEnd(v); p++) {
+			next = this.selectNextEdge(this.edgeIds[p], filtrationIndex, next);
+		}
+		return next;
+	}
+
+	private int selectNextEdge(int f, int filtrationIndex, int next) {
+		int index = this.filtrationIndices[f];
+		if (index > filtrationIndex && index != REMOVED && (next < 0 || index < this.filtrationIndices[next])) {
+			return f;
+		}
+		return next;
+	}
+
+	/**
+	 * This function returns true if the edge [u, v] is dominated by a vertex in the graph
+	 * consisting of the edges with filtration index at most the given one.
+	 */
+	private boolean isDominated(int u, int v, int filtrationIndex) {
+		int size = this.computeCommonNeighbors(u, v, filtrationIndex);
+		for (int i = 0; i < size; i++) {
+			int w = this.commonNeighbors[i];
+			boolean dominates = true;
+			for (int j = 0; j < size && dominates; j++) {
+				dominates = (i == j || this.containsEdge(w, this.commonNeighbors[j], filtrationIndex));
+			}
+			if (dominates) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This function stores the common neighbors of u and v in the graph consisting of the edges
+	 * with filtration index at most the given one, and returns their number.
+	 */
+	private int computeCommonNeighbors(int u, int v, int filtrationIndex) {
+		int size = 0;
+		int a = this.graph.getStart(u);
+		int b = this.graph.getStart(v);
+		int endA = this.graph.getEnd(u);
+		int endB = this.graph.getEnd(v);
+		while (a < endA && b < endB) {
+			int x = this.graph.getNeighborAt(a);
+			int y = this.graph.getNeighborAt(b);
+			if (x < y) {
+				a++;
+			} else if (x > y) {
+				b++;
+			} else {
+				if (this.filtrationIndices[this.edgeIds[a]] <= filtrationIndex && this.filtrationIndices[this.edgeIds[b]] <= filtrationIndex) {
+					this.commonNeighbors[size++] = x;
+				}
+				a++;
+				b++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * This function returns true if the edge [w, x] has filtration index at most the given one.
+	 */
+	private boolean containsEdge(int w, int x, int filtrationIndex) {
+		int low = this.graph.getStart(w);
+		int high = this.graph.getEnd(w) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int y = this.graph.getNeighborAt(middle);
+			if (y < x) {
+				low = middle + 1;
+			} else if (y > x) {
+				high = middle - 1;
+			} else {
+				return (this.filtrationIndices[this.edgeIds[middle]] <= filtrationIndex);
+			}
+		}
+		return false;
+	}
+}
@@ -1,7 +1,10 @@
 package edu.stanford.math.plex4.graph.utility;
 
+import java.util.Arrays;
+
 import edu.stanford.math.plex4.graph.AbstractUndirectedGraph;
 import edu.stanford.math.plex4.graph.AbstractWeightedUndirectedGraph;
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
 import edu.stanford.math.plex4.streams.impl.ExplicitSimplexStream;
 import edu.stanford.math.plex4.streams.impl.GeometricSimplexStream;
 import edu.stanford.math.primitivelib.autogen.array.DoubleArrayUtility;
@@ -55,12 +58,17 @@ public class GraphUtility {
 	
 	/**
 	 * This function computes all of the distances between pairs of vertices using
-	 * the Floyd-Warshall algorithm.
+	 * the Floyd-Warshall algorithm. If the graph is a CompressedWeightedGraph, a
+	 * breadth first search is performed from each vertex instead.
 	 *
 	 * @param graph the graph
 	 * @return the matrix of path lengths between each pair of vertices
 	 */
 	public static double[][] computeShortestPaths(AbstractUndirectedGraph graph) {
+		if (graph instanceof CompressedWeightedGraph) {
+			return computeShortestPaths((CompressedWeightedGraph) graph);
+		}
+		
 		int n = graph.getNumVertices();
 		double[][] pathLengths = DoubleArrayUtility.createMatrix(n, n);
 		for (int i = 0; i < n; i++) {
@@ -88,6 +96,41 @@ public class GraphUtility {
 		return pathLengths;
 	}
 	
+	/**
+	 * This function computes all of the distances between pairs of vertices, where
+	 * each edge has length 1. It performs a breadth first search from each vertex,
+	 * which takes O(n * (n + m)) time for a graph with n vertices and m edges.
+	 *
+	 * @param graph the graph
+	 * @return the matrix of path lengths between each pair of vertices
+	 */
+	public static double[][] computeShortestPaths(CompressedWeightedGraph graph) {
+		int n = graph.getNumVertices();
+		double[][] pathLengths = new double[n][n];
+		int[] queue = new int[n];
+		
+		for (int source = 0; source < n; source++) {
+			double[] lengths = pathLengths[source];
+			Arrays.fill(lengths, Infinity.Double.getPositiveInfinity());
+			lengths[source] = 0;
+			queue[0] = source;
+			int head = 0;
+			int tail = 1;
+			while (head < tail) {
+				int u = queue[head++];
+				for (int k = graph.getStart(u); k < graph.getEnd(u); k++) {
+					int v = graph.getNeighborAt(k);
+					if (lengths[v] == Infinity.Double.getPositiveInfinity()) {
+						lengths[v] = lengths[u] + 1;
+						queue[tail++] = v;
+					}
+				}
+			}
+		}
+		
+		return pathLengths;
+	}
+	
 	/**
 	 * This function computes the adjacency matrix of the given graph.
 	 * 
@@ -0,0 +1,230 @@
+package edu.stanford.math.plex4.homology.chain_basis;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.homology.utility.HomologyUtility;
+
+/**
+ * <p>This class implements a simplex of dimension at most 3 whose vertices are packed into
+ * two longs, as the class Packed4Simplex of plex 3. Each vertex v is stored as the 32-bit
+ * value v + 1, and unused positions are 0. Since the vertices are stored in increasing order,
+ * with the first two in the high long and the last two in the low long, simplices of the same
+ * dimension are compared lexicographically by comparing the two longs.</p>
+ *
+ * <p>Compared to the Simplex class, no array is allocated, the hash code is computed from the
+ * two longs, and the faces in the boundary are obtained by removing a position without sorting
+ * the vertices again. The vertices must be in the range 0, ..., Integer.MAX_VALUE - 1.</p>
+ *
+ */
+public class PackedSimplex implements PrimitiveBasisElement {
+
+	/**
+	 * The maximum number of vertices of a packed simplex.
+	 */
+	public static final int MAX_NUM_VERTICES = 4;
+
+	private static final long MASK = 0xFFFFFFFFL;
+
+	private final long high;
+	private final long low;
+	private final int dimension;
+
+	private PackedSimplex(long high, long low, int dimension) {
+		this.high = high;
+		this.low = low;
+		this.dimension = dimension;
+	}
+
+	/**
+	 * This function creates a packed simplex with the given vertices, which need not be sorted.
+	 *
+	 * @param vertices the vertices of the simplex
+	 * @return the packed simplex with the given vertices
+	 */
+	public static PackedSimplex makeSimplex(int... vertices) {
+		if (vertices.length > MAX_NUM_VERTICES) {
+			throw new IllegalArgumentException("A packed simplex has at most " + MAX_NUM_VERTICES + " vertices: " + vertices.length);
+		}
+		int[] sortedVertices = vertices.clone();
+		Arrays.sort(sortedVertices);
+		return pack(sortedVertices);
+	}
+
+	/**
+	 * This function creates a packed simplex with the vertices of the given simplex.
+	 *
+	 * @param simplex the simplex to convert
+	 * @return the packed simplex with the same vertices
+	 */
+	public static PackedSimplex fromSimplex(Simplex simplex) {
+		if (simplex.getVertices().length > MAX_NUM_VERTICES) {
+			throw new IllegalArgumentException("A packed simplex has at most " + MAX_NUM_VERTICES + " vertices: " + simplex);
+		}
+		return pack(simplex.getVertices());
+	}
+
+	private static PackedSimplex pack(int[] sortedVertices) {
+		long[] values = new long[MAX_NUM_VERTICES];
+		for (int i = 0; i < sortedVertices.length; i++) {
+			if (sortedVertices[i] < 0 || sortedVertices[i] == Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid vertex for a packed simplex: " + sortedVertices[i]);
+			}
+			values[i] = sortedVertices[i] + 1L;
+		}
+		return pack(values[0], values[1], values[2], values[3], sortedVertices.length - 1);
+	}
+
+	private static PackedSimplex pack(long v0, long v1, long v2, long v3, int dimension) {
+		return new PackedSimplex((v0 << 32) | v1, (v2 << 32) | v3, dimension);
+	}
+
+	/**
+	 * @return a Simplex with the same vertices
+	 */
+	public Simplex toSimplex() {
+		return new Simplex(this.getVertices());
+	}
+
+	/**
+	 * This function returns the value v + 1 of the vertex v at the given position, or
+	 * 0 if the position is not used.
+	 */
+	private long getValue(int position) {
+		switch (position) {
+		case 0:
+			return this.high >>> 32;
+		case 1:
+			return this.high & MASK;
+		case 2:
+			return this.low >>> 32;
+		default:
+			return this.low & MASK;
+		}
+	}
+
+	/**
+	 * This function returns the vertex at the given position, in increasing order.
+	 *
+	 * @param position the position, between 0 and getDimension()
+	 * @return the vertex at the given position
+	 */
+	public int getVertex(int position) {
+		return (int) this.getValue(position) - 1;
+	}
+
+	/**
+	 * This function returns a new array containing the vertices of the simplex.
+	 *
+	 * @return an array containing the vertices of the simplex
+	 */
+	public int[] getVertices() {
+		int[] vertices = new int[this.dimension + 1];
+		for (int i = 0; i <= this.dimension; i++) {
+			vertices[i] = this.getVertex(i);
+		}
+		return vertices;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement#getDimension()
+	 */
+	public int getDimension() {
+		return this.dimension;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement#getBoundaryArray()
+	 */
+	public PackedSimplex[] getBoundaryArray() {
+		// if this a point, return an empty array
+		if (this.dimension == 0) {
+			return new PackedSimplex[0];
+		}
+
+		// the remaining vertices are shifted down by one position, and stay sorted
+		long v0 = this.getValue(0);
+		long v1 = this.getValue(1);
+		long v2 = this.getValue(2);
+		long v3 = this.getValue(3);
+		int faceDimension = this.dimension - 1;
+		PackedSimplex[] boundaryArray = new PackedSimplex[this.dimension + 1];
+		boundaryArray[0] = pack(v1, v2, v3, 0, faceDimension);
+		boundaryArray[1] = pack(v0, v2, v3, 0, faceDimension);
+		if (this.dimension >= 2) {
+			boundaryArray[2] = pack(v0, v1, v3, 0, faceDimension);
+		}
+		if (this.dimension >= 3) {
+			boundaryArray[3] = pack(v0, v1, v2, 0, faceDimension);
+		}
+		return boundaryArray;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement#getBoundaryCoefficients()
+	 */
+	public int[] getBoundaryCoefficients() {
+		if (this.dimension == 0) {
+			return HomologyUtility.getDefaultBoundaryCoefficients(0);
+		}
+		return HomologyUtility.getDefaultBoundaryCoefficients(this.dimension + 1);
+	}
+
+	/**
+	 * This function compares two packed simplices first by dimension, and then
+	 * lexicographically, as the SimplexComparator does for simplices.
+	 *
+	 * @param other the packed simplex to compare to
+	 * @return a negative number, zero or a positive number if this simplex is smaller, equal or larger
+	 */
+	int compareTo(PackedSimplex other) {
+		if (this.dimension != other.dimension) {
+			return (this.dimension < other.dimension ? -1 : 1);
+		}
+		if (this.high != other.high) {
+			return (this.high < other.high ? -1 : 1);
+		}
+		if (this.low != other.low) {
+			return (this.low < other.low ? -1 : 1);
+		}
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof PackedSimplex)) {
+			return false;
+		}
+		PackedSimplex o = (PackedSimplex) obj;
+		return (this.high == o.high && this.low == o.low);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		long hash = (this.high * 0x9E3779B97F4A7C15L) ^ this.low;
+		hash *= 0xC2B2AE3D27D4EB4FL;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int i = 0; i <= this.dimension; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(this.getVertex(i));
+		}
+		builder.append(']');
+		return builder.toString();
+	}
+}
@@ -0,0 +1,43 @@
+package edu.stanford.math.plex4.homology.chain_basis;
+
+import java.util.Comparator;
+
+/**
+ * This class defines the standard ordering on the PackedSimplex class, which is
+ * the same as the ordering of the SimplexComparator on the corresponding simplices.
+ * The simplices are ordered first by dimension, and then lexicographically, which
+ * only requires comparing the packed longs.
+ * 
+ * This class implements the singleton design pattern. Thus it cannot
+ * be instantiated. Instead the user must call the static getInstance()
+ * function in order to get the actual instance for use.
+ *
+ */
+public class PackedSimplexComparator implements Comparator<PackedSimplex> {
+
+	/**
+	 * This is the single instantiation of the class.
+	 */
+	private static final PackedSimplexComparator instance = new PackedSimplexComparator();
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private PackedSimplexComparator() {}
+
+	/**
+	 * This static function returns the one instance of the class.
+	 * 
+	 * @return the instance of the class
+	 */
+	public static PackedSimplexComparator getInstance() {
+		return instance;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	public int compare(PackedSimplex o1, PackedSimplex o2) {
+		return o1.compareTo(o2);
+	}
+}
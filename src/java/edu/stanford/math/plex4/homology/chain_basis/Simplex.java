@@ -51,6 +51,36 @@ public class Simplex implements PrimitiveBasisElement {
 		// compute the hash code via CRC hashing
 		this.cachedHashCode = CRC.hash32(this.getVertices());
 	}
+
+	/**
+	 * This constructor assigns the given hash code and vertices, which are not copied.
+	 */
+	private Simplex(int hashCode, final int[] sortedVertices) {
+		this.vertices = sortedVertices;
+		this.cachedHashCode = hashCode;
+	}
+	
+	/**
+	 * This function creates a simplex with the given array, which must be
+	 * sorted and is not copied.
+	 */
+	private static Simplex fromSortedVertices(final int[] sortedVertices) {
+		return new Simplex(CRC.hash32(sortedVertices), sortedVertices);
+	}
+	
+	/**
+	 * This function creates a simplex from the first length entries of the
+	 * supplied array, which is not modified.
+	 * 
+	 * @param vertices the array containing the vertices
+	 * @param length the number of vertices
+	 * @return the simplex with the given vertices
+	 */
+	public static Simplex fromPrefix(final int[] vertices, int length) {
+		int[] sortedVertices = Arrays.copyOf(vertices, length);
+		Arrays.sort(sortedVertices);
+		return fromSortedVertices(sortedVertices);
+	}
 	
 	public static Simplex makeSimplex(int... args) {
 		return new Simplex(args);
@@ -81,9 +111,10 @@ public class Simplex implements PrimitiveBasisElement {
 			return new Simplex[0];
 		}
 
+		// the faces of a sorted array are sorted, so they do not need to be sorted again
 		Simplex[] boundaryArray = new Simplex[this.vertices.length];		
 		for (int i = 0; i < this.vertices.length; i++) {
-			boundaryArray[i] = new Simplex(HomologyUtility.removeIndex(this.vertices, i));
+			boundaryArray[i] = fromSortedVertices(HomologyUtility.removeIndex(this.vertices, i));
 		}
 		return boundaryArray;
 	}
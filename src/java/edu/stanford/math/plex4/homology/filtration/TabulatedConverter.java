@@ -0,0 +1,86 @@
+package edu.stanford.math.plex4.homology.filtration;
+
+import java.util.Arrays;
+
+/**
+ * <p>This class implements a conversion between filtration values and filtration indices which
+ * is given by a table of filtration indices and their values, for example the values recorded
+ * when a stream is written to a file. The indices must be increasing, and the values are assumed
+ * to be non-decreasing in the index.</p>
+ *
+ * <p>An index which is not in the table has the value of the largest smaller index in the table,
+ * or of the first index if there is none. A value is converted to the smallest index in the table
+ * whose value is at least the given one, or to the last index if there is none.</p>
+ *
+ */
+public class TabulatedConverter extends FiltrationConverter {
+	private final int[] filtrationIndices;
+	private final double[] filtrationValues;
+
+	/**
+	 * This constructor initializes the converter with the given table.
+	 *
+	 * @param filtrationIndices the filtration indices, in increasing order
+	 * @param filtrationValues the filtration values of the indices
+	 */
+	public TabulatedConverter(int[] filtrationIndices, double[] filtrationValues) {
+		if (filtrationIndices.length != filtrationValues.length) {
+			throw new IllegalArgumentException("The numbers of filtration indices and values must be equal.");
+		}
+		for (int i = 1; i < filtrationIndices.length; i++) {
+			if (filtrationIndices[i] <= filtrationIndices[i - 1]) {
+				throw new IllegalArgumentException("The filtration indices must be increasing.");
+			}
+		}
+		this.filtrationIndices = filtrationIndices.clone();
+		this.filtrationValues = filtrationValues.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.filtration.FiltrationConverter#getFiltrationIndex(double)
+	 */
+	public int getFiltrationIndex(double filtrationValue) {
+		if (this.filtrationIndices.length == 0) {
+			return 0;
+		}
+		int low = 0;
+		int high = this.filtrationValues.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.filtrationValues[middle] < filtrationValue) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return this.filtrationIndices[low];
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.filtration.FiltrationConverter#getFiltrationValue(int)
+	 */
+	public double getFiltrationValue(int filtrationIndex) {
+		if (this.filtrationIndices.length == 0) {
+			return 0;
+		}
+		int position = Arrays.binarySearch(this.filtrationIndices, filtrationIndex);
+		if (position < 0) {
+			position = Math.max(-(position + 1) - 1, 0);
+		}
+		return this.filtrationValues[position];
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.filtration.FiltrationConverter#computeInducedFiltrationValue(double, double)
+	 */
+	public double computeInducedFiltrationValue(double filtrationValue1, double filtrationValue2) {
+		return Math.max(filtrationValue1, filtrationValue2);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.filtration.FiltrationConverter#getInitialFiltrationValue()
+	 */
+	public double getInitialFiltrationValue() {
+		return this.getFiltrationValue(0);
+	}
+}
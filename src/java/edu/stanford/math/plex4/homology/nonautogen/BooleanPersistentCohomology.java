@@ -0,0 +1,277 @@
+package edu.stanford.math.plex4.homology.nonautogen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
+import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
+import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import gnu.trove.TObjectIntHashMap;
+
+/**
+ * <p>This class computes persistent homology over Z/2Z by reducing the coboundary matrix
+ * of a filtered complex. Since persistent cohomology and persistent homology have the same
+ * barcodes, the produced intervals are identical to the ones computed by the other absolute
+ * homology algorithms.</p>
+ *
+ * <p>The basis elements of the stream are numbered in the order in which the stream
+ * iterates through them, and the coboundary matrix is stored in compressed sparse form
+ * using these integer indices. The columns of each dimension are then reduced in reverse
+ * filtration order, from dimension 0 upwards, using the following optimizations:
+ * <ul>
+ * <li>Clearing: a basis element which is the pivot of a reduced column in the previous dimension
+ * is known to be paired, so its column is not reduced.</li>
+ * <li>Apparent pairs: if the earliest cofacet tau of sigma has sigma as its latest facet, then
+ * the coboundary of sigma is already reduced with pivot tau, and no reduction is performed.</li>
+ * </ul>
+ * The reduced columns are stored as sorted int arrays, and pivots are looked up in an array
+ * indexed by the position of the basis element in the filtration.</p>
+ *
+ * <p>For more information, consult the papers "Dualities in persistent (co)homology" by de Silva,
+ * Morozov and Vejdemo-Johansson, and "Ripser: efficient computation of Vietoris-Rips
+ * persistence barcodes" by Ulrich Bauer.</p>
+ *
+ * @param <U> the underlying basis type
+ */
+public class BooleanPersistentCohomology<U> extends AbstractPersistenceAlgorithm<U> {
+	/**
+	 * This stores the minimum dimension for which to compute (co)homology.
+	 */
+	private final int minDimension;
+
+	/**
+	 * This stores the maximum dimension for which to compute (co)homology.
+	 */
+	private final int maxDimension;
+
+	/**
+	 * This constructor initializes the object with the range of dimensions to compute.
+	 *
+	 * @param minDimension the minimum dimension to compute
+	 * @param maxDimension the maximum dimension to compute
+	 */
+	public BooleanPersistentCohomology(int minDimension, int maxDimension) {
+		this.minDimension = minDimension;
+		this.maxDimension = maxDimension;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm#computeIndexIntervals(edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream)
+	 */
+	@Override
+	public BarcodeCollection<Integer> computeIndexIntervals(AbstractFilteredStream<U> stream) {
+		BarcodeCollection<Integer> barcodeCollection = new BarcodeCollection<Integer>();
+
+		/*
+		 * Number the basis elements in filtration order. Only elements of dimension at most
+		 * maxDimension are needed, since the columns have dimension less than maxDimension.
+		 */
+		TObjectIntHashMap<U> positions = new TObjectIntHashMap<U>();
+		List<U> elements = new ArrayList<U>();
+		for (U element : stream) {
+			if (stream.getDimension(element) > this.maxDimension) {
+				continue;
+			}
+			positions.put(element, elements.size());
+			elements.add(element);
+		}
+
+		int n = elements.size();
+		int[] dimensions = new int[n];
+		int[] filtrationIndices = new int[n];
+		int[] latestFacets = new int[n];
+		int[][] boundaries = new int[n][];
+		int[] coboundarySizes = new int[n + 1];
+
+		for (int i = 0; i < n; i++) {
+			U element = elements.get(i);
+			dimensions[i] = stream.getDimension(element);
+			filtrationIndices[i] = stream.getFiltrationIndex(element);
+			boundaries[i] = this.getBoundaryPositions(element, stream, positions);
+			latestFacets[i] = (boundaries[i].length > 0 ? boundaries[i][boundaries[i].length - 1] : -1);
+			for (int facet : boundaries[i]) {
+				coboundarySizes[facet + 1]++;
+			}
+		}
+		elements = null;
+		positions = null;
+
+		/*
+		 * Transpose the boundary matrix. Since the cofacets are visited in increasing order,
+		 * each coboundary is sorted.
+		 */
+		int[] coboundaryOffsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			coboundaryOffsets[i + 1] = coboundaryOffsets[i] + coboundarySizes[i + 1];
+		}
+		int[] coboundaryEntries = new int[coboundaryOffsets[n]];
+		int[] fill = Arrays.copyOf(coboundaryOffsets, n);
+		for (int i = 0; i < n; i++) {
+			for (int facet : boundaries[i]) {
+				coboundaryEntries[fill[facet]++] = i;
+			}
+			boundaries[i] = null;
+		}
+		boundaries = null;
+		fill = null;
+
+		/*
+		 * pivotColumns[tau] is the column whose reduced coboundary has pivot tau, or -1.
+		 * reducedColumns[sigma] is the reduced coboundary of sigma, or null if it equals the
+		 * unreduced coboundary.
+		 */
+		int[] pivotColumns = new int[n];
+		Arrays.fill(pivotColumns, -1);
+		int[][] reducedColumns = new int[n][];
+		ColumnAccumulator accumulator = new ColumnAccumulator();
+
+		/*
+		 * The dimensions below minDimension are reduced as well, since their pivots are needed
+		 * to clear the columns of the next dimension. Only their intervals are discarded.
+		 */
+		for (int dimension = 0; dimension < this.maxDimension; dimension++) {
+			for (int sigma = n - 1; sigma >= 0; sigma--) {
+				if (dimensions[sigma] != dimension) {
+					continue;
+				}
+
+				// clearing: sigma is the pivot of a column of the previous dimension
+				if (pivotColumns[sigma] >= 0) {
+					continue;
+				}
+
+				int start = coboundaryOffsets[sigma];
+				int end = coboundaryOffsets[sigma + 1];
+				int pivot = -1;
+
+				if (start < end && latestFacets[coboundaryEntries[start]] == sigma && pivotColumns[coboundaryEntries[start]] < 0) {
+					// apparent pair
+					pivot = coboundaryEntries[start];
+				} else if (start < end) {
+					accumulator.set(coboundaryEntries, start, end);
+					while (!accumulator.isEmpty() && pivotColumns[accumulator.getPivot()] >= 0) {
+						int other = pivotColumns[accumulator.getPivot()];
+						if (reducedColumns[other] != null) {
+							accumulator.add(reducedColumns[other], 0, reducedColumns[other].length);
+						} else {
+							accumulator.add(coboundaryEntries, coboundaryOffsets[other], coboundaryOffsets[other + 1]);
+						}
+					}
+					if (!accumulator.isEmpty()) {
+						pivot = accumulator.getPivot();
+						reducedColumns[sigma] = accumulator.toArray();
+					}
+				}
+
+				if (pivot < 0) {
+					if (dimension >= this.minDimension) {
+						barcodeCollection.addRightInfiniteInterval(dimension, filtrationIndices[sigma]);
+					}
+				} else {
+					pivotColumns[pivot] = sigma;
+					// don't store intervals that are simultaneously created and destroyed
+					if (dimension >= this.minDimension && filtrationIndices[pivot] > filtrationIndices[sigma]) {
+						barcodeCollection.addInterval(dimension, filtrationIndices[sigma], filtrationIndices[pivot]);
+					}
+				}
+			}
+		}
+
+		return barcodeCollection;
+	}
+
+	/**
+	 * This function returns the sorted positions of the basis elements in the boundary of the
+	 * given element, with the coefficients reduced modulo 2.
+	 */
+	private int[] getBoundaryPositions(U element, AbstractFilteredStream<U> stream, TObjectIntHashMap<U> positions) {
+		U[] boundary = stream.getBoundary(element);
+		int[] coefficients = stream.getBoundaryCoefficients(element);
+		int[] result = new int[boundary.length];
+		int size = 0;
+		for (int i = 0; i < boundary.length; i++) {
+			if (coefficients[i] % 2 != 0) {
+				result[size++] = positions.get(boundary[i]);
+			}
+		}
+		Arrays.sort(result, 0, size);
+
+		// cancel repeated entries
+		int cancelledSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (i + 1 < size && result[i] == result[i + 1]) {
+				i++;
+			} else {
+				result[cancelledSize++] = result[i];
+			}
+		}
+		return Arrays.copyOf(result, cancelledSize);
+	}
+
+	@Override
+	public String toString() {
+		return "BooleanPersistentCohomology";
+	}
+
+	/**
+	 * This class holds a working column over Z/2Z as a sorted int array. Adding a column
+	 * is the symmetric difference of the two sorted arrays.
+	 */
+	private static class ColumnAccumulator {
+		private int[] entries = new int[16];
+		private int[] buffer = new int[16];
+		private int size = 0;
+
+		void set(int[] column, int start, int end) {
+			int length = end - start;
+			if (this.entries.length < length) {
+				this.entries = new int[2 * length];
+			}
+			System.arraycopy(column, start, this.entries, 0, length);
+			this.size = length;
+		}
+
+		void add(int[] column, int start, int end) {
+			int capacity = this.size + end - start;
+			if (this.buffer.length < capacity) {
+				this.buffer = new int[2 * capacity];
+			}
+			int i = 0;
+			int j = start;
+			int k = 0;
+			while (i < this.size && j < end) {
+				if (this.entries[i] < column[j]) {
+					this.buffer[k++] = this.entries[i++];
+				} else if (this.entries[i] > column[j]) {
+					this.buffer[k++] = column[j++];
+				} else {
+					i++;
+					j++;
+				}
+			}
+			while (i < this.size) {
+				this.buffer[k++] = this.entries[i++];
+			}
+			while (j < end) {
+				this.buffer[k++] = column[j++];
+			}
+			int[] temp = this.entries;
+			this.entries = this.buffer;
+			this.buffer = temp;
+			this.size = k;
+		}
+
+		boolean isEmpty() {
+			return this.size == 0;
+		}
+
+		int getPivot() {
+			return this.entries[0];
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.entries, this.size);
+		}
+	}
+}
@@ -0,0 +1,511 @@
+package edu.stanford.math.plex4.homology.nonautogen;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import gnu.trove.TIntHashSet;
+
+/**
+ * <p>This class provides an implicit representation of a Vietoris-Rips complex. The
+ * simplices of the complex are never stored as objects. Instead, a k-simplex with
+ * vertices v_0 < v_1 < ... < v_k is identified with its index in the combinatorial
+ * number system:
+ * <code>C(v_0, 1) + C(v_1, 2) + ... + C(v_k, k + 1)</code>
+ * which is a bijection between the k-subsets of {0, ..., n - 1} and the integers
+ * {0, ..., C(n, k + 1) - 1}.</p>
+ *
+ * <p>The only data that is actually stored is the neighborhood graph, in compressed
+ * sparse row form: for each vertex the sorted list of its neighbors, along with the
+ * corresponding edge lengths. The diameter, facets and cofacets of a simplex are
+ * computed on demand from this edge list. Thus the memory used by this class is linear
+ * in the number of edges.</p>
+ *
+ * <p>The filtration value (diameter) of a simplex is the maximum length of its edges,
+ * and vertices have filtration value equal to the initial value supplied at construction.</p>
+ */
+public class ImplicitVietorisRipsComplex {
+	/**
+	 * The number of vertices in the complex.
+	 */
+	private final int numVertices;
+
+	/**
+	 * The maximum dimension of the simplices in the complex.
+	 */
+	private final int maxDimension;
+
+	/**
+	 * The filtration value of the vertices.
+	 */
+	private final double vertexValue;
+
+	/**
+	 * The neighbors of vertex i are stored in neighbors[offsets[i]], ..., neighbors[offsets[i + 1] - 1],
+	 * in increasing order.
+	 */
+	private final int[] offsets;
+	private final int[] neighbors;
+
+	/**
+	 * weights[k] is the length of the edge (i, neighbors[k]).
+	 */
+	private final double[] weights;
+
+	/**
+	 * binomials[k][v] = C(v, k) for 0 <= k <= maxDimension + 1 and 0 <= v <= numVertices.
+	 */
+	private final long[][] binomials;
+
+	/**
+	 * Scratch buffers used for decoding and enumerating simplices.
+	 */
+	private final int[] vertexBuffer;
+	private final int[] faceBuffer;
+
+	/**
+	 * This constructor initializes the complex from a metric space. The neighborhood graph
+	 * contains the edge (i, j) if and only if j is contained in the closed neighborhood of
+	 * radius maxDistance about the point i, exactly as in the class FlexibleVietorisRipsStream.
+	 *
+	 * @param metricSpace the metric space to build the complex on
+	 * @param maxDistance the maximum allowable edge length
+	 * @param maxDimension the maximum dimension of the complex
+	 * @param vertexValue the filtration value of the vertices
+	 */
+	public <T> ImplicitVietorisRipsComplex(AbstractSearchableMetricSpace<T> metricSpace, double maxDistance, int maxDimension, double vertexValue) {
+		ExceptionUtility.verifyNonNull(metricSpace);
+		ExceptionUtility.verifyNonNegative(maxDimension);
+		this.numVertices = metricSpace.size();
+		this.maxDimension = maxDimension;
+		this.vertexValue = vertexValue;
+
+		int n = this.numVertices;
+		int[][] rows = new int[n][];
+		int numEntries = 0;
+
+		for (int i = 0; i < n; i++) {
+			TIntHashSet neighborhood = metricSpace.getClosedNeighborhood(metricSpace.getPoint(i), maxDistance);
+			neighborhood.remove(i);
+			rows[i] = neighborhood.toArray();
+			Arrays.sort(rows[i]);
+			numEntries += rows[i].length;
+		}
+
+		this.offsets = new int[n + 1];
+		this.neighbors = new int[numEntries];
+		this.weights = new double[numEntries];
+
+		int position = 0;
+		for (int i = 0; i < n; i++) {
+			this.offsets[i] = position;
+			for (int j: rows[i]) {
+				this.neighbors[position] = j;
+				this.weights[position] = metricSpace.distance(i, j);
+				position++;
+			}
+			rows[i] = null;
+		}
+		this.offsets[n] = position;
+
+		this.binomials = computeBinomialTable(n, maxDimension + 1);
+		this.vertexBuffer = new int[maxDimension + 2];
+		this.faceBuffer = new int[maxDimension + 2];
+	}
+
+	/**
+	 * This function computes the table of binomial coefficients C(v, k) for v <= n and k <= maxK.
+	 * It throws an IllegalArgumentException if the indices of the top dimensional simplices
+	 * cannot be represented by a long.
+	 */
+	private static long[][] computeBinomialTable(int n, int maxK) {
+		long[][] table = new long[maxK + 1][n + 1];
+		for (int v = 0; v <= n; v++) {
+			table[0][v] = 1;
+		}
+		for (int k = 1; k <= maxK; k++) {
+			for (int v = 1; v <= n; v++) {
+				table[k][v] = table[k - 1][v - 1] + table[k][v - 1];
+				if (table[k][v] < 0) {
+					throw new IllegalArgumentException("The number of " + (maxK - 1) + "-simplices on " + n + " vertices exceeds the range of the combinatorial number system.");
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @return the number of vertices in the complex
+	 */
+	public int getNumVertices() {
+		return this.numVertices;
+	}
+
+	/**
+	 * @return the number of edges in the neighborhood graph
+	 */
+	public int getNumEdges() {
+		return this.neighbors.length / 2;
+	}
+
+	/**
+	 * @return the maximum dimension of the complex
+	 */
+	public int getMaxDimension() {
+		return this.maxDimension;
+	}
+
+	/**
+	 * @return the filtration value of the vertices
+	 */
+	public double getVertexValue() {
+		return this.vertexValue;
+	}
+
+	/**
+	 * This function returns the length of the edge (i, j), or a negative value if
+	 * the edge is not in the complex.
+	 *
+	 * @param i the first vertex
+	 * @param j the second vertex
+	 * @return the length of the edge (i, j) or -1 if there is no such edge
+	 */
+	public double getEdgeLength(int i, int j) {
+		int position = Arrays.binarySearch(this.neighbors, this.offsets[i], this.offsets[i + 1], j);
+		if (position < 0) {
+			return -1;
+		}
+		return this.weights[position];
+	}
+
+	/**
+	 * This function computes the index of the simplex with the given vertices.
+	 *
+	 * @param vertices the vertices in increasing order
+	 * @param numVertices the number of entries of the array to use
+	 * @return the index of the simplex
+	 */
+	public long getIndex(int[] vertices, int numVertices) {
+		long index = 0;
+		for (int k = 0; k < numVertices; k++) {
+			index += this.binomials[k + 1][vertices[k]];
+		}
+		return index;
+	}
+
+	/**
+	 * This function decodes the index of a simplex of the given dimension into its vertices.
+	 *
+	 * @param index the index of the simplex
+	 * @param dimension the dimension of the simplex
+	 * @param vertices an array of length at least dimension + 1 to write the vertices to, in increasing order
+	 */
+	public void getVertices(long index, int dimension, int[] vertices) {
+		int upperBound = this.numVertices;
+		for (int k = dimension + 1; k >= 1; k--) {
+			// find the largest v < upperBound with C(v, k) <= index
+			int low = k - 1;
+			int high = upperBound - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (this.binomials[k][middle] <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			vertices[k - 1] = low;
+			index -= this.binomials[k][low];
+			upperBound = low;
+		}
+	}
+
+	/**
+	 * This function computes the diameter of a simplex given by its vertices. It returns
+	 * a negative value if one of its edges is not contained in the complex.
+	 *
+	 * @param vertices the vertices of the simplex
+	 * @param numVertices the number of vertices
+	 * @return the diameter of the simplex
+	 */
+	public double computeDiameter(int[] vertices, int numVertices) {
+		double diameter = this.vertexValue;
+		for (int a = 1; a < numVertices; a++) {
+			for (int b = 0; b < a; b++) {
+				double length = this.getEdgeLength(vertices[b], vertices[a]);
+				if (length < 0) {
+					return -1;
+				}
+				diameter = Math.max(diameter, length);
+			}
+		}
+		return diameter;
+	}
+
+	/**
+	 * This function computes the diameter of a simplex given by its index.
+	 *
+	 * @param index the index of the simplex
+	 * @param dimension the dimension of the simplex
+	 * @return the diameter of the simplex
+	 */
+	public double computeDiameter(long index, int dimension) {
+		this.getVertices(index, dimension, this.vertexBuffer);
+		return this.computeDiameter(this.vertexBuffer, dimension + 1);
+	}
+
+	/**
+	 * This function writes all of the edges of the complex, into the supplied buffer.
+	 *
+	 * @param buffer the buffer to write the edges to
+	 */
+	public void getEdges(SimplexBuffer buffer) {
+		buffer.clear();
+		if (this.maxDimension < 1) {
+			return;
+		}
+		for (int i = 0; i < this.numVertices; i++) {
+			for (int position = this.offsets[i]; position < this.offsets[i + 1]; position++) {
+				int j = this.neighbors[position];
+				if (j > i) {
+					continue;
+				}
+				buffer.add(this.binomials[1][j] + this.binomials[2][i], Math.max(this.vertexValue, this.weights[position]));
+			}
+		}
+	}
+
+	/**
+	 * This function writes the cofacets of the given simplex whose added vertex is larger than
+	 * all of the vertices of the simplex, into the supplied buffer. Applied to all of the
+	 * simplices of a given dimension, this produces every simplex of the next dimension exactly once.
+	 *
+	 * @param index the index of the simplex
+	 * @param dimension the dimension of the simplex
+	 * @param diameter the diameter of the simplex
+	 * @param buffer the buffer to append the cofacets to
+	 */
+	public void appendUpperCofacets(long index, int dimension, double diameter, SimplexBuffer buffer) {
+		if (dimension + 1 > this.maxDimension) {
+			return;
+		}
+		int[] vertices = this.vertexBuffer;
+		this.getVertices(index, dimension, vertices);
+		int top = vertices[dimension];
+		for (int position = this.offsets[top + 1] - 1; position >= this.offsets[top]; position--) {
+			int w = this.neighbors[position];
+			if (w < top) {
+				break;
+			}
+			double cofacetDiameter = Math.max(diameter, this.weights[position]);
+			boolean adjacent = true;
+			for (int k = 0; k < dimension && adjacent; k++) {
+				double length = this.getEdgeLength(w, vertices[k]);
+				if (length < 0) {
+					adjacent = false;
+				} else {
+					cofacetDiameter = Math.max(cofacetDiameter, length);
+				}
+			}
+			if (adjacent) {
+				buffer.add(index + this.binomials[dimension + 2][w], cofacetDiameter);
+			}
+		}
+	}
+
+	/**
+	 * This function writes all of the cofacets of the given simplex into the supplied buffer.
+	 *
+	 * @param index the index of the simplex
+	 * @param dimension the dimension of the simplex
+	 * @param diameter the diameter of the simplex
+	 * @param buffer the buffer to write the cofacets to
+	 */
+	public void getCofacets(long index, int dimension, double diameter, SimplexBuffer buffer) {
+		buffer.clear();
+		if (dimension + 1 > this.maxDimension) {
+			return;
+		}
+		int[] vertices = this.vertexBuffer;
+		this.getVertices(index, dimension, vertices);
+
+		// scan the neighbors of the vertex of smallest degree
+		int pivotVertex = vertices[0];
+		for (int k = 1; k <= dimension; k++) {
+			if (this.getDegree(vertices[k]) < this.getDegree(pivotVertex)) {
+				pivotVertex = vertices[k];
+			}
+		}
+
+		for (int position = this.offsets[pivotVertex]; position < this.offsets[pivotVertex + 1]; position++) {
+			int w = this.neighbors[position];
+			double cofacetDiameter = diameter;
+			boolean adjacent = true;
+			for (int k = 0; k <= dimension && adjacent; k++) {
+				if (vertices[k] == pivotVertex) {
+					cofacetDiameter = Math.max(cofacetDiameter, this.weights[position]);
+					continue;
+				}
+				double length = this.getEdgeLength(w, vertices[k]);
+				if (length < 0) {
+					adjacent = false;
+				} else {
+					cofacetDiameter = Math.max(cofacetDiameter, length);
+				}
+			}
+			if (!adjacent) {
+				continue;
+			}
+
+			// compute the index of the cofacet: the vertices above w are shifted up one position
+			long cofacetIndex = 0;
+			int shift = 1;
+			for (int k = 0; k <= dimension; k++) {
+				if (shift == 1 && vertices[k] > w) {
+					cofacetIndex += this.binomials[k + 1][w];
+					shift = 2;
+				}
+				cofacetIndex += this.binomials[k + shift][vertices[k]];
+			}
+			if (shift == 1) {
+				cofacetIndex += this.binomials[dimension + 2][w];
+			}
+			buffer.add(cofacetIndex, cofacetDiameter);
+		}
+	}
+
+	/**
+	 * This function writes all of the facets of the given simplex into the supplied buffer.
+	 *
+	 * @param index the index of the simplex
+	 * @param dimension the dimension of the simplex
+	 * @param buffer the buffer to write the facets to
+	 */
+	public void getFacets(long index, int dimension, SimplexBuffer buffer) {
+		buffer.clear();
+		if (dimension == 0) {
+			return;
+		}
+		int[] vertices = this.vertexBuffer;
+		int[] face = this.faceBuffer;
+		this.getVertices(index, dimension, vertices);
+		for (int removed = 0; removed <= dimension; removed++) {
+			int size = 0;
+			for (int k = 0; k <= dimension; k++) {
+				if (k != removed) {
+					face[size++] = vertices[k];
+				}
+			}
+			buffer.add(this.getIndex(face, size), this.computeDiameter(face, size));
+		}
+	}
+
+	/**
+	 * @param v a vertex
+	 * @return the degree of v in the neighborhood graph
+	 */
+	public int getDegree(int v) {
+		return this.offsets[v + 1] - this.offsets[v];
+	}
+
+	/**
+	 * This class is a growable buffer of (index, diameter) pairs which is used for
+	 * passing simplices around without allocating objects for them.
+	 */
+	public static class SimplexBuffer {
+		private long[] indices;
+		private double[] diameters;
+		private int size = 0;
+
+		public SimplexBuffer() {
+			this(16);
+		}
+
+		public SimplexBuffer(int capacity) {
+			this.indices = new long[Math.max(capacity, 1)];
+			this.diameters = new double[Math.max(capacity, 1)];
+		}
+
+		public void add(long index, double diameter) {
+			if (this.size == this.indices.length) {
+				this.indices = Arrays.copyOf(this.indices, 2 * this.size);
+				this.diameters = Arrays.copyOf(this.diameters, 2 * this.size);
+			}
+			this.indices[this.size] = index;
+			this.diameters[this.size] = diameter;
+			this.size++;
+		}
+
+		public void clear() {
+			this.size = 0;
+		}
+
+		public int size() {
+			return this.size;
+		}
+
+		public long getIndex(int i) {
+			return this.indices[i];
+		}
+
+		public double getDiameter(int i) {
+			return this.diameters[i];
+		}
+
+		/**
+		 * This function sorts the contents of the buffer in reverse filtration order. The
+		 * filtration order is given by increasing diameter, and then by decreasing index.
+		 */
+		public void sortReverseFiltrationOrder() {
+			this.quicksort(0, this.size - 1);
+		}
+
+		private void quicksort(int start, int end) {
+			while (start < end) {
+				int middle = (start + end) >>> 1;
+				double pivotDiameter = this.diameters[middle];
+				long pivotIndex = this.indices[middle];
+				int i = start;
+				int j = end;
+				while (i <= j) {
+					while (precedes(pivotDiameter, pivotIndex, this.diameters[i], this.indices[i])) {
+						i++;
+					}
+					while (precedes(this.diameters[j], this.indices[j], pivotDiameter, pivotIndex)) {
+						j--;
+					}
+					if (i <= j) {
+						this.swap(i, j);
+						i++;
+						j--;
+					}
+				}
+				// recurse on the smaller part
+				if (j - start < end - i) {
+					this.quicksort(start, j);
+					start = i;
+				} else {
+					this.quicksort(i, end);
+					end = j;
+				}
+			}
+		}
+
+		private void swap(int i, int j) {
+			long index = this.indices[i];
+			this.indices[i] = this.indices[j];
+			this.indices[j] = index;
+			double diameter = this.diameters[i];
+			this.diameters[i] = this.diameters[j];
+			this.diameters[j] = diameter;
+		}
+	}
+
+	/**
+	 * This function returns true if the simplex (diameter1, index1) strictly precedes the
+	 * simplex (diameter2, index2) in the filtration order.
+	 */
+	static boolean precedes(double diameter1, long index1, double diameter2, long index2) {
+		return (diameter1 < diameter2) || (diameter1 == diameter2 && index1 > index2);
+	}
+}
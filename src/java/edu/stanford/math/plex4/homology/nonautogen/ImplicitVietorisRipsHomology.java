@@ -0,0 +1,483 @@
+package edu.stanford.math.plex4.homology.nonautogen;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
+import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
+import edu.stanford.math.plex4.homology.nonautogen.ImplicitVietorisRipsComplex.SimplexBuffer;
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.streams.impl.FlexibleVietorisRipsStream;
+import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import gnu.trove.TLongHashSet;
+import gnu.trove.TLongIntHashMap;
+
+/**
+ * <p>This class computes the persistent homology of a Vietoris-Rips complex over Z/2Z, without
+ * ever constructing the simplices of the complex. The complex is represented implicitly by an
+ * ImplicitVietorisRipsComplex, where simplices are identified with long indices in the
+ * combinatorial number system and their facets and cofacets are computed on demand.</p>
+ *
+ * <p>Dimension 0 is computed with a union-find pass over the edges. Higher dimensions are computed
+ * by reducing the coboundary matrix in reverse filtration order, using the following
+ * optimizations:
+ * <ul>
+ * <li>Clearing: a simplex that was paired as a pivot in the previous dimension is not reduced.</li>
+ * <li>Apparent pairs: a simplex whose earliest cofacet has the same diameter, and which is the
+ * latest facet of that cofacet, forms a zero persistence pair and is skipped without reduction.</li>
+ * <li>Implicit columns: the reduced coboundary columns R are never stored. For each column that
+ * is paired, its column of the reduction matrix V is kept until the dimension is finished, and the
+ * coboundary is recomputed from it when that column is added to a later one.</li>
+ * </ul>
+ * Thus the memory used is not bounded by the number of essential classes. While a dimension is
+ * reduced, the indices and diameters of all of its simplices, the columns that remain after clearing
+ * and apparent pairs, and one V column for every pair found in that dimension are held at once,
+ * together with the pivots of the previous dimension. Only the simplices of one dimension are
+ * enumerated at a time, and apart from those pivots only the barcodes are kept from the earlier
+ * dimensions.</p>
+ *
+ * <p>Since persistent cohomology and persistent homology have the same barcodes, this algorithm
+ * produces the same index intervals as the other absolute homology algorithms when applied to
+ * a FlexibleVietorisRipsStream. Note that the stream does not need to be finalized - in fact it is
+ * only used as a specification of the metric space, maximum distance, maximum dimension and
+ * filtration converter.</p>
+ *
+ * <p>For more information, consult the paper "Ripser: efficient computation of Vietoris-Rips
+ * persistence barcodes" by Ulrich Bauer.</p>
+ */
+public class ImplicitVietorisRipsHomology extends AbstractPersistenceAlgorithm<Simplex> {
+	/**
+	 * This stores the minimum dimension for which to compute homology.
+	 */
+	private final int minDimension;
+
+	/**
+	 * This stores the maximum dimension for which to compute homology.
+	 */
+	private final int maxDimension;
+
+	/**
+	 * This constructor initializes the algorithm with the maximum dimension to compute.
+	 *
+	 * @param maxDimension the maximum dimension to compute
+	 */
+	public ImplicitVietorisRipsHomology(int maxDimension) {
+		this(0, maxDimension);
+	}
+
+	/**
+	 * This constructor initializes the algorithm with the range of dimensions to compute.
+	 *
+	 * @param minDimension the minimum dimension to compute
+	 * @param maxDimension the maximum dimension to compute
+	 */
+	public ImplicitVietorisRipsHomology(int minDimension, int maxDimension) {
+		this.minDimension = minDimension;
+		this.maxDimension = maxDimension;
+	}
+
+	/**
+	 * This function computes the persistence index intervals of a Vietoris-Rips stream. The
+	 * supplied stream must be an instance of FlexibleVietorisRipsStream.
+	 *
+	 * @param stream the Vietoris-Rips stream
+	 * @return the persistence intervals of the given complex
+	 */
+	@Override
+	public BarcodeCollection<Integer> computeIndexIntervals(AbstractFilteredStream<Simplex> stream) {
+		if (!(stream instanceof FlexibleVietorisRipsStream)) {
+			throw new IllegalArgumentException("The implicit Vietoris-Rips algorithm requires a FlexibleVietorisRipsStream.");
+		}
+		FlexibleVietorisRipsStream<?> ripsStream = (FlexibleVietorisRipsStream<?>) stream;
+		return this.computeIndexIntervals(ripsStream.getMetricSpace(), ripsStream.getMaxDistance(), ripsStream.getMaxAllowableDimension(), ripsStream.getConverter());
+	}
+
+	/**
+	 * This function computes the persistence index intervals of the Vietoris-Rips complex on the given
+	 * metric space.
+	 *
+	 * @param metricSpace the metric space
+	 * @param maxDistance the maximum edge length
+	 * @param maxSimplexDimension the maximum dimension of the simplices in the complex
+	 * @param converter the converter from filtration values to filtration indices
+	 * @return the persistence intervals of the complex
+	 */
+	public <T> BarcodeCollection<Integer> computeIndexIntervals(AbstractSearchableMetricSpace<T> metricSpace, double maxDistance, int maxSimplexDimension, FiltrationConverter converter) {
+		// dimension k homology only requires the (k + 1)-skeleton
+		int complexDimension = Math.min(maxSimplexDimension, this.maxDimension);
+		if (complexDimension < 0) {
+			return new BarcodeCollection<Integer>();
+		}
+		ImplicitVietorisRipsComplex complex = new ImplicitVietorisRipsComplex(metricSpace, maxDistance, complexDimension, converter.getInitialFiltrationValue());
+		return this.computeIndexIntervals(complex, converter);
+	}
+
+	/**
+	 * This function computes the persistence index intervals of an implicitly represented
+	 * Vietoris-Rips complex.
+	 *
+	 * @param complex the complex
+	 * @param converter the converter from filtration values to filtration indices
+	 * @return the persistence intervals of the complex
+	 */
+	public BarcodeCollection<Integer> computeIndexIntervals(ImplicitVietorisRipsComplex complex, FiltrationConverter converter) {
+		return new Reduction(complex, converter).compute();
+	}
+
+	@Override
+	public String toString() {
+		return "ImplicitVietorisRipsHomology";
+	}
+
+	/**
+	 * This class holds the state of a single computation.
+	 */
+	private class Reduction {
+		private final ImplicitVietorisRipsComplex complex;
+		private final FiltrationConverter converter;
+		private final BarcodeCollection<Integer> barcodes = new BarcodeCollection<Integer>();
+
+		private final CoboundaryHeap workingCoboundary = new CoboundaryHeap();
+		private final SimplexBuffer cofacetBuffer = new SimplexBuffer();
+		private final SimplexBuffer facetBuffer = new SimplexBuffer();
+		private long[] workingReduction = new long[16];
+		private int workingReductionSize = 0;
+
+		Reduction(ImplicitVietorisRipsComplex complex, FiltrationConverter converter) {
+			this.complex = complex;
+			this.converter = converter;
+		}
+
+		BarcodeCollection<Integer> compute() {
+			int topDimension = Math.min(this.complex.getMaxDimension(), maxDimension - 1);
+			if (topDimension < 0) {
+				return this.barcodes;
+			}
+
+			SimplexBuffer simplices = new SimplexBuffer();
+			this.complex.getEdges(simplices);
+			TLongHashSet pivots = this.computeDimensionZero(simplices);
+
+			for (int dimension = 1; dimension <= topDimension; dimension++) {
+				if (dimension > 1) {
+					SimplexBuffer nextSimplices = new SimplexBuffer(simplices.size());
+					for (int i = 0; i < simplices.size(); i++) {
+						this.complex.appendUpperCofacets(simplices.getIndex(i), dimension - 1, simplices.getDiameter(i), nextSimplices);
+					}
+					simplices = nextSimplices;
+				}
+
+				SimplexBuffer columns = this.assembleColumns(simplices, pivots, dimension);
+				pivots = this.reduce(columns, dimension);
+			}
+
+			return this.barcodes;
+		}
+
+		/**
+		 * This function computes the dimension 0 intervals via union-find, and returns the
+		 * set of edges which merge components.
+		 */
+		private TLongHashSet computeDimensionZero(SimplexBuffer edges) {
+			int n = this.complex.getNumVertices();
+			int vertexIndex = this.converter.getFiltrationIndex(this.complex.getVertexValue());
+			TLongHashSet pivots = new TLongHashSet();
+			int[] parents = new int[n];
+			for (int i = 0; i < n; i++) {
+				parents[i] = i;
+			}
+			int[] vertices = new int[2];
+
+			edges.sortReverseFiltrationOrder();
+			for (int e = edges.size() - 1; e >= 0; e--) {
+				this.complex.getVertices(edges.getIndex(e), 1, vertices);
+				int u = find(parents, vertices[0]);
+				int v = find(parents, vertices[1]);
+				if (u == v) {
+					continue;
+				}
+				parents[Math.max(u, v)] = Math.min(u, v);
+				pivots.add(edges.getIndex(e));
+				int edgeIndex = this.converter.getFiltrationIndex(edges.getDiameter(e));
+				if (minDimension <= 0 && edgeIndex > vertexIndex) {
+					this.barcodes.addInterval(0, vertexIndex, edgeIndex);
+				}
+			}
+
+			if (minDimension <= 0) {
+				for (int i = 0; i < n; i++) {
+					if (find(parents, i) == i) {
+						this.barcodes.addRightInfiniteInterval(0, vertexIndex);
+					}
+				}
+			}
+
+			return pivots;
+		}
+
+		/**
+		 * This function selects the simplices of the given dimension that need to be reduced. It
+		 * skips the simplices that are already paired with a simplex of one dimension lower
+		 * (clearing), and the ones which form an apparent pair with one of their cofacets.
+		 */
+		private SimplexBuffer assembleColumns(SimplexBuffer simplices, TLongHashSet pivots, int dimension) {
+			SimplexBuffer columns = new SimplexBuffer();
+			for (int i = 0; i < simplices.size(); i++) {
+				long index = simplices.getIndex(i);
+				double diameter = simplices.getDiameter(i);
+				if (pivots.contains(index)) {
+					continue;
+				}
+				if (dimension > 1 && this.getZeroApparentFacet(index, diameter, dimension) >= 0) {
+					continue;
+				}
+				if (this.getZeroApparentCofacet(index, diameter, dimension) >= 0) {
+					continue;
+				}
+				columns.add(index, diameter);
+			}
+			columns.sortReverseFiltrationOrder();
+			return columns;
+		}
+
+		/**
+		 * This function reduces the coboundary matrix of the given dimension and returns the set of
+		 * pivots.
+		 */
+		private TLongHashSet reduce(SimplexBuffer columns, int dimension) {
+			TLongIntHashMap pivotColumnIndex = new TLongIntHashMap();
+			long[][] reductionMatrix = new long[columns.size()][];
+
+			for (int c = 0; c < columns.size(); c++) {
+				long index = columns.getIndex(c);
+				double diameter = columns.getDiameter(c);
+				int birth = this.converter.getFiltrationIndex(diameter);
+
+				this.workingCoboundary.clear();
+				this.workingReductionSize = 0;
+				this.addCoboundary(index, diameter, dimension);
+
+				while (true) {
+					if (!this.workingCoboundary.findPivot()) {
+						// the cocycle is never killed
+						if (dimension >= minDimension) {
+							this.barcodes.addRightInfiniteInterval(dimension, birth);
+						}
+						break;
+					}
+
+					long pivot = this.workingCoboundary.getTopIndex();
+					double pivotDiameter = this.workingCoboundary.getTopDiameter();
+
+					if (pivotColumnIndex.containsKey(pivot)) {
+						long[] otherColumn = reductionMatrix[pivotColumnIndex.get(pivot)];
+						for (long simplex: otherColumn) {
+							this.addCoboundary(simplex, this.complex.computeDiameter(simplex, dimension), dimension);
+						}
+						continue;
+					}
+
+					long apparentFacet = this.getZeroApparentFacet(pivot, pivotDiameter, dimension + 1);
+					if (apparentFacet >= 0) {
+						this.addCoboundary(apparentFacet, pivotDiameter, dimension);
+						continue;
+					}
+
+					pivotColumnIndex.put(pivot, c);
+					reductionMatrix[c] = this.getCanonicalWorkingReduction();
+					int death = this.converter.getFiltrationIndex(pivotDiameter);
+					if (dimension >= minDimension && death > birth) {
+						this.barcodes.addInterval(dimension, birth, death);
+					}
+					break;
+				}
+			}
+
+			return new TLongHashSet(pivotColumnIndex.keys());
+		}
+
+		private void addCoboundary(long index, double diameter, int dimension) {
+			if (this.workingReductionSize == this.workingReduction.length) {
+				this.workingReduction = Arrays.copyOf(this.workingReduction, 2 * this.workingReductionSize);
+			}
+			this.workingReduction[this.workingReductionSize++] = index;
+
+			this.complex.getCofacets(index, dimension, diameter, this.cofacetBuffer);
+			for (int i = 0; i < this.cofacetBuffer.size(); i++) {
+				this.workingCoboundary.push(this.cofacetBuffer.getIndex(i), this.cofacetBuffer.getDiameter(i));
+			}
+		}
+
+		/**
+		 * This function returns the working reduction column with duplicate entries cancelled (mod 2).
+		 */
+		private long[] getCanonicalWorkingReduction() {
+			Arrays.sort(this.workingReduction, 0, this.workingReductionSize);
+			int size = 0;
+			for (int i = 0; i < this.workingReductionSize; i++) {
+				if (i + 1 < this.workingReductionSize && this.workingReduction[i] == this.workingReduction[i + 1]) {
+					i++;
+				} else {
+					this.workingReduction[size++] = this.workingReduction[i];
+				}
+			}
+			return Arrays.copyOf(this.workingReduction, size);
+		}
+
+		/**
+		 * This function returns the index of the cofacet tau of the given simplex such that
+		 * (simplex, tau) is an apparent pair of persistence zero, or -1 if there is no such cofacet.
+		 */
+		private long getZeroApparentCofacet(long index, double diameter, int dimension) {
+			long cofacet = this.getEarliestCofacet(index, diameter, dimension);
+			if (cofacet < 0) {
+				return -1;
+			}
+			return (this.getLatestFacet(cofacet, diameter, dimension + 1) == index ? cofacet : -1);
+		}
+
+		/**
+		 * This function returns the index of the facet sigma of the given simplex such that
+		 * (sigma, simplex) is an apparent pair of persistence zero, or -1 if there is no such facet.
+		 */
+		private long getZeroApparentFacet(long index, double diameter, int dimension) {
+			long facet = this.getLatestFacet(index, diameter, dimension);
+			if (facet < 0) {
+				return -1;
+			}
+			return (this.getEarliestCofacet(facet, diameter, dimension - 1) == index ? facet : -1);
+		}
+
+		/**
+		 * This function returns the earliest cofacet of the given simplex, if it has the same
+		 * diameter as the simplex, and -1 otherwise.
+		 */
+		private long getEarliestCofacet(long index, double diameter, int dimension) {
+			this.complex.getCofacets(index, dimension, diameter, this.cofacetBuffer);
+			long earliest = -1;
+			for (int i = 0; i < this.cofacetBuffer.size(); i++) {
+				if (this.cofacetBuffer.getDiameter(i) == diameter && this.cofacetBuffer.getIndex(i) > earliest) {
+					earliest = this.cofacetBuffer.getIndex(i);
+				}
+			}
+			return earliest;
+		}
+
+		/**
+		 * This function returns the latest facet of the given simplex, if it has the same
+		 * diameter as the simplex, and -1 otherwise.
+		 */
+		private long getLatestFacet(long index, double diameter, int dimension) {
+			this.complex.getFacets(index, dimension, this.facetBuffer);
+			long latest = -1;
+			for (int i = 0; i < this.facetBuffer.size(); i++) {
+				if (this.facetBuffer.getDiameter(i) == diameter && (latest < 0 || this.facetBuffer.getIndex(i) < latest)) {
+					latest = this.facetBuffer.getIndex(i);
+				}
+			}
+			return latest;
+		}
+	}
+
+	private static int find(int[] parents, int i) {
+		int root = i;
+		while (parents[root] != root) {
+			root = parents[root];
+		}
+		while (parents[i] != root) {
+			int next = parents[i];
+			parents[i] = root;
+			i = next;
+		}
+		return root;
+	}
+
+	/**
+	 * This class implements a binary min-heap of (index, diameter) pairs with respect to the
+	 * filtration order. It is used to represent a coboundary column over Z/2Z, where additions
+	 * are simply pushes, and pairs of equal entries cancel when the pivot is extracted.
+	 */
+	private static class CoboundaryHeap {
+		private long[] indices = new long[64];
+		private double[] diameters = new double[64];
+		private int size = 0;
+
+		void clear() {
+			this.size = 0;
+		}
+
+		void push(long index, double diameter) {
+			if (this.size == this.indices.length) {
+				this.indices = Arrays.copyOf(this.indices, 2 * this.size);
+				this.diameters = Arrays.copyOf(this.diameters, 2 * this.size);
+			}
+			int i = this.size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!ImplicitVietorisRipsComplex.precedes(diameter, index, this.diameters[parent], this.indices[parent])) {
+					break;
+				}
+				this.indices[i] = this.indices[parent];
+				this.diameters[i] = this.diameters[parent];
+				i = parent;
+			}
+			this.indices[i] = index;
+			this.diameters[i] = diameter;
+		}
+
+		void pop() {
+			this.size--;
+			if (this.size == 0) {
+				return;
+			}
+			long index = this.indices[this.size];
+			double diameter = this.diameters[this.size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && ImplicitVietorisRipsComplex.precedes(this.diameters[child + 1], this.indices[child + 1], this.diameters[child], this.indices[child])) {
+					child++;
+				}
+				if (!ImplicitVietorisRipsComplex.precedes(this.diameters[child], this.indices[child], diameter, index)) {
+					break;
+				}
+				this.indices[i] = this.indices[child];
+				this.diameters[i] = this.diameters[child];
+				i = child;
+			}
+			this.indices[i] = index;
+			this.diameters[i] = diameter;
+		}
+
+		/**
+		 * This function cancels pairs of equal entries at the top of the heap until the top entry
+		 * has a non-zero coefficient. It returns false if the column is zero.
+		 */
+		boolean findPivot() {
+			while (this.size > 0) {
+				long index = this.indices[0];
+				double diameter = this.diameters[0];
+				this.pop();
+				if (this.size > 0 && this.indices[0] == index) {
+					this.pop();
+				} else {
+					this.push(index, diameter);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		long getTopIndex() {
+			return this.indices[0];
+		}
+
+		double getTopDiameter() {
+			return this.diameters[0];
+		}
+	}
+}
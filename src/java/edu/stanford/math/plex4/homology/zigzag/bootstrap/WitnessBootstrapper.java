@@ -3,6 +3,8 @@ package edu.stanford.math.plex4.homology.zigzag.bootstrap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import edu.stanford.math.plex4.homology.barcodes.AnnotatedBarcodeCollection;
 import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
@@ -13,6 +15,7 @@ import edu.stanford.math.plex4.homology.chain_basis.SimplexPairComparator;
 import edu.stanford.math.plex4.homology.zigzag.IntervalTracker;
 import edu.stanford.math.plex4.homology.zigzag.SimpleHomologyBasisTracker;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.LandmarkDistanceCache;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.metric.landmark.RandomLandmarkSelector;
 import edu.stanford.math.plex4.streams.impl.WitnessBicomplex;
@@ -32,6 +35,12 @@ public class WitnessBootstrapper<T> {
 	protected final int maxDimension;
 	protected final double maxDistance;
 
+	/**
+	 * The landmark-witness distances of each selection, which are shared by all
+	 * streams built on the selection. Selections which are replaced are dropped.
+	 */
+	protected final Map<LandmarkSelector<T>, LandmarkDistanceCache<T>> distanceCaches = new WeakHashMap<LandmarkSelector<T>, LandmarkDistanceCache<T>>();
+
 	public WitnessBootstrapper(AbstractSearchableMetricSpace<T> metricSpace, List<LandmarkSelector<T>> indexSelections, int maxDimension, double maxDistance) {
 		this.metricSpace = metricSpace;
 		this.indexSelections = indexSelections;
@@ -62,7 +71,7 @@ public class WitnessBootstrapper<T> {
 	}
 	
 	public BarcodeCollection<Integer> performProjectionBootstrap(int[] expectedBettiNumbers) {
-		WitnessStream<T> X_stream = new WitnessStream<T>(this.metricSpace, indexSelections.get(0), maxDimension + 1, maxDistance, indexSelections.get(0).getLandmarkPoints());
+		WitnessStream<T> X_stream = this.createWitnessStream(indexSelections.get(0));
 		X_stream.setPlex3Compatbility(false);
 		X_stream.finalizeStream();
 
@@ -88,7 +97,7 @@ public class WitnessBootstrapper<T> {
 				
 				if (expectedBettiNumbers != null && !Arrays.equals(XBarcodes.getBettiSequence(), expectedBettiNumbers)) {
 					this.indexSelections.set(0, new RandomLandmarkSelector<T>(metricSpace, this.indexSelections.get(0).getLandmarkPoints().length));
-					X_stream = new WitnessStream<T>(this.metricSpace, indexSelections.get(0), maxDimension + 1, maxDistance, indexSelections.get(0).getLandmarkPoints());
+					X_stream = this.createWitnessStream(indexSelections.get(0));
 					j--;
 					continue;
 				}
@@ -101,7 +110,7 @@ public class WitnessBootstrapper<T> {
 				boolean found = false;
 				
 				while (!found) {
-					Y_stream = new WitnessStream<T>(this.metricSpace, indexSelections.get(j), maxDimension + 1, maxDistance, indexSelections.get(j).getLandmarkPoints());
+					Y_stream = this.createWitnessStream(indexSelections.get(j));
 					Y_stream.setPlex3Compatbility(false);
 					Y_stream.finalizeStream();
 
@@ -123,7 +132,7 @@ public class WitnessBootstrapper<T> {
 					}
 				}
 			} else {
-				Y_stream = new WitnessStream<T>(this.metricSpace, indexSelections.get(j), maxDimension + 1, maxDistance, indexSelections.get(j).getLandmarkPoints());
+				Y_stream = this.createWitnessStream(indexSelections.get(j));
 				Y_stream.setPlex3Compatbility(false);
 				Y_stream.finalizeStream();
 
@@ -174,6 +183,17 @@ public class WitnessBootstrapper<T> {
 		
 		return BarcodeCollection.forgetGeneratorType(result.getAnnotatedBarcodes().filterByMaxDimension(maxDimension));
 	}
+
+	protected WitnessStream<T> createWitnessStream(LandmarkSelector<T> selector) {
+		LandmarkDistanceCache<T> distanceCache = this.distanceCaches.get(selector);
+		if (distanceCache == null) {
+			distanceCache = new LandmarkDistanceCache<T>(this.metricSpace, selector);
+			this.distanceCaches.put(selector, distanceCache);
+		}
+		WitnessStream<T> stream = new WitnessStream<T>(this.metricSpace, selector, maxDimension + 1, maxDistance, selector.getLandmarkPoints());
+		stream.setDistanceCache(distanceCache);
+		return stream;
+	}
 	
 	
 }
@@ -0,0 +1,297 @@
+package edu.stanford.math.plex4.io;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>This class reads and writes point clouds in a binary format which can be memory-mapped,
+ * for example by MappedEuclideanMetricSpace. All values are stored in little-endian byte order.
+ * The file starts with a header of HEADER_SIZE bytes:
+ * <ul>
+ * <li>the int MAGIC_NUMBER</li>
+ * <li>the int VERSION</li>
+ * <li>the number of bytes per coordinate as an int, which is 8 for double precision and 4 for single precision</li>
+ * <li>the dimension d of the points as an int</li>
+ * <li>the number n of points as a long</li>
+ * <li>a long which is reserved and set to 0</li>
+ * </ul>
+ * The header is followed by the n * d coordinates of the points in row-major order.</p>
+ *
+ * <p>The function convertCSVFile converts a CSV file, in the format read by FileIOUtility.readNumericCSVFile,
+ * without holding the points in memory, so it can be used for point clouds larger than the heap.</p>
+ *
+ */
+public class BinaryPointCloudReaderWriter implements ObjectReader<double[][]>, ObjectWriter<double[][]> {
+	public static final int MAGIC_NUMBER = 0x504C5843;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final BinaryPointCloudReaderWriter instance = new BinaryPointCloudReaderWriter();
+
+	private BinaryPointCloudReaderWriter() {}
+
+	public static BinaryPointCloudReaderWriter getInstance() {
+		return instance;
+	}
+
+	/**
+	 * This class holds the contents of the header of a binary point cloud file.
+	 */
+	public static class Header {
+		private final int bytesPerCoordinate;
+		private final int dimension;
+		private final long size;
+
+		public Header(int bytesPerCoordinate, int dimension, long size) {
+			this.bytesPerCoordinate = bytesPerCoordinate;
+			this.dimension = dimension;
+			this.size = size;
+		}
+
+		/**
+		 * @return the number of bytes per coordinate, which is 4 or 8
+		 */
+		public int getBytesPerCoordinate() {
+			return this.bytesPerCoordinate;
+		}
+
+		/**
+		 * @return the dimension of the points
+		 */
+		public int getDimension() {
+			return this.dimension;
+		}
+
+		/**
+		 * @return the number of points
+		 */
+		public long getSize() {
+			return this.size;
+		}
+	}
+
+	/**
+	 * This function reads and validates the header of a binary point cloud file.
+	 *
+	 * @param channel the channel to read from
+	 * @return the header of the file
+	 * @throws IOException if the file is not a valid binary point cloud file
+	 */
+	public static Header readHeader(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0) {
+				throw new IOException("The file is too short to contain a point cloud header.");
+			}
+		}
+		buffer.flip();
+		if (buffer.getInt() != MAGIC_NUMBER) {
+			throw new IOException("The file is not a binary point cloud file.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported point cloud file version: " + version);
+		}
+		int bytesPerCoordinate = buffer.getInt();
+		int dimension = buffer.getInt();
+		long size = buffer.getLong();
+		if ((bytesPerCoordinate != 4 && bytesPerCoordinate != 8) || dimension <= 0 || size < 0) {
+			throw new IOException("Invalid point cloud header.");
+		}
+		if (channel.size() < HEADER_SIZE + size * dimension * bytesPerCoordinate) {
+			throw new IOException("The file is too short for " + size + " points of dimension " + dimension + ".");
+		}
+		return new Header(bytesPerCoordinate, dimension, size);
+	}
+
+	private static void writeHeader(FileChannel channel, Header header) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC_NUMBER);
+		buffer.putInt(VERSION);
+		buffer.putInt(header.getBytesPerCoordinate());
+		buffer.putInt(header.getDimension());
+		buffer.putLong(header.getSize());
+		buffer.putLong(0);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, buffer.position());
+		}
+	}
+
+	/**
+	 * This class writes the coordinates of points to a file channel through a buffer.
+	 */
+	private static class PointWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final boolean singlePrecision;
+		private long position = HEADER_SIZE;
+
+		PointWriter(FileChannel channel, boolean singlePrecision) {
+			this.channel = channel;
+			this.singlePrecision = singlePrecision;
+		}
+
+		void write(double[] point) throws IOException {
+			for (double value : point) {
+				if (this.buffer.remaining() < 8) {
+					this.flush();
+				}
+				if (this.singlePrecision) {
+					this.buffer.putFloat((float) value);
+				} else {
+					this.buffer.putDouble(value);
+				}
+			}
+		}
+
+		void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.position += this.channel.write(this.buffer, this.position);
+			}
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * This function writes the points to a binary point cloud file.
+	 *
+	 * @param points the points, stored as rows
+	 * @param path the file to write to
+	 * @param singlePrecision true if the coordinates are to be stored as floats
+	 * @throws IOException
+	 */
+	public void writeToFile(double[][] points, String path, boolean singlePrecision) throws IOException {
+		int dimension = (points.length > 0 ? points[0].length : 1);
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			PointWriter writer = new PointWriter(channel, singlePrecision);
+			for (double[] point : points) {
+				if (point.length != dimension) {
+					throw new IllegalArgumentException("All points must have the same dimension.");
+				}
+				writer.write(point);
+			}
+			writer.flush();
+			writeHeader(channel, new Header(singlePrecision ? 4 : 8, dimension, points.length));
+		} finally {
+			file.close();
+		}
+	}
+
+	public void writeToFile(double[][] points, String path) throws IOException {
+		this.writeToFile(points, path, false);
+	}
+
+	public double[][] importFromFile(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			Header header = readHeader(channel);
+			if (header.getSize() > Integer.MAX_VALUE) {
+				throw new IOException("The point cloud is too large to be loaded into an array.");
+			}
+			double[][] points = new double[(int) header.getSize()][header.getDimension()];
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long position = HEADER_SIZE;
+			buffer.flip();
+			for (double[] point : points) {
+				for (int j = 0; j < point.length; j++) {
+					if (buffer.remaining() < header.getBytesPerCoordinate()) {
+						position = refill(channel, buffer, position, header.getBytesPerCoordinate());
+					}
+					point[j] = (header.getBytesPerCoordinate() == 4 ? buffer.getFloat() : buffer.getDouble());
+				}
+			}
+			return points;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * This function reads from the channel into the buffer until it contains at least the
+	 * given number of bytes, and returns the new position in the file.
+	 */
+	private static long refill(FileChannel channel, ByteBuffer buffer, long position, int minimumBytes) throws IOException {
+		buffer.compact();
+		while (buffer.position() < minimumBytes) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+			position += read;
+		}
+		buffer.flip();
+		return position;
+	}
+
+	public String getExtension() {
+		return "pts";
+	}
+
+	/**
+	 * This function converts a numeric CSV file into a binary point cloud file. Each non-empty line
+	 * of the input contains the coordinates of one point. The lines are processed one at a time, so
+	 * the points are never all held in memory.
+	 *
+	 * @param csvPath the CSV file to read
+	 * @param separator the regular expression separating the values on a line
+	 * @param path the binary file to write
+	 * @param singlePrecision true if the coordinates are to be stored as floats
+	 * @return the number of points written
+	 * @throws IOException if the files cannot be accessed, or the lines have different numbers of values
+	 */
+	public static long convertCSVFile(String csvPath, String separator, String path, boolean singlePrecision) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(csvPath));
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(path, "rw");
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			PointWriter writer = new PointWriter(channel, singlePrecision);
+
+			int dimension = -1;
+			long size = 0;
+			long lineNumber = 0;
+			String line = null;
+			double[] point = null;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				String[] entries = line.split(separator);
+				if (dimension < 0) {
+					dimension = entries.length;
+					point = new double[dimension];
+				} else if (entries.length != dimension) {
+					throw new IOException("Line " + lineNumber + " contains " + entries.length + " values instead of " + dimension + ".");
+				}
+				for (int j = 0; j < dimension; j++) {
+					point[j] = Double.parseDouble(entries[j]);
+				}
+				writer.write(point);
+				size++;
+			}
+			writer.flush();
+			writeHeader(channel, new Header(singlePrecision ? 4 : 8, Math.max(dimension, 1), size));
+			return size;
+		} finally {
+			reader.close();
+			if (file != null) {
+				file.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package edu.stanford.math.plex4.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.streams.impl.MappedSimplexStream;
+import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import edu.stanford.math.plex4.streams.storage_structures.MappedSimplexStorageStructure;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+
+/**
+ * <p>This class reads and writes simplex streams in a binary format which can be memory-mapped,
+ * for example by MappedSimplexStream. All values are stored in little-endian byte order. The file
+ * starts with a header of HEADER_SIZE bytes:
+ * <ul>
+ * <li>the int MAGIC_NUMBER</li>
+ * <li>the int VERSION</li>
+ * <li>the number n of simplices as a long</li>
+ * <li>the number b of blocks as an int, which is the maximum dimension plus one</li>
+ * <li>the number m of filtration indices as an int</li>
+ * <li>a long which is reserved and set to 0</li>
+ * </ul>
+ * The header is followed by the number of simplices of each dimension 0, ..., b - 1 as b longs, by
+ * the m distinct filtration indices of the stream in increasing order as ints, and by their filtration
+ * values as m doubles. The rest of the file consists of one block for each dimension d, which contains
+ * a record of d + 2 ints for each simplex of dimension d: its filtration index followed by its
+ * vertices in increasing order. The records are in the order of the stream.</p>
+ *
+ * <p>Writing iterates over the stream twice, once to compute the sizes of the blocks and once to fill
+ * them, so the stream is never copied. Since a block is indexed by a hash table when it is mapped, it
+ * may contain at most MappedSimplexStorageStructure.MAX_BLOCK_SIZE simplices. Importing a file maps it
+ * into a read-only MappedSimplexStream.</p>
+ *
+ */
+public class BinarySimplexStreamReaderWriter implements ObjectReader<AbstractFilteredStream<Simplex>>, ObjectWriter<AbstractFilteredStream<Simplex>> {
+	public static final int MAGIC_NUMBER = 0x504C5853;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final BinarySimplexStreamReaderWriter instance = new BinarySimplexStreamReaderWriter();
+
+	private BinarySimplexStreamReaderWriter() {}
+
+	public static BinarySimplexStreamReaderWriter getInstance() {
+		return instance;
+	}
+
+	/**
+	 * This class holds the contents of the header of a binary simplex stream file, including the
+	 * block sizes and the filtration values.
+	 */
+	public static class Header {
+		private final long size;
+		private final long[] blockSizes;
+		private final int[] filtrationIndices;
+		private final double[] filtrationValues;
+
+		public Header(long[] blockSizes, int[] filtrationIndices, double[] filtrationValues) {
+			long totalSize = 0;
+			for (long blockSize : blockSizes) {
+				totalSize += blockSize;
+			}
+			this.size = totalSize;
+			this.blockSizes = blockSizes;
+			this.filtrationIndices = filtrationIndices;
+			this.filtrationValues = filtrationValues;
+		}
+
+		/**
+		 * @return the number of simplices
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * @return the number of blocks, which is the maximum dimension plus one
+		 */
+		public int getNumBlocks() {
+			return this.blockSizes.length;
+		}
+
+		/**
+		 * @param dimension the dimension of the block
+		 * @return the number of simplices of the given dimension
+		 */
+		public long getBlockSize(int dimension) {
+			return this.blockSizes[dimension];
+		}
+
+		/**
+		 * @param dimension the dimension of the block
+		 * @return the position of the block of the given dimension in the file
+		 */
+		public long getBlockOffset(int dimension) {
+			long offset = HEADER_SIZE + 8L * this.blockSizes.length + 12L * this.filtrationIndices.length;
+			for (int d = 0; d < dimension; d++) {
+				offset += getRecordSize(d) * this.blockSizes[d];
+			}
+			return offset;
+		}
+
+		/**
+		 * @return the distinct filtration indices of the simplices, in increasing order
+		 */
+		public int[] getFiltrationIndices() {
+			return this.filtrationIndices;
+		}
+
+		/**
+		 * @return the filtration values of the filtration indices
+		 */
+		public double[] getFiltrationValues() {
+			return this.filtrationValues;
+		}
+	}
+
+	/**
+	 * This function returns the number of bytes of a record for a simplex of the given dimension.
+	 *
+	 * @param dimension the dimension of the simplex
+	 * @return the size of the record in bytes
+	 */
+	public static long getRecordSize(int dimension) {
+		return 4L * (dimension + 2);
+	}
+
+	/**
+	 * This function reads and validates the header of a binary simplex stream file.
+	 *
+	 * @param channel the channel to read from
+	 * @return the header of the file
+	 * @throws IOException if the file is not a valid binary simplex stream file
+	 */
+	public static Header readHeader(FileChannel channel) throws IOException {
+		ByteBuffer buffer = read(channel, 0, HEADER_SIZE);
+		if (buffer.getInt() != MAGIC_NUMBER) {
+			throw new IOException("The file is not a binary simplex stream file.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported simplex stream file version: " + version);
+		}
+		long size = buffer.getLong();
+		int numBlocks = buffer.getInt();
+		int numFiltrationIndices = buffer.getInt();
+		if (size < 0 || numBlocks < 0 || numFiltrationIndices < 0 || (size == 0) != (numFiltrationIndices == 0)) {
+			throw new IOException("Invalid simplex stream header.");
+		}
+
+		long tableBytes = 8L * numBlocks + 12L * numFiltrationIndices;
+		if (tableBytes > Integer.MAX_VALUE - HEADER_SIZE) {
+			throw new IOException("The simplex stream tables are too large: " + tableBytes + " bytes.");
+		}
+		if (HEADER_SIZE + tableBytes > channel.size()) {
+			throw new IOException("The file is too short to contain the simplex stream tables.");
+		}
+		buffer = read(channel, HEADER_SIZE, (int) tableBytes);
+		long[] blockSizes = new long[numBlocks];
+		for (int d = 0; d < numBlocks; d++) {
+			blockSizes[d] = buffer.getLong();
+			if (blockSizes[d] < 0) {
+				throw new IOException("Invalid block size for dimension " + d + ": " + blockSizes[d]);
+			}
+		}
+		int[] filtrationIndices = new int[numFiltrationIndices];
+		double[] filtrationValues = new double[numFiltrationIndices];
+		for (int i = 0; i < numFiltrationIndices; i++) {
+			filtrationIndices[i] = buffer.getInt();
+			if (i > 0 && filtrationIndices[i] <= filtrationIndices[i - 1]) {
+				throw new IOException("The filtration indices are not increasing.");
+			}
+		}
+		for (int i = 0; i < numFiltrationIndices; i++) {
+			filtrationValues[i] = buffer.getDouble();
+		}
+
+		Header header = new Header(blockSizes, filtrationIndices, filtrationValues);
+		if (header.getSize() != size) {
+			throw new IOException("The block sizes do not add up to " + size + " simplices.");
+		}
+		if (channel.size() < header.getBlockOffset(numBlocks)) {
+			throw new IOException("The file is too short for " + size + " simplices.");
+		}
+		return header;
+	}
+
+	/**
+	 * This function reads the given number of bytes at the given position of the channel.
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("The file is too short to contain a simplex stream header.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This class writes values to a file channel from a given position through a buffer.
+	 */
+	private static class ChannelWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private long position;
+
+		ChannelWriter(FileChannel channel, long position) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = position;
+		}
+
+		void putInt(int value) throws IOException {
+			if (this.buffer.remaining() < 4) {
+				this.flush();
+			}
+			this.buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			if (this.buffer.remaining() < 8) {
+				this.flush();
+			}
+			this.buffer.putLong(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			if (this.buffer.remaining() < 8) {
+				this.flush();
+			}
+			this.buffer.putDouble(value);
+		}
+
+		void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.position += this.channel.write(this.buffer, this.position);
+			}
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * This function writes the stream to a binary simplex stream file. The stream is finalized
+	 * if necessary.
+	 *
+	 * @param stream the stream to write
+	 * @param path the file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeToFile(AbstractFilteredStream<Simplex> stream, String path) throws IOException {
+		if (!stream.isFinalized()) {
+			stream.finalizeStream();
+		}
+
+		// compute the block sizes and the filtration values of the distinct indices
+		long[] blockSizes = new long[0];
+		TIntArrayList filtrationIndices = new TIntArrayList();
+		TDoubleArrayList filtrationValues = new TDoubleArrayList();
+		for (Simplex simplex : stream) {
+			int dimension = simplex.getDimension();
+			if (dimension >= blockSizes.length) {
+				blockSizes = Arrays.copyOf(blockSizes, dimension + 1);
+			}
+			blockSizes[dimension]++;
+			if (blockSizes[dimension] > MappedSimplexStorageStructure.MAX_BLOCK_SIZE) {
+				throw new IllegalArgumentException("The stream contains more than " + MappedSimplexStorageStructure.MAX_BLOCK_SIZE + " simplices of dimension " + dimension + ".");
+			}
+
+			int filtrationIndex = stream.getFiltrationIndex(simplex);
+			if (filtrationIndices.isEmpty() || filtrationIndex > filtrationIndices.get(filtrationIndices.size() - 1)) {
+				filtrationIndices.add(filtrationIndex);
+				filtrationValues.add(stream.getFiltrationValue(simplex));
+			} else if (filtrationIndex < filtrationIndices.get(filtrationIndices.size() - 1)) {
+				throw new IllegalArgumentException("The stream is not in increasing order of filtration index.");
+			}
+		}
+		Header header = new Header(blockSizes, filtrationIndices.toNativeArray(), filtrationValues.toNativeArray());
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+
+			ChannelWriter headerWriter = new ChannelWriter(channel, 0);
+			headerWriter.putInt(MAGIC_NUMBER);
+			headerWriter.putInt(VERSION);
+			headerWriter.putLong(header.getSize());
+			headerWriter.putInt(header.getNumBlocks());
+			headerWriter.putInt(header.getFiltrationIndices().length);
+			headerWriter.putLong(0);
+			for (int d = 0; d < header.getNumBlocks(); d++) {
+				headerWriter.putLong(header.getBlockSize(d));
+			}
+			for (int filtrationIndex : header.getFiltrationIndices()) {
+				headerWriter.putInt(filtrationIndex);
+			}
+			for (double filtrationValue : header.getFiltrationValues()) {
+				headerWriter.putDouble(filtrationValue);
+			}
+			headerWriter.flush();
+
+			// each block is filled through its own buffer
+			ChannelWriter[] blockWriters = new ChannelWriter[header.getNumBlocks()];
+			for (int d = 0; d < blockWriters.length; d++) {
+				blockWriters[d] = new ChannelWriter(channel, header.getBlockOffset(d));
+			}
+			for (Simplex simplex : stream) {
+				ChannelWriter writer = blockWriters[simplex.getDimension()];
+				writer.putInt(stream.getFiltrationIndex(simplex));
+				for (int vertex : simplex.getVertices()) {
+					writer.putInt(vertex);
+				}
+			}
+			for (ChannelWriter writer : blockWriters) {
+				writer.flush();
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * This function maps the given file into a read-only stream.
+	 *
+	 * @param path the file to map
+	 * @return the stream contained in the file
+	 * @throws IOException if the file cannot be read or is not a valid simplex stream file
+	 */
+	public AbstractFilteredStream<Simplex> importFromFile(String path) throws IOException {
+		return new MappedSimplexStream(path);
+	}
+
+	public String getExtension() {
+		return "sxs";
+	}
+}
@@ -47,8 +47,6 @@ public class SimplexStreamReaderWriter implements ObjectReader<AbstractFilteredS
 				stream.addElement(vertices, filtrationIndex);
 			}
 
-		} catch (IOException e) {
-			e.printStackTrace();
 		} finally {
 			// close the reader if necessary
 			if (reader != null) {
@@ -76,8 +74,6 @@ public class SimplexStreamReaderWriter implements ObjectReader<AbstractFilteredS
 				}
 				writer.newLine();
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		} finally {
 			if (writer != null) {
 				writer.close();
@@ -1,57 +1,158 @@
 package edu.stanford.math.plex4.kd;
 
-import edu.stanford.math.plex4.metric.impl.ObjectSearchableFiniteMetricSpace;
-import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.plex4.utility.ParallelUtility;
 import edu.stanford.math.primitivelib.utility.Infinity;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 
 /**
  * This class implements the AbstractSearchableMetricSpace interface for providing query functions
  * for a Euclidean metric space. The underlying search operations are performed with the help of a KD-tree.
  * 
+ * <p>The distances are computed exactly as in EuclideanMetricSpace, and the queries return the same
+ * results as the linear scans of that class. In particular, the k-nearest neighbors of a point of the
+ * space do not include the point itself, and ties are broken in favor of smaller indices.</p>
+ * 
+ * <p>Since the tree is not modified after construction, queries may be performed concurrently. The
+ * batched query functions use this to distribute a set of query points among several threads.</p>
+ * 
  * @author Andrew Tausz
  *
  */
-public class KDEuclideanMetricSpace extends ObjectSearchableFiniteMetricSpace<double[]> {
+public class KDEuclideanMetricSpace extends EuclideanMetricSpace {
 	private final KDTree tree;
 	private final int dimension;
 	
 	public KDEuclideanMetricSpace(double[][] dataPoints) {
-		super(dataPoints);
-		this.tree = new KDTree(dataPoints);
-		this.dimension = dataPoints[0].length;
+		this(dataPoints, 1);
 	}
 	
-	public double[][] getPoints() {
-		return this.elements;
+	/**
+	 * This constructor initializes the metric space, and constructs the KD-tree on
+	 * the given number of threads.
+	 * 
+	 * @param dataPoints the points, stored as rows
+	 * @param numThreads the number of threads to use for the construction of the tree
+	 */
+	public KDEuclideanMetricSpace(double[][] dataPoints, int numThreads) {
+		super(dataPoints);
+		this.tree = new KDTree(dataPoints, KDTree.DEFAULT_BUCKET_SIZE, numThreads);
+		this.dimension = dataPoints[0].length;
 	}
 
+	@Override
 	public int getNearestPointIndex(double[] queryPoint) {
 		return this.tree.nearestNeighborSearch(queryPoint);
 	}
 
+	@Override
+	public TIntHashSet getKNearestNeighbors(double[] queryPoint, int k) {
+		return new TIntHashSet(this.tree.kNearestNeighborSearch(queryPoint, k, queryPoint));
+	}
+
+	@Override
 	public TIntHashSet getOpenNeighborhood(double[] queryPoint, double epsilon) {
 		return this.tree.epsilonNeighborhoodSearch(queryPoint, epsilon, true);
 	}
 	
+	@Override
 	public TIntHashSet getClosedNeighborhood(double[] queryPoint, double epsilon) {
 		return this.tree.epsilonNeighborhoodSearch(queryPoint, epsilon, false);
 	}
 
-	public int size() {
-		return elements.length;
+	@Override
+	public int[] getKNearestNeighbors(int index, int k) {
+		return this.tree.kNearestNeighborSearch(index, k);
 	}
 
-	public double distance(double[] a, double[] b) {
-		return Math.sqrt(DoubleArrayMath.squaredDistance(a, b));
+	@Override
+	public void getClosedLowerNeighborhood(int index, double epsilon, TIntArrayList indices, TDoubleArrayList distances) {
+		ExceptionUtility.verifyIndex(this.elements.length, index);
+		this.tree.epsilonNeighborhoodSearch(this.elements[index], epsilon, index, indices, distances);
 	}
 
-	public double[] getPoint(int index) {
-		return this.elements[index];
+	/**
+	 * This function returns the indices of the k nearest neighbors of the query point, ordered
+	 * by increasing distance. As with getKNearestNeighbors, the query point itself is excluded.
+	 * 
+	 * @param queryPoint the point to find the closest points to
+	 * @param k the number of neighbors to find
+	 * @return the indices of the k nearest points, in order of increasing distance
+	 */
+	public int[] getOrderedKNearestNeighbors(double[] queryPoint, int k) {
+		return this.tree.kNearestNeighborSearch(queryPoint, k, queryPoint);
 	}
 
-	public double distance(int i, int j) {
-		return this.distance(this.getPoint(i), this.getPoint(j));
+	/**
+	 * This function computes the closed neighborhoods of a set of query points. The queries
+	 * are partitioned among the given number of threads.
+	 * 
+	 * @param queryPoints the centers of the balls to query
+	 * @param epsilon the radius of the balls
+	 * @param numThreads the number of threads to use
+	 * @return an array containing the closed neighborhood of each query point
+	 */
+	public TIntHashSet[] getClosedNeighborhoods(final double[][] queryPoints, final double epsilon, int numThreads) {
+		final TIntHashSet[] neighborhoods = new TIntHashSet[queryPoints.length];
+		this.runQueries(queryPoints.length, numThreads, new Query() {
+			public void run(int i) {
+				neighborhoods[i] = getClosedNeighborhood(queryPoints[i], epsilon);
+			}
+		});
+		return neighborhoods;
+	}
+
+	/**
+	 * This function computes the k nearest neighbors of a set of query points, each ordered by
+	 * increasing distance. The queries are partitioned among the given number of threads.
+	 * 
+	 * @param queryPoints the points to find the closest points to
+	 * @param k the number of neighbors to find
+	 * @param numThreads the number of threads to use
+	 * @return an array containing the ordered k nearest neighbors of each query point
+	 */
+	public int[][] getOrderedKNearestNeighbors(final double[][] queryPoints, final int k, int numThreads) {
+		final int[][] neighbors = new int[queryPoints.length][];
+		this.runQueries(queryPoints.length, numThreads, new Query() {
+			public void run(int i) {
+				neighbors[i] = getOrderedKNearestNeighbors(queryPoints[i], k);
+			}
+		});
+		return neighbors;
+	}
+
+	/**
+	 * This interface represents the query of a single point in a batch.
+	 */
+	private interface Query {
+		void run(int i);
+	}
+
+	/**
+	 * This function runs the queries 0, ..., n - 1, partitioned in a round-robin fashion
+	 * among the given number of threads.
+	 */
+	private void runQueries(final int n, int numThreads, final Query query) {
+		int numTasks = Math.max(1, Math.min(numThreads, n));
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int t = 0; t < numTasks; t++) {
+			final int offset = t;
+			final int stride = numTasks;
+			tasks.add(new Runnable() {
+				public void run() {
+					for (int i = offset; i < n; i += stride) {
+						query.run(i);
+					}
+				}
+			});
+		}
+		ParallelUtility.runTasks(tasks, numThreads);
 	}
 	
 	public double[] getMaximumCoordinates() {
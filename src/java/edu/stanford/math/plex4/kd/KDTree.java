@@ -1,306 +1,520 @@
 package edu.stanford.math.plex4.kd;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
+import edu.stanford.math.plex4.metric.impl.KNearestNeighborQueue;
 import edu.stanford.math.plex4.utility.ExceptionUtility;
-import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
-import edu.stanford.math.primitivelib.autogen.array.IntArrayGeneration;
-import edu.stanford.math.primitivelib.autogen.array.IntArrayUtility;
-import edu.stanford.math.primitivelib.autogen.pair.ObjectObjectPair;
+import edu.stanford.math.plex4.utility.ParallelUtility;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 
 /**
- * This class implements the functionality of a KD-tree. It is 
- * designed for the efficient searching of Euclidean spaces.
- * 
+ * <p>This class implements the functionality of a KD-tree. It is
+ * designed for the efficient searching of Euclidean spaces.</p>
+ *
+ * <p>The tree is stored in arrays rather than as linked nodes. The indices of the points are
+ * stored in a permutation array, and each node of the tree corresponds to a contiguous range
+ * of this array. The children of the node with index i have the indices 2i + 1 and 2i + 2, and
+ * their ranges are the two halves of the range of i, so only the splitting axis and value need
+ * to be stored for each node. Ranges with at most bucketSize points are not split further.
+ * The coordinates of the points are copied into a single array in the order of the permutation,
+ * so that the points of a leaf are contiguous in memory.</p>
+ *
+ * <p>A node is split along the axis of largest spread of its points, at the median which is found
+ * by quickselect. Since the subtrees of the top levels are independent, they may be constructed
+ * on several threads. The tree is not modified after construction, so queries may be performed
+ * concurrently.</p>
+ *
+ * <p>The distances are computed with the same floating point operations as DoubleArrayMath.distance,
+ * so the results of the queries agree exactly with the linear scans of EuclideanMetricSpace.</p>
+ *
  * @author Andrew Tausz
  *
  */
 public class KDTree {
-	private final int size;
-	private final int dimension;
-	private KDNode root;
-	private static Random random = new Random();
-	
 	/**
-	 * There are two options for constructing the KD-tree. One is
-	 * to partition by medians, and the other is to partition randomly.
-	 * Partitioning by medians produces a more balanced tree, but is
-	 * more expensive to construct.
+	 * The default maximum number of points in a leaf.
 	 */
-	private boolean useMedian = true;
-	
+	public static final int DEFAULT_BUCKET_SIZE = 8;
+
+	private final int size;
+	private final int dimension;
+	private final int bucketSize;
+
 	/**
 	 * Points are stored as rows in the dataPoints array
 	 */
 	private final double[][] dataPoints;
 
+	/**
+	 * The point stored at position k of the tree is dataPoints[permutation[k]].
+	 */
+	private final int[] permutation;
+
+	/**
+	 * The coordinates of the point at position k are stored at the positions
+	 * k * dimension, ..., (k + 1) * dimension - 1.
+	 */
+	private final double[] coordinates;
+
+	/**
+	 * The splitting axis and value of each internal node.
+	 */
+	private final int[] splitAxes;
+	private final double[] splitValues;
+
 	/**
 	 * Constructor for initializing the KD-tree with a set of points.
 	 * @param dataPoints
 	 */
 	public KDTree(double[][] dataPoints) {
+		this(dataPoints, DEFAULT_BUCKET_SIZE, 1);
+	}
+
+	/**
+	 * Constructor for initializing the KD-tree with a set of points.
+	 *
+	 * @param dataPoints the points, stored as rows
+	 * @param bucketSize the maximum number of points in a leaf
+	 * @param numThreads the number of threads to use for the construction
+	 */
+	public KDTree(double[][] dataPoints, int bucketSize, int numThreads) {
 		ExceptionUtility.verifyNonNull(dataPoints);
 		ExceptionUtility.verifyPositive(dataPoints.length);
+		ExceptionUtility.verifyPositive(bucketSize);
+		ExceptionUtility.verifyPositive(numThreads);
 		this.dataPoints = dataPoints;
 		this.size = dataPoints.length;
 		this.dimension = dataPoints[0].length;
-		
+		this.bucketSize = bucketSize;
+
+		this.permutation = new int[this.size];
+		for (int i = 0; i < this.size; i++) {
+			this.permutation[i] = i;
+		}
+		this.coordinates = new double[this.size * this.dimension];
+
+		int numNodes = this.getMaxNodeIndex(0, 0, this.size) + 1;
+		this.splitAxes = new int[numNodes];
+		this.splitValues = new double[numNodes];
+
 		// construct KD tree
-		this.root = this.construct(IntArrayUtility.toList(IntArrayGeneration.range(0, this.size)), 0);
+		this.construct(numThreads);
 	}
-	
+
 	/**
-	 * This function recursively constructs the tree by partitioning the
-	 * Euclidean space axis-by-axis.
-	 * 
-	 * @param points the list of points to partition
-	 * @param depth the current depth of the iteration
-	 * @return a KDNode for the current subtree
+	 * This function returns the largest node index in the subtree of the given node.
 	 */
-	private KDNode construct(List<Integer> points, int depth) {
-		int axis = depth % this.dimension;
-		
-		if (points.isEmpty()) {
-			return null;
+	private int getMaxNodeIndex(int node, int lo, int hi) {
+		if (hi - lo <= this.bucketSize) {
+			return node;
 		}
-		if (points.size() == 1) {
-			return new KDNode(points.get(0), axis);
+		int mid = (lo + hi) >>> 1;
+		return Math.max(this.getMaxNodeIndex(2 * node + 1, lo, mid), this.getMaxNodeIndex(2 * node + 2, mid, hi));
+	}
+
+	/**
+	 * This function constructs the tree. The nodes of the top levels are split on the
+	 * calling thread, and the remaining subtrees are constructed by separate tasks.
+	 *
+	 * @param numThreads the number of threads to use
+	 */
+	private void construct(int numThreads) {
+		// use a few tasks per thread to balance the work
+		int numLevels = 0;
+		while (numThreads > 1 && (1 << numLevels) < 4 * numThreads && numLevels < 20) {
+			numLevels++;
 		}
-		
-		int splitIndex = 0;
-		if (this.useMedian) {
-			splitIndex = this.getMedianSplitIndex(points, axis);
-		} else {
-			splitIndex = this.getRandomSplitIndex(points);
+
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		this.splitTopLevels(0, 0, this.size, numLevels, tasks);
+		ParallelUtility.runTasks(tasks, numThreads);
+	}
+
+	/**
+	 * This function splits the given number of levels below the node, and then adds
+	 * tasks for constructing the subtrees.
+	 */
+	private void splitTopLevels(final int node, final int lo, final int hi, int numLevels, List<Runnable> tasks) {
+		if (numLevels == 0 || hi - lo <= this.bucketSize) {
+			tasks.add(new Runnable() {
+				public void run() {
+					construct(node, lo, hi);
+				}
+			});
+			return;
 		}
-		
-		ObjectObjectPair<List<Integer>, List<Integer>> pointListPair = this.splitPoints(points, axis, splitIndex);
-		
-		points = null;
-		
-		KDNode kdNode = new KDNode(splitIndex, axis);
-		
-		
-		kdNode.setLeft(this.construct(pointListPair.getFirst(), depth + 1));
-		kdNode.setRight(this.construct(pointListPair.getSecond(), depth + 1));
-		
-		return kdNode;
+		int mid = this.split(node, lo, hi);
+		this.splitTopLevels(2 * node + 1, lo, mid, numLevels - 1, tasks);
+		this.splitTopLevels(2 * node + 2, mid, hi, numLevels - 1, tasks);
 	}
-	
+
 	/**
-	 * This function simply returns a random element within the list of indices.
-	 * 
-	 * @param pointIndices the list to select from
-	 * @return a random element from the list
+	 * This function recursively constructs the subtree for the points at the positions
+	 * lo, ..., hi - 1 of the permutation.
+	 *
+	 * @param node the index of the node
+	 * @param lo the first position of the range
+	 * @param hi one past the last position of the range
 	 */
-	private int getRandomSplitIndex(List<Integer> pointIndices) {
-		return pointIndices.get(random.nextInt(pointIndices.size()));
+	private void construct(int node, int lo, int hi) {
+		if (hi - lo <= this.bucketSize) {
+			for (int k = lo; k < hi; k++) {
+				System.arraycopy(this.dataPoints[this.permutation[k]], 0, this.coordinates, k * this.dimension, this.dimension);
+			}
+			return;
+		}
+		int mid = this.split(node, lo, hi);
+		this.construct(2 * node + 1, lo, mid);
+		this.construct(2 * node + 2, mid, hi);
 	}
-	
+
 	/**
-	 * This function selects the index that is the median of the values when sorted 
-	 * by the specified axis.
-	 * 
-	 * @param pointIndices
-	 * @param axis the axis to find the median along
-	 * @return the index of the median
+	 * This function splits the range of a node along the axis of largest spread. After
+	 * the split, the points in the range lo, ..., mid - 1 have coordinates less than or
+	 * equal to the split value, and the points in the range mid, ..., hi - 1 have coordinates
+	 * greater than or equal to it.
+	 *
+	 * @return the position mid
 	 */
-	private int getMedianSplitIndex(List<Integer> pointIndices, final int axis) {
-		Comparator<Integer> comparator = getAxisComparator(axis);
-		java.util.Collections.sort(pointIndices, comparator);
-		return pointIndices.get((pointIndices.size() + 1) / 2);
+	private int split(int node, int lo, int hi) {
+		int axis = this.getAxisOfLargestSpread(lo, hi);
+		int mid = (lo + hi) >>> 1;
+		this.select(lo, hi, mid, axis);
+		this.splitAxes[node] = axis;
+		this.splitValues[node] = this.dataPoints[this.permutation[mid]][axis];
+		return mid;
 	}
-	
+
 	/**
-	 * This function splits the points into two groups - those that are less than the one at the split index,
-	 * and those that are greater than or equal.
-	 * 
-	 * @param pointIndices the list of points to divide
-	 * @param axis the axis to compare along
-	 * @param splitIndex the index to split on
-	 * @return a GenericPair containing the two lists described above
+	 * This function returns the axis along which the points in the given range have
+	 * the largest difference between their maximum and minimum coordinates.
 	 */
-	private ObjectObjectPair<List<Integer>, List<Integer>> splitPoints(List<Integer> pointIndices, final int axis, int splitIndex) {
-		Comparator<Integer> comparator = getAxisComparator(axis);
-		List<Integer> lessThan = new ArrayList<Integer>();
-		List<Integer> greaterThanOrEqual = new ArrayList<Integer>();
-		
-		for (Integer index: pointIndices) {
-			if (comparator.compare(index, splitIndex) < 0) {
-				lessThan.add(index);
-			} else {
-				greaterThanOrEqual.add(index);
+	private int getAxisOfLargestSpread(int lo, int hi) {
+		int bestAxis = 0;
+		double bestSpread = -1;
+		for (int axis = 0; axis < this.dimension; axis++) {
+			double minimum = Double.POSITIVE_INFINITY;
+			double maximum = Double.NEGATIVE_INFINITY;
+			for (int k = lo; k < hi; k++) {
+				double value = this.dataPoints[this.permutation[k]][axis];
+				minimum = Math.min(minimum, value);
+				maximum = Math.max(maximum, value);
+			}
+			if (maximum - minimum > bestSpread) {
+				bestSpread = maximum - minimum;
+				bestAxis = axis;
 			}
 		}
-		
-		return new ObjectObjectPair<List<Integer>, List<Integer>>(lessThan, greaterThanOrEqual);
+		return bestAxis;
 	}
-	
+
 	/**
-	 * This function returns a comparator used for ordering the points by their locations along
-	 * a particular axis.
-	 * 
-	 * @param axis the axis to order by
-	 * @return a comparator which compares points by a particular coordinate
+	 * This function rearranges the permutation in the range lo, ..., hi - 1 so that the
+	 * position k contains the point whose coordinate has rank k - lo, the positions before it
+	 * contain points with smaller or equal coordinates, and the positions after it contain points
+	 * with larger or equal coordinates. It uses quickselect with a median of three pivot and
+	 * a three-way partition, so that repeated coordinates are handled efficiently.
 	 */
-	private Comparator<Integer> getAxisComparator(final int axis) {
-		return new Comparator<Integer>() {
-
-			public int compare(Integer o1, Integer o2) {
-				if (dataPoints[o1][axis] < dataPoints[o2][axis]) {
-					return -1;
-				} else if (dataPoints[o1][axis] > dataPoints[o2][axis]) {
-					return 1;
+	private void select(int lo, int hi, int k, int axis) {
+		int[] permutation = this.permutation;
+		while (hi - lo > 1) {
+			double pivot = getMedianOfThree(this.getCoordinate(lo, axis), this.getCoordinate((lo + hi) >>> 1, axis), this.getCoordinate(hi - 1, axis));
+
+			// partition into [lo, lt) < pivot, [lt, i) == pivot, [gt, hi) > pivot
+			int lt = lo;
+			int i = lo;
+			int gt = hi;
+			while (i < gt) {
+				double value = this.getCoordinate(i, axis);
+				if (value < pivot) {
+					swap(permutation, lt++, i++);
+				} else if (value > pivot) {
+					swap(permutation, i, --gt);
 				} else {
-					return 0;
+					i++;
 				}
 			}
-		};
+
+			if (k < lt) {
+				hi = lt;
+			} else if (k >= gt) {
+				lo = gt;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private double getCoordinate(int position, int axis) {
+		return this.dataPoints[this.permutation[position]][axis];
+	}
+
+	private static double getMedianOfThree(double a, double b, double c) {
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+
+	private static void swap(int[] array, int i, int j) {
+		int temp = array[i];
+		array[i] = array[j];
+		array[j] = temp;
+	}
+
+	/**
+	 * This function computes the distance between the query point and the point at the given
+	 * position, in the same way as DoubleArrayMath.distance.
+	 */
+	private double distance(double[] queryPoint, int position) {
+		int offset = position * this.dimension;
+		double squaredDistance = 0;
+		for (int j = 0; j < this.dimension; j++) {
+			double difference = queryPoint[j] - this.coordinates[offset + j];
+			squaredDistance += difference * difference;
+		}
+		return Math.sqrt(squaredDistance);
 	}
-	
+
 	/**
-	 * This function returns the index of the nearest neighbor to the query point.
-	 * 
+	 * This function returns the distance to a splitting hyperplane. It is computed in the same
+	 * floating point operations as the corresponding term of DoubleArrayMath.distance, so that
+	 * it is never larger than the computed distance to any point on the other side.
+	 *
+	 * @param axisDifference the difference of the coordinates along the splitting axis
+	 * @return the distance to the hyperplane
+	 */
+	private static double getPlaneDistance(double axisDifference) {
+		return Math.sqrt(axisDifference * axisDifference);
+	}
+
+	/**
+	 * This function returns the index of the nearest neighbor to the query point. If
+	 * several points are at the minimum distance, the one with the smallest index is returned.
+	 *
 	 * @param queryPoint the point to find the closest point to
 	 * @return the index of the nearest point to the query point
 	 */
 	public int nearestNeighborSearch(double[] queryPoint) {
-		return nearestNeighborSearch(this.root, queryPoint, this.root.getIndex(), 0);
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(1);
+		this.kNearestNeighborSearch(0, 0, this.size, queryPoint, null, -1, queue);
+		return queue.getWorstIndex();
+	}
+
+	/**
+	 * This function returns the indices of the k nearest neighbors of the query point, ordered
+	 * by increasing distance. Points at equal distance are ordered by their indices, and points
+	 * which are identical to the excluded object (as determined by reference equality) are skipped.
+	 * If there are fewer than k such points, all of them are returned.
+	 *
+	 * @param queryPoint the point to find the closest points to
+	 * @param k the number of neighbors to find
+	 * @param excludedPoint a point to skip, or null
+	 * @return the indices of the k nearest points to the query point
+	 */
+	public int[] kNearestNeighborSearch(double[] queryPoint, int k, double[] excludedPoint) {
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.size));
+		this.kNearestNeighborSearch(0, 0, this.size, queryPoint, excludedPoint, -1, queue);
+		return queue.toSortedArray();
+	}
+
+	/**
+	 * This function returns the indices of the k nearest neighbors of the point with the given
+	 * index, ordered by increasing distance. Only the point with the given index is skipped, so
+	 * points with the same coordinates are included.
+	 *
+	 * @param index the index of the point to find the closest points to
+	 * @param k the number of neighbors to find
+	 * @return the indices of the k nearest points to the given point
+	 */
+	public int[] kNearestNeighborSearch(int index, int k) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.size));
+		this.kNearestNeighborSearch(0, 0, this.size, this.dataPoints[index], null, index, queue);
+		return queue.toSortedArray();
 	}
 
 	/**
-	 * This function performs the nearest neighborhood search recursively.
+	 * This function performs the k-nearest neighbor search recursively.
 	 * It is an internal helper function.
-	 * 
+	 *
 	 * @param node the node to search in
+	 * @param lo the first position of the range of the node
+	 * @param hi one past the last position of the range of the node
 	 * @param queryPoint the reference point
-	 * @param bestIndex the best point so far
-	 * @param depth the recursion depth
-	 * @return the index of the nearest point to the query point
+	 * @param excludedPoint a point to skip, or null
+	 * @param excludedIndex the index of a point to skip, or -1
+	 * @param queue the best points found so far
 	 */
-	private int nearestNeighborSearch(KDNode node, double[] queryPoint, int bestIndex, int depth) {
-		if (node == null) {
-			return bestIndex;
-		}
-		double[] bestPoint = this.dataPoints[bestIndex];
-
-		// get the current axis
-		int axis = node.getSplitAxis();
-		// get the current point
-		int currentIndex = node.getIndex();
-		double[] currentPoint = this.dataPoints[currentIndex];
-
-		// Calculate whether current node is the best so far
-		double currentSquaredDistance = DoubleArrayMath.squaredDistance(queryPoint, currentPoint);
-		double bestSquaredDistance = DoubleArrayMath.squaredDistance(queryPoint, bestPoint);
-		if (currentSquaredDistance < bestSquaredDistance) {
-			bestPoint = currentPoint;
-			bestIndex = currentIndex;
+	private void kNearestNeighborSearch(int node, int lo, int hi, double[] queryPoint, double[] excludedPoint, int excludedIndex, KNearestNeighborQueue queue) {
+		if (hi - lo <= this.bucketSize) {
+			for (int k = lo; k < hi; k++) {
+				int index = this.permutation[k];
+				if (index != excludedIndex && this.dataPoints[index] != excludedPoint) {
+					queue.offer(index, this.distance(queryPoint, k));
+				}
+			}
+			return;
 		}
 
-		// determine which side of the hyperplane the query point is in
-		// if side > 0 then the query point is on the "right" side of the hyperplane
-		double axisDifference = queryPoint[axis] - currentPoint[axis];
-		// the near child is the node for the half space containing the query point
-		KDNode nearChild = null;
-		// the far child is the node for the half space not containing the query point
-		KDNode farChild = null;
-		if (axisDifference > 0) {
-			nearChild = node.getRight();
-			farChild = node.getLeft();
+		int mid = (lo + hi) >>> 1;
+		double axisDifference = queryPoint[this.splitAxes[node]] - this.splitValues[node];
+
+		// search the half-space containing the query point first
+		if (axisDifference < 0) {
+			this.kNearestNeighborSearch(2 * node + 1, lo, mid, queryPoint, excludedPoint, excludedIndex, queue);
 		} else {
-			nearChild = node.getLeft();
-			farChild = node.getRight();
+			this.kNearestNeighborSearch(2 * node + 2, mid, hi, queryPoint, excludedPoint, excludedIndex, queue);
 		}
 
-		// search the current half-space (the half-space containing the query point)
-		bestIndex = nearestNeighborSearch(nearChild, queryPoint, bestIndex, depth + 1);
-
-		// test to see if we need to search other half-space
-		double separatingPlaneDistance = DoubleArrayMath.squaredDistance(queryPoint[axis], currentPoint[axis]);
-		if (bestSquaredDistance > separatingPlaneDistance) {
-			bestIndex = nearestNeighborSearch(farChild, queryPoint, bestIndex, depth + 1);
+		// test to see if we need to search other half-space - points at the same distance
+		// as the current worst neighbor may still be preferred because of their index
+		if (!queue.isFull() || getPlaneDistance(axisDifference) <= queue.getWorstDistance()) {
+			if (axisDifference < 0) {
+				this.kNearestNeighborSearch(2 * node + 2, mid, hi, queryPoint, excludedPoint, excludedIndex, queue);
+			} else {
+				this.kNearestNeighborSearch(2 * node + 1, lo, mid, queryPoint, excludedPoint, excludedIndex, queue);
+			}
 		}
-
-		return bestIndex;		
 	}
 
 	/**
 	 * This function finds all points within an open or closed neighborhood of the query point.
-	 * 
+	 * A point p is in the neighborhood if the Euclidean distance d(p, q), computed as in
+	 * EuclideanMetricSpace, satisfies d(p, q) &lt; epsilon or d(p, q) &lt;= epsilon, respectively.
+	 *
 	 * @param queryPoint the center of the ball to query
 	 * @param epsilon the radius of the ball
 	 * @param openNeighborhood true if the neighborhood is open and false otherwise
 	 * @return the indices of those points that fall within the ball centered at the query point
 	 */
 	public TIntHashSet epsilonNeighborhoodSearch(double[] queryPoint, double epsilon, boolean openNeighborhood) {
-		TIntHashSet neighborhood = new TIntHashSet();
-		epsilonNeighborhoodSearch(this.root, queryPoint, neighborhood, 0, epsilon * epsilon, openNeighborhood);
+		RangeResult result = new RangeResult(new int[16], true, Integer.MAX_VALUE);
+		this.epsilonNeighborhoodSearch(0, 0, this.size, queryPoint, epsilon, openNeighborhood, result);
+		TIntHashSet neighborhood = new TIntHashSet(2 * result.count);
+		for (int i = 0; i < result.count; i++) {
+			neighborhood.add(result.buffer[i]);
+		}
 		return neighborhood;
 	}
 
+	/**
+	 * This function finds all points within an open or closed neighborhood of the query point,
+	 * and stores their indices in the supplied buffer, in no particular order. If there are more
+	 * points than fit into the buffer, only the first buffer.length are stored, and the returned
+	 * count is larger than the length of the buffer. In that case, the search can be repeated with
+	 * a buffer of the returned size.
+	 *
+	 * @param queryPoint the center of the ball to query
+	 * @param epsilon the radius of the ball
+	 * @param openNeighborhood true if the neighborhood is open and false otherwise
+	 * @param buffer the array to store the indices in
+	 * @return the number of points in the neighborhood
+	 */
+	public int epsilonNeighborhoodSearch(double[] queryPoint, double epsilon, boolean openNeighborhood, int[] buffer) {
+		RangeResult result = new RangeResult(buffer, false, Integer.MAX_VALUE);
+		this.epsilonNeighborhoodSearch(0, 0, this.size, queryPoint, epsilon, openNeighborhood, result);
+		return result.count;
+	}
+
+	/**
+	 * This function finds all points with indices less than the given bound within a closed
+	 * neighborhood of the query point, and appends their indices and their distances to the
+	 * query point to the supplied lists, in no particular order.
+	 *
+	 * @param queryPoint the center of the ball to query
+	 * @param epsilon the radius of the ball
+	 * @param bound one past the largest index to report
+	 * @param indices the list to append the indices to
+	 * @param distances the list to append the distances to
+	 */
+	public void epsilonNeighborhoodSearch(double[] queryPoint, double epsilon, int bound, TIntArrayList indices, TDoubleArrayList distances) {
+		RangeResult result = new RangeResult(new int[16], true, bound);
+		this.epsilonNeighborhoodSearch(0, 0, this.size, queryPoint, epsilon, false, result);
+		for (int i = 0; i < result.count; i++) {
+			indices.add(result.buffer[i]);
+			distances.add(result.distances[i]);
+		}
+	}
+
 	/**
 	 * This is a helper function which performs the recursive search for the neighborhood search.
-	 * 
+	 *
 	 * @param node the current KD-tree node
+	 * @param lo the first position of the range of the node
+	 * @param hi one past the last position of the range of the node
 	 * @param queryPoint the reference point
-	 * @param neighborhood the current set of points found
-	 * @param depth the recursion depth
-	 * @param epsilonSquared the square of the radius of the ball
+	 * @param epsilon the radius of the ball
 	 * @param openNeighborhood true if the neighborhood is open and false otherwise
+	 * @param result the points found so far
 	 */
-	private void epsilonNeighborhoodSearch(KDNode node, double[] queryPoint, TIntHashSet neighborhood, int depth, double epsilonSquared, boolean openNeighborhood) {		
-		if (node == null) {
+	private void epsilonNeighborhoodSearch(int node, int lo, int hi, double[] queryPoint, double epsilon, boolean openNeighborhood, RangeResult result) {
+		if (hi - lo <= this.bucketSize) {
+			for (int k = lo; k < hi; k++) {
+				double distance = this.distance(queryPoint, k);
+				if (openNeighborhood ? distance < epsilon : distance <= epsilon) {
+					result.add(this.permutation[k], distance);
+				}
+			}
 			return;
 		}
 
-		// get the current axis
-		int axis = node.getSplitAxis();
-		// get the current point
-		int currentIndex = node.getIndex();
-		double[] currentPoint = this.dataPoints[currentIndex];
-
-		// calculate whether the current node belongs in the epsilon-neighborhood
-		// of the query point
-		double currentSquaredDistance = DoubleArrayMath.squaredDistance(queryPoint, currentPoint);
-		if (currentSquaredDistance < epsilonSquared) {
-			neighborhood.add(currentIndex);
+		int mid = (lo + hi) >>> 1;
+		double axisDifference = queryPoint[this.splitAxes[node]] - this.splitValues[node];
+		double planeDistance = getPlaneDistance(axisDifference);
+
+		// the half-space containing the query point always intersects the ball, and the
+		// other one only if it is close enough to the splitting hyperplane
+		boolean searchFarChild = (openNeighborhood ? planeDistance < epsilon : planeDistance <= epsilon);
+		if (axisDifference < 0 || searchFarChild) {
+			this.epsilonNeighborhoodSearch(2 * node + 1, lo, mid, queryPoint, epsilon, openNeighborhood, result);
+		}
+		if (axisDifference >= 0 || searchFarChild) {
+			this.epsilonNeighborhoodSearch(2 * node + 2, mid, hi, queryPoint, epsilon, openNeighborhood, result);
 		}
+	}
 
-		// determine which side of the hyperplane the query point is in
-		// if side > 0 then the query point is on the "right" side of the hyperplane
-		double axisDifference = queryPoint[axis] - currentPoint[axis];
-		double squaredAxisDistance = axisDifference * axisDifference;
-		// the near child is the node for the half space containing the query point
-		KDNode nearChild = null;
-		// the far child is the node for the half space not containing the query point
-		KDNode farChild = null;
-		if (axisDifference > 0) {
-			nearChild = node.getRight();
-			farChild = node.getLeft();
-		} else {
-			nearChild = node.getLeft();
-			farChild = node.getRight();
+	/**
+	 * This class collects the indices less than the bound found by a range search. A growable
+	 * result also records the distances. If the buffer is not growable, the indices that do not
+	 * fit are only counted.
+	 */
+	private static class RangeResult {
+		private int[] buffer;
+		private double[] distances;
+		private final boolean growable;
+		private final int bound;
+		private int count = 0;
+
+		RangeResult(int[] buffer, boolean growable, int bound) {
+			this.buffer = buffer;
+			this.distances = (growable ? new double[buffer.length] : null);
+			this.growable = growable;
+			this.bound = bound;
 		}
 
-		// determine whether the epsilon-neighborhood intersects the far half-space
-		if (openNeighborhood) {
-			if (epsilonSquared > squaredAxisDistance) {
-				// yes there is overlap - so search far half-space
-				epsilonNeighborhoodSearch(farChild, queryPoint, neighborhood, depth + 1, epsilonSquared, openNeighborhood);
+		void add(int index, double distance) {
+			if (index >= this.bound) {
+				return;
 			}
-		} else {
-			if (epsilonSquared >= squaredAxisDistance) {
-				// yes there is overlap - so search far half-space
-				epsilonNeighborhoodSearch(farChild, queryPoint, neighborhood, depth + 1, epsilonSquared, openNeighborhood);
+			if (this.count == this.buffer.length && this.growable) {
+				this.buffer = Arrays.copyOf(this.buffer, 2 * this.buffer.length + 1);
+				this.distances = Arrays.copyOf(this.distances, this.buffer.length);
 			}
+			if (this.count < this.buffer.length) {
+				this.buffer[this.count] = index;
+				if (this.distances != null) {
+					this.distances[this.count] = distance;
+				}
+			}
+			this.count++;
 		}
-
-		// search the near half-space for more neighborhood members
-		epsilonNeighborhoodSearch(nearChild, queryPoint, neighborhood, depth + 1, epsilonSquared, openNeighborhood);
 	}
 }
@@ -1,6 +1,9 @@
 package edu.stanford.math.plex4.metric.impl;
 
+import edu.stanford.math.plex4.metric.interfaces.AbstractLowerNeighborhoodSearchable;
 import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
 
 /**
  * This class implements the standard metric space structure on R^n given by the 
@@ -9,7 +12,7 @@ import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
  * @author Andrew Tausz
  *
  */
-public class EuclideanMetricSpace extends ObjectSearchableFiniteMetricSpace<double[]> {
+public class EuclideanMetricSpace extends ObjectSearchableFiniteMetricSpace<double[]> implements AbstractLowerNeighborhoodSearchable {
 
 	/**
 	 * This constructor initializes the class with an array of elements.
@@ -24,4 +27,14 @@ public class EuclideanMetricSpace extends ObjectSearchableFiniteMetricSpace<doub
 	public double distance(double[] a, double[] b) {
 		return DoubleArrayMath.distance(a, b);
 	}
+
+	public void getClosedLowerNeighborhood(int index, double epsilon, TIntArrayList indices, TDoubleArrayList distances) {
+		for (int j = 0; j < index; j++) {
+			double distance = this.distance(index, j);
+			if (distance <= epsilon) {
+				indices.add(j);
+				distances.add(distance);
+			}
+		}
+	}
 }
@@ -0,0 +1,395 @@
+package edu.stanford.math.plex4.metric.impl;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.metric.interfaces.AbstractKNearestNeighborSearchable;
+import edu.stanford.math.plex4.metric.interfaces.AbstractLowerNeighborhoodSearchable;
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+
+/**
+ * <p>This class implements the Euclidean metric on a point cloud whose coordinates are stored in a
+ * single array in row-major order, so that the coordinates of the point i are stored at the positions
+ * i * dimension, ..., (i + 1) * dimension - 1. Compared to EuclideanMetricSpace, which stores one array
+ * per point, this avoids an object header and a pointer indirection per point, and the points are
+ * contiguous in memory.</p>
+ *
+ * <p>Distances from one point to many points are computed by a batched kernel, which processes four
+ * points at a time with independent accumulators. The coordinates of each point are summed in the same
+ * order as in DoubleArrayMath.distance, so the distances are identical to the ones computed by
+ * EuclideanMetricSpace. The neighborhood queries compare squared distances against a threshold which is
+ * chosen so that the results are the same as when comparing the distances themselves, which avoids
+ * a square root per point.</p>
+ *
+ * <p>Since the points are not stored as separate objects, getPoint returns a copy of the coordinates,
+ * and a point is identified with its coordinates. In particular, the k-nearest neighbors of a query point
+ * do not include points with the same coordinates. The index-based query functions exclude only the
+ * point with the given index, like the queries of EuclideanMetricSpace for points of the space.</p>
+ *
+ */
+public class FlatEuclideanMetricSpace implements AbstractSearchableMetricSpace<double[]>, AbstractLowerNeighborhoodSearchable,
+		AbstractKNearestNeighborSearchable {
+
+	/**
+	 * The number of points for which distances are computed at once in the linear scans.
+	 */
+	private static final int BLOCK_SIZE = 256;
+
+	private final double[] coordinates;
+	private final int dimension;
+	private final int size;
+
+	/**
+	 * This constructor initializes the metric space with points given as the rows of an array.
+	 * The coordinates are copied into a flat array.
+	 *
+	 * @param points the points of the metric space
+	 */
+	public FlatEuclideanMetricSpace(double[][] points) {
+		ExceptionUtility.verifyNonNull(points);
+		this.size = points.length;
+		this.dimension = (points.length > 0 ? points[0].length : 0);
+		this.coordinates = new double[this.size * this.dimension];
+		for (int i = 0; i < this.size; i++) {
+			ExceptionUtility.verifyEqual(points[i].length, this.dimension);
+			System.arraycopy(points[i], 0, this.coordinates, i * this.dimension, this.dimension);
+		}
+	}
+
+	/**
+	 * This constructor initializes the metric space with an array of coordinates in row-major
+	 * order. The array is not copied.
+	 *
+	 * @param coordinates the coordinates of the points
+	 * @param dimension the dimension of the points
+	 */
+	public FlatEuclideanMetricSpace(double[] coordinates, int dimension) {
+		ExceptionUtility.verifyNonNull(coordinates);
+		ExceptionUtility.verifyPositive(dimension);
+		ExceptionUtility.verifyEqual(coordinates.length % dimension, 0);
+		this.coordinates = coordinates;
+		this.dimension = dimension;
+		this.size = coordinates.length / dimension;
+	}
+
+	/**
+	 * @return the dimension of the points
+	 */
+	public int getDimension() {
+		return this.dimension;
+	}
+
+	/**
+	 * This function returns the underlying array of coordinates in row-major order. The array
+	 * is not copied, so it must not be modified.
+	 *
+	 * @return the coordinates of the points
+	 */
+	public double[] getCoordinates() {
+		return this.coordinates;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public double[] getPoint(int index) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		return Arrays.copyOfRange(this.coordinates, index * this.dimension, (index + 1) * this.dimension);
+	}
+
+	public double[][] getPoints() {
+		double[][] points = new double[this.size][];
+		for (int i = 0; i < this.size; i++) {
+			points[i] = this.getPoint(i);
+		}
+		return points;
+	}
+
+	public double distance(double[] a, double[] b) {
+		return DoubleArrayMath.distance(a, b);
+	}
+
+	public double distance(int i, int j) {
+		return Math.sqrt(this.squaredDistance(i, j));
+	}
+
+	/**
+	 * This function returns the squared distance between the points with the given indices.
+	 *
+	 * @param i the index of the first point
+	 * @param j the index of the second point
+	 * @return the squared distance between the two points
+	 */
+	public double squaredDistance(int i, int j) {
+		double[] x = this.coordinates;
+		int end = (i + 1) * this.dimension;
+		double sum = 0;
+		for (int k = i * this.dimension, l = j * this.dimension; k < end; k++, l++) {
+			double difference = x[k] - x[l];
+			sum += difference * difference;
+		}
+		return sum;
+	}
+
+	/**
+	 * This function computes the squared distances from the query point to the points with indices
+	 * from, ..., to - 1, and stores them at the positions 0, ..., to - from - 1 of the result.
+	 *
+	 * @param queryPoint the query point
+	 * @param from the index of the first point
+	 * @param to one past the index of the last point
+	 * @param result the array to store the squared distances in
+	 */
+	public void computeSquaredDistances(double[] queryPoint, int from, int to, double[] result) {
+		ExceptionUtility.verifyEqual(queryPoint.length, this.dimension);
+		computeSquaredDistances(queryPoint, 0, this.coordinates, this.dimension, from, to, result);
+	}
+
+	/**
+	 * This function computes the squared distances from the point with the given index to the points
+	 * with indices from, ..., to - 1, and stores them at the positions 0, ..., to - from - 1 of the result.
+	 *
+	 * @param index the index of the query point
+	 * @param from the index of the first point
+	 * @param to one past the index of the last point
+	 * @param result the array to store the squared distances in
+	 */
+	public void computeSquaredDistances(int index, int from, int to, double[] result) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		computeSquaredDistances(this.coordinates, index * this.dimension, this.coordinates, this.dimension, from, to, result);
+	}
+
+	/**
+	 * This is the batched distance kernel. The points are processed four at a time with independent
+	 * accumulators, and the coordinates of each point are summed in increasing order.
+	 */
+	private static void computeSquaredDistances(double[] q, int queryOffset, double[] x, int d, int from, int to, double[] result) {
+		int k = from;
+		for (; k + 3 < to; k += 4) {
+			int offset0 = k * d;
+			int offset1 = offset0 + d;
+			int offset2 = offset1 + d;
+			int offset3 = offset2 + d;
+			double sum0 = 0;
+			double sum1 = 0;
+			double sum2 = 0;
+			double sum3 = 0;
+			for (int j = 0; j < d; j++) {
+				double value = q[queryOffset + j];
+				double difference0 = value - x[offset0 + j];
+				double difference1 = value - x[offset1 + j];
+				double difference2 = value - x[offset2 + j];
+				double difference3 = value - x[offset3 + j];
+				sum0 += difference0 * difference0;
+				sum1 += difference1 * difference1;
+				sum2 += difference2 * difference2;
+				sum3 += difference3 * difference3;
+			}
+			result[k - from] = sum0;
+			result[k - from + 1] = sum1;
+			result[k - from + 2] = sum2;
+			result[k - from + 3] = sum3;
+		}
+		for (; k < to; k++) {
+			int offset = k * d;
+			double sum = 0;
+			for (int j = 0; j < d; j++) {
+				double difference = q[queryOffset + j] - x[offset + j];
+				sum += difference * difference;
+			}
+			result[k - from] = sum;
+		}
+	}
+
+	/**
+	 * This function returns the largest value t such that sqrt(t) &lt;= epsilon, or sqrt(t) &lt; epsilon
+	 * if the neighborhood is open. Since the square root is correctly rounded and hence monotone, a
+	 * squared distance s satisfies s &lt;= t if and only if its square root is in the neighborhood. If
+	 * no non-negative value satisfies the condition, a negative value is returned.
+	 *
+	 * @param epsilon the radius of the neighborhood
+	 * @param openNeighborhood true if the neighborhood is open and false otherwise
+	 * @return the threshold for the squared distances
+	 */
+	public static double getSquaredThreshold(double epsilon, boolean openNeighborhood) {
+		if (Double.isNaN(epsilon) || epsilon < 0) {
+			return -1;
+		}
+		double threshold = Math.min(epsilon * epsilon, Double.MAX_VALUE);
+		while (threshold >= 0 && !isInNeighborhood(threshold, epsilon, openNeighborhood)) {
+			threshold = Math.nextAfter(threshold, Double.NEGATIVE_INFINITY);
+		}
+		while (threshold < Double.POSITIVE_INFINITY && isInNeighborhood(Math.nextUp(threshold), epsilon, openNeighborhood)) {
+			threshold = Math.nextUp(threshold);
+		}
+		return threshold;
+	}
+
+	private static boolean isInNeighborhood(double squaredDistance, double epsilon, boolean openNeighborhood) {
+		double distance = Math.sqrt(squaredDistance);
+		return (openNeighborhood ? distance < epsilon : distance <= epsilon);
+	}
+
+	public int getNearestPointIndex(double[] queryPoint) {
+		double[] buffer = new double[BLOCK_SIZE];
+		double minimumDistance = Double.MAX_VALUE;
+		int nearestIndex = 0;
+		for (int from = 0; from < this.size; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, this.size);
+			this.computeSquaredDistances(queryPoint, from, to, buffer);
+			for (int k = from; k < to; k++) {
+				double distance = Math.sqrt(buffer[k - from]);
+				if (distance < minimumDistance) {
+					minimumDistance = distance;
+					nearestIndex = k;
+				}
+			}
+		}
+		return nearestIndex;
+	}
+
+	public TIntHashSet getOpenNeighborhood(double[] queryPoint, double epsilon) {
+		return this.getNeighborhood(queryPoint, -1, getSquaredThreshold(epsilon, true));
+	}
+
+	public TIntHashSet getClosedNeighborhood(double[] queryPoint, double epsilon) {
+		return this.getNeighborhood(queryPoint, -1, getSquaredThreshold(epsilon, false));
+	}
+
+	/**
+	 * This function returns the open neighborhood of the point with the given index.
+	 *
+	 * @param index the index of the center of the ball
+	 * @param epsilon the radius of the ball
+	 * @return the set of indices of points contained in the open ball
+	 */
+	public TIntHashSet getOpenNeighborhood(int index, double epsilon) {
+		return this.getNeighborhood(null, index, getSquaredThreshold(epsilon, true));
+	}
+
+	/**
+	 * This function returns the closed neighborhood of the point with the given index.
+	 *
+	 * @param index the index of the center of the ball
+	 * @param epsilon the radius of the ball
+	 * @return the set of indices of points contained in the closed ball
+	 */
+	public TIntHashSet getClosedNeighborhood(int index, double epsilon) {
+		return this.getNeighborhood(null, index, getSquaredThreshold(epsilon, false));
+	}
+
+	/**
+	 * This function returns the points whose squared distance to the query point, or to the
+	 * point with the given index if the query point is null, is at most the threshold.
+	 */
+	private TIntHashSet getNeighborhood(double[] queryPoint, int index, double squaredThreshold) {
+		TIntHashSet neighborhood = new TIntHashSet();
+		if (squaredThreshold < 0) {
+			return neighborhood;
+		}
+		double[] buffer = new double[BLOCK_SIZE];
+		for (int from = 0; from < this.size; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, this.size);
+			if (queryPoint != null) {
+				this.computeSquaredDistances(queryPoint, from, to, buffer);
+			} else {
+				this.computeSquaredDistances(index, from, to, buffer);
+			}
+			for (int k = from; k < to; k++) {
+				if (buffer[k - from] <= squaredThreshold) {
+					neighborhood.add(k);
+				}
+			}
+		}
+		return neighborhood;
+	}
+
+	/**
+	 * This function only computes the distances to the points with smaller indices than the
+	 * given one, so that building a neighborhood graph evaluates each distance once.
+	 */
+	public void getClosedLowerNeighborhood(int index, double epsilon, TIntArrayList indices, TDoubleArrayList distances) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		double squaredThreshold = getSquaredThreshold(epsilon, false);
+		if (squaredThreshold < 0) {
+			return;
+		}
+		double[] buffer = new double[BLOCK_SIZE];
+		for (int from = 0; from < index; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, index);
+			this.computeSquaredDistances(index, from, to, buffer);
+			for (int k = from; k < to; k++) {
+				if (buffer[k - from] <= squaredThreshold) {
+					indices.add(k);
+					distances.add(Math.sqrt(buffer[k - from]));
+				}
+			}
+		}
+	}
+
+	public TIntHashSet getKNearestNeighbors(double[] queryPoint, int k) {
+		return new TIntHashSet(this.getKNearestNeighbors(queryPoint, -1, k));
+	}
+
+	/**
+	 * This function returns the indices of the k points closest to the point with the given
+	 * index, excluding the point itself, in order of increasing distance.
+	 *
+	 * @param index the index of the reference point
+	 * @param k the number of nearest neighbors to get
+	 * @return the k-nearest neighbors of the point
+	 */
+	public int[] getKNearestNeighbors(int index, int k) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		return this.getKNearestNeighbors(null, index, k);
+	}
+
+	/**
+	 * This function finds the k nearest neighbors of the query point, excluding points with the
+	 * same coordinates, or of the point with the given index, excluding that point.
+	 */
+	private int[] getKNearestNeighbors(double[] queryPoint, int index, int k) {
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.size));
+		double[] buffer = new double[BLOCK_SIZE];
+		for (int from = 0; from < this.size; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, this.size);
+			if (queryPoint != null) {
+				this.computeSquaredDistances(queryPoint, from, to, buffer);
+			} else {
+				this.computeSquaredDistances(index, from, to, buffer);
+			}
+			for (int j = from; j < to; j++) {
+				if (j == index || (queryPoint != null && this.hasCoordinates(j, queryPoint))) {
+					continue;
+				}
+				// the queue compares the actual distances, so that ties are broken as in the other spaces
+				double distance = Math.sqrt(buffer[j - from]);
+				if (!queue.isFull() || distance <= queue.getWorstDistance()) {
+					queue.offer(j, distance);
+				}
+			}
+		}
+		return queue.toSortedArray();
+	}
+
+	/**
+	 * This function returns true if the point with the given index has the given coordinates.
+	 */
+	private boolean hasCoordinates(int index, double[] point) {
+		int offset = index * this.dimension;
+		for (int j = 0; j < this.dimension; j++) {
+			if (this.coordinates[offset + j] != point[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,137 @@
+package edu.stanford.math.plex4.metric.impl;
+
+/**
+ * <p>This class holds the k nearest points found so far during a search. The points are
+ * ordered by their distance to the query point, and points at equal distance are ordered
+ * by their indices. This is the same order in which TruncatedPriorityQueue keeps points which
+ * are inserted in increasing order of their indices, so searches which visit the points in a
+ * different order produce the same results as the linear scans.</p>
+ * 
+ * <p>The points are stored in a binary max-heap in two primitive arrays, so the worst of the
+ * k points can be queried and replaced in logarithmic time.</p>
+ *
+ */
+public class KNearestNeighborQueue {
+	private final int[] indices;
+	private final double[] distances;
+	private int size = 0;
+
+	/**
+	 * This constructor initializes the queue with the maximum number of points to hold.
+	 * 
+	 * @param k the maximum number of points
+	 */
+	public KNearestNeighborQueue(int k) {
+		this.indices = new int[k];
+		this.distances = new double[k];
+	}
+
+	/**
+	 * @return the number of points in the queue
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return true if the queue contains k points
+	 */
+	public boolean isFull() {
+		return this.size == this.indices.length;
+	}
+
+	/**
+	 * This function returns the largest distance of a point in the queue. A point at a larger
+	 * distance will not be added to a full queue.
+	 * 
+	 * @return the largest distance in the queue
+	 */
+	public double getWorstDistance() {
+		return this.distances[0];
+	}
+
+	/**
+	 * This function returns the index of the point at the largest distance in the queue.
+	 * 
+	 * @return the index of the worst point in the queue
+	 */
+	public int getWorstIndex() {
+		return this.indices[0];
+	}
+
+	/**
+	 * This function adds a point to the queue if it is among the k nearest points so far.
+	 * 
+	 * @param index the index of the point
+	 * @param distance the distance of the point to the query point
+	 */
+	public void offer(int index, double distance) {
+		if (this.indices.length == 0) {
+			return;
+		}
+		if (this.isFull()) {
+			if (distance > this.distances[0] || (distance == this.distances[0] && index > this.indices[0])) {
+				return;
+			}
+			this.indices[0] = index;
+			this.distances[0] = distance;
+			this.siftDown(0, this.size);
+		} else {
+			int i = this.size++;
+			this.indices[i] = index;
+			this.distances[i] = distance;
+			while (i > 0 && this.isWorse(i, (i - 1) / 2)) {
+				this.swap(i, (i - 1) / 2);
+				i = (i - 1) / 2;
+			}
+		}
+	}
+
+	/**
+	 * This function returns the indices of the points in the queue in increasing order of
+	 * distance, and empties the queue.
+	 * 
+	 * @return the indices of the points in the queue
+	 */
+	public int[] toSortedArray() {
+		int n = this.size;
+		for (int end = n - 1; end > 0; end--) {
+			this.swap(0, end);
+			this.siftDown(0, end);
+		}
+		int[] result = new int[n];
+		System.arraycopy(this.indices, 0, result, 0, n);
+		this.size = 0;
+		return result;
+	}
+
+	/**
+	 * This function returns true if the entry at position i is worse than the entry at position j.
+	 */
+	private boolean isWorse(int i, int j) {
+		return (this.distances[i] > this.distances[j] || (this.distances[i] == this.distances[j] && this.indices[i] > this.indices[j]));
+	}
+
+	private void siftDown(int i, int size) {
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && this.isWorse(child + 1, child)) {
+				child++;
+			}
+			if (!this.isWorse(child, i)) {
+				return;
+			}
+			this.swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int index = this.indices[i];
+		this.indices[i] = this.indices[j];
+		this.indices[j] = index;
+		double distance = this.distances[i];
+		this.distances[i] = this.distances[j];
+		this.distances[j] = distance;
+	}
+}
@@ -0,0 +1,338 @@
+package edu.stanford.math.plex4.metric.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import edu.stanford.math.plex4.io.BinaryPointCloudReaderWriter;
+import edu.stanford.math.plex4.metric.interfaces.AbstractKNearestNeighborSearchable;
+import edu.stanford.math.plex4.metric.interfaces.AbstractLowerNeighborhoodSearchable;
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+
+/**
+ * <p>This class implements the Euclidean metric on a point cloud which is stored in a file in the
+ * format of BinaryPointCloudReaderWriter. The file is memory-mapped, and the distances are computed
+ * directly from the mapped coordinates, so the point cloud does not need to fit into the heap. Since
+ * a single mapping is limited to 2GB, the file is mapped in segments, each of which contains a whole
+ * number of points.</p>
+ *
+ * <p>Double precision files produce exactly the same distances as EuclideanMetricSpace on the original
+ * points. For single precision files, the coordinates are converted to double before the distances are
+ * computed. As for FlatEuclideanMetricSpace, getPoint returns a copy of the coordinates, and the neighborhood
+ * queries compare squared distances.</p>
+ *
+ */
+public class MappedEuclideanMetricSpace implements AbstractSearchableMetricSpace<double[]>, AbstractLowerNeighborhoodSearchable,
+		AbstractKNearestNeighborSearchable {
+
+	/**
+	 * The maximum number of bytes of a mapped segment.
+	 */
+	private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+	private final int size;
+	private final int dimension;
+	private final int pointsPerSegment;
+
+	/**
+	 * The segments of the file, as double or float buffers depending on the precision.
+	 */
+	private final DoubleBuffer[] doubleSegments;
+	private final FloatBuffer[] floatSegments;
+
+	/**
+	 * This constructor maps the given binary point cloud file.
+	 *
+	 * @param path the file to map
+	 * @throws IOException if the file cannot be read or is not a valid point cloud file
+	 */
+	public MappedEuclideanMetricSpace(String path) throws IOException {
+		this(path, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * This constructor maps the given binary point cloud file, using segments of at most the
+	 * given number of points.
+	 *
+	 * @param path the file to map
+	 * @param maxPointsPerSegment the maximum number of points in a mapped segment
+	 * @throws IOException if the file cannot be read or is not a valid point cloud file
+	 */
+	public MappedEuclideanMetricSpace(String path, int maxPointsPerSegment) throws IOException {
+		ExceptionUtility.verifyPositive(maxPointsPerSegment);
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			BinaryPointCloudReaderWriter.Header header = BinaryPointCloudReaderWriter.readHeader(channel);
+			if (header.getSize() > Integer.MAX_VALUE) {
+				throw new IOException("The point cloud contains more than " + Integer.MAX_VALUE + " points.");
+			}
+			this.size = (int) header.getSize();
+			this.dimension = header.getDimension();
+
+			long pointBytes = (long) this.dimension * header.getBytesPerCoordinate();
+			if (pointBytes > MAX_SEGMENT_BYTES) {
+				throw new IOException("The points are too large to be mapped.");
+			}
+			this.pointsPerSegment = (int) Math.min(maxPointsPerSegment, MAX_SEGMENT_BYTES / pointBytes);
+
+			int numSegments = (this.size + this.pointsPerSegment - 1) / this.pointsPerSegment;
+			boolean singlePrecision = (header.getBytesPerCoordinate() == 4);
+			this.doubleSegments = (singlePrecision ? null : new DoubleBuffer[numSegments]);
+			this.floatSegments = (singlePrecision ? new FloatBuffer[numSegments] : null);
+
+			for (int s = 0; s < numSegments; s++) {
+				long first = (long) s * this.pointsPerSegment;
+				long count = Math.min(this.pointsPerSegment, this.size - first);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, BinaryPointCloudReaderWriter.HEADER_SIZE + first * pointBytes, count * pointBytes);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				if (singlePrecision) {
+					this.floatSegments[s] = buffer.asFloatBuffer();
+				} else {
+					this.doubleSegments[s] = buffer.asDoubleBuffer();
+				}
+			}
+		} finally {
+			// the mappings remain valid after the channel is closed
+			file.close();
+		}
+	}
+
+	/**
+	 * @return the dimension of the points
+	 */
+	public int getDimension() {
+		return this.dimension;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * This function returns a coordinate of a point.
+	 *
+	 * @param index the index of the point
+	 * @param axis the index of the coordinate
+	 * @return the coordinate
+	 */
+	public double getCoordinate(int index, int axis) {
+		int offset = (index % this.pointsPerSegment) * this.dimension + axis;
+		if (this.doubleSegments != null) {
+			return this.doubleSegments[index / this.pointsPerSegment].get(offset);
+		} else {
+			return this.floatSegments[index / this.pointsPerSegment].get(offset);
+		}
+	}
+
+	public double[] getPoint(int index) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		double[] point = new double[this.dimension];
+		for (int j = 0; j < this.dimension; j++) {
+			point[j] = this.getCoordinate(index, j);
+		}
+		return point;
+	}
+
+	/**
+	 * This function returns all points of the space. Since this materializes the point cloud in
+	 * the heap, it should only be used for small spaces.
+	 */
+	public double[][] getPoints() {
+		double[][] points = new double[this.size][];
+		for (int i = 0; i < this.size; i++) {
+			points[i] = this.getPoint(i);
+		}
+		return points;
+	}
+
+	public double distance(double[] a, double[] b) {
+		return DoubleArrayMath.distance(a, b);
+	}
+
+	public double distance(int i, int j) {
+		return Math.sqrt(this.squaredDistance(i, j));
+	}
+
+	/**
+	 * This function returns the squared distance between the points with the given indices.
+	 *
+	 * @param i the index of the first point
+	 * @param j the index of the second point
+	 * @return the squared distance between the two points
+	 */
+	public double squaredDistance(int i, int j) {
+		int offsetI = (i % this.pointsPerSegment) * this.dimension;
+		int offsetJ = (j % this.pointsPerSegment) * this.dimension;
+		double sum = 0;
+		if (this.doubleSegments != null) {
+			DoubleBuffer segmentI = this.doubleSegments[i / this.pointsPerSegment];
+			DoubleBuffer segmentJ = this.doubleSegments[j / this.pointsPerSegment];
+			for (int k = 0; k < this.dimension; k++) {
+				double difference = segmentI.get(offsetI + k) - segmentJ.get(offsetJ + k);
+				sum += difference * difference;
+			}
+		} else {
+			FloatBuffer segmentI = this.floatSegments[i / this.pointsPerSegment];
+			FloatBuffer segmentJ = this.floatSegments[j / this.pointsPerSegment];
+			for (int k = 0; k < this.dimension; k++) {
+				double difference = (double) segmentI.get(offsetI + k) - (double) segmentJ.get(offsetJ + k);
+				sum += difference * difference;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * This function returns the squared distance between the query point and the point with
+	 * the given index.
+	 *
+	 * @param queryPoint the query point
+	 * @param index the index of the point
+	 * @return the squared distance between the two points
+	 */
+	public double squaredDistance(double[] queryPoint, int index) {
+		int offset = (index % this.pointsPerSegment) * this.dimension;
+		double sum = 0;
+		if (this.doubleSegments != null) {
+			DoubleBuffer segment = this.doubleSegments[index / this.pointsPerSegment];
+			for (int k = 0; k < this.dimension; k++) {
+				double difference = queryPoint[k] - segment.get(offset + k);
+				sum += difference * difference;
+			}
+		} else {
+			FloatBuffer segment = this.floatSegments[index / this.pointsPerSegment];
+			for (int k = 0; k < this.dimension; k++) {
+				double difference = queryPoint[k] - (double) segment.get(offset + k);
+				sum += difference * difference;
+			}
+		}
+		return sum;
+	}
+
+	public int getNearestPointIndex(double[] queryPoint) {
+		ExceptionUtility.verifyEqual(queryPoint.length, this.dimension);
+		double minimumDistance = Double.MAX_VALUE;
+		int nearestIndex = 0;
+		for (int i = 0; i < this.size; i++) {
+			double distance = Math.sqrt(this.squaredDistance(queryPoint, i));
+			if (distance < minimumDistance) {
+				minimumDistance = distance;
+				nearestIndex = i;
+			}
+		}
+		return nearestIndex;
+	}
+
+	public TIntHashSet getOpenNeighborhood(double[] queryPoint, double epsilon) {
+		return this.getNeighborhood(queryPoint, FlatEuclideanMetricSpace.getSquaredThreshold(epsilon, true));
+	}
+
+	public TIntHashSet getClosedNeighborhood(double[] queryPoint, double epsilon) {
+		return this.getNeighborhood(queryPoint, FlatEuclideanMetricSpace.getSquaredThreshold(epsilon, false));
+	}
+
+	/**
+	 * This function returns the points whose squared distance to the query point is at most the threshold.
+	 */
+	private TIntHashSet getNeighborhood(double[] queryPoint, double squaredThreshold) {
+		ExceptionUtility.verifyEqual(queryPoint.length, this.dimension);
+		TIntHashSet neighborhood = new TIntHashSet();
+		if (squaredThreshold < 0) {
+			return neighborhood;
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.squaredDistance(queryPoint, i) <= squaredThreshold) {
+				neighborhood.add(i);
+			}
+		}
+		return neighborhood;
+	}
+
+	/**
+	 * This function only computes the distances to the points with smaller indices than the
+	 * given one, so that building a neighborhood graph reads each pair of points once.
+	 */
+	public void getClosedLowerNeighborhood(int index, double epsilon, TIntArrayList indices, TDoubleArrayList distances) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		double squaredThreshold = FlatEuclideanMetricSpace.getSquaredThreshold(epsilon, false);
+		if (squaredThreshold < 0) {
+			return;
+		}
+		for (int i = 0; i < index; i++) {
+			double squaredDistance = this.squaredDistance(index, i);
+			if (squaredDistance <= squaredThreshold) {
+				indices.add(i);
+				distances.add(Math.sqrt(squaredDistance));
+			}
+		}
+	}
+
+	/**
+	 * This function returns the k nearest neighbors of the query point. Points with the same
+	 * coordinates as the query point are excluded.
+	 */
+	public TIntHashSet getKNearestNeighbors(double[] queryPoint, int k) {
+		ExceptionUtility.verifyEqual(queryPoint.length, this.dimension);
+		return new TIntHashSet(this.getKNearestNeighbors(queryPoint, -1, k));
+	}
+
+	/**
+	 * This function returns the indices of the k points closest to the point with the given
+	 * index, excluding the point itself, in order of increasing distance.
+	 *
+	 * @param index the index of the reference point
+	 * @param k the number of nearest neighbors to get
+	 * @return the k-nearest neighbors of the point
+	 */
+	public int[] getKNearestNeighbors(int index, int k) {
+		ExceptionUtility.verifyIndex(this.size, index);
+		return this.getKNearestNeighbors(null, index, k);
+	}
+
+	/**
+	 * This function finds the k nearest neighbors of the query point, excluding points with the
+	 * same coordinates, or of the point with the given index, excluding that point.
+	 */
+	private int[] getKNearestNeighbors(double[] queryPoint, int index, int k) {
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.size));
+		for (int i = 0; i < this.size; i++) {
+			if (i == index) {
+				continue;
+			}
+			double squaredDistance = (queryPoint != null ? this.squaredDistance(queryPoint, i) : this.squaredDistance(index, i));
+			if (queryPoint != null && squaredDistance == 0 && this.hasCoordinates(i, queryPoint)) {
+				continue;
+			}
+			double distance = Math.sqrt(squaredDistance);
+			if (!queue.isFull() || distance <= queue.getWorstDistance()) {
+				queue.offer(i, distance);
+			}
+		}
+		return queue.toSortedArray();
+	}
+
+	/**
+	 * This function returns true if the point with the given index has the given coordinates.
+	 */
+	private boolean hasCoordinates(int index, double[] point) {
+		for (int j = 0; j < this.dimension; j++) {
+			if (this.getCoordinate(index, j) != point[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
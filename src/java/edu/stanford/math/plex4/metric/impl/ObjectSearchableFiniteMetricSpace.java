@@ -2,7 +2,9 @@ package edu.stanford.math.plex4.metric.impl;
 
 import java.util.List;
 
+import edu.stanford.math.plex4.metric.interfaces.AbstractKNearestNeighborSearchable;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
 import gnu.trove.TIntHashSet;
 
 /**
@@ -13,7 +15,7 @@ import gnu.trove.TIntHashSet;
  *
  * @param <T>
  */
-public abstract class ObjectSearchableFiniteMetricSpace<T> implements AbstractSearchableMetricSpace<T> {
+public abstract class ObjectSearchableFiniteMetricSpace<T> implements AbstractSearchableMetricSpace<T>, AbstractKNearestNeighborSearchable {
 	
 	/**
 	 * This array stores the elements in the metric space
@@ -51,6 +53,24 @@ public abstract class ObjectSearchableFiniteMetricSpace<T> implements AbstractSe
 		
 		return result;
 	}
+	
+	/**
+	 * This function finds the k nearest neighbors of the point with the given index by a linear
+	 * scan, which excludes only the point itself.
+	 */
+	public int[] getKNearestNeighbors(int index, int k) {
+		ExceptionUtility.verifyIndex(this.elements.length, index);
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.elements.length));
+		for (int j = 0; j < this.elements.length; j++) {
+			if (j != index) {
+				queue.offer(j, this.distance(index, j));
+			}
+		}
+		return queue.toSortedArray();
+	}
 
 	public int getNearestPointIndex(T queryPoint) {
 		double minimumDistance = Double.MAX_VALUE;
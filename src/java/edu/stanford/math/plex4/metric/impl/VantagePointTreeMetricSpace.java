@@ -0,0 +1,366 @@
+package edu.stanford.math.plex4.metric.impl;
+
+import edu.stanford.math.plex4.metric.interfaces.AbstractObjectMetric;
+import edu.stanford.math.plex4.metric.interfaces.AbstractObjectMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import gnu.trove.TIntHashSet;
+
+/**
+ * <p>This class implements the AbstractSearchableMetricSpace interface for points of an arbitrary
+ * type T with a given metric. The queries are answered with the help of a vantage point tree, so
+ * the only requirement on the metric is that it satisfies the triangle inequality.</p>
+ *
+ * <p>Each node of the tree corresponds to a contiguous range of a permutation of the point indices.
+ * The first point of the range is the vantage point of the node, and the remaining points are
+ * partitioned at the median of their distances to the vantage point into an inner half and an
+ * outer half, which form the ranges of the children 2i + 1 and 2i + 2 of the node i. For each node,
+ * the largest distance from the vantage point to an inner point and the smallest distance to an
+ * outer point are stored, and a subtree is only searched if the triangle inequality does not rule
+ * out that it contains a point of the result. Ranges with at most bucketSize points are searched
+ * linearly. The tree is constructed with O(n log n) distance evaluations.</p>
+ *
+ * <p>The results of the queries are the same as for the linear scans in ObjectSearchableFiniteMetricSpace.
+ * In particular, the k-nearest neighbors of a point do not include points equal to it, and ties are
+ * broken in favor of smaller indices.</p>
+ *
+ * @param <T> the type of the points in the metric space
+ */
+public class VantagePointTreeMetricSpace<T> extends ObjectSearchableFiniteMetricSpace<T> {
+	/**
+	 * The default maximum number of points in a leaf.
+	 */
+	public static final int DEFAULT_BUCKET_SIZE = 8;
+
+	/**
+	 * The relative tolerance used for pruning, which makes sure that rounding errors in the
+	 * triangle inequality never exclude a point from the results.
+	 */
+	private static final double TOLERANCE = 1e-12;
+
+	private final AbstractObjectMetric<T> metric;
+	private final int bucketSize;
+
+	/**
+	 * The point stored at position k of the tree is elements[permutation[k]].
+	 */
+	private final int[] permutation;
+
+	/**
+	 * The largest distance from the vantage point of each node to a point in its inner
+	 * subtree, and the smallest distance to a point in its outer subtree.
+	 */
+	private final double[] innerRadii;
+	private final double[] outerRadii;
+
+	/**
+	 * This constructor initializes the metric space with an array of points and a metric.
+	 *
+	 * @param array the points of the metric space
+	 * @param metric the metric, which must satisfy the triangle inequality
+	 */
+	public VantagePointTreeMetricSpace(T[] array, AbstractObjectMetric<T> metric) {
+		this(array, metric, DEFAULT_BUCKET_SIZE);
+	}
+
+	/**
+	 * This constructor creates an index for the points of an existing metric space.
+	 *
+	 * @param metricSpace the metric space to index
+	 */
+	public VantagePointTreeMetricSpace(AbstractObjectMetricSpace<T> metricSpace) {
+		this(metricSpace.getPoints(), metricSpace, DEFAULT_BUCKET_SIZE);
+	}
+
+	/**
+	 * This constructor initializes the metric space with an array of points and a metric.
+	 *
+	 * @param array the points of the metric space
+	 * @param metric the metric, which must satisfy the triangle inequality
+	 * @param bucketSize the maximum number of points in a leaf of the tree
+	 */
+	public VantagePointTreeMetricSpace(T[] array, AbstractObjectMetric<T> metric, int bucketSize) {
+		super(array);
+		ExceptionUtility.verifyNonNull(metric);
+		ExceptionUtility.verifyPositive(bucketSize);
+		this.metric = metric;
+		this.bucketSize = bucketSize;
+
+		int n = array.length;
+		this.permutation = new int[n];
+		for (int i = 0; i < n; i++) {
+			this.permutation[i] = i;
+		}
+
+		int numNodes = this.getMaxNodeIndex(0, 0, n) + 1;
+		this.innerRadii = new double[numNodes];
+		this.outerRadii = new double[numNodes];
+
+		this.construct(0, 0, n, new double[n]);
+	}
+
+	@Override
+	public double distance(T a, T b) {
+		return this.metric.distance(a, b);
+	}
+
+	/**
+	 * This function returns the midpoint of the range of a node, which is the first
+	 * position of the outer subtree.
+	 */
+	private static int getMid(int lo, int hi) {
+		return lo + 1 + (hi - lo - 1) / 2;
+	}
+
+	/**
+	 * This function returns the largest node index in the subtree of the given node.
+	 */
+	private int getMaxNodeIndex(int node, int lo, int hi) {
+		if (hi - lo <= this.bucketSize) {
+			return node;
+		}
+		int mid = getMid(lo, hi);
+		return Math.max(this.getMaxNodeIndex(2 * node + 1, lo + 1, mid), this.getMaxNodeIndex(2 * node + 2, mid, hi));
+	}
+
+	/**
+	 * This function recursively constructs the subtree for the points at the positions
+	 * lo, ..., hi - 1 of the permutation.
+	 *
+	 * @param node the index of the node
+	 * @param lo the first position of the range
+	 * @param hi one past the last position of the range
+	 * @param keys an array used to hold the distances to the vantage point
+	 */
+	private void construct(int node, int lo, int hi, double[] keys) {
+		if (hi - lo <= this.bucketSize) {
+			return;
+		}
+
+		T vantagePoint = this.elements[this.permutation[lo]];
+		for (int k = lo + 1; k < hi; k++) {
+			keys[k] = this.distance(vantagePoint, this.elements[this.permutation[k]]);
+		}
+
+		int mid = getMid(lo, hi);
+		this.select(lo + 1, hi, mid, keys);
+
+		double innerRadius = Double.NEGATIVE_INFINITY;
+		for (int k = lo + 1; k < mid; k++) {
+			innerRadius = Math.max(innerRadius, keys[k]);
+		}
+		double outerRadius = Double.POSITIVE_INFINITY;
+		for (int k = mid; k < hi; k++) {
+			outerRadius = Math.min(outerRadius, keys[k]);
+		}
+		this.innerRadii[node] = innerRadius;
+		this.outerRadii[node] = outerRadius;
+
+		this.construct(2 * node + 1, lo + 1, mid, keys);
+		this.construct(2 * node + 2, mid, hi, keys);
+	}
+
+	/**
+	 * This function rearranges the permutation and the keys in the range lo, ..., hi - 1 so
+	 * that the keys before position k are less than or equal to the key at k, and the keys after
+	 * it are greater than or equal to it.
+	 */
+	private void select(int lo, int hi, int k, double[] keys) {
+		while (hi - lo > 1) {
+			double pivot = keys[(lo + hi) >>> 1];
+
+			// partition into [lo, lt) < pivot, [lt, i) == pivot, [gt, hi) > pivot
+			int lt = lo;
+			int i = lo;
+			int gt = hi;
+			while (i < gt) {
+				if (keys[i] < pivot) {
+					this.swap(keys, lt++, i++);
+				} else if (keys[i] > pivot) {
+					this.swap(keys, i, --gt);
+				} else {
+					i++;
+				}
+			}
+
+			if (k < lt) {
+				hi = lt;
+			} else if (k >= gt) {
+				lo = gt;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(double[] keys, int i, int j) {
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int index = this.permutation[i];
+		this.permutation[i] = this.permutation[j];
+		this.permutation[j] = index;
+	}
+
+	/**
+	 * This function returns true if a subtree whose points are at distance at least lowerBound
+	 * from the query point may contain points at distance at most radius. If the bound is not
+	 * a number, which happens for infinite distances, the subtree is searched.
+	 */
+	private static boolean mayIntersect(double lowerBound, double radius, double queryDistance) {
+		return !(lowerBound > radius + TOLERANCE * (Math.abs(queryDistance) + Math.abs(radius)));
+	}
+
+	@Override
+	public int getNearestPointIndex(T queryPoint) {
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(1);
+		this.kNearestNeighborSearch(0, 0, this.elements.length, queryPoint, false, -1, queue);
+		return (queue.size() > 0 ? queue.getWorstIndex() : 0);
+	}
+
+	@Override
+	public TIntHashSet getKNearestNeighbors(T queryPoint, int k) {
+		return new TIntHashSet(this.getOrderedKNearestNeighbors(queryPoint, k));
+	}
+
+	/**
+	 * This function returns the indices of the k nearest neighbors of the query point, ordered
+	 * by increasing distance. As with getKNearestNeighbors, points equal to the query point are
+	 * excluded.
+	 *
+	 * @param queryPoint the point to find the closest points to
+	 * @param k the number of neighbors to find
+	 * @return the indices of the k nearest points, in order of increasing distance
+	 */
+	public int[] getOrderedKNearestNeighbors(T queryPoint, int k) {
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.elements.length));
+		this.kNearestNeighborSearch(0, 0, this.elements.length, queryPoint, true, -1, queue);
+		return queue.toSortedArray();
+	}
+
+	@Override
+	public int[] getKNearestNeighbors(int index, int k) {
+		ExceptionUtility.verifyIndex(this.elements.length, index);
+		if (k <= 0) {
+			return new int[0];
+		}
+		KNearestNeighborQueue queue = new KNearestNeighborQueue(Math.min(k, this.elements.length));
+		this.kNearestNeighborSearch(0, 0, this.elements.length, this.elements[index], false, index, queue);
+		return queue.toSortedArray();
+	}
+
+	/**
+	 * This function performs the k-nearest neighbor search recursively.
+	 *
+	 * @param node the node to search in
+	 * @param lo the first position of the range of the node
+	 * @param hi one past the last position of the range of the node
+	 * @param queryPoint the reference point
+	 * @param excludeEqual true if points equal to the query point are to be skipped
+	 * @param excludedIndex the index of a point to skip, or -1
+	 * @param queue the best points found so far
+	 */
+	private void kNearestNeighborSearch(int node, int lo, int hi, T queryPoint, boolean excludeEqual, int excludedIndex, KNearestNeighborQueue queue) {
+		if (hi - lo <= this.bucketSize) {
+			for (int k = lo; k < hi; k++) {
+				this.offer(k, queryPoint, excludeEqual, excludedIndex, queue);
+			}
+			return;
+		}
+
+		double queryDistance = this.offer(lo, queryPoint, excludeEqual, excludedIndex, queue);
+		double innerRadius = this.innerRadii[node];
+		double outerRadius = this.outerRadii[node];
+		int mid = getMid(lo, hi);
+
+		// search the subtree which is more likely to contain the query point first
+		boolean innerFirst = (queryDistance - innerRadius <= outerRadius - queryDistance);
+		for (int pass = 0; pass < 2; pass++) {
+			if (innerFirst == (pass == 0)) {
+				if (!queue.isFull() || mayIntersect(queryDistance - innerRadius, queue.getWorstDistance(), queryDistance)) {
+					this.kNearestNeighborSearch(2 * node + 1, lo + 1, mid, queryPoint, excludeEqual, excludedIndex, queue);
+				}
+			} else {
+				if (!queue.isFull() || mayIntersect(outerRadius - queryDistance, queue.getWorstDistance(), queryDistance)) {
+					this.kNearestNeighborSearch(2 * node + 2, mid, hi, queryPoint, excludeEqual, excludedIndex, queue);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function offers the point at the given position to the queue, and returns its
+	 * distance to the query point.
+	 */
+	private double offer(int position, T queryPoint, boolean excludeEqual, int excludedIndex, KNearestNeighborQueue queue) {
+		int index = this.permutation[position];
+		T element = this.elements[index];
+		double distance = this.distance(queryPoint, element);
+		if (index != excludedIndex && (!excludeEqual || !element.equals(queryPoint))) {
+			queue.offer(index, distance);
+		}
+		return distance;
+	}
+
+	@Override
+	public TIntHashSet getOpenNeighborhood(T queryPoint, double epsilon) {
+		TIntHashSet neighborhood = new TIntHashSet();
+		if (epsilon == 0) {
+			return neighborhood;
+		}
+		this.epsilonNeighborhoodSearch(0, 0, this.elements.length, queryPoint, epsilon, true, neighborhood);
+		return neighborhood;
+	}
+
+	@Override
+	public TIntHashSet getClosedNeighborhood(T queryPoint, double epsilon) {
+		TIntHashSet neighborhood = new TIntHashSet();
+		this.epsilonNeighborhoodSearch(0, 0, this.elements.length, queryPoint, epsilon, false, neighborhood);
+		return neighborhood;
+	}
+
+	/**
+	 * This function performs the neighborhood search recursively.
+	 *
+	 * @param node the current node
+	 * @param lo the first position of the range of the node
+	 * @param hi one past the last position of the range of the node
+	 * @param queryPoint the center of the ball
+	 * @param epsilon the radius of the ball
+	 * @param openNeighborhood true if the neighborhood is open and false otherwise
+	 * @param neighborhood the current set of points found
+	 */
+	private void epsilonNeighborhoodSearch(int node, int lo, int hi, T queryPoint, double epsilon, boolean openNeighborhood, TIntHashSet neighborhood) {
+		if (hi - lo <= this.bucketSize) {
+			for (int k = lo; k < hi; k++) {
+				this.test(k, queryPoint, epsilon, openNeighborhood, neighborhood);
+			}
+			return;
+		}
+
+		double queryDistance = this.test(lo, queryPoint, epsilon, openNeighborhood, neighborhood);
+		int mid = getMid(lo, hi);
+
+		if (mayIntersect(queryDistance - this.innerRadii[node], epsilon, queryDistance)) {
+			this.epsilonNeighborhoodSearch(2 * node + 1, lo + 1, mid, queryPoint, epsilon, openNeighborhood, neighborhood);
+		}
+		if (mayIntersect(this.outerRadii[node] - queryDistance, epsilon, queryDistance)) {
+			this.epsilonNeighborhoodSearch(2 * node + 2, mid, hi, queryPoint, epsilon, openNeighborhood, neighborhood);
+		}
+	}
+
+	/**
+	 * This function adds the point at the given position to the neighborhood if it is in
+	 * the ball, and returns its distance to the query point.
+	 */
+	private double test(int position, T queryPoint, double epsilon, boolean openNeighborhood, TIntHashSet neighborhood) {
+		int index = this.permutation[position];
+		double distance = this.distance(queryPoint, this.elements[index]);
+		if (openNeighborhood ? distance < epsilon : distance <= epsilon) {
+			neighborhood.add(index);
+		}
+		return distance;
+	}
+}
@@ -0,0 +1,22 @@
+package edu.stanford.math.plex4.metric.interfaces;
+
+/**
+ * This interface defines a k-nearest neighbor query for the points of a finite metric space,
+ * which are identified by their indices. Unlike the query by point of AbstractSearchableMetricSpace,
+ * which skips the points equal to the query point, only the point with the given index is excluded,
+ * so duplicated points are neighbors of each other.
+ *
+ */
+public interface AbstractKNearestNeighborSearchable extends AbstractIntMetricSpace {
+
+	/**
+	 * This function returns the indices of the k points closest to the point with the given
+	 * index, excluding the point itself, in order of increasing distance. Points at equal distance
+	 * are ordered by their indices. If there are fewer than k other points, all of them are returned.
+	 *
+	 * @param index the index of the reference point
+	 * @param k the number of nearest neighbors to get
+	 * @return the k-nearest neighbors of the point, in order of increasing distance
+	 */
+	public int[] getKNearestNeighbors(int index, int k);
+}
@@ -0,0 +1,27 @@
+package edu.stanford.math.plex4.metric.interfaces;
+
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+
+/**
+ * This interface defines a neighborhood query of a finite metric space which reports the
+ * distances that were computed by the search along with the indices. It is used to build
+ * neighborhood graphs in which every edge is found from its upper vertex, so that no distance
+ * has to be evaluated twice.
+ *
+ */
+public interface AbstractLowerNeighborhoodSearchable extends AbstractIntMetricSpace {
+
+	/**
+	 * This function finds the points with indices j &lt; index which are contained in the
+	 * closed ball of radius epsilon centered at the point with the given index, and appends
+	 * the indices j and the distances d(p_j, p_index) to the supplied lists, in no particular
+	 * order. The distances are equal to the ones returned by distance(index, j).
+	 *
+	 * @param index the index of the center of the closed ball
+	 * @param epsilon the radius of the closed ball
+	 * @param indices the list to append the indices of the lower neighbors to
+	 * @param distances the list to append their distances to
+	 */
+	public void getClosedLowerNeighborhood(int index, double epsilon, TIntArrayList indices, TDoubleArrayList distances);
+}
@@ -0,0 +1,231 @@
+package edu.stanford.math.plex4.metric.landmark;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+
+/**
+ * <p>This class holds the L x N matrix of distances between the points of a landmark
+ * set and all points of a metric space, as used by the witness complex constructions.
+ * A cache can be shared by several witness streams built on the same metric space and
+ * landmark set, for example when the values of nu or the maximum distance are varied,
+ * so that the matrix is only computed once.</p>
+ *
+ * <p>The distances can be stored in double or single precision. If the matrix does not
+ * fit into the given memory limit, or cannot be allocated, the distances are not stored,
+ * and are recomputed from the metric space whenever they are requested.</p>
+ *
+ * <p>The cache also stores the smallest distances from each point to the landmarks,
+ * which are needed for the nu-values of the witness complexes.</p>
+ *
+ * @param <T> the type of the underlying metric space
+ */
+public class LandmarkDistanceCache<T> {
+
+	private final AbstractSearchableMetricSpace<T> metricSpace;
+	private final int[] landmarkPoints;
+	private final int L;
+	private final int N;
+
+	/**
+	 * The stored distances, in double or single precision. If both are null, the
+	 * distances are computed on demand.
+	 */
+	private double[][] doubleDistances = null;
+	private float[][] floatDistances = null;
+
+	/**
+	 * The i-th row holds the i-th smallest distance from each point to the landmarks.
+	 */
+	private double[][] smallestDistances = new double[0][];
+
+	/**
+	 * This constructor computes and stores the distances in double precision.
+	 *
+	 * @param metricSpace the metric space
+	 * @param landmarkSelector the landmark set within the metric space
+	 */
+	public LandmarkDistanceCache(AbstractSearchableMetricSpace<T> metricSpace, LandmarkSelector<T> landmarkSelector) {
+		this(metricSpace, landmarkSelector, false, Long.MAX_VALUE);
+	}
+
+	/**
+	 * This constructor computes and stores the distances in the given precision.
+	 *
+	 * @param metricSpace the metric space
+	 * @param landmarkSelector the landmark set within the metric space
+	 * @param singlePrecision true if the distances are to be stored as floats
+	 */
+	public LandmarkDistanceCache(AbstractSearchableMetricSpace<T> metricSpace, LandmarkSelector<T> landmarkSelector, boolean singlePrecision) {
+		this(metricSpace, landmarkSelector, singlePrecision, Long.MAX_VALUE);
+	}
+
+	/**
+	 * This constructor computes and stores the distances in the given precision, if they
+	 * fit into the given number of bytes.
+	 *
+	 * @param metricSpace the metric space
+	 * @param landmarkSelector the landmark set within the metric space
+	 * @param singlePrecision true if the distances are to be stored as floats
+	 * @param maxStoredBytes the maximum size of the stored matrix, 0 for computing all distances on demand
+	 */
+	public LandmarkDistanceCache(AbstractSearchableMetricSpace<T> metricSpace, LandmarkSelector<T> landmarkSelector, boolean singlePrecision, long maxStoredBytes) {
+		ExceptionUtility.verifyNonNull(metricSpace);
+		ExceptionUtility.verifyNonNull(landmarkSelector);
+		this.metricSpace = metricSpace;
+		this.landmarkPoints = landmarkSelector.getLandmarkPoints().clone();
+		this.L = this.landmarkPoints.length;
+		this.N = metricSpace.size();
+
+		long bytes = (long) this.L * this.N * (singlePrecision ? 4 : 8);
+		if (bytes <= maxStoredBytes) {
+			try {
+				if (singlePrecision) {
+					this.floatDistances = new float[this.L][this.N];
+				} else {
+					this.doubleDistances = new double[this.L][this.N];
+				}
+			} catch (OutOfMemoryError error) {
+				this.floatDistances = null;
+				this.doubleDistances = null;
+			}
+		}
+
+		for (int l = 0; l < this.L; l++) {
+			if (this.doubleDistances != null) {
+				this.computeRow(l, this.doubleDistances[l]);
+			} else if (this.floatDistances != null) {
+				float[] row = this.floatDistances[l];
+				for (int n = 0; n < this.N; n++) {
+					row[n] = (float) this.metricSpace.distance(this.landmarkPoints[l], n);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the metric space
+	 */
+	public AbstractSearchableMetricSpace<T> getMetricSpace() {
+		return this.metricSpace;
+	}
+
+	/**
+	 * @return the number of landmark points
+	 */
+	public int getNumLandmarks() {
+		return this.L;
+	}
+
+	/**
+	 * @return the number of points of the metric space
+	 */
+	public int getNumPoints() {
+		return this.N;
+	}
+
+	/**
+	 * @return true if the distances are stored, and false if they are computed on demand
+	 */
+	public boolean isStored() {
+		return (this.doubleDistances != null || this.floatDistances != null);
+	}
+
+	/**
+	 * This function returns true if the cache was built for the given metric space and
+	 * landmark set.
+	 *
+	 * @param metricSpace the metric space
+	 * @param landmarkSelector the landmark set
+	 * @return true if the cache holds the distances for the given landmark set
+	 */
+	public boolean isCompatible(AbstractSearchableMetricSpace<T> metricSpace, LandmarkSelector<T> landmarkSelector) {
+		return (this.metricSpace == metricSpace && Arrays.equals(this.landmarkPoints, landmarkSelector.getLandmarkPoints()));
+	}
+
+	/**
+	 * This function returns the distance between a landmark point and a point of the metric space.
+	 *
+	 * @param landmark the index of the landmark point within the landmark set
+	 * @param point the index of the point within the metric space
+	 * @return the distance between the two points
+	 */
+	public double getDistance(int landmark, int point) {
+		if (this.doubleDistances != null) {
+			return this.doubleDistances[landmark][point];
+		} else if (this.floatDistances != null) {
+			return this.floatDistances[landmark][point];
+		}
+		return this.metricSpace.distance(this.landmarkPoints[landmark], point);
+	}
+
+	/**
+	 * This function returns the distances from a landmark point to all points of the metric
+	 * space. If the distances are stored in double precision, the stored row is returned, and
+	 * must not be modified. Otherwise a new array is returned.
+	 *
+	 * @param landmark the index of the landmark point within the landmark set
+	 * @return the distances from the landmark point to all points
+	 */
+	public double[] getRow(int landmark) {
+		if (this.doubleDistances != null) {
+			return this.doubleDistances[landmark];
+		}
+		double[] row = new double[this.N];
+		if (this.floatDistances != null) {
+			float[] storedRow = this.floatDistances[landmark];
+			for (int n = 0; n < this.N; n++) {
+				row[n] = storedRow[n];
+			}
+		} else {
+			this.computeRow(landmark, row);
+		}
+		return row;
+	}
+
+	/**
+	 * This function writes the distances from a point of the metric space to all landmark points
+	 * into the given array.
+	 *
+	 * @param point the index of the point within the metric space
+	 * @param column the array of length at least L to write the distances to
+	 */
+	public void getColumn(int point, double[] column) {
+		for (int l = 0; l < this.L; l++) {
+			column[l] = this.getDistance(l, point);
+		}
+	}
+
+	/**
+	 * This function returns the k smallest distances from each point of the metric space to
+	 * the landmark set, as a k x N matrix whose i-th row contains the i-th smallest distances.
+	 * The rows are shared between calls, and must not be modified.
+	 *
+	 * @param k the number of distances per point, which must be at most L
+	 * @return the matrix of the k smallest distances to the landmarks
+	 */
+	public synchronized double[][] getSmallestDistances(int k) {
+		ExceptionUtility.verifyNonNegative(k);
+		ExceptionUtility.verifyLessThanOrEqual(k, this.L);
+		if (k > this.smallestDistances.length) {
+			double[][] distances = new double[k][this.N];
+			double[] column = new double[this.L];
+			for (int n = 0; n < this.N; n++) {
+				this.getColumn(n, column);
+				Arrays.sort(column);
+				for (int i = 0; i < k; i++) {
+					distances[i][n] = column[i];
+				}
+			}
+			this.smallestDistances = distances;
+		}
+		return Arrays.copyOf(this.smallestDistances, k);
+	}
+
+	private void computeRow(int landmark, double[] row) {
+		for (int n = 0; n < this.N; n++) {
+			row[n] = this.metricSpace.distance(this.landmarkPoints[landmark], n);
+		}
+	}
+}
@@ -1,31 +1,54 @@
 package edu.stanford.math.plex4.metric.landmark;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.plex4.utility.ParallelUtility;
 import edu.stanford.math.plex4.utility.RandomUtility;
 import edu.stanford.math.primitivelib.utility.Infinity;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntIterator;
 
 /**
- * This class implements sequential max-min landmark selection of points from a 
+ * This class implements sequential max-min landmark selection of points from a
  * metric space. This method of landmark selection chooses points that are as
  * far spread out as possible, using the following inductive procedure:
  * Suppose that {l_0, ..., l_{i-1}} have been chosen as landmark points.
- * Define the function f(z) = min{d(z, l_0), ...., d(z, l_{i-1}} and define 
+ * Define the function f(z) = min{d(z, l_0), ...., d(z, l_{i-1}} and define
  * l_i to be l_i = arg max f(z). We start with l_0 being chosen randomly.
- * 
+ *
+ * The values f(z) are stored for all points and updated with the distances to
+ * each new landmark, so that the selection requires O(n * L) distance computations.
+ * The updates can be distributed over several threads. Since f(z) is maximized
+ * over the whole space in each step, the covering radius of each prefix of the
+ * landmark set is recorded as well.
+ *
  * @author Andrew Tausz
  *
  * @param <T> the type of the underlying metric space
  */
 public class MaxMinLandmarkSelector<T> extends LandmarkSelector<T> {
 
+	/**
+	 * This is the minimum number of points in a block of the parallel update.
+	 */
+	private static final int MIN_BLOCK_SIZE = 4096;
+
 	private int firstPoint;
-	
+	private int numThreads = 1;
+
+	/**
+	 * The i-th entry is the covering radius max_{x} d(x, {l_0, ..., l_i}).
+	 */
+	private double[] coveringRadii;
+
 	/**
 	 * This constructor initializes the landmark selector with a finite metric space,
 	 * and a size parameter.
-	 * 
+	 *
 	 * @param metricSpace the metric space to build the landmarks set in
 	 * @param landmarkSetSize the size of the landmark set
 	 */
@@ -34,11 +57,11 @@ public class MaxMinLandmarkSelector<T> extends LandmarkSelector<T> {
 		this.firstPoint = RandomUtility.nextUniformInt(0, this.metricSpace.size() - 1);
 		this.indexMapping = this.computeLandmarkSet();
 	}
-	
+
 	/**
 	 * This constructor initializes the landmark selector with a finite metric space,
 	 * and a size parameter.
-	 * 
+	 *
 	 * @param metricSpace the metric space to build the landmarks set in
 	 * @param landmarkSetSize the size of the landmark set
 	 * @param firstPoint the initial point to use
@@ -49,60 +72,150 @@ public class MaxMinLandmarkSelector<T> extends LandmarkSelector<T> {
 		this.indexMapping = this.computeLandmarkSet();
 	}
 
+	/**
+	 * This constructor initializes the landmark selector with a finite metric space,
+	 * and a size parameter, and distributes the distance computations over the given
+	 * number of threads. The distance function of the metric space must be safe to call
+	 * from several threads. The selected landmarks do not depend on the number of threads.
+	 *
+	 * @param metricSpace the metric space to build the landmarks set in
+	 * @param landmarkSetSize the size of the landmark set
+	 * @param firstPoint the initial point to use
+	 * @param numThreads the number of threads to use
+	 */
+	public MaxMinLandmarkSelector(AbstractSearchableMetricSpace<T> metricSpace, int landmarkSetSize, int firstPoint, int numThreads) {
+		super(metricSpace, landmarkSetSize, false);
+		ExceptionUtility.verifyPositive(numThreads);
+		this.firstPoint = firstPoint;
+		this.numThreads = numThreads;
+		this.indexMapping = this.computeLandmarkSet();
+	}
+
+	/**
+	 * This class updates the values f(z) of a block of points with the distances to a
+	 * new landmark, and finds the maximum of the updated values within the block.
+	 */
+	private class UpdateTask implements Runnable {
+		private final double[] minDistances;
+		private final boolean[] isLandmark;
+		private final int from;
+		private final int to;
+		private int landmark;
+		private double max_f_value;
+		private int arg_max_f;
+
+		UpdateTask(double[] minDistances, boolean[] isLandmark, int from, int to) {
+			this.minDistances = minDistances;
+			this.isLandmark = isLandmark;
+			this.from = from;
+			this.to = to;
+		}
+
+		public void run() {
+			this.max_f_value = Infinity.Double.getNegativeInfinity();
+			this.arg_max_f = -1;
+			for (int z_index = this.from; z_index < this.to; z_index++) {
+				if (!this.isLandmark[z_index]) {
+					double f_value = Math.min(this.minDistances[z_index], metricSpace.distance(z_index, this.landmark));
+					this.minDistances[z_index] = f_value;
+					if (f_value > this.max_f_value) {
+						this.max_f_value = f_value;
+						this.arg_max_f = z_index;
+					}
+				}
+			}
+		}
+	}
+
 	@Override
 	protected int[] computeLandmarkSet() {
 		int[] landmarkIndices = new int[this.landmarkSetSize];
+		this.coveringRadii = new double[this.landmarkSetSize];
+		if (this.landmarkSetSize == 0) {
+			return landmarkIndices;
+		}
 
 		int metricSpaceSize = this.metricSpace.size();
 
-		TIntHashSet landmarkSet = new TIntHashSet();
-
-		landmarkSet.add(this.firstPoint);
-		landmarkIndices[0] = this.firstPoint;
-
 		/*
-		 * Construct the landmark set inductively. Suppose that
-		 * {l_0, ..., l_{i-1}} have been chosen as landmark points.
-		 * Define the function 
-		 * f(z) = min{d(z, l_0), ...., d(z, l_{i-1}}
-		 * and define l_i to be l_i = arg max f(z)
-		 * 
+		 * minDistances[z] holds f(z) = min{d(z, l_0), ...., d(z, l_{i-1}}
+		 * for the points z which are not landmarks.
 		 */
-		for (int i = 1; i < this.landmarkSetSize; i++) {
-			double max_f_value = Infinity.Double.getNegativeInfinity();
-			int arg_max_f = 0;
-			for (int z_index = 0; z_index < metricSpaceSize; z_index++) {
-				if (!landmarkSet.contains(z_index)) {
-					double f_value = this.computeMinDistance(z_index, landmarkSet);
-					if (f_value > max_f_value) {
-						max_f_value = f_value;
-						arg_max_f = z_index;
+		double[] minDistances = new double[metricSpaceSize];
+		Arrays.fill(minDistances, Infinity.Double.getPositiveInfinity());
+		boolean[] isLandmark = new boolean[metricSpaceSize];
+
+		int numBlocks = Math.max(1, Math.min(this.numThreads, metricSpaceSize / MIN_BLOCK_SIZE));
+		List<UpdateTask> tasks = new ArrayList<UpdateTask>();
+		for (int block = 0; block < numBlocks; block++) {
+			int from = (int) ((long) metricSpaceSize * block / numBlocks);
+			int to = (int) ((long) metricSpaceSize * (block + 1) / numBlocks);
+			tasks.add(new UpdateTask(minDistances, isLandmark, from, to));
+		}
+		ExecutorService executor = (numBlocks > 1 ? Executors.newFixedThreadPool(numBlocks) : null);
+
+		try {
+			/*
+			 * Construct the landmark set inductively. Suppose that
+			 * {l_0, ..., l_{i-1}} have been chosen as landmark points.
+			 * Define the function
+			 * f(z) = min{d(z, l_0), ...., d(z, l_{i-1}}
+			 * and define l_i to be l_i = arg max f(z)
+			 *
+			 */
+			int landmark = this.firstPoint;
+			for (int i = 0; i < this.landmarkSetSize; i++) {
+				landmarkIndices[i] = landmark;
+				isLandmark[landmark] = true;
+
+				for (UpdateTask task : tasks) {
+					task.landmark = landmark;
+				}
+				if (executor != null) {
+					ParallelUtility.runTasks(tasks, executor);
+				} else {
+					tasks.get(0).run();
+				}
+
+				// the blocks are combined in order, so that ties are broken by the smallest index
+				double max_f_value = Infinity.Double.getNegativeInfinity();
+				int arg_max_f = 0;
+				for (UpdateTask task : tasks) {
+					if (task.arg_max_f >= 0 && task.max_f_value > max_f_value) {
+						max_f_value = task.max_f_value;
+						arg_max_f = task.arg_max_f;
 					}
 				}
-			}
 
-			landmarkSet.add(arg_max_f);
-			landmarkIndices[i] = arg_max_f;
+				this.coveringRadii[i] = Math.max(0, max_f_value);
+				landmark = arg_max_f;
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
 		}
 
 		return landmarkIndices;
 	}
 
 	/**
-	 * This function computes the function f(z) = min{d(z, l_0), ...., d(z, l_{i-1}}.
-	 * 
-	 * @param queryPointIndex the index of the argument z in the above expression
-	 * @param existingLandmarkPoints the set {l_0, ..., l_{i-1}}
-	 * @return the value min{d(z, l_0), ...., d(z, l_{i-1}}
+	 * This function returns the maximum distance between the points of the metric space
+	 * and the first i + 1 landmark points, max_{x in X} d(x, {l_0, ..., l_i}).
+	 *
+	 * @param i the index of the last landmark point to consider
+	 * @return the covering radius of the first i + 1 landmark points
 	 */
-	private double computeMinDistance(int queryPointIndex, TIntHashSet existingLandmarkPoints) {
-		double minDistance = Infinity.Double.getPositiveInfinity();
+	public double getCoveringRadius(int i) {
+		ExceptionUtility.verifyIndex(this.landmarkSetSize, i);
+		return this.coveringRadii[i];
+	}
 
-		for (TIntIterator iterator = existingLandmarkPoints.iterator(); iterator.hasNext(); ) {
-			minDistance = Math.min(minDistance, this.metricSpace.distance(queryPointIndex, iterator.next()));
+	@Override
+	public double getMaxDistanceFromPointsToLandmarks() {
+		if (this.landmarkSetSize == 0) {
+			return super.getMaxDistanceFromPointsToLandmarks();
 		}
-
-		return minDistance;
+		return this.coveringRadii[this.landmarkSetSize - 1];
 	}
-
 }
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import edu.stanford.math.plex4.metric.interfaces.AbstractIntMetricSpace;
+import edu.stanford.math.plex4.metric.interfaces.AbstractKNearestNeighborSearchable;
 import edu.stanford.math.plex4.metric.interfaces.AbstractObjectMetricSpace;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
 import edu.stanford.math.plex4.utility.ArrayUtility;
@@ -129,15 +130,36 @@ public class MetricUtility {
 		return distances;
 	}
 	
+	/**
+	 * This function computes the distance from each point to its k-th nearest neighbor, where
+	 * all other points, including duplicates of the point, are candidates. If the metric space
+	 * implements AbstractKNearestNeighborSearchable, the neighbors are found with its queries by
+	 * index, so that spatial indices such as KD-trees or vantage point trees are used. Otherwise,
+	 * or if there are at most k points, the distance is computed by sorting all distances from
+	 * the point.
+	 * 
+	 * @param metricSpace the metric space
+	 * @param k the number of the neighbor
+	 * @return the distances from the points to their k-th nearest neighbors
+	 */
 	public static <T> double[] getKthNearestNeighborDistances(AbstractSearchableMetricSpace<T> metricSpace, int k) {
 		int n = metricSpace.size();
 		
 		double[] neighborDistances = new double[n];
 		
 		for (int i = 0; i < n; i++) {
-			double[] distances = getAllDistances(metricSpace, i);
-			Arrays.sort(distances);
-			neighborDistances[i] = distances[k];
+			int[] neighbors = null;
+			if (k > 0 && metricSpace instanceof AbstractKNearestNeighborSearchable) {
+				neighbors = ((AbstractKNearestNeighborSearchable) metricSpace).getKNearestNeighbors(i, k);
+			}
+			if (neighbors != null && neighbors.length == k) {
+				// the neighbors are in order of increasing distance
+				neighborDistances[i] = metricSpace.distance(i, neighbors[k - 1]);
+			} else {
+				double[] distances = getAllDistances(metricSpace, i);
+				Arrays.sort(distances);
+				neighborDistances[i] = distances[k];
+			}
 		}
 		
 		return neighborDistances;
@@ -3,18 +3,22 @@
  */
 package edu.stanford.math.plex4.streams.impl;
 
-import edu.stanford.math.plex4.graph.UndirectedWeightedListGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.math.plex4.graph.AbstractWeightedUndirectedGraph;
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
+import edu.stanford.math.plex4.graph.utility.EdgeCollapser;
 import edu.stanford.math.plex4.homology.barcodes.Interval;
 import edu.stanford.math.plex4.homology.barcodes.PersistenceInvariantDescriptor;
 import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
 import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
 import edu.stanford.math.plex4.homology.filtration.FiltrationUtility;
-import edu.stanford.math.plex4.homology.utility.HomologyUtility;
 import edu.stanford.math.plex4.streams.interfaces.PrimitiveStream;
 import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntIterator;
+import edu.stanford.math.plex4.utility.ParallelUtility;
 
 /**
  * <p>
@@ -40,6 +44,19 @@ import gnu.trove.TIntIterator;
  * implementation uses the incremental algorithm described in the above paper.
  * </p>
  * 
+ * <p>
+ * Since the cofaces of different vertices are independent, the expansion can
+ * be performed on several threads. In this case, the vertices are partitioned
+ * among the threads, and each thread stores the simplices it generates in its
+ * own buffer. The buffers are added to the storage structure once all of the
+ * threads have finished, before the stream is finalized.
+ * </p>
+ * 
+ * <p>
+ * Optionally, the 1-skeleton can be simplified by edge collapses with an
+ * EdgeCollapser before the expansion, which preserves the barcodes.
+ * </p>
+ * 
  * @author Andrew Tausz
  * 
  */
@@ -52,7 +69,7 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 	/**
 	 * Stores the neighborhood graph.
 	 */
-	protected UndirectedWeightedListGraph neighborhoodGraph = null;
+	protected AbstractWeightedUndirectedGraph neighborhoodGraph = null;
 
 	/**
 	 * This converts between filtration indices and values
@@ -61,6 +78,34 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 
 	protected int[] indices = null;
 
+	/**
+	 * The number of threads used to construct the complex. This is used both for the
+	 * construction of the 1-skeleton and for the expansion of the higher skeletons.
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * If this is not null, the i-th vertex only appears in simplices whose
+	 * filtration value is at most vertexFiltrationBounds[i]. Since the
+	 * filtration value of a simplex is at least the ones of its faces, the
+	 * result is still a filtered complex, but it is in general not a flag
+	 * complex. This is used by sparse filtrations, which remove vertices at
+	 * some scale.
+	 */
+	protected double[] vertexFiltrationBounds = null;
+
+	/**
+	 * If this is true, the 1-skeleton is simplified by edge collapses before
+	 * the expansion.
+	 */
+	protected boolean collapseEdges = false;
+
+	/**
+	 * The number of edges removed and moved by the edge collapses.
+	 */
+	protected int numRemovedEdges = 0;
+	protected int numMovedEdges = 0;
+
 	/**
 	 * This constructor initializes the class.
 	 * 
@@ -104,11 +149,13 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 	 * This function implements the construction of the 1-skeleton. It must
 	 * output a list containing pairs of filtration values and 1-simplices. The
 	 * filtration value of an edge is the threshold value at which the edge
-	 * appears in the filtered sequence of simplicial complexes.
+	 * appears in the filtered sequence of simplicial complexes. Implementations
+	 * should preferably return a CompressedWeightedGraph, since the expansion
+	 * otherwise has to convert the graph to this form.
 	 * 
 	 * @return the 1-skeleton of the complex along with its filtration values
 	 */
-	protected abstract UndirectedWeightedListGraph constructEdges();
+	protected abstract AbstractWeightedUndirectedGraph constructEdges();
 
 	/**
 	 * This returns the neighborhood graph (equivalent to the 1-skeleton) of the
@@ -116,7 +163,7 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 	 * 
 	 * @return the neighborhood graph
 	 */
-	public UndirectedWeightedListGraph getNeighborhoodGraph() {
+	public AbstractWeightedUndirectedGraph getNeighborhoodGraph() {
 		return this.neighborhoodGraph;
 	}
 
@@ -133,6 +180,74 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 		return this.converter;
 	}
 
+	/**
+	 * This function returns the maximum dimension of the simplices in the complex.
+	 * 
+	 * @return the maximum allowable dimension
+	 */
+	public int getMaxAllowableDimension() {
+		return this.maxAllowableDimension;
+	}
+
+	/**
+	 * This function sets the number of threads which are used to construct the complex.
+	 * It must be called before the stream is finalized.
+	 * 
+	 * @param numThreads
+	 *            the number of threads to use
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * This function returns the number of threads which are used to construct the complex.
+	 * 
+	 * @return the number of threads
+	 */
+	public int getNumThreads() {
+		return this.numThreads;
+	}
+
+	/**
+	 * This function sets whether the 1-skeleton is simplified by edge collapses
+	 * before the higher skeletons are constructed. The collapses remove edges or
+	 * increase their filtration values, without changing the barcodes in dimensions
+	 * less than the maximum dimension of the complex, which can make the complex much
+	 * smaller. The collapses are not performed for streams which use vertex filtration
+	 * bounds, since these are not flag complexes. It must be called before the stream
+	 * is finalized.
+	 * 
+	 * @param collapseEdges
+	 *            true if the edges are to be collapsed
+	 */
+	public void setEdgeCollapse(boolean collapseEdges) {
+		this.collapseEdges = collapseEdges;
+	}
+
+	/**
+	 * This function returns the number of edges which were removed from the
+	 * 1-skeleton by edge collapses.
+	 * 
+	 * @return the number of removed edges
+	 */
+	public int getNumRemovedEdges() {
+		return this.numRemovedEdges;
+	}
+
+	/**
+	 * This function returns the number of edges of the 1-skeleton whose filtration
+	 * values were increased by edge collapses.
+	 * 
+	 * @return the number of moved edges
+	 */
+	public int getNumMovedEdges() {
+		return this.numMovedEdges;
+	}
+
 	/**
 	 * This function transforms the given collection of filtration index
 	 * barcodes into filtration value barcodes.
@@ -151,94 +266,239 @@ public abstract class FlagComplexStream extends PrimitiveStream<Simplex> {
 		// construct the neighborhood graph
 		this.neighborhoodGraph = this.constructEdges();
 
+		// simplify the neighborhood graph
+		if (this.collapseEdges && this.vertexFiltrationBounds == null) {
+			EdgeCollapser collapser = new EdgeCollapser(this.neighborhoodGraph, this.converter);
+			this.neighborhoodGraph = collapser.getCollapsedGraph();
+			this.numRemovedEdges = collapser.getNumRemovedEdges();
+			this.numMovedEdges = collapser.getNumMovedEdges();
+		}
+
 		// expand higher order simplices
 		this.incrementalExpansion(neighborhoodGraph, this.maxAllowableDimension);
 	}
 
 	/**
-	 * This function performs the incremental expansion of the complex.
+	 * This function performs the incremental expansion of the complex. The
+	 * graph is used in compressed sparse row form, so that the expansion only
+	 * allocates the simplices it stores.
 	 * 
 	 * @param G
 	 *            the neighborhood graph
 	 * @param k
 	 *            the maximum dimension
 	 */
-	protected void incrementalExpansion(UndirectedWeightedListGraph G, int k) {
-		int n = G.getNumVertices();
+	protected void incrementalExpansion(AbstractWeightedUndirectedGraph G, final int k) {
+		final CompressedWeightedGraph graph = CompressedWeightedGraph.copyOf(G);
+		final int n = graph.getNumVertices();
+
+		if (this.numThreads == 1) {
+			// inductively add all of the singletons as well as their cofaces
+			CliqueExpander expander = new CliqueExpander(graph, k, null);
+			for (int u = 0; u < n; u++) {
+				expander.expandVertex(u);
+			}
+			return;
+		}
 
-		// inductively add all of the singletons as well as their cofaces
-		for (int u = 0; u < n; u++) {
-			this.addCofaces(G, k, new Simplex(new int[] { u }), G.getLowerNeighbors(u), this.converter.getInitialFiltrationValue());
+		// partition the vertices in a round-robin fashion to balance the work
+		final int numTasks = this.numThreads;
+		final List<SimplexBuffer> buffers = new ArrayList<SimplexBuffer>();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int t = 0; t < numTasks; t++) {
+			final int offset = t;
+			final SimplexBuffer buffer = new SimplexBuffer();
+			buffers.add(buffer);
+			tasks.add(new Runnable() {
+				public void run() {
+					CliqueExpander expander = new CliqueExpander(graph, k, buffer);
+					for (int u = offset; u < n; u += numTasks) {
+						expander.expandVertex(u);
+					}
+				}
+			});
+		}
+		ParallelUtility.runTasks(tasks, this.numThreads);
+
+		// merge the buffers into the storage structure
+		for (SimplexBuffer buffer : buffers) {
+			for (int i = 0; i < buffer.size; i++) {
+				this.storageStructure.addElement(buffer.simplices[i], buffer.filtrationIndices[i]);
+			}
 		}
 	}
 
 	/**
-	 * This function inductively adds all of the cofaces of the simplex tau to
-	 * the complex. For more information about this algorithm, consult the paper
-	 * "Fast Construction of the Vietoris-Rips Complex" by Afra Zomorodian.
+	 * This class inductively adds all of the cofaces of a simplex to the
+	 * complex, as in the incremental expansion of "Fast Construction of the
+	 * Vietoris-Rips Complex" by Afra Zomorodian. It stores the current simplex
+	 * and the lower neighborhoods at each depth in reusable arrays. The lower neighborhood of tau U {v} is computed by merging the
+	 * sorted lower neighborhood of tau with the one of v.
 	 * 
-	 * @param G
-	 *            the neighborhood graph
-	 * @param k
-	 *            the maximum allowable dimension
-	 * @param tau
-	 *            the current simplex to add
-	 * @param N
-	 *            the lower neighbors to investigate
-	 * @param filtrationValue
-	 *            the filtration value of the current simplex, tau
-	 */
-	protected void addCofaces(UndirectedWeightedListGraph G, int k, Simplex tau, TIntHashSet N, double filtrationValue) {
-
-		Simplex newSimplex = null;
-		if (this.indices != null) {
-			newSimplex = HomologyUtility.convertIndices(tau, this.indices);
-		} else {
-			newSimplex = tau;
+	 * Along with each candidate vertex c in the lower neighborhood of tau,
+	 * the maximum (or more generally, the induced value) of the weights of
+	 * the edges between c and the vertices of tau is stored. This gives the
+	 * filtration value of tau U {c} without looking up any edge weights.
+	 */
+	private class CliqueExpander {
+		private final CompressedWeightedGraph graph;
+		private final int k;
+		private final SimplexBuffer buffer;
+
+		/**
+		 * vertices[0], ..., vertices[depth] are the vertices of the current simplex.
+		 */
+		private final int[] vertices;
+		private final int[] convertedVertices;
+
+		/**
+		 * bounds[depth] is the minimum of the vertex filtration bounds of the
+		 * vertices of the current simplex.
+		 */
+		private final double[] bounds;
+
+		/**
+		 * candidates[depth] contains the common lower neighbors of the vertices of
+		 * the current simplex, and candidateWeights[depth] contains the induced
+		 * weights of the edges from these vertices.
+		 */
+		private final int[][] candidates;
+		private final double[][] candidateWeights;
+		private final int[] candidateSizes;
+
+		CliqueExpander(CompressedWeightedGraph graph, int k, SimplexBuffer buffer) {
+			this.graph = graph;
+			this.k = k;
+			this.buffer = buffer;
+			this.vertices = new int[k + 1];
+			this.convertedVertices = new int[k + 1];
+			this.bounds = new double[k + 1];
+			this.candidates = new int[k + 1][graph.getMaxLowerDegree()];
+			this.candidateWeights = new double[k + 1][graph.getMaxLowerDegree()];
+			this.candidateSizes = new int[k + 1];
+		}
+
+		/**
+		 * This function adds the vertex u and all of its cofaces in which u is
+		 * the largest vertex.
+		 */
+		void expandVertex(int u) {
+			this.vertices[0] = u;
+			int size = 0;
+			for (int p = this.graph.getStart(u); p < this.graph.getLowerEnd(u); p++) {
+				this.candidates[0][size] = this.graph.getNeighborAt(p);
+				this.candidateWeights[0][size] = this.graph.getWeightAt(p);
+				size++;
+			}
+			this.candidateSizes[0] = size;
+			this.bounds[0] = (vertexFiltrationBounds == null ? Double.POSITIVE_INFINITY : vertexFiltrationBounds[u]);
+			this.expand(0, converter.getInitialFiltrationValue());
 		}
 
-		// add the current simplex to the complex
-		this.storageStructure.addElement(newSimplex, this.converter.getFiltrationIndex(filtrationValue));
+		private void expand(int depth, double filtrationValue) {
+			this.emit(depth + 1, filtrationValue);
 
-		// exit if the dimension is the maximum allowed
-		if (tau.getDimension() >= k) {
-			return;
+			// exit if the dimension is the maximum allowed
+			if (depth >= this.k) {
+				return;
+			}
+
+			int[] currentCandidates = this.candidates[depth];
+			double[] currentWeights = this.candidateWeights[depth];
+			for (int c = 0; c < this.candidateSizes[depth]; c++) {
+				int v = currentCandidates[c];
+
+				// the weight of an edge is its length, otherwise it is induced by the faces
+				double weight = currentWeights[c];
+				if (depth > 0) {
+					weight = converter.computeInducedFiltrationValue(filtrationValue, weight);
+				}
+
+				// a simplex which exceeds the bound of one of its vertices has no cofaces either
+				if (vertexFiltrationBounds != null) {
+					this.bounds[depth + 1] = Math.min(this.bounds[depth], vertexFiltrationBounds[v]);
+					if (weight > this.bounds[depth + 1]) {
+						continue;
+					}
+				}
+
+				// the lower neighborhood of the new simplex is only needed if it has cofaces
+				if (depth + 1 < this.k) {
+					this.intersect(depth, c, v);
+				}
+
+				this.vertices[depth + 1] = v;
+				this.expand(depth + 1, weight);
+			}
 		}
 
-		double weight = 0;
-
-		TIntIterator iterator = N.iterator();
-		TIntHashSet M;
-
-		// iterate through the lower neighborhood
-		while (iterator.hasNext()) {
-			int v = iterator.next();
-
-			// create a new simplex by appending
-			// ie. sigma = tau U {v}
-			Simplex sigma = new Simplex(HomologyUtility.appendToArray(tau.getVertices(), v));
-
-			// compute the intersection between N and the lower neighbors of v
-			M = HomologyUtility.computeIntersection(N, G.getLowerNeighbors(v));
-
-			// compute the weight of the simplex sigma
-			// the weight is defined to be the maximum weight of all of the
-			// simplex's
-			// faces
-			if (sigma.getDimension() == 1) {
-				int i = sigma.getVertices()[0];
-				int j = sigma.getVertices()[1];
-				weight = G.getWeight(i, j);
-			} else if (sigma.getDimension() > 1) {
-				weight = filtrationValue;
-				int[] tauVertices = tau.getVertices();
-				for (int tauVertex : tauVertices) {
-					weight = this.converter.computeInducedFiltrationValue(weight, G.getWeight(tauVertex, v));
+		/**
+		 * This function computes candidates[depth + 1] as the intersection of the first
+		 * c entries of candidates[depth] with the lower neighbors of v. Since v is the
+		 * c-th candidate, the remaining entries are larger than v and can be skipped.
+		 */
+		private void intersect(int depth, int c, int v) {
+			int[] currentCandidates = this.candidates[depth];
+			double[] currentWeights = this.candidateWeights[depth];
+			int[] nextCandidates = this.candidates[depth + 1];
+			double[] nextWeights = this.candidateWeights[depth + 1];
+			int size = 0;
+			int a = 0;
+			int b = this.graph.getStart(v);
+			int end = this.graph.getLowerEnd(v);
+			while (a < c && b < end) {
+				int x = currentCandidates[a];
+				int y = this.graph.getNeighborAt(b);
+				if (x < y) {
+					a++;
+				} else if (x > y) {
+					b++;
+				} else {
+					nextCandidates[size] = x;
+					nextWeights[size] = converter.computeInducedFiltrationValue(currentWeights[a], this.graph.getWeightAt(b));
+					size++;
+					a++;
+					b++;
 				}
 			}
+			this.candidateSizes[depth + 1] = size;
+		}
 
-			// recurse: add the cofaces of sigma
-			this.addCofaces(G, k, sigma, M, weight);
+		private void emit(int length, double filtrationValue) {
+			int[] simplexVertices = this.vertices;
+			if (indices != null) {
+				for (int i = 0; i < length; i++) {
+					this.convertedVertices[i] = indices[this.vertices[i]];
+				}
+				simplexVertices = this.convertedVertices;
+			}
+			Simplex simplex = Simplex.fromPrefix(simplexVertices, length);
+			int filtrationIndex = converter.getFiltrationIndex(filtrationValue);
+			if (this.buffer == null) {
+				storageStructure.addElement(simplex, filtrationIndex);
+			} else {
+				this.buffer.add(simplex, filtrationIndex);
+			}
+		}
+	}
+
+	/**
+	 * This class stores the simplices generated by one thread of the parallel
+	 * expansion, along with their filtration indices.
+	 */
+	private static class SimplexBuffer {
+		private Simplex[] simplices = new Simplex[16];
+		private int[] filtrationIndices = new int[16];
+		private int size = 0;
+
+		void add(Simplex simplex, int filtrationIndex) {
+			if (this.size == this.simplices.length) {
+				this.simplices = Arrays.copyOf(this.simplices, 2 * this.size);
+				this.filtrationIndices = Arrays.copyOf(this.filtrationIndices, 2 * this.size);
+			}
+			this.simplices[this.size] = simplex;
+			this.filtrationIndices[this.size] = filtrationIndex;
+			this.size++;
 		}
 	}
 }
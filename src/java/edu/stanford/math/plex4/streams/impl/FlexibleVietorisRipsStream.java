@@ -3,12 +3,20 @@
  */
 package edu.stanford.math.plex4.streams.impl;
 
-import edu.stanford.math.plex4.graph.UndirectedWeightedListGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
 import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
+import edu.stanford.math.plex4.metric.interfaces.AbstractLowerNeighborhoodSearchable;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
 import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure;
 import edu.stanford.math.plex4.utility.ExceptionUtility;
+import edu.stanford.math.plex4.utility.ParallelUtility;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIterator;
 
@@ -23,6 +31,14 @@ import gnu.trove.TIntIterator;
  * thresholding in order to generate the 1-skeleton.
  * </p>
  * 
+ * <p>
+ * If the number of threads is set to be larger than 1, the points are
+ * partitioned among the threads, and each thread computes the edges to the
+ * lower neighbors of its points into its own buffer. The buffers are then
+ * added to the neighborhood graph by the calling thread. The metric space
+ * must support concurrent queries in this case.
+ * </p>
+ * 
  * @author Andrew Tausz
  * @author Mikael Vejdemo-Johansson
  * 
@@ -76,31 +92,119 @@ public class FlexibleVietorisRipsStream<T> extends FlagComplexStream {
 		this.maxDistance = maxDistance;
 	}
 
+	/**
+	 * This function returns the metric space upon which the stream is built.
+	 * 
+	 * @return the underlying metric space
+	 */
+	public AbstractSearchableMetricSpace<T> getMetricSpace() {
+		return this.metricSpace;
+	}
+
+	/**
+	 * This function returns the maximum distance allowed between two connected vertices.
+	 * 
+	 * @return the maximum distance
+	 */
+	public double getMaxDistance() {
+		return this.maxDistance;
+	}
+
 	@Override
-	protected UndirectedWeightedListGraph constructEdges() {
+	protected CompressedWeightedGraph constructEdges() {
 		int n = this.metricSpace.size();
-		TIntHashSet neighborhood = null;
+		int numTasks = Math.min(this.numThreads, n);
 
-		UndirectedWeightedListGraph graph = new UndirectedWeightedListGraph(n);
+		// partition the points in a round-robin fashion to balance the work
+		List<EdgeTask> tasks = new ArrayList<EdgeTask>();
+		for (int t = 0; t < numTasks; t++) {
+			tasks.add(new EdgeTask(t, numTasks));
+		}
+		ParallelUtility.runTasks(tasks, this.numThreads);
 
-		for (int i = 0; i < n; i++) {
-			// obtain the neighborhood of the i-th point
-			neighborhood = this.metricSpace.getClosedNeighborhood(metricSpace.getPoint(i), this.maxDistance);
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(n);
+		for (EdgeTask task : tasks) {
+			for (int k = 0; k < task.size; k++) {
+				builder.addEdge(task.lowerVertices[k], task.upperVertices[k], task.distances[k]);
+			}
+			task.clear();
+		}
 
-			// get the pairwise distances of the points and store them
-			TIntIterator iterator = neighborhood.iterator();
-			while (iterator.hasNext()) {
-				int j = iterator.next();
+		return builder.build();
+	}
+
+	/**
+	 * This class computes the edges [j, i] with j < i for the points i = offset, offset + stride, ...
+	 * and stores them in arrays. If the metric space implements AbstractLowerNeighborhoodSearchable,
+	 * the distances computed by the neighborhood search are stored directly, so that each distance
+	 * is only evaluated once. Otherwise the search only returns indices, and the distance of each
+	 * edge is evaluated again after the search.
+	 */
+	private class EdgeTask implements Runnable {
+		private final int offset;
+		private final int stride;
+		private int[] lowerVertices = new int[16];
+		private int[] upperVertices = new int[16];
+		private double[] distances = new double[16];
+		private int size = 0;
 
-				if (i == j) {
-					continue;
+		EdgeTask(int offset, int stride) {
+			this.offset = offset;
+			this.stride = stride;
+		}
+
+		public void run() {
+			int n = metricSpace.size();
+
+			if (metricSpace instanceof AbstractLowerNeighborhoodSearchable) {
+				AbstractLowerNeighborhoodSearchable searchable = (AbstractLowerNeighborhoodSearchable) metricSpace;
+				TIntArrayList lowerNeighbors = new TIntArrayList();
+				TDoubleArrayList lowerDistances = new TDoubleArrayList();
+				for (int i = this.offset; i < n; i += this.stride) {
+					lowerNeighbors.resetQuick();
+					lowerDistances.resetQuick();
+					searchable.getClosedLowerNeighborhood(i, maxDistance, lowerNeighbors, lowerDistances);
+					for (int k = 0; k < lowerNeighbors.size(); k++) {
+						this.add(lowerNeighbors.getQuick(k), i, lowerDistances.getQuick(k));
+					}
 				}
+				return;
+			}
 
-				double distance = this.metricSpace.distance(i, j);
-				graph.addEdge(i, j, distance);
+			for (int i = this.offset; i < n; i += this.stride) {
+				// obtain the neighborhood of the i-th point
+				TIntHashSet neighborhood = metricSpace.getClosedNeighborhood(metricSpace.getPoint(i), maxDistance);
+
+				// get the distances to the lower neighbors and store them
+				TIntIterator iterator = neighborhood.iterator();
+				while (iterator.hasNext()) {
+					int j = iterator.next();
+
+					if (j >= i) {
+						continue;
+					}
+
+					this.add(j, i, metricSpace.distance(i, j));
+				}
 			}
 		}
 
-		return graph;
+		private void clear() {
+			this.lowerVertices = null;
+			this.upperVertices = null;
+			this.distances = null;
+		}
+
+		private void add(int j, int i, double distance) {
+			if (this.size == this.distances.length) {
+				this.lowerVertices = Arrays.copyOf(this.lowerVertices, 2 * this.size);
+				this.upperVertices = Arrays.copyOf(this.upperVertices, 2 * this.size);
+				this.distances = Arrays.copyOf(this.distances, 2 * this.size);
+			}
+			this.lowerVertices[this.size] = j;
+			this.upperVertices[this.size] = i;
+			this.distances[this.size] = distance;
+			this.size++;
+		}
 	}
 }
@@ -4,21 +4,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import edu.stanford.math.plex4.graph.UndirectedWeightedListGraph;
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
 import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 import edu.stanford.math.plex4.homology.filtration.ExternalConverter;
 import edu.stanford.math.plex4.homology.filtration.IncreasingLinearConverter;
 import edu.stanford.math.plex4.homology.utility.HomologyUtility;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.LandmarkDistanceCache;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.utility.ExceptionUtility;
 import edu.stanford.math.primitivelib.autogen.array.DoubleArrayMath;
-import edu.stanford.math.primitivelib.autogen.array.DoubleArrayUtility;
 import edu.stanford.math.primitivelib.autogen.pair.IntDoublePair;
 import edu.stanford.math.primitivelib.utility.Infinity;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIterator;
 import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongDoubleHashMap;
 
 /**
  * This class implements the lazy witness complex described in the paper
@@ -56,7 +57,19 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 	 */
 	protected final double maxDistance;
 
-	protected double[][] D = null;
+	/**
+	 * This holds the distances between the landmark points and all points of
+	 * the metric space. It may be shared with other witness streams.
+	 */
+	protected LandmarkDistanceCache<T> distanceCache = null;
+
+	/**
+	 * If this is set, the edges are computed by streaming over the witnesses,
+	 * using this index of the landmark points to find the nearby landmarks of
+	 * each witness, instead of storing the L x N distance matrix.
+	 */
+	protected AbstractSearchableMetricSpace<T> landmarkSpace = null;
+
 	protected double[] m = null;
 
 	/**
@@ -163,6 +176,41 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 		this.plex3Compatible = value;
 	}
 
+	/**
+	 * This function sets the cache of landmark-witness distances to use in the
+	 * construction of the complex. This allows several streams on the same
+	 * landmark set to share the distance computations. It must be called
+	 * before the stream is finalized.
+	 * 
+	 * @param distanceCache
+	 *            the distances between the landmark points and the metric space
+	 */
+	public void setDistanceCache(LandmarkDistanceCache<T> distanceCache) {
+		ExceptionUtility.verifyNonNull(distanceCache);
+		if (!distanceCache.isCompatible(this.metricSpace, this.landmarkSelector)) {
+			throw new IllegalArgumentException("The distance cache was built for a different metric space or landmark set.");
+		}
+		this.distanceCache = distanceCache;
+	}
+
+	/**
+	 * This function enables the construction of the complex by streaming over
+	 * the witnesses. For each witness, only the landmarks within distance
+	 * maxDistance + m_i are retrieved from the given index of the landmark
+	 * points, so that the memory usage is O(N + number of edges) instead of
+	 * O(L * N). The i-th point of the index must be the i-th landmark point.
+	 * The resulting complex is the same as the one computed from the full
+	 * distance matrix.
+	 * 
+	 * @param landmarkSpace
+	 *            a searchable metric space containing the landmark points
+	 */
+	public void setLandmarkSpace(AbstractSearchableMetricSpace<T> landmarkSpace) {
+		ExceptionUtility.verifyNonNull(landmarkSpace);
+		ExceptionUtility.verifyEqual(landmarkSpace.size(), this.L);
+		this.landmarkSpace = landmarkSpace;
+	}
+
 	public static int getDefaultNuValue() {
 		return 2;
 	}
@@ -189,11 +237,15 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 	}
 
 	@Override
-	protected UndirectedWeightedListGraph constructEdges() {
+	protected CompressedWeightedGraph constructEdges() {
 
 		this.indices = this.landmarkSelector.getLandmarkPoints();
 
-		UndirectedWeightedListGraph graph = new UndirectedWeightedListGraph(L);
+		if (this.landmarkSpace != null) {
+			return this.constructEdgesFromWitnesses();
+		}
+
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(L);
 
 		/*
 		 * Let N be the number of points in the metric space, and n the number
@@ -218,38 +270,15 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 		 * !not true anymore!
 		 */
 
-		D = null;
-		m = DoubleArrayUtility.createArray(N);
-
-		try {
-			D = DoubleArrayUtility.createMatrix(L, N);
-			for (int l = 0; l < L; l++) {
-				for (int n = 0; n < N; n++) {
-					// if (n == this.indices[l]) {
-					// D[l][n] = Infinity.Double.getPositiveInfinity();
-					// } else {
-					D[l][n] = this.metricSpace.distance(this.landmarkSelector.getLandmarkIndex(l), n);
-					// }
-				}
-			}
-		} catch (OutOfMemoryError error) {
-			D = null;
-		} finally {
+		if (this.distanceCache == null) {
+			this.distanceCache = new LandmarkDistanceCache<T>(this.metricSpace, this.landmarkSelector);
 		}
 
-		double[] m_temp = new double[L + 1];
-		for (int n = 0; n < N; n++) {
-			for (int l = 0; l < L; l++) {
-				if (D == null) {
-					m_temp[l + 1] = this.metricSpace.distance(this.landmarkSelector.getLandmarkIndex(l), n);
-				} else {
-					m_temp[l + 1] = D[l][n];
-				}
-			}
-			Arrays.sort(m_temp);
-			assert (m_temp[0] == 0.0);
-			m[n] = m_temp[this.nu];
-			assert (m[n] > 0.0);
+		// m_i is the nu-th smallest entry of the i-th column of D, or 0 if nu = 0
+		if (this.nu == 0) {
+			m = new double[N];
+		} else {
+			m = this.distanceCache.getSmallestDistances(this.nu)[this.nu - 1];
 		}
 
 		// int edge_count = 0;
@@ -267,14 +296,148 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 
 					if (e_ij <= this.maxDistance) {
 						this.updateWitnessInformationInternalIndices(n_star, e_ij, i, j);
-						graph.addEdge(i, j, e_ij);
+						builder.addEdge(i, j, e_ij);
 						// edge_count++;
 					}
 				}
 			}
 		}
 
-		return graph;
+		return builder.build();
+	}
+
+	/**
+	 * This function constructs the 1-skeleton by streaming over the witnesses.
+	 * For each witness i, the value m_i is computed from its nearest landmarks,
+	 * and all pairs of landmarks within distance maxDistance + m_i of the
+	 * witness are candidate edges. A second pass over the witnesses collects
+	 * the witnesses of each edge.
+	 * 
+	 * @return the weighted 1-skeleton
+	 */
+	protected CompressedWeightedGraph constructEdgesFromWitnesses() {
+		TIntHashSet landmarkSet = new TIntHashSet(this.indices);
+		m = new double[N];
+
+		// the smallest value of max(D(a, i), D(b, i)) - m_i for each edge
+		TLongDoubleHashMap edgeDistances = new TLongDoubleHashMap();
+
+		for (int n = 0; n < N; n++) {
+			if (!this.plex3Compatible && landmarkSet.contains(n)) {
+				continue;
+			}
+			T witness = this.metricSpace.getPoint(n);
+			m[n] = this.computeNearestLandmarkDistance(witness, n);
+
+			int[] neighbors = this.getNearbyLandmarks(witness, m[n] + this.maxDistance);
+			double[] distances = this.getLandmarkDistances(neighbors, n);
+
+			for (int a = 0; a < neighbors.length; a++) {
+				for (int b = a + 1; b < neighbors.length; b++) {
+					double d_max = Math.max(distances[a], distances[b]);
+					d_max = (d_max < m[n] ? 0.0 : d_max - m[n]);
+					if (d_max > this.maxDistance) {
+						continue;
+					}
+					long key = (long) neighbors[a] * L + neighbors[b];
+					if (!edgeDistances.containsKey(key) || d_max < edgeDistances.get(key)) {
+						edgeDistances.put(key, d_max);
+					}
+				}
+			}
+		}
+
+		long[] edges = edgeDistances.keys();
+		Arrays.sort(edges);
+
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(L);
+		for (long edge : edges) {
+			builder.addEdge((int) (edge / L), (int) (edge % L), edgeDistances.get(edge));
+		}
+
+		// record the witnesses i with max(D(a, i), D(b, i)) - m_i within epsilon of e_ab
+		for (int n = 0; n < N; n++) {
+			if (!this.plex3Compatible && landmarkSet.contains(n)) {
+				continue;
+			}
+			T witness = this.metricSpace.getPoint(n);
+			int[] neighbors = this.getNearbyLandmarks(witness, m[n] + this.maxDistance + this.epsilon);
+			double[] distances = this.getLandmarkDistances(neighbors, n);
+
+			for (int a = 0; a < neighbors.length; a++) {
+				for (int b = a + 1; b < neighbors.length; b++) {
+					long key = (long) neighbors[a] * L + neighbors[b];
+					if (!edgeDistances.containsKey(key)) {
+						continue;
+					}
+					double d_max = Math.max(distances[a], distances[b]);
+					d_max = (d_max < m[n] ? 0.0 : d_max - m[n]);
+					if (Math.abs(d_max - edgeDistances.get(key)) <= this.epsilon) {
+						if (!this.witnessSimplexMap.contains(n)) {
+							this.witnessSimplexMap.put(n, new ArrayList<Simplex>());
+						}
+						this.witnessSimplexMap.get(n).add(Simplex.makeSimplex(this.indices[neighbors[a]], this.indices[neighbors[b]]));
+					}
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * This function returns the nu-th smallest distance between the given
+	 * witness and the landmark points, or 0 if nu = 0.
+	 */
+	private double computeNearestLandmarkDistance(T witness, int n) {
+		if (this.nu == 0) {
+			return 0.0;
+		}
+
+		/*
+		 * The k-nearest neighbor queries of the searchable metric spaces may
+		 * exclude points equal to the query point, so the nearest landmarks
+		 * are only used to bound the radius of a neighborhood query.
+		 */
+		int[] neighbors = null;
+		TIntHashSet nearestLandmarks = this.landmarkSpace.getKNearestNeighbors(witness, this.nu);
+		if (nearestLandmarks.size() >= this.nu) {
+			double radius = DoubleArrayMath.max(this.getLandmarkDistances(nearestLandmarks.toArray(), n));
+			neighbors = this.getNearbyLandmarks(witness, radius);
+		}
+		if (neighbors == null || neighbors.length < this.nu) {
+			neighbors = new int[L];
+			for (int l = 0; l < L; l++) {
+				neighbors[l] = l;
+			}
+		}
+
+		double[] distances = this.getLandmarkDistances(neighbors, n);
+		Arrays.sort(distances);
+		return distances[this.nu - 1];
+	}
+
+	/**
+	 * This function returns the sorted indices of the landmarks whose distance to
+	 * the witness is at most the given radius. It may return additional landmarks
+	 * which lie slightly outside, to account for the rounding of the distances
+	 * computed by the landmark index.
+	 */
+	private int[] getNearbyLandmarks(T witness, double radius) {
+		int[] neighbors = this.landmarkSpace.getClosedNeighborhood(witness, radius * (1 + 1e-9)).toArray();
+		Arrays.sort(neighbors);
+		return neighbors;
+	}
+
+	/**
+	 * This function returns the distances D(l, n) for the given landmarks l.
+	 */
+	private double[] getLandmarkDistances(int[] landmarks, int n) {
+		double[] distances = new double[landmarks.length];
+		for (int k = 0; k < landmarks.length; k++) {
+			distances[k] = this.metricSpace.distance(this.indices[landmarks[k]], n);
+		}
+		return distances;
 	}
 
 	protected IntDoublePair getWitnessAndDistance(int... landmarkIndices) {
@@ -284,8 +447,6 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 		e_ij = Infinity.Double.getPositiveInfinity();
 		int n_star = -1;
 
-		int[] externalIndices = HomologyUtility.convertIndices(landmarkIndices, this.landmarkSelector.getLandmarkPoints());
-
 		int l = landmarkIndices.length - 1;
 		// An empty simplex has no witnesses.
 		if (l < 0) {
@@ -298,19 +459,10 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 			}
 
 			double d_max = Infinity.Double.getNegativeInfinity();
-			if (D == null) {
-				for (int k = 0; k < landmarkIndices.length; k++) {
-					d = this.metricSpace.distance(externalIndices[k], n);
-					if (k == 0 || d > d_max) {
-						d_max = d;
-					}
-				}
-			} else {
-				for (int k = 0; k < landmarkIndices.length; k++) {
-					d = D[landmarkIndices[k]][n];
-					if (k == 0 || d > d_max) {
-						d_max = d;
-					}
+			for (int k = 0; k < landmarkIndices.length; k++) {
+				d = this.distanceCache.getDistance(landmarkIndices[k], n);
+				if (k == 0 || d > d_max) {
+					d_max = d;
 				}
 			}
 			if (d_max < m[n]) {
@@ -381,19 +533,10 @@ public class LazyWitnessStream<T> extends FlagComplexStream {
 			}
 
 			double d_max = Infinity.Double.getNegativeInfinity();
-			if (D == null) {
-				for (int k = 0; k < landmarkIndices.length; k++) {
-					d[k] = this.metricSpace.distance(externalIndices[k], n);
-					if (k == 0 || d[k] > d_max) {
-						d_max = d[k];
-					}
-				}
-			} else {
-				for (int k = 0; k < landmarkIndices.length; k++) {
-					d[k] = D[landmarkIndices[k]][n];
-					if (k == 0 || d[k] > d_max) {
-						d_max = d[k];
-					}
+			for (int k = 0; k < landmarkIndices.length; k++) {
+				d[k] = this.distanceCache.getDistance(landmarkIndices[k], n);
+				if (k == 0 || d[k] > d_max) {
+					d_max = d[k];
 				}
 			}
 			if (d_max < m[n]) {
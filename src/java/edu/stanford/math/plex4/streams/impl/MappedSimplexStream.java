@@ -0,0 +1,61 @@
+package edu.stanford.math.plex4.streams.impl;
+
+import java.io.IOException;
+
+import edu.stanford.math.plex4.homology.barcodes.Interval;
+import edu.stanford.math.plex4.homology.barcodes.PersistenceInvariantDescriptor;
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
+import edu.stanford.math.plex4.homology.filtration.FiltrationUtility;
+import edu.stanford.math.plex4.streams.interfaces.PrimitiveStream;
+import edu.stanford.math.plex4.streams.storage_structures.MappedSimplexStorageStructure;
+
+/**
+ * <p>This class implements a read-only stream of simplices which are memory-mapped from a file
+ * written by BinarySimplexStreamReaderWriter, using a MappedSimplexStorageStructure. The stream
+ * is finalized when it is created. The filtration values and the barcodes are converted with the
+ * filtration values of the original stream, which are stored in the file.</p>
+ *
+ * <p>The simplices are not stored on the heap, but the lookup of filtration indices builds a hash
+ * table for each dimension which uses between 8 and 16 bytes per simplex, as described in
+ * MappedSimplexStorageStructure.</p>
+ *
+ */
+public class MappedSimplexStream extends PrimitiveStream<Simplex> {
+
+	/**
+	 * The converter given by the filtration values in the file.
+	 */
+	private final FiltrationConverter converter;
+
+	/**
+	 * This constructor maps the given binary simplex stream file.
+	 *
+	 * @param path the file to map
+	 * @throws IOException if the file cannot be read or is not a valid simplex stream file
+	 */
+	public MappedSimplexStream(String path) throws IOException {
+		this(new MappedSimplexStorageStructure(path));
+	}
+
+	/**
+	 * This constructor initializes the stream with the given mapped storage structure.
+	 *
+	 * @param storageStructure the mapped storage structure
+	 */
+	public MappedSimplexStream(MappedSimplexStorageStructure storageStructure) {
+		super(storageStructure);
+		this.converter = storageStructure.getFiltrationConverter();
+	}
+
+	@Override
+	protected void constructComplex() {}
+
+	public double getFiltrationValue(Simplex basisElement) {
+		return this.converter.getFiltrationValue(this.getFiltrationIndex(basisElement));
+	}
+
+	public <G> PersistenceInvariantDescriptor<Interval<Double>, G> transform(PersistenceInvariantDescriptor<Interval<Integer>, G> barcodeCollection) {
+		return FiltrationUtility.transform(barcodeCollection, this.converter);
+	}
+}
@@ -0,0 +1,81 @@
+package edu.stanford.math.plex4.streams.impl;
+
+import edu.stanford.math.plex4.homology.barcodes.Interval;
+import edu.stanford.math.plex4.homology.barcodes.PersistenceInvariantDescriptor;
+import edu.stanford.math.plex4.homology.chain_basis.PackedSimplex;
+import edu.stanford.math.plex4.homology.chain_basis.PackedSimplexComparator;
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.filtration.FiltrationConverter;
+import edu.stanford.math.plex4.homology.filtration.FiltrationUtility;
+import edu.stanford.math.plex4.homology.filtration.TabulatedConverter;
+import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import edu.stanford.math.plex4.streams.interfaces.PrimitiveStream;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+
+/**
+ * <p>This class implements a stream of packed simplices which contains the simplices of a
+ * given simplicial stream, with the same filtration indices. The persistence algorithms
+ * can be applied to it with the PackedSimplexComparator, for example
+ * <pre>
+ * new BooleanClassicalHomology&lt;PackedSimplex&gt;(PackedSimplexComparator.getInstance(), 0, maxDimension)
+ * </pre>
+ * which avoids the allocation of the vertex arrays of the boundary faces. The filtration
+ * values of the distinct filtration indices are recorded from the underlying stream when the
+ * stream is constructed, and the underlying stream is released afterwards.</p>
+ *
+ * <p>The simplices of the underlying stream must have dimension at most 3.</p>
+ *
+ */
+public class PackedSimplexStream extends PrimitiveStream<PackedSimplex> {
+
+	/**
+	 * The stream containing the simplices. It is set to null once they have been copied.
+	 */
+	private AbstractFilteredStream<Simplex> stream;
+
+	/**
+	 * The converter given by the filtration values of the underlying stream.
+	 */
+	private FiltrationConverter converter;
+
+	/**
+	 * This constructor initializes the stream from a simplicial stream, which is
+	 * finalized if necessary.
+	 *
+	 * @param stream the stream to copy the simplices from
+	 */
+	public PackedSimplexStream(AbstractFilteredStream<Simplex> stream) {
+		super(PackedSimplexComparator.getInstance());
+		ExceptionUtility.verifyNonNull(stream);
+		this.stream = stream;
+	}
+
+	@Override
+	protected void constructComplex() {
+		this.stream.finalizeStream();
+
+		// record the filtration values of the distinct indices, which appear in increasing order
+		TIntArrayList filtrationIndices = new TIntArrayList();
+		TDoubleArrayList filtrationValues = new TDoubleArrayList();
+		for (Simplex simplex : this.stream) {
+			int filtrationIndex = this.stream.getFiltrationIndex(simplex);
+			this.storageStructure.addElement(PackedSimplex.fromSimplex(simplex), filtrationIndex);
+			if (filtrationIndices.isEmpty() || filtrationIndex > filtrationIndices.get(filtrationIndices.size() - 1)) {
+				filtrationIndices.add(filtrationIndex);
+				filtrationValues.add(this.stream.getFiltrationValue(simplex));
+			}
+		}
+		this.converter = new TabulatedConverter(filtrationIndices.toNativeArray(), filtrationValues.toNativeArray());
+		this.stream = null;
+	}
+
+	public double getFiltrationValue(PackedSimplex basisElement) {
+		return this.converter.getFiltrationValue(this.getFiltrationIndex(basisElement));
+	}
+
+	public <G> PersistenceInvariantDescriptor<Interval<Double>, G> transform(PersistenceInvariantDescriptor<Interval<Integer>, G> barcodeCollection) {
+		return FiltrationUtility.transform(barcodeCollection, this.converter);
+	}
+}
@@ -0,0 +1,255 @@
+package edu.stanford.math.plex4.streams.impl;
+
+import java.util.Arrays;
+
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
+import edu.stanford.math.plex4.homology.filtration.IncreasingLinearConverter;
+import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.MaxMinLandmarkSelector;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIterator;
+
+/**
+ * <p>This class implements the sparse Vietoris-Rips filtration described in the paper
+ * "Linear-Size Approximations to the Vietoris-Rips Filtration", by Donald Sheehy. Its
+ * persistence diagram approximates the one of the Vietoris-Rips filtration up to a
+ * multiplicative factor of 1 + O(epsilon), while the size of the complex is linear in the
+ * number of points for metric spaces of bounded doubling dimension.</p>
+ *
+ * <p>The points are ordered by a greedy permutation, which is computed by the
+ * MaxMinLandmarkSelector, and each point p is assigned its insertion radius lambda_p, the
+ * distance to the points preceding it. Using the scale parameter a = r / 2, where r is the
+ * filtration value of VietorisRipsStream, the distances are perturbed by the weights
+ * <pre>
+ * w_p(a) = 0                     if a &lt;= lambda_p / epsilon
+ *        = a - lambda_p / epsilon  if lambda_p / epsilon &lt; a &lt; lambda_p / (epsilon (1 - epsilon))
+ *        = epsilon a              otherwise,
+ * </pre>
+ * and a simplex is in the relaxed Rips complex at scale a if d(p, q) + w_p(a) + w_q(a) &lt;= 2a
+ * for all of its vertices p and q. The point p is removed at the scale
+ * lambda_p / (epsilon (1 - epsilon)), after which it is covered by the preceding points. A
+ * simplex enters the sparse filtration at the first scale at which it is in the relaxed Rips
+ * complex and none of its vertices have been removed. The filtration values of this stream
+ * are 2a, so that they are comparable to the ones of VietorisRipsStream.</p>
+ *
+ * <p>The approximation guarantee holds for epsilon &lt;= 1/3. The computation of the greedy
+ * permutation requires O(n^2) distance evaluations, which can be distributed over several
+ * threads.</p>
+ *
+ * @param <T> the base type of the underlying metric space
+ */
+public class SparseVietorisRipsStream<T> extends FlagComplexStream {
+
+	/**
+	 * This is the metric space upon which the stream is built from.
+	 */
+	protected final AbstractSearchableMetricSpace<T> metricSpace;
+
+	/**
+	 * The maximum filtration value of the complex.
+	 */
+	protected final double maxDistance;
+
+	/**
+	 * The approximation parameter.
+	 */
+	protected final double epsilon;
+
+	/**
+	 * The greedy permutation of the points, and the insertion radius of each point.
+	 */
+	protected int[] permutation = null;
+	protected double[] insertionRadii = null;
+
+	/**
+	 * Constructor which initializes the complex with a metric space.
+	 *
+	 * @param metricSpace the metric space to use in the construction of the complex
+	 * @param epsilon the approximation parameter, which must be in the interval (0, 1)
+	 * @param maxDistance the maximum filtration value
+	 * @param maxDimension the maximum dimension of the complex
+	 */
+	public SparseVietorisRipsStream(AbstractSearchableMetricSpace<T> metricSpace, double epsilon, double maxDistance, int maxDimension) {
+		this(metricSpace, epsilon, maxDistance, maxDimension, 20);
+	}
+
+	/**
+	 * Constructor which initializes the complex with a metric space.
+	 *
+	 * @param metricSpace the metric space to use in the construction of the complex
+	 * @param epsilon the approximation parameter, which must be in the interval (0, 1)
+	 * @param maxDistance the maximum filtration value
+	 * @param maxDimension the maximum dimension of the complex
+	 * @param numDivisions the number of divisions of the filtration
+	 */
+	public SparseVietorisRipsStream(AbstractSearchableMetricSpace<T> metricSpace, double epsilon, double maxDistance, int maxDimension, int numDivisions) {
+		super(maxDimension, new IncreasingLinearConverter(numDivisions, maxDistance));
+		ExceptionUtility.verifyNonNull(metricSpace);
+		ExceptionUtility.verifyOpenInterval(epsilon, 0, 1);
+		this.metricSpace = metricSpace;
+		this.epsilon = epsilon;
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * @return the underlying metric space
+	 */
+	public AbstractSearchableMetricSpace<T> getMetricSpace() {
+		return this.metricSpace;
+	}
+
+	/**
+	 * @return the approximation parameter
+	 */
+	public double getEpsilon() {
+		return this.epsilon;
+	}
+
+	/**
+	 * This function returns the greedy permutation of the points. It is available once the
+	 * stream has been finalized.
+	 *
+	 * @return the indices of the points in the order of the greedy permutation
+	 */
+	public int[] getGreedyPermutation() {
+		return this.permutation;
+	}
+
+	/**
+	 * This function returns the insertion radius of a point, which is its distance to the
+	 * preceding points of the greedy permutation. It is available once the stream has been
+	 * finalized.
+	 *
+	 * @param i the index of the point
+	 * @return the insertion radius of the point
+	 */
+	public double getInsertionRadius(int i) {
+		return this.insertionRadii[i];
+	}
+
+	/**
+	 * This function returns the filtration value at which the point is removed, which is
+	 * 2 lambda_p / (epsilon (1 - epsilon)).
+	 *
+	 * @param i the index of the point
+	 * @return the filtration value at which the point is removed
+	 */
+	public double getRemovalValue(int i) {
+		return 2 * this.insertionRadii[i] / (this.epsilon * (1 - this.epsilon));
+	}
+
+	@Override
+	protected CompressedWeightedGraph constructEdges() {
+		int n = this.metricSpace.size();
+		this.computeInsertionRadii();
+
+		this.vertexFiltrationBounds = new double[n];
+		for (int i = 0; i < n; i++) {
+			this.vertexFiltrationBounds[i] = this.getRemovalValue(i);
+		}
+
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(n);
+		for (int i = 0; i < n; i++) {
+			// the edge [j, i] enters at a value of at least d(i, j), so only close points are candidates
+			double radius = Math.min(this.vertexFiltrationBounds[i], this.maxDistance);
+			TIntHashSet neighborhood = this.metricSpace.getClosedNeighborhood(this.metricSpace.getPoint(i), radius);
+
+			TIntIterator iterator = neighborhood.iterator();
+			while (iterator.hasNext()) {
+				int j = iterator.next();
+				if (j >= i) {
+					continue;
+				}
+
+				double value = 2 * this.computeEdgeScale(this.metricSpace.distance(i, j), this.insertionRadii[i], this.insertionRadii[j]);
+				if (value <= this.maxDistance && value <= Math.min(this.vertexFiltrationBounds[i], this.vertexFiltrationBounds[j])) {
+					builder.addEdge(j, i, value);
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * This function computes the greedy permutation and the insertion radii of the points.
+	 */
+	private void computeInsertionRadii() {
+		int n = this.metricSpace.size();
+		this.insertionRadii = new double[n];
+		if (n == 0) {
+			this.permutation = new int[0];
+			return;
+		}
+
+		MaxMinLandmarkSelector<T> selector = new MaxMinLandmarkSelector<T>(this.metricSpace, n, 0, this.numThreads);
+		this.permutation = selector.getLandmarkPoints();
+
+		// the i-th point of the permutation is the farthest one from the first i points
+		this.insertionRadii[this.permutation[0]] = Double.POSITIVE_INFINITY;
+		for (int i = 1; i < n; i++) {
+			this.insertionRadii[this.permutation[i]] = selector.getCoveringRadius(i - 1);
+		}
+	}
+
+	/**
+	 * This function returns the weight w_p(a) of a point with insertion radius lambda.
+	 */
+	private double computeWeight(double a, double lambda) {
+		if (a <= lambda / this.epsilon) {
+			return 0;
+		} else if (a < lambda / (this.epsilon * (1 - this.epsilon))) {
+			return a - lambda / this.epsilon;
+		} else {
+			return this.epsilon * a;
+		}
+	}
+
+	/**
+	 * This function returns the smallest scale a such that d + w_p(a) + w_q(a) &lt;= 2a. The
+	 * function f(a) = 2a - w_p(a) - w_q(a) is piecewise linear and non-decreasing, so the
+	 * scale is found by walking over the pieces.
+	 */
+	private double computeEdgeScale(double distance, double lambdaP, double lambdaQ) {
+		double[] breakpoints = new double[] {
+				lambdaP / this.epsilon, lambdaP / (this.epsilon * (1 - this.epsilon)),
+				lambdaQ / this.epsilon, lambdaQ / (this.epsilon * (1 - this.epsilon)),
+				Double.POSITIVE_INFINITY };
+		Arrays.sort(breakpoints);
+
+		double start = 0;
+		double startValue = 0;
+		for (double end : breakpoints) {
+			if (startValue >= distance) {
+				return start;
+			}
+			if (end <= start) {
+				continue;
+			}
+			// the slope of f on (start, end)
+			double middle = (end == Double.POSITIVE_INFINITY ? 2 * start + 1 : (start + end) / 2);
+			double slope = 2 - this.computeSlope(middle, lambdaP) - this.computeSlope(middle, lambdaQ);
+			double endValue = (end == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY : 2 * end - this.computeWeight(end, lambdaP) - this.computeWeight(end, lambdaQ));
+			if (endValue >= distance) {
+				return start + (distance - startValue) / slope;
+			}
+			start = end;
+			startValue = endValue;
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * This function returns the derivative of w_p at a, where a is not a breakpoint.
+	 */
+	private double computeSlope(double a, double lambda) {
+		if (a <= lambda / this.epsilon) {
+			return 0;
+		} else if (a < lambda / (this.epsilon * (1 - this.epsilon))) {
+			return 1;
+		} else {
+			return this.epsilon;
+		}
+	}
+}
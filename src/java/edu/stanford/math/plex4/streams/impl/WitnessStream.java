@@ -2,7 +2,6 @@ package edu.stanford.math.plex4.streams.impl;
 
 import java.util.ArrayList;
 import java.util.ArrayDeque;
-import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 //import java.util.Collections;
@@ -19,10 +18,10 @@ import edu.stanford.math.plex4.homology.filtration.FiltrationUtility;
 import edu.stanford.math.plex4.homology.filtration.IncreasingLinearConverter;
 //import edu.stanford.math.plex4.homology.utility.HomologyUtility;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.LandmarkDistanceCache;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.streams.interfaces.PrimitiveStream;
 import edu.stanford.math.plex4.utility.ExceptionUtility;
-import edu.stanford.math.primitivelib.autogen.array.DoubleArrayUtility;
 //import edu.stanford.math.primitivelib.autogen.pair.IntDoublePair;
 //import edu.stanford.math.primitivelib.utility.Infinity;
 //import gnu.trove.TIntHashSet;
@@ -57,7 +56,12 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 	 */
 	protected final double maxDistance;
 
-	protected double[][] D = null;
+	/**
+	 * This holds the distances between the landmark points and all points of
+	 * the metric space. It may be shared with other witness streams.
+	 */
+	protected LandmarkDistanceCache<T> distanceCache = null;
+
 	protected double[][] m = null;
 
 	protected final int N;
@@ -143,6 +147,23 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 		}
 	}
 
+	/**
+	 * This function sets the cache of landmark-witness distances to use in the
+	 * construction of the complex. This allows several streams on the same
+	 * landmark set to share the distance computations. It must be called
+	 * before the stream is finalized.
+	 * 
+	 * @param distanceCache
+	 *            the distances between the landmark points and the metric space
+	 */
+	public void setDistanceCache(LandmarkDistanceCache<T> distanceCache) {
+		ExceptionUtility.verifyNonNull(distanceCache);
+		if (!distanceCache.isCompatible(this.metricSpace, this.landmarkSelector)) {
+			throw new IllegalArgumentException("The distance cache was built for a different metric space or landmark set.");
+		}
+		this.distanceCache = distanceCache;
+	}
+
 	/**
 	 * This function returns the list of simplices such that they have the given
 	 * point as their witness. If there are no such points, this function
@@ -168,27 +189,11 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 																	// correct?
 
 		// Get all distances between landmark points and data points.
-		D = DoubleArrayUtility.createMatrix(L, N);
-		for (int ll = 0; ll < L; ll++) {
-			for (int nn = 0; nn < N; nn++) {
-				D[ll][nn] = this.metricSpace.distance(this.landmarkSelector.getLandmarkIndex(ll), nn);
-			}
+		if (this.distanceCache == null) {
+			this.distanceCache = new LandmarkDistanceCache<T>(this.metricSpace, this.landmarkSelector);
 		}
 		// Find the max_len nearest landmarks for every data point.
-		double tmp[] = new double[L];
-		m = DoubleArrayUtility.createMatrix(maxLen, N);
-		for (int nn = 0; nn < N; ++nn) {
-			for (int ll = 0; ll < L; ++ll) {
-				tmp[ll] = D[ll][nn];
-			}
-			// Daniel: I want partial sort (the smallest maxLen elements in
-			// sorted order)
-			// but I don't know what function to use.
-			Arrays.sort(tmp);
-			for (int ll = 0; ll < maxLen; ++ll) {
-				m[ll][nn] = tmp[ll];
-			}
-		}
+		m = this.distanceCache.getSmallestDistances(maxLen);
 
 		if (this.saveAssociatedSimplices) {
 			this.associatedSimplices = new ArrayList<List<Simplex>>();
@@ -213,12 +218,13 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 		int dim = s1.length;
 		int filtrationIndex;
 		double[] Dm = new double[N];
+		double[] D_i0 = this.distanceCache.getRow(i0);
 		int[] snew;
 
 		switch (dim) {
 		case 0: {
 			for (int nn = 0; nn < N; ++nn) {
-				Dm[nn] = D[i0][nn];
+				Dm[nn] = D_i0[nn];
 			}
 			filtrationIndex = this.converter.getFiltrationIndex(0.0);
 			snew = new int[] { this.indices[i0] };
@@ -226,7 +232,7 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 		}
 		case 1: {
 			for (int nn = 0; nn < N; ++nn) {
-				Dm[nn] = Math.max(Dm1[nn], D[i0][nn]);
+				Dm[nn] = Math.max(Dm1[nn], D_i0[nn]);
 			}
 			snew = new int[] { this.indices[i0], s1[0] };
 
@@ -254,7 +260,7 @@ public class WitnessStream<T> extends PrimitiveStream<Simplex> {
 			}
 
 			for (int nn = 0; nn < N; ++nn) {
-				Dm[nn] = Math.max(Dm1[nn], D[i0][nn]);
+				Dm[nn] = Math.max(Dm1[nn], D_i0[nn]);
 			}
 
 			double filtrationValue = Double.POSITIVE_INFINITY;
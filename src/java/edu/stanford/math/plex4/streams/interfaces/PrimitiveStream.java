@@ -2,10 +2,14 @@ package edu.stanford.math.plex4.streams.interfaces;
 
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement;
+import edu.stanford.math.plex4.streams.storage_structures.IndexedStorageView;
 import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure;
 import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructureFactory;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
 
 /**
  * <p>This class implements a filtered chain complex where the underlying type
@@ -31,6 +35,24 @@ public abstract class PrimitiveStream<T extends PrimitiveBasisElement> implement
 	 */
 	protected final StreamStorageStructure<T> storageStructure;
 	
+	/**
+	 * Indicates whether the faces returned by getBoundary are replaced by the instances
+	 * held in the storage structure.
+	 */
+	private boolean internBoundaries = false;
+	
+	/**
+	 * This bounded map holds the most recently requested boundary arrays, in access
+	 * order, or is null if boundaries are not cached.
+	 */
+	private Map<T, T[]> boundaryCache = null;
+	
+	/**
+	 * The indexed view of the finalized storage structure, which is created by the first
+	 * range or skeleton query and kept for the lifetime of the stream.
+	 */
+	private IndexedStorageView<T> indexedView = null;
+	
 	/**
 	 * This constructor constructs the stream with the supplied StreamStorageStructure.
 	 * 
@@ -61,7 +83,67 @@ public abstract class PrimitiveStream<T extends PrimitiveBasisElement> implement
 	 */
 	@SuppressWarnings("unchecked")
 	public final T[] getBoundary(T basisElement) {
-		return (T[]) basisElement.getBoundaryArray();
+		if (this.boundaryCache != null) {
+			T[] boundary = this.boundaryCache.get(basisElement);
+			if (boundary != null) {
+				return boundary;
+			}
+		}
+		
+		T[] boundary = (T[]) basisElement.getBoundaryArray();
+		
+		if (this.internBoundaries) {
+			for (int i = 0; i < boundary.length; i++) {
+				T storedFace = this.storageStructure.getStoredElement(boundary[i]);
+				if (storedFace != null) {
+					boundary[i] = storedFace;
+				}
+			}
+		}
+		
+		if (this.boundaryCache != null) {
+			this.boundaryCache.put(basisElement, boundary);
+		}
+		
+		return boundary;
+	}
+	
+	/**
+	 * This function sets whether the faces in the arrays returned by getBoundary are replaced
+	 * by the equal instances held in the storage structure. The persistence algorithms look up
+	 * every face in hash maps whose keys are these instances, so that the equality checks
+	 * reduce to reference comparisons, and the newly created faces can be collected right away.
+	 * By default the faces are not replaced.
+	 * 
+	 * @param internBoundaries true to replace the faces by the stored instances
+	 */
+	public void setBoundaryInterning(boolean internBoundaries) {
+		this.internBoundaries = internBoundaries;
+	}
+	
+	/**
+	 * This function sets the number of boundary arrays which are kept by getBoundary, so that
+	 * repeated requests for the boundary of a recently used element return the same array.
+	 * The least recently used arrays are discarded first. While the cache is enabled, callers
+	 * must not modify the returned arrays. The cache is not synchronized. By default no arrays
+	 * are kept.
+	 * 
+	 * @param cacheSize the maximum number of cached boundary arrays, or 0 to disable the cache
+	 */
+	public void setBoundaryCacheSize(final int cacheSize) {
+		ExceptionUtility.verifyNonNegative(cacheSize);
+		if (cacheSize == 0) {
+			this.boundaryCache = null;
+			return;
+		}
+		this.boundaryCache = new LinkedHashMap<T, T[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<T, T[]> eldest) {
+				return this.size() > cacheSize;
+			}
+		};
 	}
 
 	/* (non-Javadoc)
@@ -85,6 +167,83 @@ public abstract class PrimitiveStream<T extends PrimitiveBasisElement> implement
 		return this.storageStructure.iterator();
 	}
 
+	/**
+	 * This function returns an iterator over the elements of the stream with filtration indices
+	 * between minFiltrationIndex and maxFiltrationIndex, inclusive, in stream order. The stream
+	 * must be finalized. The first call to this function, skeletonIterator or getSkeletonSize
+	 * creates an indexed view of the stream, which uses about 16 bytes per element.
+	 * 
+	 * @param minFiltrationIndex the smallest filtration index to include
+	 * @param maxFiltrationIndex the largest filtration index to include
+	 * @return an iterator over the elements in the given range
+	 */
+	public Iterator<T> iterator(int minFiltrationIndex, int maxFiltrationIndex) {
+		return this.getIndexedView().iterator(minFiltrationIndex, maxFiltrationIndex);
+	}
+	
+	/**
+	 * This function returns an iterator over the elements of the given dimension, in stream
+	 * order. The stream must be finalized.
+	 * 
+	 * @param dimension the dimension of the elements
+	 * @return an iterator over the skeleton of the given dimension
+	 */
+	public Iterator<T> skeletonIterator(int dimension) {
+		return this.getIndexedView().skeletonIterator(dimension);
+	}
+	
+	/**
+	 * This function returns an iterator over the elements of the given dimension with filtration
+	 * indices between minFiltrationIndex and maxFiltrationIndex, inclusive, in stream order. The
+	 * stream must be finalized.
+	 * 
+	 * @param dimension the dimension of the elements
+	 * @param minFiltrationIndex the smallest filtration index to include
+	 * @param maxFiltrationIndex the largest filtration index to include
+	 * @return an iterator over the elements of the skeleton in the given range
+	 */
+	public Iterator<T> skeletonIterator(int dimension, int minFiltrationIndex, int maxFiltrationIndex) {
+		return this.getIndexedView().skeletonIterator(dimension, minFiltrationIndex, maxFiltrationIndex);
+	}
+	
+	/**
+	 * This function returns the number of elements of the given dimension. The stream
+	 * must be finalized.
+	 * 
+	 * @param dimension the dimension to query
+	 * @return the size of the skeleton of the given dimension
+	 */
+	public int getSkeletonSize(int dimension) {
+		return this.getIndexedView().getSkeletonSize(dimension);
+	}
+	
+	/**
+	 * This function returns true if the indexed view of the stream has been created by a
+	 * range or skeleton query, so that further queries do not need to pass over the stream.
+	 * 
+	 * @return true if the stream has an indexed view
+	 */
+	public boolean isIndexed() {
+		return (this.indexedView != null);
+	}
+	
+	/**
+	 * This function returns the indexed view of the storage structure, and creates it if
+	 * necessary. The view is not synchronized, and is not updated if the stream is modified
+	 * after it is finalized.
+	 * 
+	 * @return the indexed view of the storage structure
+	 */
+	private IndexedStorageView<T> getIndexedView() {
+		if (this.indexedView == null) {
+			if (!this.isFinalized()) {
+				throw new IllegalStateException("The stream must be finalized.");
+			}
+			this.indexedView = new IndexedStorageView<T>(this.storageStructure);
+		}
+		return this.indexedView;
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.stanford.math.plex4.homology.streams.interfaces.AbstractFilteredStream#finalizeStream()
 	 */
@@ -128,10 +287,16 @@ public abstract class PrimitiveStream<T extends PrimitiveBasisElement> implement
 	 * @see edu.stanford.math.plex4.homology.streams.interfaces.AbstractFilteredStream#getMaximumFiltrationIndex()
 	 */
 	public int getMaximumFiltrationIndex() {
+		if (this.indexedView != null) {
+			return this.indexedView.getMaximumFiltrationIndex();
+		}
 		return this.storageStructure.getMaximumFiltrationIndex();
 	}
 	
 	public int getMinimumFiltrationIndex() {
+		if (this.indexedView != null) {
+			return this.indexedView.getMinimumFiltrationIndex();
+		}
 		return this.storageStructure.getMinimumFiltrationIndex();
 	}
 	
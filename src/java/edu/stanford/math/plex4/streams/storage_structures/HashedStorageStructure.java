@@ -12,7 +12,6 @@ import java.util.List;
 import edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TIntObjectIterator;
-import gnu.trove.TObjectIntHashMap;
 
 /**
  * This class provides a stream storage mechanism that is based on a multi-layer map. The motivation
@@ -36,7 +35,7 @@ public class HashedStorageStructure<T extends PrimitiveBasisElement> implements
 	/**
 	 * This stores the filtration indices of the basis elements.
 	 */
-	private final TObjectIntHashMap<T> filtrationIndices = new TObjectIntHashMap<T>();
+	private final InterningObjectIntHashMap<T> filtrationIndices = new InterningObjectIntHashMap<T>();
 	
 	/**
 	 * Indicates whether the storage structure is finalized or not.
@@ -130,6 +129,13 @@ public class HashedStorageStructure<T extends PrimitiveBasisElement> implements
 	public int getFiltrationIndex(T basisElement) {
 		return this.filtrationIndices.get(basisElement);
 	}
+	
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getStoredElement(java.lang.Object)
+	 */
+	public T getStoredElement(T basisElement) {
+		return this.filtrationIndices.getStoredKey(basisElement);
+	}
 
 	/* (non-Javadoc)
 	 * @see edu.stanford.math.plex4.homology.streams.storage_structures.StreamStorageStructure#isFinalized()
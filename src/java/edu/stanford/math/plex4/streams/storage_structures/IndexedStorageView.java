@@ -0,0 +1,259 @@
+package edu.stanford.math.plex4.streams.storage_structures;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement;
+
+/**
+ * <p>This class implements an indexed view of a finalized storage structure, which supports
+ * queries by filtration index and dimension without passing over the whole structure. The
+ * elements are copied into an array in the order of the storage structure, which is increasing
+ * in filtration index. The view stores the offset of the first element with each filtration
+ * index, and for each dimension the positions of the elements with that dimension.</p>
+ *
+ * <p>The minimum and maximum filtration indices are returned in constant time, and the elements
+ * with filtration indices in a range [a, b] are located in time logarithmic in the number of
+ * distinct filtration indices, or in the size of a skeleton if a dimension is also given. The view
+ * uses 4 bytes per element for the positions, and 4 bytes plus a reference per element for the
+ * elements and their filtration indices. It is not updated if the storage structure is modified.</p>
+ *
+ * @param <T> the underlying basis type
+ */
+public class IndexedStorageView<T extends PrimitiveBasisElement> {
+
+	/**
+	 * The elements of the storage structure and their filtration indices, in stream order.
+	 */
+	private final Object[] elements;
+	private final int[] filtrationIndices;
+
+	/**
+	 * The distinct filtration indices in increasing order, and the position of the first element
+	 * with each of them. The last offset is the number of elements.
+	 */
+	private final int[] distinctFiltrationIndices;
+	private final int[] filtrationIndexOffsets;
+
+	/**
+	 * The positions of the elements of each dimension, in stream order.
+	 */
+	private final int[][] dimensionPositions;
+
+	/**
+	 * This constructor initializes the view from the given finalized storage structure.
+	 *
+	 * @param storageStructure the storage structure to index
+	 */
+	public IndexedStorageView(StreamStorageStructure<T> storageStructure) {
+		if (!storageStructure.isFinalized()) {
+			throw new IllegalStateException("Cannot index a storage structure which is not finalized.");
+		}
+
+		int size = storageStructure.getSize();
+		this.elements = new Object[size];
+		this.filtrationIndices = new int[size];
+		int[] distinctIndices = new int[size];
+		int[] offsets = new int[size + 1];
+		int[] dimensionCounts = new int[4];
+		int numDistinctIndices = 0;
+
+		int position = 0;
+		for (T element : storageStructure) {
+			int filtrationIndex = storageStructure.getFiltrationIndex(element);
+			this.elements[position] = element;
+			this.filtrationIndices[position] = filtrationIndex;
+			if (position == 0 || filtrationIndex != this.filtrationIndices[position - 1]) {
+				distinctIndices[numDistinctIndices] = filtrationIndex;
+				offsets[numDistinctIndices] = position;
+				numDistinctIndices++;
+			}
+
+			int dimension = element.getDimension();
+			if (dimension >= dimensionCounts.length) {
+				dimensionCounts = Arrays.copyOf(dimensionCounts, Math.max(dimension + 1, 2 * dimensionCounts.length));
+			}
+			dimensionCounts[dimension]++;
+			position++;
+		}
+		offsets[numDistinctIndices] = position;
+
+		this.distinctFiltrationIndices = Arrays.copyOf(distinctIndices, numDistinctIndices);
+		this.filtrationIndexOffsets = Arrays.copyOf(offsets, numDistinctIndices + 1);
+
+		int maxDimension = dimensionCounts.length - 1;
+		while (maxDimension >= 0 && dimensionCounts[maxDimension] == 0) {
+			maxDimension--;
+		}
+		this.dimensionPositions = new int[maxDimension + 1][];
+		for (int dimension = 0; dimension <= maxDimension; dimension++) {
+			this.dimensionPositions[dimension] = new int[dimensionCounts[dimension]];
+		}
+		int[] counts = new int[maxDimension + 1];
+		for (position = 0; position < size; position++) {
+			int dimension = this.getElement(position).getDimension();
+			this.dimensionPositions[dimension][counts[dimension]++] = position;
+		}
+	}
+
+	/**
+	 * @return the number of elements in the view
+	 */
+	public int getSize() {
+		return this.elements.length;
+	}
+
+	/**
+	 * This function returns the minimum filtration index, or Integer.MAX_VALUE if the
+	 * view is empty, as the storage structures do.
+	 *
+	 * @return the minimum filtration index
+	 */
+	public int getMinimumFiltrationIndex() {
+		if (this.distinctFiltrationIndices.length == 0) {
+			return Integer.MAX_VALUE;
+		}
+		return this.distinctFiltrationIndices[0];
+	}
+
+	/**
+	 * This function returns the maximum filtration index, or Integer.MIN_VALUE if the
+	 * view is empty, as the storage structures do.
+	 *
+	 * @return the maximum filtration index
+	 */
+	public int getMaximumFiltrationIndex() {
+		if (this.distinctFiltrationIndices.length == 0) {
+			return Integer.MIN_VALUE;
+		}
+		return this.distinctFiltrationIndices[this.distinctFiltrationIndices.length - 1];
+	}
+
+	/**
+	 * @return the largest dimension of an element, or -1 if the view is empty
+	 */
+	public int getMaximumDimension() {
+		return this.dimensionPositions.length - 1;
+	}
+
+	/**
+	 * This function returns the number of elements with the given dimension.
+	 *
+	 * @param dimension the dimension to query
+	 * @return the size of the skeleton of the given dimension
+	 */
+	public int getSkeletonSize(int dimension) {
+		if (dimension < 0 || dimension >= this.dimensionPositions.length) {
+			return 0;
+		}
+		return this.dimensionPositions[dimension].length;
+	}
+
+	/**
+	 * This function returns an iterator over the elements with filtration indices between
+	 * minFiltrationIndex and maxFiltrationIndex, inclusive, in stream order.
+	 *
+	 * @param minFiltrationIndex the smallest filtration index to include
+	 * @param maxFiltrationIndex the largest filtration index to include
+	 * @return an iterator over the elements in the given range
+	 */
+	public Iterator<T> iterator(int minFiltrationIndex, int maxFiltrationIndex) {
+		int start = this.getOffset(minFiltrationIndex);
+		int end = (maxFiltrationIndex == Integer.MAX_VALUE ? this.elements.length : this.getOffset(maxFiltrationIndex + 1));
+		return new PositionIterator(null, start, Math.max(start, end));
+	}
+
+	/**
+	 * This function returns an iterator over the elements with the given dimension, in stream order.
+	 *
+	 * @param dimension the dimension of the elements
+	 * @return an iterator over the skeleton of the given dimension
+	 */
+	public Iterator<T> skeletonIterator(int dimension) {
+		return this.skeletonIterator(dimension, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * This function returns an iterator over the elements with the given dimension and filtration
+	 * indices between minFiltrationIndex and maxFiltrationIndex, inclusive, in stream order.
+	 *
+	 * @param dimension the dimension of the elements
+	 * @param minFiltrationIndex the smallest filtration index to include
+	 * @param maxFiltrationIndex the largest filtration index to include
+	 * @return an iterator over the elements of the skeleton in the given range
+	 */
+	public Iterator<T> skeletonIterator(int dimension, int minFiltrationIndex, int maxFiltrationIndex) {
+		if (dimension < 0 || dimension >= this.dimensionPositions.length) {
+			return new PositionIterator(null, 0, 0);
+		}
+		int[] positions = this.dimensionPositions[dimension];
+		int start = this.getSkeletonOffset(positions, minFiltrationIndex);
+		int end = (maxFiltrationIndex == Integer.MAX_VALUE ? positions.length : this.getSkeletonOffset(positions, maxFiltrationIndex + 1));
+		return new PositionIterator(positions, start, Math.max(start, end));
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getElement(int position) {
+		return (T) this.elements[position];
+	}
+
+	/**
+	 * This function returns the position of the first element with filtration index at least
+	 * the given one, using the offset table.
+	 */
+	private int getOffset(int filtrationIndex) {
+		int k = Arrays.binarySearch(this.distinctFiltrationIndices, filtrationIndex);
+		return this.filtrationIndexOffsets[k >= 0 ? k : -(k + 1)];
+	}
+
+	/**
+	 * This function returns the first entry of positions whose element has filtration index
+	 * at least the given one.
+	 */
+	private int getSkeletonOffset(int[] positions, int filtrationIndex) {
+		int low = 0;
+		int high = positions.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.filtrationIndices[positions[middle]] < filtrationIndex) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * This class iterates over a range of positions, or of entries of a table of positions.
+	 */
+	private class PositionIterator implements Iterator<T> {
+		private final int[] positions;
+		private final int end;
+		private int next;
+
+		PositionIterator(int[] positions, int start, int end) {
+			this.positions = positions;
+			this.next = start;
+			this.end = end;
+		}
+
+		public boolean hasNext() {
+			return (this.next < this.end);
+		}
+
+		public T next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int position = (this.positions == null ? this.next : this.positions[this.next]);
+			this.next++;
+			return getElement(position);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
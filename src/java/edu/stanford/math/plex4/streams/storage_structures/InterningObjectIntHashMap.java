@@ -0,0 +1,27 @@
+package edu.stanford.math.plex4.streams.storage_structures;
+
+import gnu.trove.TObjectIntHashMap;
+
+/**
+ * This class extends the Trove map from objects to ints with a lookup of the stored key
+ * that is equal to a given object. It is used by the storage structures to return the
+ * canonical instances of basis elements.
+ *
+ * @param <T> the type of the keys
+ */
+class InterningObjectIntHashMap<T> extends TObjectIntHashMap<T> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * This function returns the key in the map which is equal to the given object, or
+	 * null if the map does not contain such a key.
+	 *
+	 * @param key the object to look up
+	 * @return the stored key equal to the given object, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public T getStoredKey(T key) {
+		int index = this.index(key);
+		return (index < 0 ? null : (T) this._set[index]);
+	}
+}
@@ -0,0 +1,382 @@
+package edu.stanford.math.plex4.streams.storage_structures;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
+import edu.stanford.math.plex4.homology.filtration.TabulatedConverter;
+import edu.stanford.math.plex4.io.BinarySimplexStreamReaderWriter;
+import edu.stanford.math.plex4.utility.ExceptionUtility;
+
+/**
+ * <p>This class implements a read-only stream storage structure for simplices which are stored in
+ * a file in the format of BinarySimplexStreamReaderWriter. The blocks of the file are memory-mapped,
+ * and the Simplex objects are created by the iterator when they are requested, so the simplices do
+ * not need to fit into the heap. Since a single mapping is limited to 2GB, each block is mapped in
+ * segments, each of which contains a whole number of records.</p>
+ *
+ * <p>The iterator merges the blocks, so that the simplices are produced in order of filtration index,
+ * then dimension, and then in the order in which they were written. For a stream ordered by the
+ * SimplexComparator, this is the order of the original stream.</p>
+ *
+ * <p>The filtration index of a simplex is located with an open addressing hash table of the positions
+ * in its block. The tables are the only part of the structure which is stored on the heap: the table
+ * of a block uses between 8 and 16 bytes per simplex, and is built when a simplex of that dimension is
+ * first queried. Since the persistence algorithms query the filtration index of every simplex, all
+ * tables are built when the homology of the stream is computed. A block may contain at most
+ * MAX_BLOCK_SIZE simplices, so that its table can be indexed by an int.</p>
+ *
+ */
+public class MappedSimplexStorageStructure implements StreamStorageStructure<Simplex> {
+
+	/**
+	 * The maximum number of bytes of a mapped segment.
+	 */
+	private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+	/**
+	 * The maximum number of simplices of one dimension. The hash table of a block has a power of
+	 * two capacity which is at least twice its size, and the largest such int array has 2^30 entries.
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 29;
+
+	private final Block[] blocks;
+	private final int size;
+	private final int[] filtrationIndices;
+	private final double[] filtrationValues;
+
+	/**
+	 * This class provides access to the records of the simplices of one dimension.
+	 */
+	private static class Block {
+		private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+		/**
+		 * The number of vertices of each simplex, and the number of ints of each record.
+		 */
+		private final int length;
+		private final int recordLength;
+		private final int size;
+		private final int recordsPerSegment;
+		private final IntBuffer[] segments;
+
+		/**
+		 * The hash table contains the position + 1 of each simplex, or 0 for empty slots. It is
+		 * created by the first lookup. Since it is volatile and only assigned once it is complete,
+		 * later lookups read it without locking.
+		 */
+		private volatile int[] table = null;
+
+		Block(FileChannel channel, long offset, int length, int size, int maxRecordsPerSegment) throws IOException {
+			this.length = length;
+			this.recordLength = length + 1;
+			this.size = size;
+			long recordBytes = 4L * this.recordLength;
+			this.recordsPerSegment = (int) Math.min(maxRecordsPerSegment, MAX_SEGMENT_BYTES / recordBytes);
+
+			int numSegments = (size + this.recordsPerSegment - 1) / this.recordsPerSegment;
+			this.segments = new IntBuffer[numSegments];
+			for (int s = 0; s < numSegments; s++) {
+				long first = (long) s * this.recordsPerSegment;
+				long count = Math.min(this.recordsPerSegment, size - first);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * recordBytes, count * recordBytes);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				this.segments[s] = buffer.asIntBuffer();
+			}
+		}
+
+		/**
+		 * This function returns the entry k of the record at the given position, where entry 0
+		 * is the filtration index and entries 1, ..., length are the vertices.
+		 */
+		int get(int position, int k) {
+			return this.segments[position / this.recordsPerSegment].get((position % this.recordsPerSegment) * this.recordLength + k);
+		}
+
+		int getFiltrationIndex(int position) {
+			return this.get(position, 0);
+		}
+
+		Simplex getSimplex(int position) {
+			int[] vertices = new int[this.length];
+			for (int i = 0; i < this.length; i++) {
+				vertices[i] = this.get(position, i + 1);
+			}
+			return new Simplex(vertices);
+		}
+
+		/**
+		 * This function returns the position of the simplex with the given sorted vertices, or -1
+		 * if it is not present.
+		 */
+		int find(int[] simplexVertices) {
+			int[] table = this.getTable();
+			int mask = table.length - 1;
+			int slot = hash(simplexVertices) & mask;
+			while (table[slot] != 0) {
+				int position = table[slot] - 1;
+				if (this.equalsAt(position, simplexVertices)) {
+					return position;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private boolean equalsAt(int position, int[] simplexVertices) {
+			for (int i = 0; i < this.length; i++) {
+				if (this.get(position, i + 1) != simplexVertices[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int[] getTable() {
+			int[] table = this.table;
+			if (table == null) {
+				table = this.buildTable();
+			}
+			return table;
+		}
+
+		/**
+		 * This function builds the hash table unless another thread has already done so. Only
+		 * this one-time construction is synchronized.
+		 */
+		private synchronized int[] buildTable() {
+			if (this.table == null) {
+				// the constructor ensures that size <= MAX_BLOCK_SIZE, so the capacity is at most 2^30
+				int capacity = 16;
+				while (capacity < 2 * this.size) {
+					capacity <<= 1;
+				}
+				int[] newTable = new int[capacity];
+				int[] vertices = new int[this.length];
+				for (int position = 0; position < this.size; position++) {
+					for (int i = 0; i < this.length; i++) {
+						vertices[i] = this.get(position, i + 1);
+					}
+					int slot = hash(vertices) & (capacity - 1);
+					while (newTable[slot] != 0) {
+						slot = (slot + 1) & (capacity - 1);
+					}
+					newTable[slot] = position + 1;
+				}
+				this.table = newTable;
+			}
+			return this.table;
+		}
+
+		private static int hash(int[] vertices) {
+			long hash = vertices.length;
+			for (int i = 0; i < vertices.length; i++) {
+				hash = (hash + vertices[i]) * HASH_MULTIPLIER;
+			}
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	/**
+	 * This constructor maps the given binary simplex stream file.
+	 *
+	 * @param path the file to map
+	 * @throws IOException if the file cannot be read or is not a valid simplex stream file
+	 */
+	public MappedSimplexStorageStructure(String path) throws IOException {
+		this(path, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * This constructor maps the given binary simplex stream file, using segments of at most the
+	 * given number of records.
+	 *
+	 * @param path the file to map
+	 * @param maxRecordsPerSegment the maximum number of records in a mapped segment
+	 * @throws IOException if the file cannot be read or is not a valid simplex stream file
+	 */
+	public MappedSimplexStorageStructure(String path, int maxRecordsPerSegment) throws IOException {
+		ExceptionUtility.verifyPositive(maxRecordsPerSegment);
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			BinarySimplexStreamReaderWriter.Header header = BinarySimplexStreamReaderWriter.readHeader(channel);
+			if (header.getSize() > Integer.MAX_VALUE) {
+				throw new IOException("The stream contains more than " + Integer.MAX_VALUE + " simplices.");
+			}
+			this.size = (int) header.getSize();
+			this.filtrationIndices = header.getFiltrationIndices();
+			this.filtrationValues = header.getFiltrationValues();
+
+			this.blocks = new Block[header.getNumBlocks()];
+			for (int d = 0; d < this.blocks.length; d++) {
+				if (header.getBlockSize(d) > MAX_BLOCK_SIZE) {
+					throw new IOException("The stream contains more than " + MAX_BLOCK_SIZE + " simplices of dimension " + d + ".");
+				}
+				this.blocks[d] = new Block(channel, header.getBlockOffset(d), d + 1, (int) header.getBlockSize(d), maxRecordsPerSegment);
+			}
+		} finally {
+			// the mappings remain valid after the channel is closed
+			file.close();
+		}
+	}
+
+	/**
+	 * @return a converter which maps the filtration indices to the filtration values stored in the file
+	 */
+	public TabulatedConverter getFiltrationConverter() {
+		return new TabulatedConverter(this.filtrationIndices, this.filtrationValues);
+	}
+
+	/**
+	 * The structure is read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	public void addElement(Simplex basisElement, int filtrationIndex) {
+		throw new UnsupportedOperationException("The mapped storage structure is read-only.");
+	}
+
+	/**
+	 * The structure is read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	public void removeElement(Simplex basisElement) {
+		throw new UnsupportedOperationException("The mapped storage structure is read-only.");
+	}
+
+	/**
+	 * This function returns the position of the simplex in the block of its dimension, or -1 if it
+	 * is not present.
+	 */
+	private int find(Simplex simplex) {
+		int[] vertices = simplex.getVertices();
+		if (vertices.length == 0 || vertices.length > this.blocks.length) {
+			return -1;
+		}
+		return this.blocks[vertices.length - 1].find(vertices);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#containsElement(java.lang.Object)
+	 */
+	public boolean containsElement(Simplex basisElement) {
+		return (this.find(basisElement) >= 0);
+	}
+
+	/**
+	 * This function returns the filtration index of the given simplex, or 0 if it is not
+	 * present, as in SortedStorageStructure.
+	 */
+	public int getFiltrationIndex(Simplex basisElement) {
+		int position = this.find(basisElement);
+		return (position < 0 ? 0 : this.blocks[basisElement.getDimension()].getFiltrationIndex(position));
+	}
+
+	/**
+	 * This function returns the given simplex if it is present, and null otherwise, since the
+	 * simplices are not stored as objects.
+	 */
+	public Simplex getStoredElement(Simplex basisElement) {
+		return (this.containsElement(basisElement) ? basisElement : null);
+	}
+
+	/**
+	 * The structure is finalized when it is written, so this function does nothing.
+	 */
+	public void finalizeStructure() {}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#isFinalized()
+	 */
+	public boolean isFinalized() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getBasisComparator()
+	 */
+	public Comparator<Simplex> getBasisComparator() {
+		return SimplexComparator.getInstance();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getSize()
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getMaximumFiltrationIndex()
+	 */
+	public int getMaximumFiltrationIndex() {
+		return (this.filtrationIndices.length == 0 ? Integer.MIN_VALUE : this.filtrationIndices[this.filtrationIndices.length - 1]);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getMinimumFiltrationIndex()
+	 */
+	public int getMinimumFiltrationIndex() {
+		return (this.filtrationIndices.length == 0 ? Integer.MAX_VALUE : this.filtrationIndices[0]);
+	}
+
+	/**
+	 * This function returns an iterator over the simplices, which are produced in order of
+	 * filtration index, dimension, and then in the order of the file.
+	 */
+	public Iterator<Simplex> iterator() {
+		return new Iterator<Simplex>() {
+			private final int[] positions = new int[blocks.length];
+			private int nextBlock = -1;
+
+			{
+				this.advance();
+			}
+
+			/**
+			 * This function selects the block of the next simplex, which is the one with the
+			 * smallest filtration index, and then the smallest dimension.
+			 */
+			private void advance() {
+				this.nextBlock = -1;
+				int minIndex = 0;
+				for (int d = 0; d < blocks.length; d++) {
+					if (this.positions[d] < blocks[d].size) {
+						int filtrationIndex = blocks[d].getFiltrationIndex(this.positions[d]);
+						if (this.nextBlock < 0 || filtrationIndex < minIndex) {
+							this.nextBlock = d;
+							minIndex = filtrationIndex;
+						}
+					}
+				}
+			}
+
+			public boolean hasNext() {
+				return (this.nextBlock >= 0);
+			}
+
+			public Simplex next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Simplex simplex = blocks[this.nextBlock].getSimplex(this.positions[this.nextBlock]++);
+				this.advance();
+				return simplex;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,498 @@
+package edu.stanford.math.plex4.streams.storage_structures;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
+import edu.stanford.math.primitivelib.autogen.pair.IntObjectPair;
+
+/**
+ * <p>This class implements a stream storage structure for simplices which stores the simplices in
+ * primitive arrays rather than as objects. For each dimension d, the vertices of the simplices are
+ * stored consecutively in a single int array, with d + 1 entries per simplex, and their filtration
+ * indices are stored in a parallel int array. The Simplex objects are created by the iterator when
+ * they are requested.</p>
+ *
+ * <p>When the structure is finalized, the simplices of each dimension are sorted by filtration index
+ * and then lexicographically, using a merge sort on the positions of the simplices. The iterator merges
+ * the dimensions, so that the simplices are produced in the same order as by a SortedStorageStructure
+ * with the SimplexComparator.</p>
+ *
+ * <p>The simplices are located with an open addressing hash table for each dimension, which stores
+ * the positions of the simplices and is indexed by a 64-bit hash of their vertices. A simplex of
+ * dimension d thus uses 4 (d + 2) bytes, plus between 8 and 16 bytes in the hash table. Since the
+ * arrays are indexed by ints, each dimension can hold at most MAX_COLUMN_SIZE distinct simplices, and
+ * an IllegalStateException is thrown if a dimension grows beyond that.</p>
+ *
+ * <p>If a simplex is added more than once, the last filtration index is used. Removed simplices are
+ * marked, and are discarded when the structure is finalized.</p>
+ *
+ */
+public class SimplexStorageStructure implements StreamStorageStructure<Simplex> {
+
+	/**
+	 * The maximum number of distinct simplices of one dimension. The hash table of a dimension
+	 * has a power of 2 capacity which is at least twice the number of simplices, and the largest
+	 * such int array has 2^30 entries.
+	 */
+	public static final int MAX_COLUMN_SIZE = 1 << 29;
+
+	/**
+	 * The maximum length of an array, which is slightly less than Integer.MAX_VALUE on some
+	 * virtual machines.
+	 */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The simplices of each dimension.
+	 */
+	private Column[] columns = new Column[0];
+
+	/**
+	 * The number of simplices in the structure.
+	 */
+	private int size = 0;
+
+	/**
+	 * Boolean which indicates whether stream has been finalized or not
+	 */
+	private boolean isFinalized = false;
+
+	/**
+	 * This class stores the simplices of one dimension.
+	 */
+	private static class Column {
+		private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+		/**
+		 * The number of vertices of each simplex.
+		 */
+		private final int length;
+
+		/**
+		 * The vertices and filtration indices of the stored simplices, including the removed ones.
+		 */
+		private int[] vertices;
+		private int[] filtrationIndices;
+		private int numEntries = 0;
+		private BitSet removed = new BitSet();
+
+		/**
+		 * The hash table contains the position + 1 of the last entry of each simplex, or 0 for
+		 * empty slots. Its capacity is a power of 2.
+		 */
+		private int[] table = new int[16];
+		private int numKeys = 0;
+
+		Column(int length) {
+			this.length = length;
+			this.vertices = new int[16 * length];
+			this.filtrationIndices = new int[16];
+		}
+
+		/**
+		 * This function returns the slot of the hash table which contains the simplex, or
+		 * -(slot + 1) for the empty slot at which it would be inserted.
+		 */
+		int findSlot(int[] simplexVertices) {
+			int mask = this.table.length - 1;
+			int slot = hash(simplexVertices, 0, this.length) & mask;
+			while (this.table[slot] != 0) {
+				if (this.equalsAt(this.table[slot] - 1, simplexVertices)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -(slot + 1);
+		}
+
+		/**
+		 * This function returns the position of the simplex, or -1 if it is not present.
+		 */
+		int find(int[] simplexVertices) {
+			int slot = this.findSlot(simplexVertices);
+			if (slot < 0) {
+				return -1;
+			}
+			int position = this.table[slot] - 1;
+			return (this.removed.get(position) ? -1 : position);
+		}
+
+		/**
+		 * This function adds the simplex, and returns true if it was not present before.
+		 */
+		boolean add(int[] simplexVertices, int filtrationIndex) {
+			if (this.numEntries == this.filtrationIndices.length) {
+				this.grow();
+			}
+			int position = this.numEntries++;
+			System.arraycopy(simplexVertices, 0, this.vertices, position * this.length, this.length);
+			this.filtrationIndices[position] = filtrationIndex;
+
+			int slot = this.findSlot(simplexVertices);
+			if (slot >= 0) {
+				// replace the previous entry
+				int previous = this.table[slot] - 1;
+				boolean wasRemoved = this.removed.get(previous);
+				this.removed.set(previous);
+				this.table[slot] = position + 1;
+				return wasRemoved;
+			}
+
+			if (this.numKeys == MAX_COLUMN_SIZE) {
+				this.numEntries--;
+				throw new IllegalStateException("Cannot store more than " + MAX_COLUMN_SIZE + " simplices of dimension " + (this.length - 1) + ".");
+			}
+			this.table[-(slot + 1)] = position + 1;
+			this.numKeys++;
+			if (2 * this.numKeys > this.table.length) {
+				this.rehash(2 * this.table.length);
+			}
+			return true;
+		}
+
+		/**
+		 * This function doubles the capacity of the entry arrays, as far as the vertices can
+		 * be stored in a single array.
+		 */
+		private void grow() {
+			int maxEntries = MAX_ARRAY_SIZE / this.length;
+			if (this.numEntries >= maxEntries) {
+				throw new IllegalStateException("Cannot store more than " + maxEntries + " entries of dimension " + (this.length - 1) + ".");
+			}
+			int capacity = (int) Math.min(2L * this.numEntries, maxEntries);
+			this.vertices = Arrays.copyOf(this.vertices, capacity * this.length);
+			this.filtrationIndices = Arrays.copyOf(this.filtrationIndices, capacity);
+		}
+
+		/**
+		 * This function rebuilds the hash table from the entries which are not removed.
+		 */
+		void rehash(int capacity) {
+			this.table = new int[capacity];
+			this.numKeys = 0;
+			int mask = capacity - 1;
+			for (int position = 0; position < this.numEntries; position++) {
+				if (this.removed.get(position)) {
+					continue;
+				}
+				int slot = hash(this.vertices, position * this.length, this.length) & mask;
+				while (this.table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				this.table[slot] = position + 1;
+				this.numKeys++;
+			}
+		}
+
+		/**
+		 * This function discards the removed entries, sorts the remaining ones by filtration
+		 * index and then lexicographically, and rebuilds the hash table.
+		 */
+		void sort() {
+			int count = this.numEntries - this.removed.cardinality();
+			int[] order = new int[count];
+			int k = 0;
+			for (int position = 0; position < this.numEntries; position++) {
+				if (!this.removed.get(position)) {
+					order[k++] = position;
+				}
+			}
+			this.mergeSort(order, new int[count], 0, count);
+
+			int[] sortedVertices = new int[Math.max(count, 1) * this.length];
+			int[] sortedFiltrationIndices = new int[Math.max(count, 1)];
+			for (k = 0; k < count; k++) {
+				System.arraycopy(this.vertices, order[k] * this.length, sortedVertices, k * this.length, this.length);
+				sortedFiltrationIndices[k] = this.filtrationIndices[order[k]];
+			}
+			this.vertices = sortedVertices;
+			this.filtrationIndices = sortedFiltrationIndices;
+			this.numEntries = count;
+			this.removed = new BitSet();
+
+			// count <= MAX_COLUMN_SIZE, so the capacity is at most 2^30
+			int capacity = 16;
+			while (capacity < 2 * count) {
+				capacity *= 2;
+			}
+			this.rehash(capacity);
+		}
+
+		/**
+		 * This function sorts the positions order[from], ..., order[to - 1].
+		 */
+		private void mergeSort(int[] order, int[] buffer, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			this.mergeSort(order, buffer, from, middle);
+			this.mergeSort(order, buffer, middle, to);
+			if (this.compare(order[middle - 1], order[middle]) <= 0) {
+				return;
+			}
+			System.arraycopy(order, from, buffer, from, to - from);
+			int a = from;
+			int b = middle;
+			for (int k = from; k < to; k++) {
+				if (b >= to || (a < middle && this.compare(buffer[a], buffer[b]) <= 0)) {
+					order[k] = buffer[a++];
+				} else {
+					order[k] = buffer[b++];
+				}
+			}
+		}
+
+		/**
+		 * This function compares the entries at the given positions by filtration index, and
+		 * then lexicographically.
+		 */
+		int compare(int position1, int position2) {
+			int index1 = this.filtrationIndices[position1];
+			int index2 = this.filtrationIndices[position2];
+			if (index1 != index2) {
+				return (index1 < index2 ? -1 : 1);
+			}
+			int offset1 = position1 * this.length;
+			int offset2 = position2 * this.length;
+			for (int i = 0; i < this.length; i++) {
+				int vertex1 = this.vertices[offset1 + i];
+				int vertex2 = this.vertices[offset2 + i];
+				if (vertex1 != vertex2) {
+					return (vertex1 < vertex2 ? -1 : 1);
+				}
+			}
+			return 0;
+		}
+
+		private boolean equalsAt(int position, int[] simplexVertices) {
+			int offset = position * this.length;
+			for (int i = 0; i < this.length; i++) {
+				if (this.vertices[offset + i] != simplexVertices[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Simplex getSimplex(int position) {
+			return new Simplex(Arrays.copyOfRange(this.vertices, position * this.length, (position + 1) * this.length));
+		}
+
+		private static int hash(int[] array, int offset, int length) {
+			long hash = length;
+			for (int i = 0; i < length; i++) {
+				hash = (hash + array[offset + i]) * HASH_MULTIPLIER;
+			}
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	/**
+	 * This function returns the column for the simplices with the given number of vertices, or
+	 * null if there is none.
+	 */
+	private Column getColumn(int length) {
+		return (length > 0 && length <= this.columns.length ? this.columns[length - 1] : null);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#addElement(java.lang.Object, int)
+	 */
+	public void addElement(Simplex basisElement, int filtrationIndex) {
+		if (this.isFinalized) {
+			throw new IllegalStateException("Cannot add objects to finalized storage structure.");
+		}
+		int[] vertices = basisElement.getVertices();
+		if (vertices.length > this.columns.length) {
+			int numColumns = this.columns.length;
+			this.columns = Arrays.copyOf(this.columns, vertices.length);
+			for (int length = numColumns + 1; length <= vertices.length; length++) {
+				this.columns[length - 1] = new Column(length);
+			}
+		}
+		if (this.getColumn(vertices.length).add(vertices, filtrationIndex)) {
+			this.size++;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#removeElement(java.lang.Object)
+	 */
+	public void removeElement(Simplex basisElement) {
+		Column column = this.getColumn(basisElement.getVertices().length);
+		int position = (column == null ? -1 : column.find(basisElement.getVertices()));
+		if (position < 0) {
+			throw new IllegalArgumentException("Element: " + basisElement + " is not present in the stream.");
+		}
+		column.removed.set(position);
+		this.size--;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#containsElement(java.lang.Object)
+	 */
+	public boolean containsElement(Simplex basisElement) {
+		Column column = this.getColumn(basisElement.getVertices().length);
+		return (column != null && column.find(basisElement.getVertices()) >= 0);
+	}
+
+	/**
+	 * This function returns the filtration index of the given simplex, or 0 if it is not
+	 * present, as in SortedStorageStructure.
+	 */
+	public int getFiltrationIndex(Simplex basisElement) {
+		Column column = this.getColumn(basisElement.getVertices().length);
+		int position = (column == null ? -1 : column.find(basisElement.getVertices()));
+		return (position < 0 ? 0 : column.filtrationIndices[position]);
+	}
+
+	/**
+	 * This function returns the given simplex if it is present, and null otherwise. Since the
+	 * vertices are stored in the columns rather than as Simplex objects, there is no other
+	 * instance to return.
+	 */
+	public Simplex getStoredElement(Simplex basisElement) {
+		return (this.containsElement(basisElement) ? basisElement : null);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#finalizeStructure()
+	 */
+	public void finalizeStructure() {
+		for (Column column : this.columns) {
+			column.sort();
+		}
+		this.isFinalized = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#isFinalized()
+	 */
+	public boolean isFinalized() {
+		return this.isFinalized;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getBasisComparator()
+	 */
+	public Comparator<Simplex> getBasisComparator() {
+		return SimplexComparator.getInstance();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getSize()
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getMaximumFiltrationIndex()
+	 */
+	public int getMaximumFiltrationIndex() {
+		int maxIndex = Integer.MIN_VALUE;
+		for (Column column : this.columns) {
+			// once finalized, each column is sorted by filtration index, so only its last entry is needed
+			for (int position = column.numEntries - 1; position >= 0; position--) {
+				if (!column.removed.get(position)) {
+					maxIndex = Math.max(maxIndex, column.filtrationIndices[position]);
+					if (this.isFinalized) {
+						break;
+					}
+				}
+			}
+		}
+		return maxIndex;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getMinimumFiltrationIndex()
+	 */
+	public int getMinimumFiltrationIndex() {
+		int minIndex = Integer.MAX_VALUE;
+		for (Column column : this.columns) {
+			for (int position = 0; position < column.numEntries; position++) {
+				if (!column.removed.get(position)) {
+					minIndex = Math.min(minIndex, column.filtrationIndices[position]);
+					if (this.isFinalized) {
+						break;
+					}
+				}
+			}
+		}
+		return minIndex;
+	}
+
+	/**
+	 * This function returns an iterator over the simplices, which are produced in order of
+	 * filtration index, dimension, and then lexicographically once the structure is finalized.
+	 */
+	public Iterator<Simplex> iterator() {
+		return new Iterator<Simplex>() {
+			private final int[] positions = new int[columns.length];
+			private int nextColumn = -1;
+
+			{
+				this.advance();
+			}
+
+			/**
+			 * This function skips the removed entries, and selects the column of the next simplex,
+			 * which is the one with the smallest filtration index, and then the smallest dimension.
+			 */
+			private void advance() {
+				this.nextColumn = -1;
+				int minIndex = 0;
+				for (int c = 0; c < columns.length; c++) {
+					Column column = columns[c];
+					while (this.positions[c] < column.numEntries && column.removed.get(this.positions[c])) {
+						this.positions[c]++;
+					}
+					if (this.positions[c] < column.numEntries) {
+						int filtrationIndex = column.filtrationIndices[this.positions[c]];
+						if (this.nextColumn < 0 || filtrationIndex < minIndex) {
+							this.nextColumn = c;
+							minIndex = filtrationIndex;
+						}
+					}
+				}
+			}
+
+			public boolean hasNext() {
+				return (this.nextColumn >= 0);
+			}
+
+			public Simplex next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Simplex simplex = columns[this.nextColumn].getSimplex(this.positions[this.nextColumn]++);
+				this.advance();
+				return simplex;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Simplex simplex : this) {
+			builder.append(new IntObjectPair<Simplex>(this.getFiltrationIndex(simplex), simplex).toString());
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -11,7 +11,6 @@ import java.util.List;
 
 import edu.stanford.math.primitivelib.autogen.pair.IntObjectPair;
 import edu.stanford.math.primitivelib.autogen.pair.IntObjectPairComparator;
-import gnu.trove.TObjectIntHashMap;
 
 /**
  * This class implements an in-memory stream storage mechanism where all of the
@@ -31,7 +30,7 @@ public class SortedStorageStructure<T> implements StreamStorageStructure<T> {
 	/**
 	 * This hash map contains the filtration indices of the basis elements in the complex.
 	 */
-	private final TObjectIntHashMap<T> filtrationIndices = new TObjectIntHashMap<T>();
+	private final InterningObjectIntHashMap<T> filtrationIndices = new InterningObjectIntHashMap<T>();
 
 	/**
 	 * Comparator which provides ordering of elements of the stream.
@@ -133,6 +132,13 @@ public class SortedStorageStructure<T> implements StreamStorageStructure<T> {
 		return this.filtrationIndices.get(basisElement);
 	}
 	
+	/* (non-Javadoc)
+	 * @see edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure#getStoredElement(java.lang.Object)
+	 */
+	public T getStoredElement(T basisElement) {
+		return this.filtrationIndices.getStoredKey(basisElement);
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -173,6 +179,11 @@ public class SortedStorageStructure<T> implements StreamStorageStructure<T> {
 	 * @see edu.stanford.math.plex4.homology.streams.storage_structures.StreamStorageStructure#getMaximumFiltrationIndex()
 	 */
 	public int getMaximumFiltrationIndex() {
+		// once finalized, the pairs are sorted by filtration index
+		if (this.isFinalized && !this.elementFiltrationPairs.isEmpty()) {
+			return this.elementFiltrationPairs.get(this.elementFiltrationPairs.size() - 1).getFirst();
+		}
+		
 		int maxIndex = Integer.MIN_VALUE;
 		for (IntObjectPair<T> pair : this.elementFiltrationPairs) {
 			if (pair.getFirst() > maxIndex) {
@@ -184,6 +195,10 @@ public class SortedStorageStructure<T> implements StreamStorageStructure<T> {
 	}
 	
 	public int getMinimumFiltrationIndex() {
+		if (this.isFinalized && !this.elementFiltrationPairs.isEmpty()) {
+			return this.elementFiltrationPairs.get(0).getFirst();
+		}
+		
 		int minIndex = Integer.MAX_VALUE;
 		for (IntObjectPair<T> pair : this.elementFiltrationPairs) {
 			if (pair.getFirst() < minIndex) {
@@ -51,6 +51,17 @@ public interface StreamStorageStructure<T> extends Iterable<T> {
 	 */
 	int getFiltrationIndex(T basisElement);
 	
+	/**
+	 * This function returns the basis element stored in the structure which is equal to
+	 * the given one, or null if there is no such element. Algorithms can use this to
+	 * replace newly created elements, such as the faces of a boundary, by the instances
+	 * which are already held in memory.
+	 * 
+	 * @param basisElement the element to query
+	 * @return the stored element equal to the given one, or null
+	 */
+	T getStoredElement(T basisElement);
+	
 	/**
 	 * This function sets the stream as being finalized. A finalized storage structure
 	 * cannot accept any more elements, and should be ready for consumption.
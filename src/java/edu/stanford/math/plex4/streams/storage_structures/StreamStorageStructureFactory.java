@@ -3,6 +3,7 @@ package edu.stanford.math.plex4.streams.storage_structures;
 import java.util.Comparator;
 
 import edu.stanford.math.plex4.homology.chain_basis.PrimitiveBasisElement;
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 
 /**
  * This class contains various convenience functions for constructing stream storage structures. It also
@@ -45,4 +46,14 @@ public class StreamStorageStructureFactory {
 	public static <T extends PrimitiveBasisElement> StreamStorageStructure<T> getHashedStorageStructure(Comparator<T> comparator) {
 		return new HashedStorageStructure<T>(comparator);
 	}
+	
+	/**
+	 * This function creates a new storage structure for simplices, which stores the
+	 * simplices in primitive arrays.
+	 * 
+	 * @return a new simplex storage structure
+	 */
+	public static StreamStorageStructure<Simplex> getSimplexStorageStructure() {
+		return new SimplexStorageStructure();
+	}
 }
@@ -1,6 +1,7 @@
 package edu.stanford.math.plex4.streams.utility;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import edu.stanford.math.plex4.graph.AbstractUndirectedGraph;
@@ -9,6 +10,7 @@ import edu.stanford.math.plex4.homology.chain_basis.Simplex;
 import edu.stanford.math.plex4.homology.utility.HomologyUtility;
 import edu.stanford.math.plex4.streams.derived.TensorStream;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
+import edu.stanford.math.plex4.streams.interfaces.PrimitiveStream;
 import edu.stanford.math.primitivelib.autogen.formal_sum.DoublePrimitiveFreeModule;
 import edu.stanford.math.primitivelib.autogen.formal_sum.DoubleSparseFormalSum;
 import edu.stanford.math.primitivelib.autogen.formal_sum.IntMatrixConverter;
@@ -35,9 +37,19 @@ public class StreamUtility {
 	 * @param k the dimension of the objects to retrieve
 	 * @return the objects with the requested dimension
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> List<T> getSkeleton(AbstractFilteredStream<T> stream, int k) {
 		List<T> skeleton = new ArrayList<T>();
 		
+		// primitive streams locate the skeleton with their indexed view if it already exists,
+		// since a single query does not justify keeping a copy of the stream
+		if (stream instanceof PrimitiveStream<?> && ((PrimitiveStream<?>) stream).isIndexed()) {
+			for (Iterator<?> iterator = ((PrimitiveStream<?>) stream).skeletonIterator(k); iterator.hasNext(); ) {
+				skeleton.add((T) iterator.next());
+			}
+			return skeleton;
+		}
+		
 		for (T basisElement: stream) {
 			int elementDimension = stream.getDimension(basisElement);
 			if (elementDimension == k) {
@@ -57,6 +69,10 @@ public class StreamUtility {
 	 * @return the size of the k-seleton of the complex
 	 */
 	public static <T> int getSkeletonSize(AbstractFilteredStream<T> stream, int k) {
+		if (stream instanceof PrimitiveStream<?> && ((PrimitiveStream<?>) stream).isIndexed()) {
+			return ((PrimitiveStream<?>) stream).getSkeletonSize(k);
+		}
+		
 		int size = 0;
 		
 		for (T basisElement: stream) {
@@ -0,0 +1,78 @@
+package edu.stanford.math.plex4.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class contains static functions for running independent tasks
+ * on several threads.
+ *
+ */
+public class ParallelUtility {
+
+	/**
+	 * This function runs the given tasks on a pool of at most numThreads threads,
+	 * and waits for all of them to complete. If there is only one task, or only one
+	 * thread, the tasks are run on the calling thread.
+	 *
+	 * If one of the tasks throws an unchecked exception, it is rethrown by this function.
+	 *
+	 * @param tasks the tasks to run
+	 * @param numThreads the maximum number of threads to use
+	 */
+	public static void runTasks(List<? extends Runnable> tasks, int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+
+		if (numThreads == 1 || tasks.size() <= 1) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+		try {
+			runTasks(tasks, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * This function runs the given tasks on the given executor, and waits for all of them
+	 * to complete. This allows a pool of threads to be reused for many small batches of tasks.
+	 *
+	 * If one of the tasks throws an unchecked exception, it is rethrown by this function.
+	 *
+	 * @param tasks the tasks to run
+	 * @param executor the executor to run the tasks on
+	 */
+	public static void runTasks(List<? extends Runnable> tasks, ExecutorService executor) {
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (Runnable task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The parallel computation was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -1,13 +1,21 @@
 package edu.stanford.math.plex4.example_tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import edu.stanford.math.plex4.graph.AbstractUndirectedGraph;
+import edu.stanford.math.plex4.graph.CompressedWeightedGraph;
 import edu.stanford.math.plex4.graph.UndirectedListGraph;
+import edu.stanford.math.plex4.graph.UndirectedWeightedListGraph;
+import edu.stanford.math.plex4.graph.utility.GraphUtility;
+import edu.stanford.math.plex4.utility.RandomUtility;
+import edu.stanford.math.primitivelib.autogen.pair.IntIntPair;
 
 public class GraphTest {
 
@@ -47,4 +55,54 @@ public class GraphTest {
 
 		assertTrue("numEdges does not work", graph.getNumEdges() == n * (n - 1) / 2);
 	}
+	
+	@Test
+	public void testCompressedWeightedGraph() {
+		RandomUtility.initializeWithSeed(0);
+		int n = 60;
+		UndirectedWeightedListGraph listGraph = new UndirectedWeightedListGraph(n);
+		CompressedWeightedGraph.Builder builder = new CompressedWeightedGraph.Builder(n);
+		
+		for (int e = 0; e < 300; e++) {
+			int i = RandomUtility.nextUniformInt(0, n - 1);
+			int j = RandomUtility.nextUniformInt(0, n - 1);
+			if (i == j) {
+				continue;
+			}
+			double weight = 1 + RandomUtility.nextUniform();
+			listGraph.addEdge(i, j, weight);
+			builder.addEdge(j, i, weight);
+		}
+		CompressedWeightedGraph graph = builder.build();
+		
+		int numEdges = 0;
+		for (int i = 0; i < n; i++) {
+			assertEquals(listGraph.getLowerNeighbors(i), graph.getLowerNeighbors(i));
+			int[] neighbors = listGraph.getNeighbors(i);
+			Arrays.sort(neighbors);
+			assertTrue(Arrays.equals(neighbors, graph.getNeighbors(i)));
+			for (int j = 0; j < n; j++) {
+				assertTrue(listGraph.containsEdge(i, j) == graph.containsEdge(i, j));
+				assertTrue(listGraph.getWeight(i, j) == graph.getWeight(i, j));
+			}
+			numEdges += neighbors.length;
+		}
+		assertTrue(graph.getNumEdges() == numEdges / 2);
+		
+		int count = 0;
+		for (IntIntPair edge: graph) {
+			assertTrue(edge.getFirst() < edge.getSecond());
+			assertTrue(listGraph.containsEdge(edge.getFirst(), edge.getSecond()));
+			count++;
+		}
+		assertTrue(count == graph.getNumEdges());
+		
+		double[][] expected = GraphUtility.computeShortestPaths(listGraph);
+		double[][] actual = GraphUtility.computeShortestPaths(graph);
+		for (int i = 0; i < n; i++) {
+			assertTrue(Arrays.equals(expected[i], actual[i]));
+		}
+		
+		assertTrue(CompressedWeightedGraph.copyOf(listGraph).getNumEdges() == graph.getNumEdges());
+	}
 }
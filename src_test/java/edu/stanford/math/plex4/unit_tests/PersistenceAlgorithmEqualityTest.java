@@ -9,18 +9,24 @@ import org.junit.Test;
 
 import edu.stanford.math.plex4.api.FilteredStreamInterface;
 import edu.stanford.math.plex4.api.PersistenceAlgorithmInterface;
+import edu.stanford.math.plex4.api.Plex4;
+import edu.stanford.math.plex4.autogen.homology.BooleanAbsoluteHomology;
+import edu.stanford.math.plex4.autogen.homology.IntAbsoluteHomology;
 import edu.stanford.math.plex4.examples.CellStreamExamples;
 import edu.stanford.math.plex4.examples.PointCloudExamples;
 import edu.stanford.math.plex4.examples.SimplexStreamExamples;
 import edu.stanford.math.plex4.homology.PersistenceAlgorithmTester;
 import edu.stanford.math.plex4.homology.chain_basis.Cell;
 import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
 import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
+import edu.stanford.math.plex4.homology.nonautogen.BooleanPersistentCohomology;
 import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.metric.landmark.RandomLandmarkSelector;
 import edu.stanford.math.plex4.streams.interfaces.AbstractFilteredStream;
 import edu.stanford.math.plex4.utility.RandomUtility;
+import edu.stanford.math.primitivelib.algebraic.impl.ModularIntField;
 
 /**
  * This class contains test for verifying that the different persistence algorithms produce the
@@ -107,6 +113,135 @@ public class PersistenceAlgorithmEqualityTest {
 		PersistenceAlgorithmTester.verifyEquality(algorithms, streams);
 	}
 	
+	/**
+	 * This function tests the cohomology algorithm with a positive minimum dimension, in which case
+	 * the lower dimensions must still be reduced for the clearing to be correct.
+	 */
+	@Test
+	public void testCohomologyMinDimension() {
+		final int minDimension = 1;
+		final int maxDimension = 4;
+		
+		List<AbstractFilteredStream<Simplex>> streams = new ArrayList<AbstractFilteredStream<Simplex>>();
+		
+		streams.add(SimplexStreamExamples.getFilteredTriangle());
+		streams.add(SimplexStreamExamples.getTriangle());
+		streams.add(SimplexStreamExamples.getTetrahedron());
+		streams.add(SimplexStreamExamples.getTorus());
+		streams.add(SimplexStreamExamples.getAnnulus(4, 10));
+		streams.add(FilteredStreamInterface.createPlex4VietorisRipsStream(PointCloudExamples.getRandomFigure8Points(120), maxDimension + 1, 0.5, 10));
+		
+		List<AbstractPersistenceAlgorithm<Simplex>> algorithms = new ArrayList<AbstractPersistenceAlgorithm<Simplex>>();
+		algorithms.add(new IntAbsoluteHomology<Simplex>(ModularIntField.getInstance(2), SimplexComparator.getInstance(), minDimension, maxDimension));
+		algorithms.add(new BooleanPersistentCohomology<Simplex>(minDimension, maxDimension));
+		
+		PersistenceAlgorithmTester.verifyEquality(algorithms, streams);
+	}
+	
+	/**
+	 * This function tests the implicit Vietoris-Rips algorithm against the default algorithm.
+	 */
+	@Test
+	public void testImplicitVietorisRipsPointClouds() {
+		final int n = 120;
+		final int maxDimension = 4;
+		final double maxFiltrationValue = 0.5;
+		final int numDivisions = 10;
+		
+		List<double[][]> pointClouds = new ArrayList<double[][]>();
+		pointClouds.add(PointCloudExamples.getEquispacedCirclePoints(n));
+		pointClouds.add(PointCloudExamples.getGaussianPoints(n, maxDimension));
+		pointClouds.add(PointCloudExamples.getRandomFigure8Points(n));
+		pointClouds.add(PointCloudExamples.getRandomSpherePoints(maxDimension * n, maxDimension - 1));
+		pointClouds.add(PointCloudExamples.getRandomSpherePoints(40, 5));
+		
+		List<AbstractFilteredStream<Simplex>> streams = new ArrayList<AbstractFilteredStream<Simplex>>();
+		
+		for (double[][] pointCloud: pointClouds) {
+			streams.add(FilteredStreamInterface.createPlex4VietorisRipsStream(pointCloud, maxDimension + 1, maxFiltrationValue, numDivisions));
+		}
+		streams.add(FilteredStreamInterface.createPlex4VietorisRipsStream(PointCloudExamples.getRandomSpherePoints(40, 5), maxDimension + 1, 1.5, numDivisions));
+		
+		List<AbstractPersistenceAlgorithm<Simplex>> algorithms = new ArrayList<AbstractPersistenceAlgorithm<Simplex>>();
+		algorithms.add(Plex4.getDefaultSimplicialAlgorithm(maxDimension));
+		algorithms.add(Plex4.getImplicitVietorisRipsAlgorithm(maxDimension));
+
+		PersistenceAlgorithmTester.verifyEquality(algorithms, streams);
+	}
+	
+	/**
+	 * This function tests the heap column representation against the default array columns.
+	 */
+	@Test
+	public void testHeapColumnReduction() {
+		final int n = 120;
+		final int maxDimension = 4;
+		final double maxFiltrationValue = 0.5;
+		final int numDivisions = 10;
+		
+		List<double[][]> pointClouds = new ArrayList<double[][]>();
+		pointClouds.add(PointCloudExamples.getEquispacedCirclePoints(n));
+		pointClouds.add(PointCloudExamples.getRandomFigure8Points(n));
+		pointClouds.add(PointCloudExamples.getRandomSpherePoints(maxDimension * n, maxDimension - 1));
+		
+		List<AbstractFilteredStream<Simplex>> streams = new ArrayList<AbstractFilteredStream<Simplex>>();
+		streams.add(SimplexStreamExamples.getTorus());
+		streams.add(SimplexStreamExamples.getSimplicialSphere(maxDimension - 1));
+		
+		for (double[][] pointCloud: pointClouds) {
+			streams.add(FilteredStreamInterface.createPlex4VietorisRipsStream(pointCloud, maxDimension + 1, maxFiltrationValue, numDivisions));
+		}
+		
+		BooleanAbsoluteHomology<Simplex> booleanHeapAlgorithm = new BooleanAbsoluteHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension);
+		booleanHeapAlgorithm.setUseHeapColumns(true);
+		IntAbsoluteHomology<Simplex> intHeapAlgorithm = new IntAbsoluteHomology<Simplex>(ModularIntField.getInstance(3), SimplexComparator.getInstance(), 0, maxDimension);
+		intHeapAlgorithm.setUseHeapColumns(true);
+		
+		List<AbstractPersistenceAlgorithm<Simplex>> algorithms = new ArrayList<AbstractPersistenceAlgorithm<Simplex>>();
+		algorithms.add(new BooleanAbsoluteHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension));
+		algorithms.add(booleanHeapAlgorithm);
+		algorithms.add(new IntAbsoluteHomology<Simplex>(ModularIntField.getInstance(3), SimplexComparator.getInstance(), 0, maxDimension));
+		algorithms.add(intHeapAlgorithm);
+
+		PersistenceAlgorithmTester.verifyEquality(algorithms, streams);
+	}
+	
+	/**
+	 * This function tests the parallel chunk reduction against the sequential reduction.
+	 */
+	@Test
+	public void testParallelReduction() {
+		final int n = 120;
+		final int maxDimension = 3;
+		final double maxFiltrationValue = 0.5;
+		final int numDivisions = 10;
+		final int numThreads = 4;
+		
+		List<double[][]> pointClouds = new ArrayList<double[][]>();
+		pointClouds.add(PointCloudExamples.getEquispacedCirclePoints(n));
+		pointClouds.add(PointCloudExamples.getRandomFigure8Points(n));
+		pointClouds.add(PointCloudExamples.getRandomSpherePoints(maxDimension * n, maxDimension - 1));
+		
+		List<AbstractFilteredStream<Simplex>> streams = new ArrayList<AbstractFilteredStream<Simplex>>();
+		
+		for (double[][] pointCloud: pointClouds) {
+			streams.add(FilteredStreamInterface.createPlex4VietorisRipsStream(pointCloud, maxDimension + 1, maxFiltrationValue, numDivisions));
+		}
+		
+		BooleanAbsoluteHomology<Simplex> booleanParallelAlgorithm = new BooleanAbsoluteHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension);
+		booleanParallelAlgorithm.setNumThreads(numThreads);
+		IntAbsoluteHomology<Simplex> intParallelAlgorithm = new IntAbsoluteHomology<Simplex>(ModularIntField.getInstance(3), SimplexComparator.getInstance(), 0, maxDimension);
+		intParallelAlgorithm.setNumThreads(numThreads);
+		intParallelAlgorithm.setUseHeapColumns(true);
+		
+		List<AbstractPersistenceAlgorithm<Simplex>> algorithms = new ArrayList<AbstractPersistenceAlgorithm<Simplex>>();
+		algorithms.add(new BooleanAbsoluteHomology<Simplex>(SimplexComparator.getInstance(), 0, maxDimension));
+		algorithms.add(booleanParallelAlgorithm);
+		algorithms.add(intParallelAlgorithm);
+
+		PersistenceAlgorithmTester.verifyEquality(algorithms, streams);
+	}
+	
 	/**
 	 * This function tests the algorithms on Lazy-Witness complexes generated from point clouds.
 	 */
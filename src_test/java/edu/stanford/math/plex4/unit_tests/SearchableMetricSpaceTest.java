@@ -1,19 +1,46 @@
 package edu.stanford.math.plex4.unit_tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.stanford.math.plex4.api.Plex4;
 import edu.stanford.math.plex4.examples.PointCloudExamples;
+import edu.stanford.math.plex4.graph.random.ErdosRenyiGraph;
+import edu.stanford.math.plex4.graph.utility.GraphUtility;
+import edu.stanford.math.plex4.io.BinaryPointCloudReaderWriter;
+import edu.stanford.math.plex4.io.FileIOUtility;
 import edu.stanford.math.plex4.kd.KDEuclideanMetricSpace;
+import edu.stanford.math.plex4.kd.KDTree;
 import edu.stanford.math.plex4.metric.SearchableMetricSpaceTester;
 import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
+import edu.stanford.math.plex4.metric.impl.ExplicitMetricSpace;
+import edu.stanford.math.plex4.metric.impl.FlatEuclideanMetricSpace;
+import edu.stanford.math.plex4.metric.impl.MappedEuclideanMetricSpace;
+import edu.stanford.math.plex4.metric.impl.ObjectSearchableFiniteMetricSpace;
+import edu.stanford.math.plex4.metric.impl.VantagePointTreeMetricSpace;
+import edu.stanford.math.plex4.metric.interfaces.AbstractLowerNeighborhoodSearchable;
+import edu.stanford.math.plex4.metric.interfaces.AbstractObjectMetric;
 import edu.stanford.math.plex4.metric.interfaces.AbstractSearchableMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.ExplicitLandmarkSelector;
+import edu.stanford.math.plex4.metric.landmark.MaxMinLandmarkSelector;
 import edu.stanford.math.plex4.metric.utility.MetricUtility;
 import edu.stanford.math.plex4.test_utility.Timing;
+import gnu.trove.TDoubleArrayList;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
 
 /**
  * This class contains tests for verifying the functionality of the
@@ -76,4 +103,378 @@ public class SearchableMetricSpaceTest {
 		}
 		Timing.stopAndDisplay("KD");
 	}
+	
+	/**
+	 * This test verifies that the KD-tree queries return exactly the same results as
+	 * the linear scans of EuclideanMetricSpace. The grid points contain duplicates and
+	 * many points at equal distances, so that ties and boundary cases are exercised.
+	 */
+	@Test
+	public void testKDMetricSpaceQueries() {
+		List<double[][]> pointClouds = new ArrayList<double[][]>();
+		
+		double[][] grid = new double[300][];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new double[] {(i % 13) % 10, (i / 13) % 7, i % 2};
+		}
+		pointClouds.add(grid);
+		pointClouds.add(PointCloudExamples.getGaussianPoints(500, 4));
+		
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace linearSpace = new EuclideanMetricSpace(pointCloud);
+			KDEuclideanMetricSpace kdSpace = new KDEuclideanMetricSpace(pointCloud);
+			assertTrue(Plex4.createEuclideanMetricSpace(pointCloud) instanceof KDEuclideanMetricSpace);
+			
+			double[] radii = new double[] {0, 0.5, 1, Math.sqrt(2), 2, 3};
+			for (double epsilon: radii) {
+				TIntHashSet[] closedNeighborhoods = kdSpace.getClosedNeighborhoods(pointCloud, epsilon, 3);
+				for (int i = 0; i < pointCloud.length; i++) {
+					assertEquals(linearSpace.getOpenNeighborhood(pointCloud[i], epsilon), kdSpace.getOpenNeighborhood(pointCloud[i], epsilon));
+					assertEquals(linearSpace.getClosedNeighborhood(pointCloud[i], epsilon), kdSpace.getClosedNeighborhood(pointCloud[i], epsilon));
+					assertEquals(linearSpace.getClosedNeighborhood(pointCloud[i], epsilon), closedNeighborhoods[i]);
+				}
+			}
+			
+			for (int k = 1; k <= 6; k++) {
+				int[][] orderedNeighbors = kdSpace.getOrderedKNearestNeighbors(pointCloud, k, 3);
+				for (int i = 0; i < pointCloud.length; i++) {
+					TIntHashSet expected = linearSpace.getKNearestNeighbors(pointCloud[i], k);
+					assertEquals(expected, kdSpace.getKNearestNeighbors(pointCloud[i], k));
+					assertEquals(expected, new TIntHashSet(orderedNeighbors[i]));
+					for (int j = 1; j < orderedNeighbors[i].length; j++) {
+						assertTrue(kdSpace.distance(i, orderedNeighbors[i][j - 1]) <= kdSpace.distance(i, orderedNeighbors[i][j]));
+					}
+				}
+			}
+			
+			for (double[] queryPoint: PointCloudExamples.getGaussianPoints(200, pointCloud[0].length)) {
+				assertEquals(linearSpace.getNearestPointIndex(queryPoint), kdSpace.getNearestPointIndex(queryPoint));
+			}
+		}
+	}
+	
+	/**
+	 * This test verifies that the KD-tree returns the same neighborhoods for different
+	 * bucket sizes and numbers of construction threads, and that the range search into
+	 * a buffer reports the number of points that do not fit.
+	 */
+	@Test
+	public void testKDTreeConstruction() {
+		double[][] pointCloud = PointCloudExamples.getGaussianPoints(2000, 3);
+		EuclideanMetricSpace linearSpace = new EuclideanMetricSpace(pointCloud);
+		double epsilon = 0.5;
+		
+		int[] bucketSizes = new int[] {1, 3, KDTree.DEFAULT_BUCKET_SIZE, 64};
+		for (int bucketSize: bucketSizes) {
+			KDTree tree = new KDTree(pointCloud, bucketSize, 4);
+			int[] buffer = new int[10];
+			for (int i = 0; i < pointCloud.length; i += 7) {
+				TIntHashSet expected = linearSpace.getClosedNeighborhood(pointCloud[i], epsilon);
+				assertEquals(expected, tree.epsilonNeighborhoodSearch(pointCloud[i], epsilon, false));
+				assertEquals(linearSpace.getNearestPointIndex(pointCloud[i]), tree.nearestNeighborSearch(pointCloud[i]));
+				
+				int count = tree.epsilonNeighborhoodSearch(pointCloud[i], epsilon, false, buffer);
+				assertEquals(expected.size(), count);
+				if (count > buffer.length) {
+					buffer = new int[count];
+					assertEquals(count, tree.epsilonNeighborhoodSearch(pointCloud[i], epsilon, false, buffer));
+				}
+				for (int j = 0; j < count; j++) {
+					assertTrue(expected.contains(buffer[j]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This test verifies that the vantage point tree queries return the same results as
+	 * the linear scans for a shortest path metric on a random graph, which has many ties
+	 * and may have infinite distances, and for the L1 metric on a grid with duplicate points.
+	 */
+	@Test
+	public void testVantagePointTreeQueries() {
+		ExplicitMetricSpace graphMetric = new ExplicitMetricSpace(GraphUtility.computeShortestPaths(new ErdosRenyiGraph(300, 0.015).generate()));
+		verifyVantagePointTree(graphMetric.getPoints(), graphMetric, new double[] {0, 1, 2, 3, 5});
+		
+		double[][] grid = new double[400][];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new double[] {(i % 17) % 12, (i / 17) % 9, i % 3};
+		}
+		AbstractObjectMetric<double[]> l1Metric = new AbstractObjectMetric<double[]>() {
+			public double distance(double[] a, double[] b) {
+				double distance = 0;
+				for (int j = 0; j < a.length; j++) {
+					distance += Math.abs(a[j] - b[j]);
+				}
+				return distance;
+			}
+		};
+		verifyVantagePointTree(grid, l1Metric, new double[] {0, 1, 2.5, 4, 7});
+		
+		// the k-th nearest neighbor distances are the same as by sorting all distances, also
+		// for duplicated points, which are stored both as copies and as the same array
+		double[][] points = PointCloudExamples.getGaussianPoints(300, 3);
+		points[10] = points[3];
+		points[11] = points[3].clone();
+		for (int i = 12; i < 16; i++) {
+			points[i] = points[5].clone();
+		}
+		EuclideanMetricSpace euclideanSpace = new EuclideanMetricSpace(points);
+		List<AbstractSearchableMetricSpace<double[]>> spaces = new ArrayList<AbstractSearchableMetricSpace<double[]>>();
+		spaces.add(euclideanSpace);
+		spaces.add(new VantagePointTreeMetricSpace<double[]>(euclideanSpace));
+		spaces.add(new KDEuclideanMetricSpace(points));
+		spaces.add(new FlatEuclideanMetricSpace(points));
+		for (int k = 0; k <= 6; k++) {
+			for (AbstractSearchableMetricSpace<double[]> space: spaces) {
+				double[] actual = MetricUtility.getKthNearestNeighborDistances(space, k);
+				for (int i = 0; i < actual.length; i++) {
+					double[] distances = MetricUtility.getAllDistances(euclideanSpace, i);
+					Arrays.sort(distances);
+					assertEquals(distances[k], actual[i], 0);
+				}
+			}
+		}
+	}
+	
+	private static <T> void verifyVantagePointTree(T[] points, final AbstractObjectMetric<T> metric, double[] radii) {
+		ObjectSearchableFiniteMetricSpace<T> linearSpace = new ObjectSearchableFiniteMetricSpace<T>(points) {
+			@Override
+			public double distance(T a, T b) {
+				return metric.distance(a, b);
+			}
+		};
+		for (int bucketSize = 1; bucketSize <= 16; bucketSize *= 4) {
+			VantagePointTreeMetricSpace<T> treeSpace = new VantagePointTreeMetricSpace<T>(points, metric, bucketSize);
+			for (int i = 0; i < points.length; i++) {
+				for (double epsilon: radii) {
+					assertEquals(linearSpace.getOpenNeighborhood(points[i], epsilon), treeSpace.getOpenNeighborhood(points[i], epsilon));
+					assertEquals(linearSpace.getClosedNeighborhood(points[i], epsilon), treeSpace.getClosedNeighborhood(points[i], epsilon));
+				}
+				for (int k = 1; k <= 5; k++) {
+					assertEquals(linearSpace.getKNearestNeighbors(points[i], k), treeSpace.getKNearestNeighbors(points[i], k));
+				}
+				assertEquals(linearSpace.getNearestPointIndex(points[i]), treeSpace.getNearestPointIndex(points[i]));
+			}
+		}
+	}
+	
+	/**
+	 * This test verifies that the flat Euclidean metric space computes the same distances and
+	 * returns the same query results as EuclideanMetricSpace, and that its squared distance
+	 * thresholds agree with comparisons of the distances.
+	 */
+	@Test
+	public void testFlatEuclideanMetricSpace() {
+		double[][] grid = new double[300][];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new double[] {(i % 13) % 10, (i / 13) % 7, i % 2, 0.1 * (i % 5), 0.3};
+		}
+		List<double[][]> pointClouds = new ArrayList<double[][]>();
+		pointClouds.add(grid);
+		pointClouds.add(PointCloudExamples.getGaussianPoints(301, 11));
+		
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace linearSpace = new EuclideanMetricSpace(pointCloud);
+			FlatEuclideanMetricSpace flatSpace = new FlatEuclideanMetricSpace(pointCloud);
+			
+			double[] squaredDistances = new double[pointCloud.length];
+			for (int i = 0; i < pointCloud.length; i++) {
+				flatSpace.computeSquaredDistances(i, 0, pointCloud.length, squaredDistances);
+				for (int j = 0; j < pointCloud.length; j++) {
+					assertEquals(linearSpace.distance(i, j), flatSpace.distance(i, j), 0);
+					assertEquals(linearSpace.distance(i, j), Math.sqrt(squaredDistances[j]), 0);
+				}
+			}
+			
+			double[] radii = new double[] {0, 0.1, 1, Math.sqrt(2), Math.sqrt(1.1), 2, 4};
+			for (int i = 0; i < pointCloud.length; i++) {
+				for (double epsilon: radii) {
+					assertEquals(linearSpace.getOpenNeighborhood(pointCloud[i], epsilon), flatSpace.getOpenNeighborhood(pointCloud[i], epsilon));
+					assertEquals(linearSpace.getClosedNeighborhood(pointCloud[i], epsilon), flatSpace.getClosedNeighborhood(pointCloud[i], epsilon));
+					assertEquals(linearSpace.getClosedNeighborhood(pointCloud[i], epsilon), flatSpace.getClosedNeighborhood(i, epsilon));
+				}
+				for (int k = 1; k <= 5; k++) {
+					assertEquals(linearSpace.getKNearestNeighbors(pointCloud[i], k), new TIntHashSet(flatSpace.getKNearestNeighbors(i, k)));
+				}
+				assertEquals(linearSpace.getNearestPointIndex(pointCloud[i]), flatSpace.getNearestPointIndex(pointCloud[i]));
+			}
+		}
+		
+		Random random = new Random(0);
+		for (int trial = 0; trial < 10000; trial++) {
+			double epsilon = random.nextDouble() * Math.pow(10, random.nextInt(9) - 4);
+			double squaredDistance = epsilon * epsilon + (random.nextInt(7) - 3) * Math.ulp(epsilon * epsilon);
+			for (boolean openNeighborhood: new boolean[] {false, true}) {
+				double threshold = FlatEuclideanMetricSpace.getSquaredThreshold(epsilon, openNeighborhood);
+				boolean expected = (openNeighborhood ? Math.sqrt(squaredDistance) < epsilon : Math.sqrt(squaredDistance) <= epsilon);
+				assertEquals(expected, squaredDistance <= threshold);
+			}
+		}
+	}
+
+	/**
+	 * This test verifies that the lower neighborhood queries of the Euclidean spaces return the
+	 * points with smaller indices in the closed neighborhood, together with their distances.
+	 */
+	@Test
+	public void testClosedLowerNeighborhoods() {
+		double[][] pointCloud = PointCloudExamples.getGaussianPoints(500, 3);
+		pointCloud[7] = pointCloud[3].clone();
+		EuclideanMetricSpace linearSpace = new EuclideanMetricSpace(pointCloud);
+		List<AbstractLowerNeighborhoodSearchable> spaces = new ArrayList<AbstractLowerNeighborhoodSearchable>();
+		spaces.add(linearSpace);
+		spaces.add(new KDEuclideanMetricSpace(pointCloud));
+		spaces.add(new FlatEuclideanMetricSpace(pointCloud));
+		
+		for (double epsilon: new double[] {0, 0.5, 1, 3}) {
+			for (int i = 0; i < pointCloud.length; i++) {
+				TIntHashSet expected = new TIntHashSet();
+				for (int j = 0; j < i; j++) {
+					if (linearSpace.distance(i, j) <= epsilon) {
+						expected.add(j);
+					}
+				}
+				for (AbstractLowerNeighborhoodSearchable space: spaces) {
+					TIntArrayList indices = new TIntArrayList();
+					TDoubleArrayList distances = new TDoubleArrayList();
+					space.getClosedLowerNeighborhood(i, epsilon, indices, distances);
+					assertEquals(expected.size(), indices.size());
+					assertEquals(expected, new TIntHashSet(indices.toNativeArray()));
+					for (int k = 0; k < indices.size(); k++) {
+						assertEquals(linearSpace.distance(i, indices.get(k)), distances.get(k), 0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMappedEuclideanMetricSpace() throws IOException {
+		double[][] pointCloud = PointCloudExamples.getGaussianPoints(203, 4);
+		for (int i = 0; i < pointCloud.length; i += 10) {
+			pointCloud[i] = new double[] {i % 3, 0.5, 0, -1};
+		}
+		
+		File csvFile = File.createTempFile("points", ".csv");
+		File binaryFile = File.createTempFile("points", ".pts");
+		csvFile.deleteOnExit();
+		binaryFile.deleteOnExit();
+		PrintWriter writer = new PrintWriter(new FileWriter(csvFile));
+		for (double[] point: pointCloud) {
+			for (int j = 0; j < point.length; j++) {
+				writer.print((j > 0 ? "," : "") + point[j]);
+			}
+			writer.println();
+		}
+		writer.close();
+		
+		List<double[]> csvPoints = FileIOUtility.readNumericCSVFile(csvFile.getPath(), ",");
+		assertEquals(pointCloud.length, BinaryPointCloudReaderWriter.convertCSVFile(csvFile.getPath(), ",", binaryFile.getPath(), false));
+		
+		// use small segments so that queries span several mappings
+		EuclideanMetricSpace linearSpace = new EuclideanMetricSpace(pointCloud);
+		FlatEuclideanMetricSpace flatSpace = new FlatEuclideanMetricSpace(pointCloud);
+		MappedEuclideanMetricSpace mappedSpace = new MappedEuclideanMetricSpace(binaryFile.getPath(), 17);
+		assertEquals(pointCloud.length, mappedSpace.size());
+		assertEquals(4, mappedSpace.getDimension());
+		for (int i = 0; i < pointCloud.length; i++) {
+			assertTrue(Arrays.equals(pointCloud[i], csvPoints.get(i)));
+			assertTrue(Arrays.equals(pointCloud[i], mappedSpace.getPoint(i)));
+			for (int j = 0; j < pointCloud.length; j++) {
+				assertEquals(linearSpace.distance(i, j), mappedSpace.distance(i, j), 0);
+			}
+			for (double epsilon: new double[] {0, 0.5, 1, 2}) {
+				assertEquals(linearSpace.getOpenNeighborhood(pointCloud[i], epsilon), mappedSpace.getOpenNeighborhood(pointCloud[i], epsilon));
+				assertEquals(linearSpace.getClosedNeighborhood(pointCloud[i], epsilon), mappedSpace.getClosedNeighborhood(pointCloud[i], epsilon));
+			}
+			for (int k = 1; k <= 5; k++) {
+				assertEquals(flatSpace.getKNearestNeighbors(pointCloud[i], k), mappedSpace.getKNearestNeighbors(pointCloud[i], k));
+				assertEquals(linearSpace.getKNearestNeighbors(pointCloud[i], k), new TIntHashSet(mappedSpace.getKNearestNeighbors(i, k)));
+				assertTrue(Arrays.equals(flatSpace.getKNearestNeighbors(i, k), mappedSpace.getKNearestNeighbors(i, k)));
+			}
+			for (double epsilon: new double[] {0, 0.5, 1, 2}) {
+				TIntArrayList expectedIndices = new TIntArrayList();
+				TDoubleArrayList expectedDistances = new TDoubleArrayList();
+				flatSpace.getClosedLowerNeighborhood(i, epsilon, expectedIndices, expectedDistances);
+				TIntArrayList indices = new TIntArrayList();
+				TDoubleArrayList distances = new TDoubleArrayList();
+				mappedSpace.getClosedLowerNeighborhood(i, epsilon, indices, distances);
+				assertTrue(Arrays.equals(expectedIndices.toNativeArray(), indices.toNativeArray()));
+				assertTrue(Arrays.equals(expectedDistances.toNativeArray(), distances.toNativeArray()));
+			}
+			assertEquals(linearSpace.getNearestPointIndex(pointCloud[i]), mappedSpace.getNearestPointIndex(pointCloud[i]));
+		}
+		
+		// single precision files hold the coordinates rounded to floats
+		BinaryPointCloudReaderWriter.getInstance().writeToFile(pointCloud, binaryFile.getPath(), true);
+		double[][] roundedPoints = BinaryPointCloudReaderWriter.getInstance().importFromFile(binaryFile.getPath());
+		EuclideanMetricSpace roundedSpace = new EuclideanMetricSpace(roundedPoints);
+		FlatEuclideanMetricSpace flatRoundedSpace = new FlatEuclideanMetricSpace(roundedPoints);
+		mappedSpace = new MappedEuclideanMetricSpace(binaryFile.getPath());
+		for (int i = 0; i < pointCloud.length; i++) {
+			for (int j = 0; j < pointCloud[i].length; j++) {
+				assertEquals((float) pointCloud[i][j], roundedPoints[i][j], 0);
+			}
+			for (int j = 0; j < pointCloud.length; j++) {
+				assertEquals(roundedSpace.distance(i, j), mappedSpace.distance(i, j), 0);
+			}
+			assertEquals(flatRoundedSpace.getKNearestNeighbors(roundedPoints[i], 3), mappedSpace.getKNearestNeighbors(roundedPoints[i], 3));
+			assertEquals(roundedSpace.getKNearestNeighbors(roundedPoints[i], 3), new TIntHashSet(mappedSpace.getKNearestNeighbors(i, 3)));
+		}
+		
+		BinaryPointCloudReaderWriter.getInstance().writeToFile(pointCloud, binaryFile.getPath());
+		double[][] importedPoints = BinaryPointCloudReaderWriter.getInstance().importFromFile(binaryFile.getPath());
+		assertTrue(Arrays.deepEquals(pointCloud, importedPoints));
+	}
+
+	@Test
+	public void testMaxMinLandmarkSelector() {
+		double[][] pointCloud = PointCloudExamples.getGaussianPoints(10000, 3);
+		for (int i = 0; i < pointCloud.length; i += 7) {
+			pointCloud[i] = new double[] {i % 2, 0, 0};
+		}
+		EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+		int landmarkSetSize = 30;
+		
+		// the straightforward O(n * L^2) selection
+		int[] expectedLandmarks = new int[landmarkSetSize];
+		TIntHashSet landmarkSet = new TIntHashSet();
+		expectedLandmarks[0] = 5;
+		landmarkSet.add(5);
+		for (int i = 1; i < landmarkSetSize; i++) {
+			double maxDistance = Double.NEGATIVE_INFINITY;
+			for (int z = 0; z < pointCloud.length; z++) {
+				if (landmarkSet.contains(z)) {
+					continue;
+				}
+				double minDistance = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < i; j++) {
+					minDistance = Math.min(minDistance, metricSpace.distance(z, expectedLandmarks[j]));
+				}
+				if (minDistance > maxDistance) {
+					maxDistance = minDistance;
+					expectedLandmarks[i] = z;
+				}
+			}
+			landmarkSet.add(expectedLandmarks[i]);
+		}
+		
+		for (int numThreads = 1; numThreads <= 4; numThreads++) {
+			MaxMinLandmarkSelector<double[]> selector = new MaxMinLandmarkSelector<double[]>(metricSpace, landmarkSetSize, 5, numThreads);
+			assertTrue(Arrays.equals(expectedLandmarks, selector.getLandmarkPoints()));
+			for (int i = 0; i < landmarkSetSize; i += 7) {
+				ExplicitLandmarkSelector<double[]> prefix = new ExplicitLandmarkSelector<double[]>(metricSpace, Arrays.copyOf(expectedLandmarks, i + 1));
+				assertEquals(prefix.getMaxDistanceFromPointsToLandmarks(), selector.getCoveringRadius(i), 0);
+			}
+			ExplicitLandmarkSelector<double[]> landmarks = new ExplicitLandmarkSelector<double[]>(metricSpace, expectedLandmarks);
+			assertEquals(landmarks.getMaxDistanceFromPointsToLandmarks(), selector.getMaxDistanceFromPointsToLandmarks(), 0);
+		}
+		
+		EuclideanMetricSpace smallSpace = new EuclideanMetricSpace(new double[][] {{0}, {1}, {1}, {3}});
+		MaxMinLandmarkSelector<double[]> selector = new MaxMinLandmarkSelector<double[]>(smallSpace, 4, 0);
+		assertTrue(Arrays.equals(new int[] {0, 3, 1, 2}, selector.getLandmarkPoints()));
+		assertEquals(0, selector.getMaxDistanceFromPointsToLandmarks(), 0);
+		assertEquals(1, selector.getCoveringRadius(1), 0);
+	}
 }
@@ -1,17 +1,57 @@
 package edu.stanford.math.plex4.unit_tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.stanford.math.plex4.api.FilteredStreamInterface;
+import edu.stanford.math.plex4.api.Plex4;
+import edu.stanford.math.plex4.autogen.homology.BooleanClassicalHomology;
+import edu.stanford.math.plex4.bottleneck.BottleneckDistance;
 import edu.stanford.math.plex4.examples.PointCloudExamples;
 import edu.stanford.math.plex4.homology.StreamTester;
+import edu.stanford.math.plex4.homology.barcodes.BarcodeCollection;
+import edu.stanford.math.plex4.homology.barcodes.Interval;
+import edu.stanford.math.plex4.homology.chain_basis.PackedSimplex;
+import edu.stanford.math.plex4.homology.chain_basis.PackedSimplexComparator;
+import edu.stanford.math.plex4.homology.chain_basis.Simplex;
+import edu.stanford.math.plex4.homology.chain_basis.SimplexComparator;
+import edu.stanford.math.plex4.homology.interfaces.AbstractPersistenceAlgorithm;
+import edu.stanford.math.plex4.io.BinarySimplexStreamReaderWriter;
 import edu.stanford.math.plex4.metric.impl.EuclideanMetricSpace;
+import edu.stanford.math.plex4.metric.landmark.LandmarkDistanceCache;
 import edu.stanford.math.plex4.metric.landmark.LandmarkSelector;
 import edu.stanford.math.plex4.metric.landmark.RandomLandmarkSelector;
+import edu.stanford.math.plex4.streams.impl.FlagComplexStream;
+import edu.stanford.math.plex4.streams.impl.LazyWitnessStream;
+import edu.stanford.math.plex4.streams.impl.MappedSimplexStream;
+import edu.stanford.math.plex4.streams.impl.PackedSimplexStream;
+import edu.stanford.math.plex4.streams.impl.SparseVietorisRipsStream;
+import edu.stanford.math.plex4.streams.impl.VietorisRipsStream;
+import edu.stanford.math.plex4.streams.impl.WitnessStream;
+import edu.stanford.math.plex4.streams.storage_structures.MappedSimplexStorageStructure;
+import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructure;
+import edu.stanford.math.plex4.streams.storage_structures.StreamStorageStructureFactory;
+import edu.stanford.math.plex4.streams.utility.StreamUtility;
 import edu.stanford.math.plex4.utility.RandomUtility;
 
 /**
@@ -49,6 +89,17 @@ public class StreamsTest {
 		}
 	}
 	
+	@Test
+	public void testParallelVietorisRips() {
+		final int numThreads = 3;
+		for (double[][] pointCloud: pointClouds) {
+			VietorisRipsStream<double[]> stream = new VietorisRipsStream<double[]>(new EuclideanMetricSpace(pointCloud), maxFiltrationValue, maxDimension, numDivisions);
+			stream.setNumThreads(numThreads);
+			stream.finalizeStream();
+			StreamTester.verifyEqual(FilteredStreamInterface.createPlex4VietorisRipsStream(pointCloud, maxDimension, maxFiltrationValue, numDivisions), stream);
+		}
+	}
+	
 	@Test
 	public void testLazyWitness() {
 		for (double[][] pointCloud: pointClouds) {
@@ -57,6 +108,18 @@ public class StreamsTest {
 		}
 	}
 	
+	@Test
+	public void testParallelLazyWitness() {
+		final int numThreads = 3;
+		for (double[][] pointCloud: pointClouds) {
+			LandmarkSelector<double[]> landmarkSet = new RandomLandmarkSelector<double[]>(new EuclideanMetricSpace(pointCloud), l);
+			LazyWitnessStream<double[]> stream = new LazyWitnessStream<double[]>(landmarkSet.getUnderlyingMetricSpace(), landmarkSet, maxDimension, maxFiltrationValue, numDivisions);
+			stream.setNumThreads(numThreads);
+			stream.finalizeStream();
+			StreamTester.verifyEqual(FilteredStreamInterface.createPlex4LazyWitnessStream(landmarkSet, maxDimension, maxFiltrationValue, numDivisions), stream);
+		}
+	}
+	
 	@Test
 	public void testWitness() {
 		for (double[][] pointCloud: pointClouds) {
@@ -64,4 +127,424 @@ public class StreamsTest {
 			StreamTester.compareWitnessStreams(landmarkSet, maxDimension, maxFiltrationValue, numDivisions);
 		}
 	}
+	
+	@Test
+	public void testSharedDistanceCache() {
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+			LandmarkSelector<double[]> landmarkSet = new RandomLandmarkSelector<double[]>(metricSpace, l);
+			LandmarkDistanceCache<double[]> storedCache = new LandmarkDistanceCache<double[]>(metricSpace, landmarkSet);
+			LandmarkDistanceCache<double[]> streamingCache = new LandmarkDistanceCache<double[]>(metricSpace, landmarkSet, false, 0);
+			assertFalse(streamingCache.isStored());
+			List<LandmarkDistanceCache<double[]>> caches = new ArrayList<LandmarkDistanceCache<double[]>>();
+			caches.add(storedCache);
+			caches.add(streamingCache);
+			
+			LandmarkDistanceCache<double[]> floatCache = new LandmarkDistanceCache<double[]>(metricSpace, landmarkSet, true);
+			for (int i = 0; i < l; i++) {
+				for (int j = 0; j < n; j++) {
+					assertEquals(metricSpace.distance(landmarkSet.getLandmarkIndex(i), j), storedCache.getDistance(i, j), 0);
+					assertEquals((float) metricSpace.distance(landmarkSet.getLandmarkIndex(i), j), floatCache.getDistance(i, j), 0);
+				}
+			}
+			
+			for (int nu = 0; nu <= 2; nu++) {
+				LazyWitnessStream<double[]> expected = new LazyWitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, nu, numDivisions);
+				expected.finalizeStream();
+				for (LandmarkDistanceCache<double[]> cache: caches) {
+					LazyWitnessStream<double[]> stream = new LazyWitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, nu, numDivisions);
+					stream.setDistanceCache(cache);
+					stream.finalizeStream();
+					StreamTester.verifyEqual(expected, stream);
+				}
+			}
+			
+			WitnessStream<double[]> expected = new WitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, numDivisions);
+			expected.finalizeStream();
+			for (LandmarkDistanceCache<double[]> cache: caches) {
+				WitnessStream<double[]> stream = new WitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, numDivisions);
+				stream.setDistanceCache(cache);
+				stream.finalizeStream();
+				StreamTester.verifyEqual(expected, stream);
+			}
+		}
+	}
+	
+	@Test
+	public void testStreamingLazyWitness() {
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+			LandmarkSelector<double[]> landmarkSet = new RandomLandmarkSelector<double[]>(metricSpace, l);
+			double[][] landmarkPoints = new double[l][];
+			for (int i = 0; i < l; i++) {
+				landmarkPoints[i] = landmarkSet.getPoint(i);
+			}
+			
+			for (int nu = 0; nu <= 2; nu++) {
+				for (boolean plex3Compatible: new boolean[] {true, false}) {
+					LazyWitnessStream<double[]> expected = new LazyWitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, nu, numDivisions);
+					expected.setPlex3Compatbility(plex3Compatible);
+					expected.finalizeStream();
+					LazyWitnessStream<double[]> stream = new LazyWitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, nu, numDivisions);
+					stream.setPlex3Compatbility(plex3Compatible);
+					stream.setLandmarkSpace(new EuclideanMetricSpace(landmarkPoints));
+					stream.finalizeStream();
+					StreamTester.verifyEqual(expected, stream);
+					for (int i = 0; i < n; i++) {
+						assertEquals(expected.getAssociatedSimplices(i), stream.getAssociatedSimplices(i));
+					}
+				}
+			}
+		}
+		
+		double[][] pointCloud = PointCloudExamples.getGaussianPoints(2000, 3);
+		LandmarkSelector<double[]> landmarkSet = Plex4.createMaxMinSelector(pointCloud, 100, 0);
+		StreamTester.verifyEqual(FilteredStreamInterface.createPlex4LazyWitnessStream(landmarkSet, 2, 0.2, numDivisions), 
+				Plex4.createStreamingLazyWitnessStream(landmarkSet, 2, 0.2, LazyWitnessStream.getDefaultNuValue(), numDivisions));
+	}
+	
+	@Test
+	public void testSparseVietorisRips() {
+		RandomUtility.initializeWithSeed(0);
+		double[][] pointCloud = PointCloudExamples.getRandomFigure8Points(150);
+		EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+		int maxDimension = 2;
+		double maxFiltrationValue = 1.0;
+		int numDivisions = 10000;
+		
+		VietorisRipsStream<double[]> ripsStream = new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions);
+		ripsStream.finalizeStream();
+		AbstractPersistenceAlgorithm<Simplex> algorithm = Plex4.getDefaultSimplicialAlgorithm(maxDimension);
+		BarcodeCollection<Double> ripsBarcodes = algorithm.computeIntervals(ripsStream);
+		
+		for (double epsilon: new double[] {0.1, 0.3}) {
+			SparseVietorisRipsStream<double[]> stream = new SparseVietorisRipsStream<double[]>(metricSpace, epsilon, maxFiltrationValue, maxDimension, numDivisions);
+			stream.finalizeStream();
+			assertTrue(stream.getSize() < ripsStream.getSize());
+			
+			// each simplex enters after its diameter, and before any of its vertices is removed
+			for (Simplex simplex: stream) {
+				assertTrue(ripsStream.getFiltrationIndex(simplex) <= stream.getFiltrationIndex(simplex));
+				for (int vertex: simplex.getVertices()) {
+					assertTrue(stream.getFiltrationValue(simplex) <= stream.getRemovalValue(vertex));
+				}
+			}
+			
+			// the barcodes are (1 - 2 epsilon)^-1 interleaved with the ones of the Vietoris-Rips stream
+			BarcodeCollection<Double> barcodes = algorithm.computeIntervals(stream);
+			for (int dimension = 0; dimension < maxDimension; dimension++) {
+				double distance = BottleneckDistance.computeBottleneckDistance(getLogScaleIntervals(ripsBarcodes.getIntervalsAtDimension(dimension), maxFiltrationValue), 
+						getLogScaleIntervals(barcodes.getIntervalsAtDimension(dimension), maxFiltrationValue));
+				assertTrue(distance <= -Math.log(1 - 2 * epsilon));
+			}
+		}
+	}
+	
+	@Test
+	public void testEdgeCollapse() {
+		AbstractPersistenceAlgorithm<Simplex> algorithm = Plex4.getDefaultSimplicialAlgorithm(maxDimension);
+		int numRemovedEdges = 0;
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+			LandmarkSelector<double[]> landmarkSet = new RandomLandmarkSelector<double[]>(metricSpace, l);
+			List<FlagComplexStream> expectedStreams = new ArrayList<FlagComplexStream>();
+			List<FlagComplexStream> streams = new ArrayList<FlagComplexStream>();
+			for (boolean collapseEdges: new boolean[] {false, true}) {
+				List<FlagComplexStream> list = (collapseEdges ? streams : expectedStreams);
+				list.add(new VietorisRipsStream<double[]>(metricSpace, 2 * maxFiltrationValue, maxDimension, numDivisions));
+				list.add(new LazyWitnessStream<double[]>(metricSpace, landmarkSet, maxDimension, maxFiltrationValue, numDivisions));
+				for (FlagComplexStream stream: list) {
+					stream.setEdgeCollapse(collapseEdges);
+					stream.finalizeStream();
+				}
+			}
+			
+			for (int i = 0; i < streams.size(); i++) {
+				FlagComplexStream expected = expectedStreams.get(i);
+				FlagComplexStream stream = streams.get(i);
+				assertEquals(expected.getNeighborhoodGraph().getNumEdges() - stream.getNumRemovedEdges(), stream.getNeighborhoodGraph().getNumEdges());
+				assertTrue(stream.getSize() <= expected.getSize());
+				numRemovedEdges += stream.getNumRemovedEdges();
+				
+				// the barcodes agree below the maximum dimension
+				BarcodeCollection<Integer> expectedBarcodes = algorithm.computeIndexIntervals(expected);
+				BarcodeCollection<Integer> barcodes = algorithm.computeIndexIntervals(stream);
+				for (int dimension = 0; dimension < maxDimension; dimension++) {
+					List<Interval<Integer>> expectedIntervals = new ArrayList<Interval<Integer>>(expectedBarcodes.getIntervalsAtDimension(dimension));
+					List<Interval<Integer>> intervals = new ArrayList<Interval<Integer>>(barcodes.getIntervalsAtDimension(dimension));
+					Collections.sort(expectedIntervals);
+					Collections.sort(intervals);
+					assertEquals(expectedIntervals, intervals);
+				}
+			}
+		}
+		assertTrue(numRemovedEdges > 0);
+	}
+	
+	@Test
+	public void testSimplexStorageStructure() {
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+			VietorisRipsStream<double[]> expected = new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions);
+			expected.finalizeStream();
+			VietorisRipsStream<double[]> stream = new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions, 
+					StreamStorageStructureFactory.getSimplexStorageStructure());
+			stream.finalizeStream();
+			StreamTester.verifyEqual(expected, stream);
+			
+			// the simplices are produced in the same order
+			List<Simplex> expectedSimplices = new ArrayList<Simplex>();
+			for (Simplex simplex: expected) {
+				expectedSimplices.add(simplex);
+			}
+			List<Simplex> simplices = new ArrayList<Simplex>();
+			for (Simplex simplex: stream) {
+				simplices.add(simplex);
+			}
+			assertEquals(expectedSimplices, simplices);
+			assertEquals(expected.getMaximumFiltrationIndex(), stream.getMaximumFiltrationIndex());
+			assertEquals(expected.getMinimumFiltrationIndex(), stream.getMinimumFiltrationIndex());
+		}
+		
+		StreamStorageStructure<Simplex> storageStructure = StreamStorageStructureFactory.getSimplexStorageStructure();
+		storageStructure.addElement(Simplex.makeSimplex(0, 1), 2);
+		storageStructure.addElement(Simplex.makeSimplex(1), 1);
+		storageStructure.addElement(Simplex.makeSimplex(0), 1);
+		storageStructure.addElement(Simplex.makeSimplex(2), 0);
+		storageStructure.addElement(Simplex.makeSimplex(1, 0), 1);
+		storageStructure.removeElement(Simplex.makeSimplex(2));
+		assertEquals(3, storageStructure.getSize());
+		assertFalse(storageStructure.containsElement(Simplex.makeSimplex(2)));
+		assertEquals(1, storageStructure.getFiltrationIndex(Simplex.makeSimplex(0, 1)));
+		storageStructure.finalizeStructure();
+		
+		Iterator<Simplex> iterator = storageStructure.iterator();
+		assertEquals(Simplex.makeSimplex(0), iterator.next());
+		assertEquals(Simplex.makeSimplex(1), iterator.next());
+		assertEquals(Simplex.makeSimplex(0, 1), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+	
+	@Test
+	public void testPackedSimplexStream() {
+		int maxDimension = 3;
+		for (double[][] pointCloud: pointClouds) {
+			VietorisRipsStream<double[]> stream = Plex4.createVietorisRipsStream(pointCloud, maxDimension, maxFiltrationValue, numDivisions);
+			PackedSimplexStream packedStream = new PackedSimplexStream(stream);
+			packedStream.finalizeStream();
+			assertEquals(stream.getSize(), packedStream.getSize());
+			
+			// the simplices are produced in the same order, and have the same boundaries
+			Iterator<PackedSimplex> iterator = packedStream.iterator();
+			for (Simplex simplex: stream) {
+				PackedSimplex packedSimplex = iterator.next();
+				assertEquals(PackedSimplex.fromSimplex(simplex), packedSimplex);
+				assertEquals(simplex, packedSimplex.toSimplex());
+				assertEquals(stream.getFiltrationIndex(simplex), packedStream.getFiltrationIndex(packedSimplex));
+				assertEquals(stream.getFiltrationValue(simplex), packedStream.getFiltrationValue(packedSimplex), 0);
+				Simplex[] boundary = simplex.getBoundaryArray();
+				PackedSimplex[] packedBoundary = packedSimplex.getBoundaryArray();
+				assertEquals(boundary.length, packedBoundary.length);
+				for (int i = 0; i < boundary.length; i++) {
+					assertEquals(PackedSimplex.fromSimplex(boundary[i]), packedBoundary[i]);
+				}
+			}
+			assertFalse(iterator.hasNext());
+			
+			BarcodeCollection<Double> expected = Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(stream);
+			BarcodeCollection<Double> barcodes = new BooleanClassicalHomology<PackedSimplex>(PackedSimplexComparator.getInstance(), 0, maxDimension).computeIntervals(packedStream);
+			assertEquals(expected, barcodes);
+		}
+	}
+	
+	@Test
+	public void testBoundaryInterning() {
+		for (double[][] pointCloud: pointClouds) {
+			VietorisRipsStream<double[]> stream = Plex4.createVietorisRipsStream(pointCloud, maxDimension, maxFiltrationValue, numDivisions);
+			BarcodeCollection<Double> expected = Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(stream);
+			
+			Map<Simplex, Simplex> storedSimplices = new HashMap<Simplex, Simplex>();
+			for (Simplex simplex: stream) {
+				storedSimplices.put(simplex, simplex);
+			}
+			
+			// the faces are the instances held by the stream
+			stream.setBoundaryInterning(true);
+			for (Simplex simplex: stream) {
+				for (Simplex face: stream.getBoundary(simplex)) {
+					assertTrue(storedSimplices.get(face) == face);
+				}
+			}
+			
+			// recently requested boundaries are returned from the cache
+			stream.setBoundaryCacheSize(16);
+			for (Simplex simplex: stream) {
+				assertTrue(stream.getBoundary(simplex) == stream.getBoundary(simplex));
+			}
+			assertEquals(expected, Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(stream));
+			
+			stream.setBoundaryInterning(false);
+			stream.setBoundaryCacheSize(0);
+			assertEquals(expected, Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(stream));
+		}
+		
+		List<StreamStorageStructure<Simplex>> storageStructures = new ArrayList<StreamStorageStructure<Simplex>>();
+		storageStructures.add(StreamStorageStructureFactory.getDefaultStorageStructure(SimplexComparator.getInstance()));
+		storageStructures.add(StreamStorageStructureFactory.getSimplexStorageStructure());
+		for (StreamStorageStructure<Simplex> storageStructure: storageStructures) {
+			Simplex simplex = Simplex.makeSimplex(2, 0, 1);
+			storageStructure.addElement(simplex, 1);
+			storageStructure.finalizeStructure();
+			assertTrue(storageStructure.getStoredElement(Simplex.makeSimplex(0, 1, 2)).equals(simplex));
+			assertTrue(storageStructure.getStoredElement(Simplex.makeSimplex(0, 1)) == null);
+		}
+		StreamStorageStructure<Simplex> storageStructure = StreamStorageStructureFactory.getDefaultStorageStructure(SimplexComparator.getInstance());
+		Simplex simplex = Simplex.makeSimplex(0, 1);
+		storageStructure.addElement(simplex, 0);
+		assertTrue(storageStructure.getStoredElement(Simplex.makeSimplex(1, 0)) == simplex);
+	}
+	
+	@Test
+	public void testIndexedStreamView() {
+		for (double[][] pointCloud: pointClouds) {
+			EuclideanMetricSpace metricSpace = new EuclideanMetricSpace(pointCloud);
+			List<VietorisRipsStream<double[]>> streams = new ArrayList<VietorisRipsStream<double[]>>();
+			streams.add(new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions));
+			streams.add(new VietorisRipsStream<double[]>(metricSpace, maxFiltrationValue, maxDimension, numDivisions, 
+					StreamStorageStructureFactory.getSimplexStorageStructure()));
+			for (VietorisRipsStream<double[]> stream: streams) {
+				stream.finalizeStream();
+				
+				// the skeleton queries of StreamUtility do not create the indexed view
+				List<Simplex> edges = StreamUtility.getSkeleton(stream, 1);
+				assertEquals(edges.size(), StreamUtility.getSkeletonSize(stream, 1));
+				assertFalse(stream.isIndexed());
+				
+				int minIndex = Integer.MAX_VALUE;
+				int maxIndex = Integer.MIN_VALUE;
+				for (Simplex simplex: stream) {
+					minIndex = Math.min(minIndex, stream.getFiltrationIndex(simplex));
+					maxIndex = Math.max(maxIndex, stream.getFiltrationIndex(simplex));
+				}
+				assertEquals(minIndex, stream.getMinimumFiltrationIndex());
+				assertEquals(maxIndex, stream.getMaximumFiltrationIndex());
+				
+				int[][] ranges = new int[][] {{minIndex, maxIndex}, {3, 7}, {-5, 2}, {maxIndex, maxIndex + 10}, {6, 5}, {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+				for (int dimension = -1; dimension <= maxDimension + 1; dimension++) {
+					for (int[] range: ranges) {
+						List<Simplex> expected = new ArrayList<Simplex>();
+						List<Simplex> expectedSkeleton = new ArrayList<Simplex>();
+						for (Simplex simplex: stream) {
+							int filtrationIndex = stream.getFiltrationIndex(simplex);
+							if (filtrationIndex >= range[0] && filtrationIndex <= range[1]) {
+								expected.add(simplex);
+								if (simplex.getDimension() == dimension) {
+									expectedSkeleton.add(simplex);
+								}
+							}
+						}
+						
+						List<Simplex> simplices = new ArrayList<Simplex>();
+						for (Iterator<Simplex> iterator = stream.iterator(range[0], range[1]); iterator.hasNext(); ) {
+							simplices.add(iterator.next());
+						}
+						assertEquals(expected, simplices);
+						
+						List<Simplex> skeleton = new ArrayList<Simplex>();
+						for (Iterator<Simplex> iterator = stream.skeletonIterator(dimension, range[0], range[1]); iterator.hasNext(); ) {
+							skeleton.add(iterator.next());
+						}
+						assertEquals(expectedSkeleton, skeleton);
+					}
+					
+					List<Simplex> skeleton = new ArrayList<Simplex>();
+					for (Iterator<Simplex> iterator = stream.skeletonIterator(dimension); iterator.hasNext(); ) {
+						skeleton.add(iterator.next());
+					}
+					assertEquals(StreamUtility.getSkeleton(stream, dimension), skeleton);
+					assertEquals(skeleton.size(), stream.getSkeletonSize(dimension));
+				}
+				assertTrue(stream.isIndexed());
+				assertEquals(edges, StreamUtility.getSkeleton(stream, 1));
+				assertEquals(edges.size(), StreamUtility.getSkeletonSize(stream, 1));
+				assertEquals(minIndex, stream.getMinimumFiltrationIndex());
+				assertEquals(maxIndex, stream.getMaximumFiltrationIndex());
+			}
+		}
+	}
+	
+	@Test
+	public void testBinarySimplexStream() throws IOException {
+		File file = File.createTempFile("stream", ".sxs");
+		file.deleteOnExit();
+		for (double[][] pointCloud: pointClouds) {
+			VietorisRipsStream<double[]> stream = Plex4.createVietorisRipsStream(pointCloud, maxDimension, maxFiltrationValue, numDivisions);
+			BinarySimplexStreamReaderWriter.getInstance().writeToFile(stream, file.getPath());
+			
+			List<MappedSimplexStream> mappedStreams = new ArrayList<MappedSimplexStream>();
+			mappedStreams.add((MappedSimplexStream) BinarySimplexStreamReaderWriter.getInstance().importFromFile(file.getPath()));
+			mappedStreams.add(new MappedSimplexStream(new MappedSimplexStorageStructure(file.getPath(), 17)));
+			for (MappedSimplexStream mappedStream: mappedStreams) {
+				StreamTester.verifyEqual(stream, mappedStream);
+				assertEquals(stream.getMinimumFiltrationIndex(), mappedStream.getMinimumFiltrationIndex());
+				assertEquals(stream.getMaximumFiltrationIndex(), mappedStream.getMaximumFiltrationIndex());
+				
+				// the simplices are produced in the same order, with the same filtration values
+				Iterator<Simplex> iterator = mappedStream.iterator();
+				for (Simplex simplex: stream) {
+					Simplex mappedSimplex = iterator.next();
+					assertEquals(simplex, mappedSimplex);
+					assertEquals(stream.getFiltrationIndex(simplex), mappedStream.getFiltrationIndex(mappedSimplex));
+					assertEquals(stream.getFiltrationValue(simplex), mappedStream.getFiltrationValue(mappedSimplex), 0);
+				}
+				assertFalse(iterator.hasNext());
+				assertFalse(mappedStream.containsElement(Simplex.makeSimplex(0, pointCloud.length)));
+				
+				assertEquals(Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(stream), 
+						Plex4.getDefaultSimplicialAlgorithm(maxDimension).computeIntervals(mappedStream));
+			}
+		}
+		
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		writer.println("0,1,2");
+		writer.close();
+		try {
+			new MappedSimplexStream(file.getPath());
+			fail();
+		} catch (IOException e) {
+			// a text file is not a valid binary stream
+		}
+		
+		// a header whose tables cannot be read into a single buffer is rejected
+		ByteBuffer header = ByteBuffer.allocate(BinarySimplexStreamReaderWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(BinarySimplexStreamReaderWriter.MAGIC_NUMBER);
+		header.putInt(BinarySimplexStreamReaderWriter.VERSION);
+		header.putLong(1);
+		header.putInt(1);
+		header.putInt(Integer.MAX_VALUE);
+		header.putLong(0);
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(header.array());
+		output.close();
+		try {
+			new MappedSimplexStream(file.getPath());
+			fail();
+		} catch (IOException e) {
+			// the tables are too large
+		}
+	}
+	
+	/**
+	 * This function converts intervals to the logarithmic scale, on which a multiplicative
+	 * interleaving is bounded by the bottleneck distance.
+	 */
+	private static List<Interval<Double>> getLogScaleIntervals(List<Interval<Double>> intervals, double maxFiltrationValue) {
+		List<Interval<Double>> result = new ArrayList<Interval<Double>>();
+		for (Interval<Double> interval: intervals) {
+			double start = Math.max(interval.getStart(), Double.MIN_NORMAL);
+			double end = (interval.isRightInfinite() ? maxFiltrationValue : Math.max(interval.getEnd(), Double.MIN_NORMAL));
+			result.add(Interval.makeFiniteClosedInterval(Math.log(start), Math.log(end)));
+		}
+		return result;
+	}
 }